@@ -0,0 +1,207 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.api.query;
+
+import java.util.List;
+
+import org.apache.lens.api.query.ColumnarResultWriter.Encoding;
+
+import lombok.Getter;
+
+/**
+ * A batch of rows read from a result in columnar format. Values are held in primitive arrays per column, and the
+ * typed getters convert them without boxing. Column and row indices start from 0.
+ */
+public class ColumnarResultBatch {
+
+  private final List<ResultColumnType> types;
+  private final Encoding[] encodings;
+  private final byte[][] nulls;
+  private final Object[] values;
+
+  /** The number of rows in batch */
+  @Getter
+  private final int numRows;
+
+  ColumnarResultBatch(List<ResultColumnType> types, Encoding[] encodings, int numRows, byte[][] nulls,
+    Object[] values) {
+    this.types = types;
+    this.encodings = encodings;
+    this.numRows = numRows;
+    this.nulls = nulls;
+    this.values = values;
+  }
+
+  /**
+   * Whether value of column in row is null.
+   *
+   * @param col the column index
+   * @param row the row index
+   * @return true if null
+   */
+  public boolean isNull(int col, int row) {
+    return (nulls[col][row >> 3] & (1 << (row & 7))) != 0;
+  }
+
+  /**
+   * Get value as boolean, false for null. Strings are true only if "true" or "1".
+   *
+   * @param col the column index
+   * @param row the row index
+   * @return the value
+   */
+  public boolean getBoolean(int col, int row) {
+    if (isNull(col, row)) {
+      return false;
+    }
+    switch (encodings[col]) {
+    case BOOLEAN:
+      return ((boolean[]) values[col])[row];
+    case STRING:
+      String value = ((String[]) values[col])[row];
+      return "true".equalsIgnoreCase(value) || "1".equals(value);
+    default:
+      return getDouble(col, row) != 0;
+    }
+  }
+
+  /**
+   * Get value as int, 0 for null.
+   *
+   * @param col the column index
+   * @param row the row index
+   * @return the value
+   */
+  public int getInt(int col, int row) {
+    if (isNull(col, row)) {
+      return 0;
+    }
+    switch (encodings[col]) {
+    case INT:
+      return ((int[]) values[col])[row];
+    case LONG:
+      return (int) ((long[]) values[col])[row];
+    case DOUBLE:
+      return (int) ((double[]) values[col])[row];
+    case BOOLEAN:
+      return ((boolean[]) values[col])[row] ? 1 : 0;
+    default:
+      return Integer.parseInt(((String[]) values[col])[row]);
+    }
+  }
+
+  /**
+   * Get value as long, 0 for null.
+   *
+   * @param col the column index
+   * @param row the row index
+   * @return the value
+   */
+  public long getLong(int col, int row) {
+    if (isNull(col, row)) {
+      return 0;
+    }
+    switch (encodings[col]) {
+    case INT:
+      return ((int[]) values[col])[row];
+    case LONG:
+      return ((long[]) values[col])[row];
+    case DOUBLE:
+      return (long) ((double[]) values[col])[row];
+    case BOOLEAN:
+      return ((boolean[]) values[col])[row] ? 1 : 0;
+    default:
+      return Long.parseLong(((String[]) values[col])[row]);
+    }
+  }
+
+  /**
+   * Get value as double, 0 for null.
+   *
+   * @param col the column index
+   * @param row the row index
+   * @return the value
+   */
+  public double getDouble(int col, int row) {
+    if (isNull(col, row)) {
+      return 0;
+    }
+    switch (encodings[col]) {
+    case INT:
+      return ((int[]) values[col])[row];
+    case LONG:
+      return ((long[]) values[col])[row];
+    case DOUBLE:
+      return ((double[]) values[col])[row];
+    case BOOLEAN:
+      return ((boolean[]) values[col])[row] ? 1 : 0;
+    default:
+      return Double.parseDouble(((String[]) values[col])[row]);
+    }
+  }
+
+  /**
+   * Get value as string, null for null.
+   *
+   * @param col the column index
+   * @param row the row index
+   * @return the value
+   */
+  public String getString(int col, int row) {
+    if (isNull(col, row)) {
+      return null;
+    }
+    switch (encodings[col]) {
+    case STRING:
+      return ((String[]) values[col])[row];
+    default:
+      return String.valueOf(getObject(col, row));
+    }
+  }
+
+  /**
+   * Get value as object, boxing primitive values. Values of float columns are returned as {@link Float}, though they
+   * are held as doubles.
+   *
+   * @param col the column index
+   * @param row the row index
+   * @return the value
+   */
+  public Object getObject(int col, int row) {
+    if (isNull(col, row)) {
+      return null;
+    }
+    switch (encodings[col]) {
+    case BOOLEAN:
+      return ((boolean[]) values[col])[row];
+    case INT:
+      return ((int[]) values[col])[row];
+    case LONG:
+      return ((long[]) values[col])[row];
+    case DOUBLE:
+      double value = ((double[]) values[col])[row];
+      if (types.get(col) == ResultColumnType.FLOAT) {
+        return (float) value;
+      }
+      return value;
+    default:
+      return ((String[]) values[col])[row];
+    }
+  }
+}
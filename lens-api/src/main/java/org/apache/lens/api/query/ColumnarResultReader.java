@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.api.query;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lens.api.query.ColumnarResultWriter.Encoding;
+
+import lombok.Getter;
+
+/**
+ * Reads a result written by {@link ColumnarResultWriter}, one batch at a time.
+ */
+public class ColumnarResultReader implements Closeable {
+
+  private final DataInputStream in;
+  private final Encoding[] encodings;
+
+  /** The types of columns */
+  @Getter
+  private final List<ResultColumnType> columnTypes;
+
+  private boolean finished = false;
+
+  /**
+   * Instantiates a new columnar result reader and reads the header.
+   *
+   * @param in the input stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public ColumnarResultReader(InputStream in) throws IOException {
+    this.in = new DataInputStream(new BufferedInputStream(in));
+    if (this.in.readInt() != ColumnarResultWriter.MAGIC) {
+      throw new IOException("Not a result in columnar format");
+    }
+    byte version = this.in.readByte();
+    if (version != ColumnarResultWriter.VERSION) {
+      throw new IOException("Unsupported columnar result version " + version);
+    }
+    int numColumns = this.in.readInt();
+    List<ResultColumnType> types = new ArrayList<ResultColumnType>(numColumns);
+    encodings = new Encoding[numColumns];
+    for (int i = 0; i < numColumns; i++) {
+      types.add(ResultColumnType.valueOf(this.in.readUTF()));
+      encodings[i] = Encoding.of(types.get(i));
+    }
+    columnTypes = Collections.unmodifiableList(types);
+  }
+
+  /**
+   * Read the next batch.
+   *
+   * @return the batch, null if there are no more rows
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public ColumnarResultBatch nextBatch() throws IOException {
+    if (finished) {
+      return null;
+    }
+    int numRows = in.readInt();
+    if (numRows == 0) {
+      finished = true;
+      return null;
+    }
+    byte[][] nulls = new byte[encodings.length][(numRows + 7) / 8];
+    Object[] values = new Object[encodings.length];
+    for (int i = 0; i < encodings.length; i++) {
+      in.readFully(nulls[i]);
+      switch (encodings[i]) {
+      case BOOLEAN:
+        boolean[] booleans = new boolean[numRows];
+        for (int r = 0; r < numRows; r++) {
+          booleans[r] = in.readBoolean();
+        }
+        values[i] = booleans;
+        break;
+      case INT:
+        int[] ints = new int[numRows];
+        for (int r = 0; r < numRows; r++) {
+          ints[r] = in.readInt();
+        }
+        values[i] = ints;
+        break;
+      case LONG:
+        long[] longs = new long[numRows];
+        for (int r = 0; r < numRows; r++) {
+          longs[r] = in.readLong();
+        }
+        values[i] = longs;
+        break;
+      case DOUBLE:
+        double[] doubles = new double[numRows];
+        for (int r = 0; r < numRows; r++) {
+          doubles[r] = in.readDouble();
+        }
+        values[i] = doubles;
+        break;
+      default:
+        String[] strings = new String[numRows];
+        for (int r = 0; r < numRows; r++) {
+          if ((nulls[i][r >> 3] & (1 << (r & 7))) == 0) {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            strings[r] = new String(bytes, ColumnarResultWriter.UTF8);
+          }
+        }
+        values[i] = strings;
+      }
+    }
+    return new ColumnarResultBatch(columnTypes, encodings, numRows, nulls, values);
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
@@ -0,0 +1,236 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.api.query;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes result rows in the columnar result format.
+ * <p></p>
+ * The format is a header followed by batches of rows. Header is a magic number, the version and the type of every
+ * column. A batch is the number of rows in it followed by every column of the batch, as a null bitmap and the values.
+ * Boolean, integral and floating point columns are written as fixed width primitive arrays, other columns as length
+ * prefixed UTF-8 strings for non null values. A batch with zero rows marks the end of result.
+ * <p></p>
+ * Rows are buffered in primitive arrays of a batch, so values are not held as objects beyond a batch.
+ */
+public class ColumnarResultWriter {
+
+  /** Media type of result in columnar format */
+  public static final String MEDIA_TYPE = "application/x-lens-columnar";
+
+  /** Default number of rows in a batch */
+  public static final int DEFAULT_BATCH_SIZE = 4096;
+
+  static final int MAGIC = 0x4C454E53;
+  static final byte VERSION = 1;
+  static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * Physical encoding of a column.
+   */
+  enum Encoding {
+    BOOLEAN, INT, LONG, DOUBLE, STRING;
+
+    static Encoding of(ResultColumnType type) {
+      switch (type) {
+      case BOOLEAN:
+        return BOOLEAN;
+      case TINYINT:
+      case SMALLINT:
+      case INT:
+        return INT;
+      case BIGINT:
+        return LONG;
+      case FLOAT:
+      case DOUBLE:
+        return DOUBLE;
+      default:
+        return STRING;
+      }
+    }
+  }
+
+  private final DataOutputStream out;
+  private final Encoding[] encodings;
+  private final int batchSize;
+  private final byte[][] nulls;
+  private final Object[] values;
+  private int numRows = 0;
+  private boolean closed = false;
+
+  /**
+   * Instantiates a new columnar result writer and writes the header.
+   *
+   * @param out       the output stream
+   * @param types     the types of columns
+   * @param batchSize the number of rows in a batch
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public ColumnarResultWriter(OutputStream out, List<ResultColumnType> types, int batchSize) throws IOException {
+    this.out = new DataOutputStream(out);
+    this.batchSize = batchSize;
+    this.encodings = new Encoding[types.size()];
+    this.nulls = new byte[types.size()][(batchSize + 7) / 8];
+    this.values = new Object[types.size()];
+    this.out.writeInt(MAGIC);
+    this.out.writeByte(VERSION);
+    this.out.writeInt(types.size());
+    for (int i = 0; i < types.size(); i++) {
+      this.out.writeUTF(types.get(i).name());
+      encodings[i] = Encoding.of(types.get(i));
+      switch (encodings[i]) {
+      case BOOLEAN:
+        values[i] = new boolean[batchSize];
+        break;
+      case INT:
+        values[i] = new int[batchSize];
+        break;
+      case LONG:
+        values[i] = new long[batchSize];
+        break;
+      case DOUBLE:
+        values[i] = new double[batchSize];
+        break;
+      default:
+        values[i] = new String[batchSize];
+      }
+    }
+  }
+
+  /**
+   * Add a row, writing out the batch if it is full.
+   *
+   * @param row the column values of row
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void writeRow(List<Object> row) throws IOException {
+    if (row.size() != encodings.length) {
+      throw new IOException("Expected " + encodings.length + " columns, found " + row.size());
+    }
+    for (int i = 0; i < encodings.length; i++) {
+      Object value = row.get(i);
+      if (value == null) {
+        nulls[i][numRows >> 3] |= 1 << (numRows & 7);
+        continue;
+      }
+      switch (encodings[i]) {
+      case BOOLEAN:
+        ((boolean[]) values[i])[numRows] = value instanceof Boolean ? (Boolean) value
+          : Boolean.parseBoolean(value.toString());
+        break;
+      case INT:
+        ((int[]) values[i])[numRows] = value instanceof Number ? ((Number) value).intValue()
+          : Integer.parseInt(value.toString());
+        break;
+      case LONG:
+        ((long[]) values[i])[numRows] = value instanceof Number ? ((Number) value).longValue()
+          : Long.parseLong(value.toString());
+        break;
+      case DOUBLE:
+        ((double[]) values[i])[numRows] = value instanceof Number ? ((Number) value).doubleValue()
+          : Double.parseDouble(value.toString());
+        break;
+      default:
+        ((String[]) values[i])[numRows] = value.toString();
+      }
+    }
+    if (++numRows == batchSize) {
+      writeBatch();
+    }
+  }
+
+  private void writeBatch() throws IOException {
+    out.writeInt(numRows);
+    int nullBytes = (numRows + 7) / 8;
+    for (int i = 0; i < encodings.length; i++) {
+      out.write(nulls[i], 0, nullBytes);
+      switch (encodings[i]) {
+      case BOOLEAN:
+        boolean[] booleans = (boolean[]) values[i];
+        for (int r = 0; r < numRows; r++) {
+          out.writeBoolean(booleans[r]);
+        }
+        break;
+      case INT:
+        int[] ints = (int[]) values[i];
+        for (int r = 0; r < numRows; r++) {
+          out.writeInt(ints[r]);
+        }
+        break;
+      case LONG:
+        long[] longs = (long[]) values[i];
+        for (int r = 0; r < numRows; r++) {
+          out.writeLong(longs[r]);
+        }
+        break;
+      case DOUBLE:
+        double[] doubles = (double[]) values[i];
+        for (int r = 0; r < numRows; r++) {
+          out.writeDouble(doubles[r]);
+        }
+        break;
+      default:
+        String[] strings = (String[]) values[i];
+        for (int r = 0; r < numRows; r++) {
+          if (strings[r] != null) {
+            byte[] bytes = strings[r].getBytes(UTF8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            strings[r] = null;
+          }
+        }
+      }
+      Arrays.fill(nulls[i], 0, nullBytes, (byte) 0);
+    }
+    numRows = 0;
+  }
+
+  /**
+   * Flush rows added till now as a batch.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void flush() throws IOException {
+    if (numRows > 0) {
+      writeBatch();
+    }
+    out.flush();
+  }
+
+  /**
+   * Write out the remaining rows and the end of result marker. Underlying stream is flushed but not closed.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void finish() throws IOException {
+    if (closed) {
+      return;
+    }
+    flush();
+    out.writeInt(0);
+    out.flush();
+    closed = true;
+  }
+}
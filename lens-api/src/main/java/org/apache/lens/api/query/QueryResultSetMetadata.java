@@ -23,6 +23,7 @@ package org.apache.lens.api.query;
 
 import java.util.List;
 
+import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlElementWrapper;
 import javax.xml.bind.annotation.XmlRootElement;
 
@@ -40,6 +41,8 @@ import lombok.NoArgsConstructor;
  *
  * @param columns
  *          the columns
+ * @param inMemory
+ *          whether the result is in memory
  */
 @AllArgsConstructor
 /**
@@ -54,4 +57,20 @@ public class QueryResultSetMetadata {
   @XmlElementWrapper
   @Getter
   private List<ResultColumn> columns;
+
+  /**
+   * Whether the result is available in memory on the server, in which case it can be fetched in columnar format.
+   */
+  @XmlElement
+  @Getter
+  private boolean inMemory;
+
+  /**
+   * Instantiates a new query result set metadata of a result which is not in memory.
+   *
+   * @param columns the columns
+   */
+  public QueryResultSetMetadata(List<ResultColumn> columns) {
+    this(columns, false);
+  }
 }
@@ -165,6 +165,7 @@ public class QueryStatus implements Serializable {
   private String errorMessage;
 
   @XmlElement
+  @Getter
   private LensErrorTO lensErrorTO;
 
   /*
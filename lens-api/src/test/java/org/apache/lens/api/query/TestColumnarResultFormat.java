@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.api.query;
+
+import static org.testng.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests for writing and reading results in columnar format.
+ */
+public class TestColumnarResultFormat {
+
+  /**
+   * Rows written in columnar format are read back with same values and nulls, across batches.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test
+  public void testRoundTrip() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ColumnarResultWriter writer = new ColumnarResultWriter(out, Arrays.asList(ResultColumnType.INT,
+      ResultColumnType.BIGINT, ResultColumnType.DOUBLE, ResultColumnType.BOOLEAN, ResultColumnType.STRING), 3);
+    int numRows = 10;
+    for (int i = 0; i < numRows; i++) {
+      if (i % 4 == 1) {
+        writer.writeRow(Arrays.<Object>asList(null, null, null, null, null));
+      } else {
+        // values of other java types are converted to column type
+        writer.writeRow(Arrays.<Object>asList(i, (long) i * 1000000000L, i + 0.5, i % 2 == 0, "row" + i));
+      }
+    }
+    writer.writeRow(Arrays.<Object>asList("10", "10000000000", 10.5f, "true", new StringBuilder("row10")));
+    writer.finish();
+
+    ColumnarResultReader reader = new ColumnarResultReader(new ByteArrayInputStream(out.toByteArray()));
+    assertEquals(reader.getColumnTypes().get(4), ResultColumnType.STRING);
+    int row = 0;
+    int numBatches = 0;
+    ColumnarResultBatch batch;
+    while ((batch = reader.nextBatch()) != null) {
+      numBatches++;
+      for (int r = 0; r < batch.getNumRows(); r++, row++) {
+        if (row % 4 == 1) {
+          for (int c = 0; c < 5; c++) {
+            assertTrue(batch.isNull(c, r));
+            assertNull(batch.getObject(c, r));
+          }
+          assertEquals(batch.getInt(0, r), 0);
+          assertNull(batch.getString(4, r));
+          continue;
+        }
+        assertFalse(batch.isNull(0, r));
+        assertEquals(batch.getInt(0, r), row);
+        assertEquals(batch.getLong(1, r), row * 1000000000L);
+        assertEquals(batch.getDouble(2, r), row + 0.5);
+        assertEquals(batch.getBoolean(3, r), row % 2 == 0);
+        assertEquals(batch.getString(4, r), "row" + row);
+        assertEquals(batch.getObject(0, r), row);
+        assertEquals(batch.getString(0, r), String.valueOf(row));
+      }
+    }
+    assertEquals(row, numRows + 1);
+    assertEquals(numBatches, 4);
+    assertNull(reader.nextBatch());
+  }
+
+  /**
+   * Strings are read as booleans like the row based result set does, and float values are returned as floats.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test
+  public void testStringBooleansAndFloats() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ColumnarResultWriter writer = new ColumnarResultWriter(out, Arrays.asList(ResultColumnType.STRING,
+      ResultColumnType.FLOAT), 10);
+    writer.writeRow(Arrays.<Object>asList("true", 1.5f));
+    writer.writeRow(Arrays.<Object>asList("1", 2.5f));
+    writer.writeRow(Arrays.<Object>asList("false", 3.5f));
+    writer.writeRow(Arrays.<Object>asList("yes", 4.5f));
+    writer.finish();
+
+    ColumnarResultBatch batch = new ColumnarResultReader(new ByteArrayInputStream(out.toByteArray())).nextBatch();
+    assertTrue(batch.getBoolean(0, 0));
+    assertTrue(batch.getBoolean(0, 1));
+    assertFalse(batch.getBoolean(0, 2));
+    assertFalse(batch.getBoolean(0, 3));
+    assertEquals(batch.getObject(1, 0), 1.5f);
+    assertEquals(batch.getString(1, 1), "2.5");
+    assertEquals(batch.getDouble(1, 2), 3.5);
+  }
+
+  /**
+   * Result without rows has only the header and end marker.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test
+  public void testEmptyResult() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ColumnarResultWriter writer = new ColumnarResultWriter(out, Arrays.asList(ResultColumnType.STRING), 10);
+    writer.finish();
+    ColumnarResultReader reader = new ColumnarResultReader(new ByteArrayInputStream(out.toByteArray()));
+    assertEquals(reader.getColumnTypes(), Arrays.asList(ResultColumnType.STRING));
+    assertNull(reader.nextBatch());
+  }
+
+  /**
+   * Input not in columnar format is rejected.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test(expectedExceptions = IOException.class)
+  public void testInvalidInput() throws IOException {
+    new ColumnarResultReader(new ByteArrayInputStream("<xml/>".getBytes("UTF-8")));
+  }
+}
@@ -226,10 +226,31 @@ public class LensClient {
     return getLensStatement(query).getResultSet();
   }
 
+  /**
+   * Get results of query in columnar format, to be iterated in batches.
+   *
+   * @param query the query handle
+   * @return the reader of result, which should be closed after reading
+   */
+  public ColumnarResultReader getColumnarResults(QueryHandle query) {
+    QueryStatus status = getLensStatement(query).getStatus();
+    if (!status.isResultSetAvailable()) {
+      log.debug("Current status of the query is {}", status);
+      throw new IllegalStateException("Resultset for the query "
+        + query + " is not available, its current status is " + status);
+    }
+    return getLensStatement(query).getColumnarResultSet();
+  }
+
   public List<QueryHandle> getQueries(String state, String queryName, String user, long fromDate, long toDate) {
     return new LensStatement(connection).getAllQueries(state, queryName, user, fromDate, toDate);
   }
 
+  public List<QueryHandle> getQueries(String state, String queryName, String user, long fromDate, long toDate,
+    int limit, QueryHandle cursor) {
+    return new LensStatement(connection).getAllQueries(state, queryName, user, fromDate, toDate, limit, cursor);
+  }
+
   private void connectToLensServer() {
     log.debug("Connecting to lens server {}", new LensConnectionParams(conf));
     connection = new LensConnection(new LensConnectionParams(conf));
@@ -18,6 +18,7 @@
  */
 package org.apache.lens.client;
 
+import java.io.InputStream;
 import java.util.List;
 
 import javax.ws.rs.client.Client;
@@ -387,12 +388,35 @@ public class LensStatement {
    * @return the all queries
    */
   public List<QueryHandle> getAllQueries(String state, String queryName, String user, long fromDate, long toDate) {
+    return getAllQueries(state, queryName, user, fromDate, toDate, 0, null);
+  }
+
+  /**
+   * Gets a page of queries, latest submitted first.
+   *
+   * @param state     the state
+   * @param queryName the query name
+   * @param user      the user
+   * @param fromDate  the from date
+   * @param toDate    the to date
+   * @param limit     the maximum number of queries, all queries if not positive
+   * @param cursor    the last query of previous page, null for the first page
+   * @return the queries
+   */
+  public List<QueryHandle> getAllQueries(String state, String queryName, String user, long fromDate, long toDate,
+    int limit, QueryHandle cursor) {
     WebTarget target = getQueryWebTarget(connection.buildClient());
-    List<QueryHandle> handles = target.queryParam("sessionid", connection.getSessionHandle())
+    target = target.queryParam("sessionid", connection.getSessionHandle())
       .queryParam("state", state).queryParam("queryName", queryName).queryParam("user", user)
-      .queryParam("fromDate", fromDate).queryParam("toDate", toDate).request()
-      .get(new GenericType<List<QueryHandle>>() {
-      });
+      .queryParam("fromDate", fromDate).queryParam("toDate", toDate);
+    if (limit > 0) {
+      target = target.queryParam("limit", limit);
+    }
+    if (cursor != null) {
+      target = target.queryParam("cursor", cursor.toString());
+    }
+    List<QueryHandle> handles = target.request().get(new GenericType<List<QueryHandle>>() {
+    });
     return handles;
   }
 
@@ -469,6 +493,34 @@ public class LensStatement {
     }
   }
 
+  public ColumnarResultReader getColumnarResultSet() {
+    return this.getColumnarResultSet(this.query);
+  }
+
+  /**
+   * Gets the result set in columnar format, which can be read in batches of typed columns. Only results available in
+   * memory on the server can be fetched in columnar format.
+   *
+   * @param query the query
+   * @return the reader of result, which should be closed after reading
+   */
+  public ColumnarResultReader getColumnarResultSet(LensQuery query) {
+    if (query.getStatus().getStatus() != QueryStatus.Status.SUCCESSFUL) {
+      throw new IllegalArgumentException("Result set can be fetched only for successful queries");
+    }
+    Client client = connection.buildClient();
+
+    try {
+      WebTarget target = getQueryWebTarget(client);
+      InputStream in = target.path(query.getQueryHandle().toString()).path("resultset")
+        .queryParam("sessionid", connection.getSessionHandle()).request(ColumnarResultWriter.MEDIA_TYPE)
+        .get(InputStream.class);
+      return new ColumnarResultReader(in);
+    } catch (Exception e) {
+      throw new IllegalStateException("Failed to get columnar resultset, cause:" + e.getMessage(), e);
+    }
+  }
+
   /**
    * Gets the http result set.
    *
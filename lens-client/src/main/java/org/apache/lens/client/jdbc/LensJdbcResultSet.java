@@ -59,6 +59,15 @@ public class LensJdbcResultSet implements ResultSet {
   /** The wasnull. */
   private boolean wasnull;
 
+  /** The reader of result in columnar format, null if result is not read in columnar format. */
+  private final ColumnarResultReader columnarReader;
+
+  /** The current batch of columnar result. */
+  private ColumnarResultBatch batch;
+
+  /** The index of current row in batch. */
+  private int batchRow;
+
   /**
    * Instantiates a new lens jdbc result set.
    *
@@ -68,6 +77,7 @@ public class LensJdbcResultSet implements ResultSet {
    */
   public LensJdbcResultSet(QueryResult result, QueryResultSetMetadata metadata, LensJdbcStatement statement) {
     this.result = result;
+    this.columnarReader = null;
     this.metadata = metadata;
     this.statement = statement;
     colNames = new ArrayList<String>();
@@ -83,6 +93,48 @@ public class LensJdbcResultSet implements ResultSet {
     }
   }
 
+  /**
+   * Instantiates a new lens jdbc result set reading result in columnar format. Typed getters read values of such
+   * result set without boxing them.
+   *
+   * @param columnarReader the reader of result in columnar format
+   * @param metadata       the metadata
+   * @param statement      the statement
+   */
+  public LensJdbcResultSet(ColumnarResultReader columnarReader, QueryResultSetMetadata metadata,
+    LensJdbcStatement statement) {
+    this.result = null;
+    this.iterators = null;
+    this.columnarReader = columnarReader;
+    this.metadata = metadata;
+    this.statement = statement;
+    colNames = new ArrayList<String>();
+    colTypes = new ArrayList<ResultColumnType>();
+    for (ResultColumn col : metadata.getColumns()) {
+      colNames.add(col.getName());
+      colTypes.add(col.getType());
+    }
+  }
+
+  /**
+   * Get index of column in columnar batch, setting whether the value is null.
+   *
+   * @param index the column index, starting from 1
+   * @return the index of column in batch
+   * @throws SQLException the SQL exception
+   */
+  private int toBatchColumn(int index) throws SQLException {
+    if (closed) {
+      throw new SQLException("Cannot read from closed resultset");
+    }
+    if (batch == null) {
+      throw new SQLException("No row found.");
+    }
+    int col = toZeroIndex(index);
+    wasnull = batch.isNull(col, batchRow);
+    return col;
+  }
+
   /*
    * (non-Javadoc)
    *
@@ -94,6 +146,19 @@ public class LensJdbcResultSet implements ResultSet {
       throw new SQLException("You cannot iterate after resultset is closed");
     }
 
+    if (columnarReader != null) {
+      if (batch != null && batchRow + 1 < batch.getNumRows()) {
+        batchRow++;
+        return true;
+      }
+      try {
+        batch = columnarReader.nextBatch();
+      } catch (IOException e) {
+        throw new SQLException("Error reading result", e);
+      }
+      batchRow = 0;
+      return batch != null;
+    }
     if (iterators != null && iterators.hasNext()) {
       currentRow = iterators.next();
       return true;
@@ -109,6 +174,13 @@ public class LensJdbcResultSet implements ResultSet {
   @Override
   public void close() throws SQLException {
     closed = true;
+    if (columnarReader != null) {
+      try {
+        columnarReader.close();
+      } catch (IOException e) {
+        throw new SQLException("Error closing result", e);
+      }
+    }
     statement.closeResultSet();
     statement.close();
   }
@@ -130,6 +202,10 @@ public class LensJdbcResultSet implements ResultSet {
    */
   @Override
   public String getString(int i) throws SQLException {
+    if (columnarReader != null) {
+      int col = toBatchColumn(i);
+      return batch.getString(col, batchRow);
+    }
     return String.valueOf(getObject(i));
   }
 
@@ -150,6 +226,10 @@ public class LensJdbcResultSet implements ResultSet {
    */
   @Override
   public boolean getBoolean(int i) throws SQLException {
+    if (columnarReader != null) {
+      int col = toBatchColumn(i);
+      return batch.getBoolean(col, batchRow);
+    }
     Object obj = getObject(i);
     if (Boolean.class.isInstance(obj)) {
       return (Boolean) obj;
@@ -158,7 +238,7 @@ public class LensJdbcResultSet implements ResultSet {
     } else if (Number.class.isInstance(obj)) {
       return ((Number) obj).intValue() != 0;
     } else if (String.class.isInstance(obj)) {
-      return !((String) obj).equals("0");
+      return "true".equalsIgnoreCase((String) obj) || "1".equals(obj);
     }
     throw new SQLException("Cannot convert column " + i + "to boolean");
   }
@@ -180,6 +260,14 @@ public class LensJdbcResultSet implements ResultSet {
    */
   @Override
   public byte getByte(int i) throws SQLException {
+    if (columnarReader != null) {
+      int col = toBatchColumn(i);
+      try {
+        return (byte) batch.getInt(col, batchRow);
+      } catch (NumberFormatException e) {
+        throw new SQLException("Cannot convert column " + i + " to byte:" + e.toString(), e);
+      }
+    }
     Object obj = getObject(i);
     if (Number.class.isInstance(obj)) {
       return ((Number) obj).byteValue();
@@ -206,6 +294,14 @@ public class LensJdbcResultSet implements ResultSet {
    */
   @Override
   public short getShort(int i) throws SQLException {
+    if (columnarReader != null) {
+      int col = toBatchColumn(i);
+      try {
+        return (short) batch.getInt(col, batchRow);
+      } catch (NumberFormatException e) {
+        throw new SQLException("Cannot convert column " + i + " to short:" + e.toString(), e);
+      }
+    }
     try {
       Object obj = getObject(i);
       if (Number.class.isInstance(obj)) {
@@ -238,6 +334,14 @@ public class LensJdbcResultSet implements ResultSet {
    */
   @Override
   public int getInt(int i) throws SQLException {
+    if (columnarReader != null) {
+      int col = toBatchColumn(i);
+      try {
+        return batch.getInt(col, batchRow);
+      } catch (NumberFormatException e) {
+        throw new SQLException("Cannot convert column " + i + " to int:" + e.toString(), e);
+      }
+    }
     try {
       Object obj = getObject(i);
       if (Number.class.isInstance(obj)) {
@@ -270,6 +374,14 @@ public class LensJdbcResultSet implements ResultSet {
    */
   @Override
   public long getLong(int i) throws SQLException {
+    if (columnarReader != null) {
+      int col = toBatchColumn(i);
+      try {
+        return batch.getLong(col, batchRow);
+      } catch (NumberFormatException e) {
+        throw new SQLException("Cannot convert column " + i + " to long:" + e.toString(), e);
+      }
+    }
     try {
       Object obj = getObject(i);
       if (Number.class.isInstance(obj)) {
@@ -302,6 +414,14 @@ public class LensJdbcResultSet implements ResultSet {
    */
   @Override
   public float getFloat(int i) throws SQLException {
+    if (columnarReader != null) {
+      int col = toBatchColumn(i);
+      try {
+        return (float) batch.getDouble(col, batchRow);
+      } catch (NumberFormatException e) {
+        throw new SQLException("Cannot convert column " + i + " to float:" + e.toString(), e);
+      }
+    }
     try {
       Object obj = getObject(i);
       if (Number.class.isInstance(obj)) {
@@ -334,6 +454,14 @@ public class LensJdbcResultSet implements ResultSet {
    */
   @Override
   public double getDouble(int i) throws SQLException {
+    if (columnarReader != null) {
+      int col = toBatchColumn(i);
+      try {
+        return batch.getDouble(col, batchRow);
+      } catch (NumberFormatException e) {
+        throw new SQLException("Cannot convert column " + i + " to double:" + e.toString(), e);
+      }
+    }
     try {
       Object obj = getObject(i);
       if (Number.class.isInstance(obj)) {
@@ -463,6 +591,10 @@ public class LensJdbcResultSet implements ResultSet {
    */
   @Override
   public Object getObject(int index) throws SQLException {
+    if (columnarReader != null) {
+      int col = toBatchColumn(index);
+      return batch.getObject(col, batchRow);
+    }
     if (closed) {
       throw new SQLException("Cannot read from closed resultset");
     }
@@ -20,6 +20,7 @@ package org.apache.lens.client.jdbc;
 
 import java.sql.*;
 
+import org.apache.lens.api.query.QueryResultSetMetadata;
 import org.apache.lens.client.LensStatement;
 import org.apache.lens.client.exceptions.LensAPIException;
 
@@ -62,7 +63,7 @@ public class LensJdbcStatement implements Statement {
     } catch (LensAPIException e) {
       log.error("Execution Failed for Statement:{}", s, e);
     }
-    return new LensJdbcResultSet(statement.getResultSet(), statement.getResultSetMetaData(), this);
+    return createResultSet();
   }
 
   /*
@@ -127,7 +128,21 @@ public class LensJdbcStatement implements Statement {
     if (closed) {
       throw new SQLException("Cannot get resultset for closed statements");
     }
-    return new LensJdbcResultSet(statement.getResultSet(), statement.getResultSetMetaData(), this);
+    return createResultSet();
+  }
+
+  /**
+   * Create result set of the query. Result is read in columnar format if result set metadata says it is available in
+   * memory on the server, which is the only case the server can serve it so.
+   *
+   * @return the result set
+   */
+  private ResultSet createResultSet() {
+    QueryResultSetMetadata metadata = statement.getResultSetMetaData();
+    if (metadata.isInMemory()) {
+      return new LensJdbcResultSet(statement.getColumnarResultSet(), metadata, this);
+    }
+    return new LensJdbcResultSet(statement.getResultSet(), metadata, this);
   }
 
   @Override
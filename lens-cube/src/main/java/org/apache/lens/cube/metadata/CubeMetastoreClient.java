@@ -21,21 +21,29 @@ package org.apache.lens.cube.metadata;
 
 import static org.apache.lens.cube.metadata.MetastoreUtil.getFactOrDimtableStorageTableName;
 
+import java.io.File;
+import java.io.IOException;
 import java.text.ParseException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.lens.cube.metadata.Storage.LatestInfo;
 import org.apache.lens.cube.metadata.Storage.LatestPartColumnInfo;
 import org.apache.lens.cube.metadata.timeline.PartitionTimeline;
 import org.apache.lens.cube.metadata.timeline.PartitionTimelineFactory;
+import org.apache.lens.cube.metadata.timeline.PartitionTimelineSnapshot;
 import org.apache.lens.server.api.error.LensException;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.IMetaStoreClient;
 import org.apache.hadoop.hive.metastore.TableType;
 import org.apache.hadoop.hive.metastore.api.FieldSchema;
 import org.apache.hadoop.hive.metastore.api.InvalidOperationException;
+import org.apache.hadoop.hive.metastore.api.hive_metastoreConstants;
 import org.apache.hadoop.hive.ql.io.HiveFileFormatUtils;
 import org.apache.hadoop.hive.ql.metadata.*;
 import org.apache.hadoop.hive.ql.session.SessionState;
@@ -54,15 +62,83 @@ import lombok.extern.slf4j.Slf4j;
 public class CubeMetastoreClient {
   private final HiveConf config;
   private final boolean enableCaching;
+  private final String database;
 
-  private CubeMetastoreClient(HiveConf conf) {
+  private CubeMetastoreClient(HiveConf conf, String database) {
     this.config = new HiveConf(conf);
     this.enableCaching = conf.getBoolean(MetastoreConstants.METASTORE_ENABLE_CACHING, true);
+    this.database = database;
+  }
+
+  /**
+   * Listener of progress of loading all tables through {@link #loadAllTables(TableLoadListener)}
+   */
+  public interface TableLoadListener {
+    /**
+     * Called once all table names are listed
+     *
+     * @param count number of tables in the database
+     */
+    void tablesListed(int count);
+
+    /**
+     * Called when a batch of tables is fetched from metastore. Can be called concurrently from fetch threads.
+     *
+     * @param count number of tables fetched in the batch
+     */
+    void tablesFetched(int count);
+  }
+
+  /**
+   * Listener of changes of tables and their partitions, made through clients of this jvm or by other servers and read
+   * from the metastore change log.
+   */
+  public interface TableChangeListener {
+    /**
+     * Called after a table or its partitions changed
+     *
+     * @param database database of the table
+     * @param table    table name in lower case, null if any table of the database could have changed
+     */
+    void tableChanged(String database, String table);
+  }
+
+  private static final List<TableChangeListener> TABLE_CHANGE_LISTENERS =
+    new CopyOnWriteArrayList<TableChangeListener>();
+
+  /**
+   * Add listener to be notified of table changes in all databases
+   *
+   * @param listener
+   */
+  public static void addTableChangeListener(TableChangeListener listener) {
+    TABLE_CHANGE_LISTENERS.add(listener);
+  }
+
+  /**
+   * Remove listener added through {@link #addTableChangeListener(TableChangeListener)}
+   *
+   * @param listener
+   */
+  public static void removeTableChangeListener(TableChangeListener listener) {
+    TABLE_CHANGE_LISTENERS.remove(listener);
+  }
+
+  private void notifyTableChanged(String tableName) {
+    for (TableChangeListener listener : TABLE_CHANGE_LISTENERS) {
+      try {
+        listener.tableChanged(database, tableName);
+      } catch (Exception e) {
+        log.warn("Table change listener {} failed for table {}", listener, tableName, e);
+      }
+    }
   }
 
   // map from table name to Table
   private final Map<String, Table> allHiveTables = Maps.newConcurrentMap();
   private volatile boolean allTablesPopulated = false;
+  // held while all tables are loaded, so that concurrent callers do not scan the database again
+  private final Object allTablesLoadLock = new Object();
   // map from dimension name to Dimension
   private final Map<String, Dimension> allDims = Maps.newConcurrentMap();
   private volatile boolean allDimensionsPopulated = false;
@@ -75,16 +151,45 @@ public class CubeMetastoreClient {
   // map from fact name to fact table
   private final Map<String, CubeFactTable> allFactTables = Maps.newConcurrentMap();
   private volatile boolean allFactTablesPopulated = false;
+  // map from cube name to map from fact name to fact table, maintained along with allFactTables
+  private final Map<String, Map<String, CubeFactTable>> factsByCube = Maps.newConcurrentMap();
+  // map from dimension name to map from dimtable name to CubeDimensionTable, maintained along with allDimTables
+  private final Map<String, Map<String, CubeDimensionTable>> dimTablesByDim = Maps.newConcurrentMap();
+  // map from storage name to names of fact and dimtable storage tables on it
+  private final Map<String, Set<String>> storageTablesByStorage = Maps.newConcurrentMap();
   // map from storage name to storage
   private final Map<String, Storage> allStorages = Maps.newConcurrentMap();
   private volatile boolean allStoragesPopulated = false;
   // Partition cache. Inner class since it logically belongs here
   PartitionTimelineCache partitionTimelineCache = new PartitionTimelineCache();
-  // dbname to client mapping
+  // Local snapshot of partition timelines, opened on first load of timelines
+  private PartitionTimelineSnapshot timelineSnapshot;
+  private boolean timelineSnapshotOpened = false;
+  private final Object timelineSnapshotLock = new Object();
+  // dbname to client mapping, keyed by lower case name as databases are case insensitive
   private static final Map<String, CubeMetastoreClient> CLIENT_MAPPING = Maps.newConcurrentMap();
   private SchemaGraph schemaGraph;
+  // Cubes and dimensions changed since schema graph was last refreshed
+  private final Set<String> schemaGraphChangedTables = new HashSet<String>();
   // Set of all storage table names for which latest partitions exist
   private final Set<String> latestLookupCache = Sets.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  // Incremented on every create/alter/drop of tables and partitions done through this client or by other servers
+  private final AtomicLong changeCounter = new AtomicLong();
+  // Log of changes shared with other servers, null if not configured
+  private static volatile MetastoreChangeLog changeLog;
+  private static ScheduledExecutorService changeLogSyncer;
+
+  /**
+   * Get the number of metadata changes done through this client. The value is incremented on every create, alter or
+   * drop of a table and on every partition add, update or drop, including those of other servers read from the
+   * metastore change log, so anything derived from the metastore state can be cached against it and considered stale
+   * once the value moves.
+   *
+   * @return current value of change counter
+   */
+  public long getChangeCounter() {
+    return changeCounter.get();
+  }
 
   /** extract storage name from fact and storage table name. String operation */
   private String extractStorageName(CubeFactTable fact, String storageTableName) throws LensException {
@@ -132,7 +237,10 @@ public class CubeMetastoreClient {
 
   /** clear hive table cache */
   public void clearHiveTableCache() {
+    allTablesPopulated = false;
     allHiveTables.clear();
+    changeCounter.incrementAndGet();
+    notifyTableChanged(null);
   }
 
   public List<PartitionTimeline> getTimelines(String factName, String storage, String updatePeriodStr,
@@ -184,6 +292,7 @@ public class CubeMetastoreClient {
     partitionsToAlter.addAll(partitions);
     partitionsToAlter.addAll(getAllLatestPartsEquivalentTo(factOrDimtableName, storageName, partitions));
     getStorage(storageName).updatePartitions(getClient(), factOrDimtableName, partitionsToAlter);
+    tableChanged(MetastoreUtil.getStorageTableName(factOrDimtableName, Storage.getPrefix(storageName)));
   }
 
   private List<Partition> getAllLatestPartsEquivalentTo(String factOrDimtableName, String storageName,
@@ -267,11 +376,28 @@ public class CubeMetastoreClient {
       return true;
     }
 
+    // Locks held while loading timelines of a storage table, so that loads of different tables do not block each other
+    private final ConcurrentMap<String, Object> loadLocks = new ConcurrentHashMap<String, Object>();
+    // lastDdlTime of storage tables as of their loaded timelines, kept up to date with the timelines written back
+    private final Map<String, String> loadedDdlTimes = new ConcurrentHashMap<String, String>();
+
+    @Override
+    public synchronized TreeMap<UpdatePeriod, CaseInsensitiveStringHashMap<PartitionTimeline>> get(Object key) {
+      return super.get(key);
+    }
+
+    @Override
+    public synchronized TreeMap<UpdatePeriod, CaseInsensitiveStringHashMap<PartitionTimeline>> put(String key,
+      TreeMap<UpdatePeriod, CaseInsensitiveStringHashMap<PartitionTimeline>> value) {
+      return super.put(key, value);
+    }
+
     /**
      * get all timelines for all update periods and partition columns for the given fact-storage pair. If already loaded
-     * in memory, it'll return that. If not, it'll first try to load it from table properties. If not found in table
-     * properties, it'll get all partitions, compute timelines in memory, write back all loads timelines to table
-     * properties for further usage and return them.
+     * in memory, it'll return that. If not, it'll first try to load it from the local timeline snapshot, then from
+     * table properties. If not found in either, it'll get all partitions, compute timelines in memory, write back all
+     * loads timelines to table properties for further usage and return them. Timelines of different storage tables
+     * are loaded concurrently.
      *
      * @param fact
      * @param storage
@@ -283,44 +409,140 @@ public class CubeMetastoreClient {
       throws HiveException, LensException {
       // SUSPEND CHECKSTYLE CHECK DoubleCheckedLockingCheck
       String storageTableName = MetastoreUtil.getStorageTableName(fact, Storage.getPrefix(storage));
-      if (get(storageTableName) == null) {
-        synchronized (this) {
-          if (get(storageTableName) == null) {
-            Table storageTable = getTable(storageTableName);
-            if ("true".equalsIgnoreCase(storageTable.getParameters().get(
-              MetastoreUtil.getPartitionTimelineCachePresenceKey()))) {
-              try {
-                loadTimelinesFromTableProperties(fact, storage);
-              } catch (Exception e) {
-                // Ideally this should never come. But since we have another source,
-                // let's piggyback on that for loading timeline
-                log.error("Error while loading timelines from table properties.", e);
-                loadTimelinesFromAllPartitions(fact, storage);
-              }
-            } else {
-              loadTimelinesFromAllPartitions(fact, storage);
-            }
+      TreeMap<UpdatePeriod, CaseInsensitiveStringHashMap<PartitionTimeline>> timelines = get(storageTableName);
+      if (timelines == null) {
+        String lockKey = storageTableName.toLowerCase();
+        Object lock = loadLocks.get(lockKey);
+        if (lock == null) {
+          loadLocks.putIfAbsent(lockKey, new Object());
+          lock = loadLocks.get(lockKey);
+        }
+        synchronized (lock) {
+          timelines = get(storageTableName);
+          if (timelines == null) {
+            timelines = loadTimelines(fact, storage, storageTableName);
           }
         }
-        log.info("timeline for {} is: {}", storageTableName, get(storageTableName));
+        log.info("timeline for {} is: {}", storageTableName, timelines);
       }
-      // return the final value from memory
-      return get(storageTableName);
+      return timelines;
       // RESUME CHECKSTYLE CHECK DoubleCheckedLockingCheck
     }
 
-    private void loadTimelinesFromAllPartitions(String fact, String storage) throws HiveException, LensException {
+    private TreeMap<UpdatePeriod, CaseInsensitiveStringHashMap<PartitionTimeline>> loadTimelines(String fact,
+      String storage, String storageTableName) throws HiveException, LensException {
+      // Timelines are built aside and published once loaded, so that nobody sees partially loaded timelines
+      TreeMap<UpdatePeriod, CaseInsensitiveStringHashMap<PartitionTimeline>> timelines =
+        new TreeMap<UpdatePeriod, CaseInsensitiveStringHashMap<PartitionTimeline>>();
+      Table storageTable = getTable(storageTableName);
+      String ddlTime = storageTable.getParameters().get(hive_metastoreConstants.DDL_TIME);
+      if (loadTimelinesFromSnapshot(fact, storage, storageTable, ddlTime, timelines)) {
+        publish(storageTableName, ddlTime, timelines);
+        return timelines;
+      }
+      timelines.clear();
+      if ("true".equalsIgnoreCase(storageTable.getParameters().get(
+        MetastoreUtil.getPartitionTimelineCachePresenceKey()))) {
+        try {
+          loadTimelinesFromTableProperties(fact, storage, storageTable, timelines);
+          publish(storageTableName, ddlTime, timelines);
+          return timelines;
+        } catch (Exception e) {
+          // Ideally this should never come. But since we have another source,
+          // let's piggyback on that for loading timeline
+          log.error("Error while loading timelines from table properties.", e);
+          timelines.clear();
+        }
+      }
+      loadTimelinesFromAllPartitions(fact, storage, storageTable, timelines);
+      publish(storageTableName, ddlTime, timelines);
+      alterTablePartitionCache(storageTableName);
+      return timelines;
+    }
+
+    private void publish(String storageTableName, String ddlTime,
+      TreeMap<UpdatePeriod, CaseInsensitiveStringHashMap<PartitionTimeline>> timelines) {
+      if (ddlTime != null) {
+        loadedDdlTimes.put(storageTableName.toLowerCase(), ddlTime);
+      }
+      put(storageTableName, timelines);
+    }
+
+    /**
+     * Drop timelines of the storage table from memory, to be loaded again on next use
+     *
+     * @param storageTable
+     */
+    public synchronized void invalidate(String storageTable) {
+      remove(storageTable.toLowerCase());
+      loadedDdlTimes.remove(storageTable.toLowerCase());
+    }
+
+    /**
+     * Record lastDdlTime of the storage table after its timelines are written back to table properties
+     *
+     * @param storageTable
+     */
+    void timelinesStored(Table storageTable) {
+      String ddlTime = storageTable.getParameters().get(hive_metastoreConstants.DDL_TIME);
+      if (ddlTime != null) {
+        loadedDdlTimes.put(storageTable.getTableName().toLowerCase(), ddlTime);
+      } else {
+        loadedDdlTimes.remove(storageTable.getTableName().toLowerCase());
+      }
+    }
+
+    /**
+     * Get lastDdlTime of the storage table as of its timelines in memory.
+     *
+     * @param storageTableName
+     * @return lastDdlTime, null if not known
+     */
+    String getLoadedDdlTime(String storageTableName) {
+      return loadedDdlTimes.get(storageTableName.toLowerCase());
+    }
+
+    private boolean loadTimelinesFromSnapshot(String fact, String storage, Table storageTable, String ddlTime,
+      TreeMap<UpdatePeriod, CaseInsensitiveStringHashMap<PartitionTimeline>> timelines)
+      throws HiveException, LensException {
+      PartitionTimelineSnapshot snapshot = getTimelineSnapshot();
+      if (snapshot == null || ddlTime == null) {
+        return false;
+      }
+      String storageTableName = storageTable.getTableName();
+      PartitionTimelineSnapshot.Entry entry = snapshot.get(storageTableName, ddlTime);
+      if (entry == null) {
+        return false;
+      }
+      Set<UpdatePeriod> updatePeriods = getCubeFact(fact).getUpdatePeriods().get(storage);
+      if (updatePeriods == null) {
+        return false;
+      }
+      for (UpdatePeriod updatePeriod : updatePeriods) {
+        for (String partCol : getTimePartColNamesOfTable(storageTable)) {
+          if (!entry.restore(ensureEntry(timelines, storageTableName, updatePeriod, partCol))) {
+            log.info("timelines of {} in snapshot are not usable", storageTableName);
+            return false;
+          }
+        }
+      }
+      log.info("loaded from timeline snapshot: {}", storageTableName);
+      return true;
+    }
+
+    private void loadTimelinesFromAllPartitions(String fact, String storage, Table storageTable,
+      TreeMap<UpdatePeriod, CaseInsensitiveStringHashMap<PartitionTimeline>> timelines)
+      throws HiveException, LensException {
       // Not found in table properties either, compute from all partitions of the fact-storage table.
       // First make sure all combinations of update period and partition column have an entry even
       // if no partitions exist
-      String storageTableName = MetastoreUtil.getStorageTableName(fact, Storage.getPrefix(storage));
+      String storageTableName = storageTable.getTableName();
       log.info("loading from all partitions: {}", storageTableName);
-      Table storageTable = getTable(storageTableName);
       if (getCubeFact(fact).getUpdatePeriods() != null && getCubeFact(fact).getUpdatePeriods().get(
         storage) != null) {
         for (UpdatePeriod updatePeriod : getCubeFact(fact).getUpdatePeriods().get(storage)) {
           for (String partCol : getTimePartColNamesOfTable(storageTable)) {
-            ensureEntry(storageTableName, updatePeriod, partCol);
+            ensureEntry(timelines, storageTableName, updatePeriod, partCol);
           }
         }
       }
@@ -338,22 +560,24 @@ public class CubeMetastoreClient {
         }
         for (int i = 0; i < partCols.size(); i++) {
           if (timeParts.contains(partCols.get(i).getName())) {
-            addForBatchAddition(storageTableName, period, partCols.get(i).getName(), values.get(i));
+            addForBatchAddition(timelines, storageTableName, period, partCols.get(i).getName(), values.get(i));
           }
         }
       }
       // commit all batch addition for the storage table,
       // which will in-turn commit all batch additions in all it's timelines.
-      commitAllBatchAdditions(storageTableName);
+      commitBatchAdditions(timelines);
     }
 
-    private void loadTimelinesFromTableProperties(String fact, String storage) throws HiveException, LensException {
+    private void loadTimelinesFromTableProperties(String fact, String storage, Table storageTable,
+      TreeMap<UpdatePeriod, CaseInsensitiveStringHashMap<PartitionTimeline>> timelines)
+      throws HiveException, LensException {
       // found in table properties, load from there.
-      String storageTableName = MetastoreUtil.getStorageTableName(fact, Storage.getPrefix(storage));
+      String storageTableName = storageTable.getTableName();
       log.info("loading from table properties: {}", storageTableName);
       for (UpdatePeriod updatePeriod : getCubeFact(fact).getUpdatePeriods().get(storage)) {
-        for (String partCol : getTimePartColNamesOfTable(storageTableName)) {
-          ensureEntry(storageTableName, updatePeriod, partCol).init(getTable(storageTableName));
+        for (String partCol : getTimePartColNamesOfTable(storageTable)) {
+          ensureEntry(timelines, storageTableName, updatePeriod, partCol).init(storageTable);
         }
       }
     }
@@ -369,9 +593,14 @@ public class CubeMetastoreClient {
      */
     public void addForBatchAddition(String storageTable, UpdatePeriod updatePeriod, String partitionColumn,
       String partition) {
+      addForBatchAddition(ensureTimelines(storageTable), storageTable, updatePeriod, partitionColumn, partition);
+    }
+
+    private void addForBatchAddition(TreeMap<UpdatePeriod, CaseInsensitiveStringHashMap<PartitionTimeline>> timelines,
+      String storageTable, UpdatePeriod updatePeriod, String partitionColumn, String partition) {
       try {
-        ensureEntry(storageTable, updatePeriod, partitionColumn).addForBatchAddition(TimePartition.of(updatePeriod,
-          partition));
+        ensureEntry(timelines, storageTable, updatePeriod, partitionColumn).addForBatchAddition(
+          TimePartition.of(updatePeriod, partition));
       } catch (LensException e) {
         // to take care of the case where partition name is something like `latest`
         log.error("Couldn't parse partition: {} with update period: {}, skipping.", partition, updatePeriod, e);
@@ -389,17 +618,27 @@ public class CubeMetastoreClient {
      * @return timeline if already exists, or puts a new timeline and returns.
      */
     public PartitionTimeline ensureEntry(String storageTable, UpdatePeriod updatePeriod, String partitionColumn) {
+      return ensureEntry(ensureTimelines(storageTable), storageTable, updatePeriod, partitionColumn);
+    }
+
+    private synchronized TreeMap<UpdatePeriod, CaseInsensitiveStringHashMap<PartitionTimeline>> ensureTimelines(
+      String storageTable) {
       if (get(storageTable) == null) {
         put(storageTable, new TreeMap<UpdatePeriod, CaseInsensitiveStringHashMap<PartitionTimeline>>());
       }
-      if (get(storageTable).get(updatePeriod) == null) {
-        get(storageTable).put(updatePeriod, new CaseInsensitiveStringHashMap<PartitionTimeline>());
+      return get(storageTable);
+    }
+
+    private PartitionTimeline ensureEntry(TreeMap<UpdatePeriod, CaseInsensitiveStringHashMap<PartitionTimeline>>
+      timelines, String storageTable, UpdatePeriod updatePeriod, String partitionColumn) {
+      if (timelines.get(updatePeriod) == null) {
+        timelines.put(updatePeriod, new CaseInsensitiveStringHashMap<PartitionTimeline>());
       }
-      if (get(storageTable).get(updatePeriod).get(partitionColumn) == null) {
-        get(storageTable).get(updatePeriod).put(partitionColumn, PartitionTimelineFactory.get(
+      if (timelines.get(updatePeriod).get(partitionColumn) == null) {
+        timelines.get(updatePeriod).put(partitionColumn, PartitionTimelineFactory.get(
           CubeMetastoreClient.this, storageTable, updatePeriod, partitionColumn));
       }
-      return get(storageTable).get(updatePeriod).get(partitionColumn);
+      return timelines.get(updatePeriod).get(partitionColumn);
     }
 
     /**
@@ -411,16 +650,20 @@ public class CubeMetastoreClient {
      */
     public void commitAllBatchAdditions(String storageTable) throws HiveException, LensException {
       if (get(storageTable) != null) {
-        for (UpdatePeriod updatePeriod : get(storageTable).keySet()) {
-          for (String partCol : get(storageTable).get(updatePeriod).keySet()) {
-            PartitionTimeline timeline = get(storageTable).get(updatePeriod).get(partCol);
-            timeline.commitBatchAdditions();
-          }
-        }
+        commitBatchAdditions(get(storageTable));
         alterTablePartitionCache(storageTable);
       }
     }
 
+    private void commitBatchAdditions(TreeMap<UpdatePeriod, CaseInsensitiveStringHashMap<PartitionTimeline>> timelines)
+      throws LensException {
+      for (CaseInsensitiveStringHashMap<PartitionTimeline> timelinesOfPeriod : timelines.values()) {
+        for (PartitionTimeline timeline : timelinesOfPeriod.values()) {
+          timeline.commitBatchAdditions();
+        }
+      }
+    }
+
     /** check partition existence in the appropriate timeline if it exists */
     public boolean partitionTimeExists(String name, String storage, UpdatePeriod period, String partCol, Date partSpec)
       throws HiveException, LensException {
@@ -474,11 +717,186 @@ public class CubeMetastoreClient {
    * @throws HiveException
    */
   public static CubeMetastoreClient getInstance(HiveConf conf) throws HiveException {
+    if (changeLog == null && StringUtils.isNotBlank(conf.get(MetastoreConstants.METASTORE_CHANGE_LOG_DIR))) {
+      startChangeLog(conf);
+    }
     String currentdb = SessionState.get().getCurrentDatabase();
-    if (CLIENT_MAPPING.get(currentdb) == null) {
-      CLIENT_MAPPING.put(currentdb, new CubeMetastoreClient(conf));
+    String key = currentdb.toLowerCase();
+    if (CLIENT_MAPPING.get(key) == null) {
+      CLIENT_MAPPING.put(key, new CubeMetastoreClient(conf, currentdb));
+    }
+    return CLIENT_MAPPING.get(key);
+  }
+
+  /**
+   * Start the metastore change log if cube.metastore.change.log.dir is configured and it is not started yet. Changes
+   * made through clients of this jvm are published to the log, and changes published by other servers are applied to
+   * the clients of their databases every cube.metastore.change.log.sync.interval.millis.
+   *
+   * @param conf
+   * @throws HiveException
+   */
+  private static synchronized void startChangeLog(final HiveConf conf) throws HiveException {
+    String dir = conf.get(MetastoreConstants.METASTORE_CHANGE_LOG_DIR);
+    if (changeLog != null || StringUtils.isBlank(dir)) {
+      return;
+    }
+    try {
+      changeLog = new MetastoreChangeLog(conf, new Path(dir.trim()), MetastoreChangeLog.newServerId(),
+        conf.getLong(MetastoreConstants.METASTORE_CHANGE_LOG_RETENTION_MILLIS,
+          MetastoreConstants.DEFAULT_METASTORE_CHANGE_LOG_RETENTION_MILLIS));
+    } catch (IOException e) {
+      throw new HiveException("Could not open metastore change log in " + dir, e);
+    }
+    log.info("Started metastore change log in {} as server {}", dir, changeLog.getServerId());
+    long interval = conf.getLong(MetastoreConstants.METASTORE_CHANGE_LOG_SYNC_INTERVAL_MILLIS,
+      MetastoreConstants.DEFAULT_METASTORE_CHANGE_LOG_SYNC_INTERVAL_MILLIS);
+    changeLogSyncer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread th = new Thread(r, "MetastoreChangeLogSync");
+        th.setDaemon(true);
+        return th;
+      }
+    });
+    changeLogSyncer.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        syncChangeLog(conf);
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stop syncing the metastore change log and forget it, so that the next {@link #getInstance(HiveConf)} starts it
+   * again from its conf. Changes published since the last sync are not written.
+   */
+  static synchronized void stopChangeLog() {
+    if (changeLogSyncer != null) {
+      changeLogSyncer.shutdownNow();
+      changeLogSyncer = null;
+    }
+    changeLog = null;
+  }
+
+  /**
+   * Write changes made through clients of this jvm to the change log and apply changes of other servers.
+   *
+   * @param conf
+   */
+  static void syncChangeLog(HiveConf conf) {
+    MetastoreChangeLog current = changeLog;
+    if (current == null) {
+      // stopped
+      return;
+    }
+    List<MetastoreChangeLog.Change> changes;
+    try {
+      changes = current.sync();
+    } catch (IOException e) {
+      log.error("Could not sync metastore change log", e);
+      return;
+    }
+    for (MetastoreChangeLog.Change change : changes) {
+      // database names in the change log are lower case, as are the keys of clients
+      CubeMetastoreClient client = CLIENT_MAPPING.get(change.getDatabase());
+      if (client == null) {
+        // nothing cached for the database
+        continue;
+      }
+      SessionState previous = SessionState.get();
+      SessionState sessionState = new SessionState(conf);
+      sessionState.setCurrentDatabase(change.getDatabase());
+      SessionState.setCurrentSessionState(sessionState);
+      try {
+        client.refreshCache(change.getTable());
+      } catch (Exception e) {
+        log.error("Could not apply change of table {} in database {} to metastore cache", change.getTable(),
+          change.getDatabase(), e);
+      } finally {
+        if (previous != null) {
+          SessionState.setCurrentSessionState(previous);
+        } else {
+          SessionState.detachSession();
+        }
+      }
+    }
+    if (!changes.isEmpty()) {
+      log.info("Applied {} metastore changes of other servers", changes.size());
+    }
+  }
+
+  /** Count change of table and publish it to other servers */
+  private void tableChanged(String tableName) {
+    changeCounter.incrementAndGet();
+    MetastoreChangeLog changes = changeLog;
+    if (changes != null) {
+      changes.publish(database, tableName);
+    }
+    notifyTableChanged(tableName.trim().toLowerCase());
+  }
+
+  /**
+   * Drop everything cached for the table and fetch it again from the metastore, to catch up with changes made to it
+   * by other servers.
+   *
+   * @param tableName
+   * @throws HiveException
+   */
+  public void refreshCache(String tableName) throws HiveException {
+    String name = tableName.trim().toLowerCase();
+    allHiveTables.remove(name);
+    boolean schemaChanged = allCubes.remove(name) != null;
+    schemaChanged |= allDims.remove(name) != null;
+    allStorages.remove(name);
+    uncacheFactTable(name);
+    uncacheDimTable(name);
+    partitionTimelineCache.invalidate(name);
+    latestLookupCache.remove(name);
+    if (enableCaching) {
+      Table tbl = getClient().getTable(database, name, false);
+      if (tbl != null) {
+        allHiveTables.put(name, tbl);
+        if (isCube(tbl)) {
+          getCube(name);
+          schemaChanged = true;
+        } else if (isDimension(tbl)) {
+          getDimension(name);
+          schemaChanged = true;
+        } else if (isFactTable(tbl)) {
+          getCubeFact(name);
+        } else if (isDimensionTable(tbl)) {
+          getDimensionTable(name);
+        } else if (isStorage(tbl)) {
+          getStorage(name);
+        } else {
+          refreshLatestLookup(name);
+        }
+      }
+    }
+    if (schemaChanged) {
+      schemaGraphTableChanged(name);
+    }
+    changeCounter.incrementAndGet();
+    notifyTableChanged(name);
+  }
+
+  /** Add the storage table to latest lookup cache if it is a dimension table storage table having latest partitions */
+  private void refreshLatestLookup(String storageTableName) throws HiveException {
+    for (CubeDimensionTable dimTable : allDimTables.values()) {
+      if (dimTable.getStorages() == null) {
+        continue;
+      }
+      for (String storage : dimTable.getStorages()) {
+        if (getFactOrDimtableStorageTableName(dimTable.getName(), storage).equalsIgnoreCase(storageTableName)) {
+          if (dimTable.hasStorageSnapshots(storage) && dimLatestPartitionExists(storageTableName,
+            getDimension(dimTable.getDimName()).getTimedDimension())) {
+            latestLookupCache.add(storageTableName);
+          }
+          return;
+        }
+      }
     }
-    return CLIENT_MAPPING.get(currentdb);
   }
 
   private Hive getClient() throws HiveException {
@@ -510,6 +928,7 @@ public class CubeMetastoreClient {
         alterHiveTable(tbl.getTableName(), tbl);
       } else {
         getClient().createTable(tbl);
+        tableChanged(tbl.getTableName());
         // do get to update cache
         getTable(tbl.getTableName());
       }
@@ -525,6 +944,7 @@ public class CubeMetastoreClient {
       tbl.getTTable().getSd().setCols(table.getColumns());
       tbl.getTTable().getParameters().putAll(table.getProperties());
       getClient().createTable(tbl);
+      tableChanged(tbl.getTableName());
       // do get to update cache
       getTable(tbl.getTableName());
       return tbl;
@@ -549,6 +969,7 @@ public class CubeMetastoreClient {
     createCubeHiveTable((AbstractCubeTable) cube);
     // do a get to update cache
     getCube(cube.getName());
+    schemaGraphTableChanged(cube.getName());
   }
 
   /**
@@ -637,6 +1058,7 @@ public class CubeMetastoreClient {
     createCubeHiveTable(dim);
     // do a get to update cache
     getDimension(dim.getName());
+    schemaGraphTableChanged(dim.getName());
   }
 
   /**
@@ -825,6 +1247,7 @@ public class CubeMetastoreClient {
         }
       }
       latestLookupCache.add(storageTableName);
+      tableChanged(storageTableName);
       return partsAdded;
     } else {
       // first update in memory, then add to hive table's partitions. delete is reverse.
@@ -834,7 +1257,8 @@ public class CubeMetastoreClient {
       List<Partition> partsAdded =
         getStorage(storageName).addPartitions(getClient(), factOrDimTable, updatePeriod, storagePartitionDescs, null);
       // update hive table
-      alterTablePartitionCache(MetastoreUtil.getStorageTableName(factOrDimTable, Storage.getPrefix(storageName)));
+      alterTablePartitionCache(storageTableName);
+      tableChanged(storageTableName);
       return partsAdded;
     }
   }
@@ -886,6 +1310,9 @@ public class CubeMetastoreClient {
       }
       params.put(MetastoreUtil.getPartitionTimelineCachePresenceKey(), "true");
       alterHiveTable(storageTableName, table);
+      if (getTimelineSnapshotFile() != null) {
+        partitionTimelineCache.timelinesStored(getTable(storageTableName));
+      }
     }
   }
 
@@ -1098,6 +1525,7 @@ public class CubeMetastoreClient {
         this.alterTablePartitionCache(storageTableName);
       }
     }
+    tableChanged(storageTableName);
   }
 
   private Map<String, String> getPartitionSpec(UpdatePeriod updatePeriod, Map<String, Date> partitionTimestamps) {
@@ -1125,6 +1553,30 @@ public class CubeMetastoreClient {
       part.getPartSpec());
   }
 
+  /**
+   * Get sub ranges of [from, to) in which partitions of the fact exist in the storage table, for the update period and
+   * partition column. Answered from partition timelines, so the whole range is resolved in one lookup.
+   *
+   * @param fact             fact table
+   * @param storageTableName storage table of the fact
+   * @param updatePeriod     update period of the partitions
+   * @param partCol          partition column
+   * @param from             begin of range, inclusive
+   * @param to               end of range, exclusive
+   * @return covered sub ranges in increasing order, empty if there is no timeline for the combination
+   * @throws HiveException
+   * @throws LensException
+   */
+  public List<TimePartitionRange> getFactPartitionCoverage(CubeFactTable fact, String storageTableName,
+    UpdatePeriod updatePeriod, String partCol, Date from, Date to) throws HiveException, LensException {
+    String storage = extractStorageName(fact, storageTableName);
+    PartitionTimeline timeline = partitionTimelineCache.get(fact.getName(), storage, updatePeriod, partCol);
+    if (timeline == null || !from.before(to)) {
+      return new ArrayList<TimePartitionRange>();
+    }
+    return timeline.getCoveredRanges(TimePartitionRange.between(from, to, updatePeriod));
+  }
+
   public boolean factPartitionExists(String factName, String storageName, UpdatePeriod updatePeriod,
     Map<String, Date> partitionTimestamp, Map<String, String> partSpec) throws HiveException {
     String storageTableName = getFactOrDimtableStorageTableName(factName, storageName);
@@ -1302,6 +1754,7 @@ public class CubeMetastoreClient {
   public void dropHiveTable(String table) throws HiveException {
     getClient().dropTable(table);
     allHiveTables.remove(table.trim().toLowerCase());
+    tableChanged(table);
   }
 
   /**
@@ -1464,7 +1917,7 @@ public class CubeMetastoreClient {
           if (isDimensionTable(tbl)) {
             dimTable = getDimensionTable(tbl);
             if (enableCaching && dimTable != null) {
-              allDimTables.put(tableName, dimTable);
+              cacheDimTable(tableName, dimTable);
               // update latest partition cache for all storages
               if (dimTable.getStorages() != null && !dimTable.getStorages().isEmpty()) {
                 for (String storageName : dimTable.getStorages()) {
@@ -1601,7 +2054,7 @@ public class CubeMetastoreClient {
         if (!allFactTables.containsKey(tableName)) {
           fact = getFactTable(tableName);
           if (enableCaching && fact != null) {
-            allFactTables.put(tableName, fact);
+            cacheFactTable(tableName, fact);
           }
         } else {
           fact = allFactTables.get(tableName);
@@ -1631,6 +2084,9 @@ public class CubeMetastoreClient {
    * @throws HiveException
    */
   public Collection<CubeDimensionTable> getAllDimensionTables() throws HiveException {
+    if (!allDimTablesPopulated && enableCaching) {
+      loadAllTables(null);
+    }
     if (!allDimTablesPopulated) {
       List<CubeDimensionTable> dimTables = new ArrayList<CubeDimensionTable>();
       try {
@@ -1657,6 +2113,9 @@ public class CubeMetastoreClient {
    * @throws HiveException
    */
   public Collection<Storage> getAllStorages() throws HiveException {
+    if (!allStoragesPopulated && enableCaching) {
+      loadAllTables(null);
+    }
     if (!allStoragesPopulated) {
       List<Storage> storages = new ArrayList<Storage>();
       try {
@@ -1683,6 +2142,9 @@ public class CubeMetastoreClient {
    * @throws HiveException
    */
   public Collection<CubeInterface> getAllCubes() throws HiveException {
+    if (!allCubesPopulated && enableCaching) {
+      loadAllTables(null);
+    }
     if (!allCubesPopulated) {
       List<CubeInterface> cubes = new ArrayList<CubeInterface>();
       try {
@@ -1709,6 +2171,9 @@ public class CubeMetastoreClient {
    * @throws HiveException
    */
   public Collection<Dimension> getAllDimensions() throws HiveException {
+    if (!allDimensionsPopulated && enableCaching) {
+      loadAllTables(null);
+    }
     if (!allDimensionsPopulated) {
       List<Dimension> dims = new ArrayList<Dimension>();
       try {
@@ -1735,6 +2200,9 @@ public class CubeMetastoreClient {
    * @throws HiveException
    */
   public Collection<CubeFactTable> getAllFacts() throws HiveException {
+    if (!allFactTablesPopulated && enableCaching) {
+      loadAllTables(null);
+    }
     if (!allFactTablesPopulated) {
       List<CubeFactTable> facts = new ArrayList<CubeFactTable>();
       try {
@@ -1755,19 +2223,287 @@ public class CubeMetastoreClient {
   }
 
   private Collection<String> getAllHiveTableNames() throws HiveException {
+    return getAllHiveTableNames(null);
+  }
+
+  private Collection<String> getAllHiveTableNames(TableLoadListener listener) throws HiveException {
     if (!allTablesPopulated) {
-      List<String> allTables = getClient().getAllTables();
+      List<String> allTables = getClient().getAllTables(database);
+      if (listener != null) {
+        listener.tablesListed(allTables.size());
+      }
+      if (!enableCaching) {
+        return allTables;
+      }
+      List<String> toFetch = new ArrayList<String>();
       for (String tblName : allTables) {
-        // getTable call here would add the table to allHiveTables
-        getTable(tblName);
+        if (!allHiveTables.containsKey(tblName.trim().toLowerCase())) {
+          toFetch.add(tblName);
+        }
       }
-      allTablesPopulated = enableCaching;
+      fetchTables(toFetch, listener);
+      allTablesPopulated = true;
       return allTables;
     } else {
       return allHiveTables.keySet();
     }
   }
 
+  /**
+   * Fetch tables from metastore in batches of table objects, on a bounded pool of threads each having its own
+   * metastore connection, and add them to table cache.
+   */
+  private void fetchTables(List<String> tableNames, final TableLoadListener listener) throws HiveException {
+    if (tableNames.isEmpty()) {
+      return;
+    }
+    int batchSize = Math.max(1, config.getInt(MetastoreConstants.METASTORE_BULK_FETCH_BATCH_SIZE,
+      MetastoreConstants.DEFAULT_METASTORE_BULK_FETCH_BATCH_SIZE));
+    final Queue<List<String>> batches = new ConcurrentLinkedQueue<List<String>>(
+      Lists.partition(tableNames, batchSize));
+    int numThreads = Math.min(batches.size(), Math.max(1, config.getInt(
+      MetastoreConstants.METASTORE_BULK_FETCH_THREADS, MetastoreConstants.DEFAULT_METASTORE_BULK_FETCH_THREADS)));
+    log.info("Fetching {} tables of database {} in {} batches with {} threads", tableNames.size(), database,
+      batches.size(), numThreads);
+    final AtomicInteger thId = new AtomicInteger();
+    ExecutorService fetchPool = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread th = new Thread(r, "MetastoreTableFetcher-" + database + "-" + thId.incrementAndGet());
+        th.setDaemon(true);
+        return th;
+      }
+    });
+    try {
+      List<Future<Void>> fetchers = new ArrayList<Future<Void>>();
+      for (int i = 0; i < numThreads; i++) {
+        fetchers.add(fetchPool.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            try {
+              IMetaStoreClient msc = Hive.get(config).getMSC();
+              List<String> batch;
+              while ((batch = batches.poll()) != null) {
+                List<org.apache.hadoop.hive.metastore.api.Table> tTables = msc.getTableObjectsByName(database, batch);
+                for (org.apache.hadoop.hive.metastore.api.Table tTable : tTables) {
+                  allHiveTables.put(tTable.getTableName().trim().toLowerCase(), new Table(tTable));
+                }
+                if (listener != null) {
+                  listener.tablesFetched(tTables.size());
+                }
+              }
+              return null;
+            } finally {
+              Hive.closeCurrent();
+            }
+          }
+        }));
+      }
+      for (Future<Void> fetcher : fetchers) {
+        fetcher.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new HiveException("Interrupted while fetching tables of database " + database, e);
+    } catch (ExecutionException e) {
+      throw new HiveException("Could not fetch tables of database " + database, e.getCause());
+    } finally {
+      fetchPool.shutdownNow();
+    }
+  }
+
+  /**
+   * Load all tables of the database in bulk and classify them into cubes, dimensions, facts, dimension tables and
+   * storages in a single pass. Once loaded, listing any of them is served from cache. Tables already in cache are
+   * not fetched again. Does nothing more than listing table names if caching is disabled.
+   *
+   * @param listener listener of load progress, can be null
+   * @throws HiveException
+   */
+  public void loadAllTables(TableLoadListener listener) throws HiveException {
+    synchronized (allTablesLoadLock) {
+      if (allTablesPopulated && allCubesPopulated && allDimensionsPopulated && allFactTablesPopulated
+        && allDimTablesPopulated && allStoragesPopulated) {
+        return;
+      }
+      Collection<String> tableNames = getAllHiveTableNames(listener);
+      if (!enableCaching) {
+        return;
+      }
+      try {
+        for (String tableName : tableNames) {
+          Table tbl = allHiveTables.get(tableName.trim().toLowerCase());
+          if (tbl == null) {
+            continue;
+          }
+          if (isCube(tbl)) {
+            getCube(tableName);
+          } else if (isDimension(tbl)) {
+            getDimension(tableName);
+          } else if (isFactTable(tbl)) {
+            getCubeFact(tableName);
+          } else if (isDimensionTable(tbl)) {
+            getDimensionTable(tableName);
+          } else if (isStorage(tbl)) {
+            getStorage(tableName);
+          }
+        }
+      } catch (HiveException e) {
+        throw new HiveException("Could not load all tables of database " + database, e);
+      }
+      allCubesPopulated = true;
+      allDimensionsPopulated = true;
+      allFactTablesPopulated = true;
+      allDimTablesPopulated = true;
+      allStoragesPopulated = true;
+    }
+  }
+
+  /**
+   * Load partition timelines of all fact storage tables of the database, on cube.metastore.bulk.fetch.threads
+   * threads. Storage tables whose timelines can not be loaded are logged and skipped, their timelines get loaded on
+   * first use as usual.
+   *
+   * @return number of storage tables whose timelines are loaded
+   * @throws HiveException
+   */
+  public int loadAllPartitionTimelines() throws HiveException {
+    List<String[]> factStorages = new ArrayList<String[]>();
+    for (CubeFactTable fact : getAllFacts()) {
+      for (String storage : fact.getStorages()) {
+        factStorages.add(new String[]{fact.getName(), storage});
+      }
+    }
+    if (factStorages.isEmpty()) {
+      return 0;
+    }
+    final Queue<String[]> pending = new ConcurrentLinkedQueue<String[]>(factStorages);
+    int numThreads = Math.min(factStorages.size(), Math.max(1, config.getInt(
+      MetastoreConstants.METASTORE_BULK_FETCH_THREADS, MetastoreConstants.DEFAULT_METASTORE_BULK_FETCH_THREADS)));
+    log.info("Loading partition timelines of {} storage tables of database {} with {} threads", factStorages.size(),
+      database, numThreads);
+    final AtomicInteger thId = new AtomicInteger();
+    final AtomicInteger loaded = new AtomicInteger();
+    ExecutorService loadPool = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread th = new Thread(r, "PartitionTimelineLoader-" + database + "-" + thId.incrementAndGet());
+        th.setDaemon(true);
+        return th;
+      }
+    });
+    try {
+      List<Future<Void>> loaders = new ArrayList<Future<Void>>();
+      for (int i = 0; i < numThreads; i++) {
+        loaders.add(loadPool.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            try {
+              String[] factStorage;
+              while ((factStorage = pending.poll()) != null) {
+                try {
+                  partitionTimelineCache.get(factStorage[0], factStorage[1]);
+                  loaded.incrementAndGet();
+                } catch (HiveException | LensException e) {
+                  log.error("Could not load partition timelines of fact {} on storage {}", factStorage[0],
+                    factStorage[1], e);
+                }
+              }
+              return null;
+            } finally {
+              Hive.closeCurrent();
+            }
+          }
+        }));
+      }
+      for (Future<Void> loader : loaders) {
+        loader.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new HiveException("Interrupted while loading partition timelines of database " + database, e);
+    } catch (ExecutionException e) {
+      throw new HiveException("Could not load partition timelines of database " + database, e.getCause());
+    } finally {
+      loadPool.shutdownNow();
+    }
+    return loaded.get();
+  }
+
+  private File getTimelineSnapshotFile() {
+    String dir = config.get(MetastoreConstants.METASTORE_PARTITION_TIMELINE_SNAPSHOT_DIR);
+    return StringUtils.isBlank(dir) ? null : new File(dir.trim(), database + ".timelines");
+  }
+
+  private PartitionTimelineSnapshot getTimelineSnapshot() {
+    synchronized (timelineSnapshotLock) {
+      if (!timelineSnapshotOpened) {
+        timelineSnapshotOpened = true;
+        File file = getTimelineSnapshotFile();
+        if (file != null) {
+          try {
+            timelineSnapshot = PartitionTimelineSnapshot.open(file);
+          } catch (IOException e) {
+            log.warn("Could not open partition timeline snapshot {}, ignoring it", file, e);
+          }
+        }
+      }
+      return timelineSnapshot;
+    }
+  }
+
+  /**
+   * Save partition timelines of all storage tables loaded in memory to the local snapshot in
+   * cube.metastore.partition.timeline.snapshot.dir, from where they are loaded by the next client of the database
+   * instead of table properties or partitions. Storage tables of the existing snapshot which are not loaded in memory
+   * are carried over. Timelines written back to table properties in the last second are left out, since lastDdlTime is
+   * in seconds and could not tell them apart from a later change in the same second.
+   *
+   * @return number of storage tables in the saved snapshot, -1 if no snapshot dir is configured
+   * @throws IOException
+   */
+  public int saveTimelineSnapshot() throws IOException {
+    File file = getTimelineSnapshotFile();
+    if (file == null) {
+      return -1;
+    }
+    long nowSecs = System.currentTimeMillis() / 1000;
+    Map<String, PartitionTimelineSnapshot.Entry> entries = new TreeMap<String, PartitionTimelineSnapshot.Entry>();
+    synchronized (timelineSnapshotLock) {
+      PartitionTimelineSnapshot existing = getTimelineSnapshot();
+      if (existing != null) {
+        for (String storageTable : existing.getStorageTables()) {
+          entries.put(storageTable, existing.get(storageTable, null));
+        }
+      }
+      List<String> loadedTables;
+      synchronized (partitionTimelineCache) {
+        loadedTables = new ArrayList<String>(partitionTimelineCache.keySet());
+      }
+      for (String storageTable : loadedTables) {
+        entries.remove(storageTable);
+        String ddlTime = partitionTimelineCache.getLoadedDdlTime(storageTable);
+        TreeMap<UpdatePeriod, CaseInsensitiveStringHashMap<PartitionTimeline>> timelines =
+          partitionTimelineCache.get(storageTable);
+        if (ddlTime == null || timelines == null || !StringUtils.isNumeric(ddlTime)
+          || Long.parseLong(ddlTime) >= nowSecs - 1) {
+          continue;
+        }
+        PartitionTimelineSnapshot.Entry entry = new PartitionTimelineSnapshot.Entry(ddlTime);
+        for (CaseInsensitiveStringHashMap<PartitionTimeline> timelinesOfPeriod : timelines.values()) {
+          for (PartitionTimeline timeline : timelinesOfPeriod.values()) {
+            entry.add(timeline);
+          }
+        }
+        entries.put(storageTable, entry);
+      }
+      PartitionTimelineSnapshot.write(file, entries);
+      timelineSnapshot = PartitionTimelineSnapshot.open(file);
+      timelineSnapshotOpened = true;
+    }
+    return entries.size();
+  }
+
   /**
    * Get all fact tables of the cube.
    *
@@ -1785,9 +2521,19 @@ public class CubeMetastoreClient {
     }
     List<CubeFactTable> cubeFacts = new ArrayList<CubeFactTable>();
     try {
-      for (CubeFactTable fact : getAllFacts()) {
-        if (cubeName == null || fact.getCubeName().equalsIgnoreCase(cubeName)) {
-          cubeFacts.add(fact);
+      Collection<CubeFactTable> allFacts = getAllFacts();
+      if (cubeName == null) {
+        cubeFacts.addAll(allFacts);
+      } else if (allFactTablesPopulated) {
+        Map<String, CubeFactTable> facts = factsByCube.get(cubeName.trim().toLowerCase());
+        if (facts != null) {
+          cubeFacts.addAll(facts.values());
+        }
+      } else {
+        for (CubeFactTable fact : allFacts) {
+          if (fact.getCubeName().equalsIgnoreCase(cubeName)) {
+            cubeFacts.add(fact);
+          }
         }
       }
     } catch (HiveException e) {
@@ -1849,9 +2595,19 @@ public class CubeMetastoreClient {
   public List<CubeDimensionTable> getAllDimensionTables(Dimension dim) throws HiveException {
     List<CubeDimensionTable> dimTables = new ArrayList<CubeDimensionTable>();
     try {
-      for (CubeDimensionTable dimTbl : getAllDimensionTables()) {
-        if (dim == null || dimTbl.getDimName().equalsIgnoreCase(dim.getName().toLowerCase())) {
-          dimTables.add(dimTbl);
+      Collection<CubeDimensionTable> allDimensionTables = getAllDimensionTables();
+      if (dim == null) {
+        dimTables.addAll(allDimensionTables);
+      } else if (allDimTablesPopulated) {
+        Map<String, CubeDimensionTable> dimTbls = dimTablesByDim.get(dim.getName().trim().toLowerCase());
+        if (dimTbls != null) {
+          dimTables.addAll(dimTbls.values());
+        }
+      } else {
+        for (CubeDimensionTable dimTbl : allDimensionTables) {
+          if (dimTbl.getDimName().equalsIgnoreCase(dim.getName())) {
+            dimTables.add(dimTbl);
+          }
         }
       }
     } catch (HiveException e) {
@@ -1860,6 +2616,46 @@ public class CubeMetastoreClient {
     return dimTables;
   }
 
+  /**
+   * Get names of storage tables of all facts and dimension tables on the storage.
+   *
+   * @param storageName storage name
+   * @return Set of storage table names
+   * @throws HiveException
+   */
+  public Set<String> getAllStorageTableNames(String storageName) throws HiveException {
+    storageName = storageName.trim().toLowerCase();
+    Set<String> storageTableNames = new HashSet<String>();
+    try {
+      Collection<CubeFactTable> allFacts = getAllFacts();
+      Collection<CubeDimensionTable> allDimensionTables = getAllDimensionTables();
+      if (allFactTablesPopulated && allDimTablesPopulated) {
+        Set<String> storageTables = storageTablesByStorage.get(storageName);
+        if (storageTables != null) {
+          storageTableNames.addAll(storageTables);
+        }
+        return storageTableNames;
+      }
+      for (CubeFactTable fact : allFacts) {
+        for (String storage : fact.getStorages()) {
+          if (storage.equalsIgnoreCase(storageName)) {
+            storageTableNames.add(getFactOrDimtableStorageTableName(fact.getName(), storage));
+          }
+        }
+      }
+      for (CubeDimensionTable dimTable : allDimensionTables) {
+        for (String storage : dimTable.getStorages()) {
+          if (storage.equalsIgnoreCase(storageName)) {
+            storageTableNames.add(getFactOrDimtableStorageTableName(dimTable.getName(), storage));
+          }
+        }
+      }
+    } catch (HiveException e) {
+      throw new HiveException("Could not get all storage tables of " + storageName, e);
+    }
+    return storageTableNames;
+  }
+
   public List<String> getPartColNames(String tableName) throws HiveException {
     List<String> partColNames = new ArrayList<String>();
     Table tbl = getTable(tableName);
@@ -1882,10 +2678,21 @@ public class CubeMetastoreClient {
   public synchronized SchemaGraph getSchemaGraph() throws HiveException {
     if (schemaGraph == null) {
       schemaGraph = new SchemaGraph(this);
+      schemaGraphChangedTables.clear();
+    } else if (!schemaGraphChangedTables.isEmpty()) {
+      schemaGraph.refresh(schemaGraphChangedTables);
+      schemaGraphChangedTables.clear();
     }
     return schemaGraph;
   }
 
+  /** Mark the cube or dimension as changed, so that schema graph refreshes it on next access */
+  private synchronized void schemaGraphTableChanged(String tableName) {
+    if (schemaGraph != null) {
+      schemaGraphChangedTables.add(tableName.trim().toLowerCase());
+    }
+  }
+
   /**
    * Returns true if columns changed
    *
@@ -1906,6 +2713,7 @@ public class CubeMetastoreClient {
     } catch (InvalidOperationException e) {
       throw new HiveException(e);
     }
+    tableChanged(table);
     return columnsChanged;
   }
 
@@ -1919,6 +2727,7 @@ public class CubeMetastoreClient {
     } catch (InvalidOperationException e) {
       throw new HiveException(e);
     }
+    tableChanged(table);
     if (enableCaching) {
       // refresh the table in cache
       refreshTable(table);
@@ -1944,6 +2753,7 @@ public class CubeMetastoreClient {
       if (enableCaching) {
         allCubes.put(cubeName.trim().toLowerCase(), getCube(refreshTable(cubeName)));
       }
+      schemaGraphTableChanged(cubeName);
     } else {
       throw new HiveException(cubeName + " is not a cube");
     }
@@ -1963,6 +2773,7 @@ public class CubeMetastoreClient {
       if (enableCaching) {
         allDims.put(dimName.trim().toLowerCase(), getDimension(refreshTable(dimName)));
       }
+      schemaGraphTableChanged(dimName);
     } else {
       throw new HiveException(dimName + " is not a dimension");
     }
@@ -2013,6 +2824,7 @@ public class CubeMetastoreClient {
     if (isCube(tbl)) {
       allCubes.remove(cubeName.trim().toLowerCase());
       dropHiveTable(cubeName);
+      schemaGraphTableChanged(cubeName);
     } else {
       throw new HiveException(cubeName + " is not a cube");
     }
@@ -2029,6 +2841,7 @@ public class CubeMetastoreClient {
     if (isDimension(tbl)) {
       allDims.remove(dimName.trim().toLowerCase());
       dropHiveTable(dimName);
+      schemaGraphTableChanged(dimName);
     } else {
       throw new HiveException(dimName + " is not a dimension");
     }
@@ -2050,7 +2863,7 @@ public class CubeMetastoreClient {
         }
       }
       dropHiveTable(factName);
-      allFactTables.remove(factName.trim().toLowerCase());
+      uncacheFactTable(factName.trim().toLowerCase());
     } else {
       throw new HiveException(factName + " is not a CubeFactTable");
     }
@@ -2122,7 +2935,7 @@ public class CubeMetastoreClient {
         }
       }
       dropHiveTable(dimTblName);
-      allDimTables.remove(dimTblName.trim().toLowerCase());
+      uncacheDimTable(dimTblName.trim().toLowerCase());
     } else {
       throw new HiveException(dimTblName + " is not a dimension table");
     }
@@ -2156,13 +2969,127 @@ public class CubeMetastoreClient {
 
   private void updateFactCache(String factTableName) throws HiveException {
     if (enableCaching) {
-      allFactTables.put(factTableName.trim().toLowerCase(), getFactTable(refreshTable(factTableName)));
+      cacheFactTable(factTableName.trim().toLowerCase(), getFactTable(refreshTable(factTableName)));
     }
   }
 
   private void updateDimCache(String dimTblName) throws HiveException {
     if (enableCaching) {
-      allDimTables.put(dimTblName.trim().toLowerCase(), getDimensionTable(refreshTable(dimTblName)));
+      cacheDimTable(dimTblName.trim().toLowerCase(), getDimensionTable(refreshTable(dimTblName)));
+    }
+  }
+
+  /**
+   * Put fact table in cache and move it to the index entries of its cube and storages, atomically with respect to
+   * other updates of fact cache.
+   */
+  private void cacheFactTable(String factName, CubeFactTable fact) {
+    synchronized (allFactTables) {
+      synchronized (storageTablesByStorage) {
+        unindexFactTable(factName, allFactTables.put(factName, fact));
+        addToIndex(factsByCube, fact.getCubeName(), factName, fact);
+        indexStorageTables(fact.getName(), fact.getStorages());
+      }
+    }
+  }
+
+  private void uncacheFactTable(String factName) {
+    synchronized (allFactTables) {
+      unindexFactTable(factName, allFactTables.remove(factName));
+    }
+  }
+
+  private void unindexFactTable(String factName, CubeFactTable fact) {
+    if (fact != null) {
+      removeFromIndex(factsByCube, fact.getCubeName(), factName);
+      unindexStorageTables(fact.getName());
+    }
+  }
+
+  /**
+   * Put dimension table in cache and move it to the index entries of its dimension and storages, atomically with
+   * respect to other updates of dimension table cache.
+   */
+  private void cacheDimTable(String dimTblName, CubeDimensionTable dimTable) {
+    synchronized (allDimTables) {
+      synchronized (storageTablesByStorage) {
+        unindexDimTable(dimTblName, allDimTables.put(dimTblName, dimTable));
+        addToIndex(dimTablesByDim, dimTable.getDimName(), dimTblName, dimTable);
+        indexStorageTables(dimTable.getName(), dimTable.getStorages());
+      }
+    }
+  }
+
+  private void uncacheDimTable(String dimTblName) {
+    synchronized (allDimTables) {
+      unindexDimTable(dimTblName, allDimTables.remove(dimTblName));
+    }
+  }
+
+  private void unindexDimTable(String dimTblName, CubeDimensionTable dimTable) {
+    if (dimTable != null) {
+      removeFromIndex(dimTablesByDim, dimTable.getDimName(), dimTblName);
+      unindexStorageTables(dimTable.getName());
+    }
+  }
+
+  // callers hold the lock of the cache backing the index
+  private static <T> void addToIndex(Map<String, Map<String, T>> index, String key, String name, T value) {
+    if (key == null) {
+      return;
+    }
+    key = key.trim().toLowerCase();
+    Map<String, T> values = index.get(key);
+    if (values == null) {
+      values = Maps.newConcurrentMap();
+      index.put(key, values);
+    }
+    values.put(name, value);
+  }
+
+  private static <T> void removeFromIndex(Map<String, Map<String, T>> index, String key, String name) {
+    if (key == null) {
+      return;
+    }
+    key = key.trim().toLowerCase();
+    Map<String, T> values = index.get(key);
+    if (values != null) {
+      values.remove(name);
+      if (values.isEmpty()) {
+        index.remove(key);
+      }
+    }
+  }
+
+  private void indexStorageTables(String cubeTableName, Set<String> storages) {
+    if (storages == null) {
+      return;
+    }
+    synchronized (storageTablesByStorage) {
+      for (String storage : storages) {
+        String storageName = storage.trim().toLowerCase();
+        Set<String> storageTables = storageTablesByStorage.get(storageName);
+        if (storageTables == null) {
+          storageTables = Sets.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+          storageTablesByStorage.put(storageName, storageTables);
+        }
+        storageTables.add(getFactOrDimtableStorageTableName(cubeTableName, storage));
+      }
+    }
+  }
+
+  // storages of a cached table are changed in place when a storage is dropped, so the storage tables of the table are
+  // removed from all storages instead of the storages the table has now
+  private void unindexStorageTables(String cubeTableName) {
+    synchronized (storageTablesByStorage) {
+      Iterator<Map.Entry<String, Set<String>>> iterator = storageTablesByStorage.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<String, Set<String>> entry = iterator.next();
+        entry.getValue().remove(getFactOrDimtableStorageTableName(cubeTableName, entry.getKey()));
+        if (entry.getValue().isEmpty()) {
+          iterator.remove();
+        }
+      }
     }
   }
 
@@ -0,0 +1,229 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.cube.metadata;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.util.*;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import lombok.Data;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Log of changes made to cube metastore tables, shared by all servers using the same metastore through a directory of
+ * a shared file system. Changes published by a server are buffered and written on {@link #sync()} as one file, named
+ * by the server id and a sequence number increasing per server. The same {@link #sync()} reads files written by other
+ * servers since last sync, so that their changes can be applied to local caches. Servers delete their own files once
+ * older than the retention.
+ *
+ * Changes of different servers are not ordered with respect to each other. That is fine since a change only tells
+ * which table to fetch again from the metastore.
+ */
+@Slf4j
+public class MetastoreChangeLog {
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  private static final char SEQUENCE_SEPARATOR = '_';
+
+  /**
+   * A change of a table in a database
+   */
+  @Data
+  public static class Change {
+    private final String database;
+    private final String table;
+  }
+
+  private final FileSystem fs;
+  private final Path dir;
+  @Getter
+  private final String serverId;
+  private final long retentionMillis;
+  private long sequence;
+  private Set<Change> pending = Sets.newLinkedHashSet();
+  // last sequence read from each of the other servers
+  private final Map<String, Long> lastRead = Maps.newHashMap();
+
+  /**
+   * Create change log in the given directory
+   *
+   * @param conf            configuration to get the file system of dir
+   * @param dir             directory shared by all servers
+   * @param serverId        id of this server, unique among all servers sharing the directory
+   * @param retentionMillis time for which files written by this server are kept
+   * @throws IOException
+   */
+  public MetastoreChangeLog(Configuration conf, Path dir, String serverId, long retentionMillis) throws IOException {
+    if (serverId.indexOf(SEQUENCE_SEPARATOR) >= 0 || serverId.startsWith(".")) {
+      throw new IllegalArgumentException("Invalid server id " + serverId);
+    }
+    this.fs = dir.getFileSystem(conf);
+    this.dir = dir;
+    this.serverId = serverId;
+    this.retentionMillis = retentionMillis;
+    fs.mkdirs(dir);
+    // continue after the sequences left behind by an earlier run with same id, and skip what other servers wrote
+    // earlier, since a server starting afresh has nothing cached from before
+    for (FileStatus status : fs.listStatus(dir)) {
+      String[] idAndSequence = parse(status.getPath().getName());
+      if (idAndSequence == null) {
+        continue;
+      }
+      long seq = Long.parseLong(idAndSequence[1]);
+      if (serverId.equals(idAndSequence[0])) {
+        sequence = Math.max(sequence, seq);
+      } else {
+        Long last = lastRead.get(idAndSequence[0]);
+        lastRead.put(idAndSequence[0], last == null ? seq : Math.max(last, seq));
+      }
+    }
+  }
+
+  /**
+   * Generate a server id from the host name, unique for each call.
+   *
+   * @return server id
+   */
+  public static String newServerId() {
+    String host;
+    try {
+      host = InetAddress.getLocalHost().getHostName();
+    } catch (IOException e) {
+      host = "unknown";
+    }
+    return host.replaceAll("[^A-Za-z0-9]", "-") + "-" + UUID.randomUUID().toString().substring(0, 8);
+  }
+
+  /**
+   * Publish change of a table, to be written on next {@link #sync()}.
+   *
+   * @param database database of the table
+   * @param table    table name
+   */
+  public synchronized void publish(String database, String table) {
+    pending.add(new Change(database.trim().toLowerCase(), table.trim().toLowerCase()));
+  }
+
+  /**
+   * Write changes published since last sync and read changes written by other servers since last sync, or since this
+   * log was created for the first sync.
+   *
+   * @return changes of other servers, in the order written by each server
+   * @throws IOException
+   */
+  public synchronized List<Change> sync() throws IOException {
+    if (!pending.isEmpty()) {
+      write(pending);
+      pending = Sets.newLinkedHashSet();
+    }
+    Map<String, TreeMap<Long, Path>> unread = Maps.newHashMap();
+    long expiry = System.currentTimeMillis() - retentionMillis;
+    for (FileStatus status : fs.listStatus(dir)) {
+      String[] idAndSequence = parse(status.getPath().getName());
+      if (idAndSequence == null) {
+        continue;
+      }
+      String id = idAndSequence[0];
+      long seq = Long.parseLong(idAndSequence[1]);
+      if (id.equals(serverId)) {
+        if (status.getModificationTime() < expiry && !fs.delete(status.getPath(), false)) {
+          log.warn("Could not delete expired change log file {}", status.getPath());
+        }
+        continue;
+      }
+      if (lastRead.get(id) == null || seq > lastRead.get(id)) {
+        if (!unread.containsKey(id)) {
+          unread.put(id, new TreeMap<Long, Path>());
+        }
+        unread.get(id).put(seq, status.getPath());
+      }
+    }
+    List<Change> changes = Lists.newArrayList();
+    for (Map.Entry<String, TreeMap<Long, Path>> entry : unread.entrySet()) {
+      Long last = lastRead.get(entry.getKey());
+      if (last != null && entry.getValue().firstKey() > last + 1) {
+        log.warn("Missed changes {} to {} of server {}, they were deleted before being read", last + 1,
+          entry.getValue().firstKey() - 1, entry.getKey());
+      }
+      for (Path path : entry.getValue().values()) {
+        changes.addAll(read(path));
+      }
+      lastRead.put(entry.getKey(), entry.getValue().lastKey());
+    }
+    return changes;
+  }
+
+  private void write(Collection<Change> changes) throws IOException {
+    String name = String.format("%s%c%020d", serverId, SEQUENCE_SEPARATOR, sequence + 1);
+    Path tmp = new Path(dir, "." + name + ".tmp");
+    try (Writer out = new BufferedWriter(new OutputStreamWriter(fs.create(tmp, true), UTF8))) {
+      for (Change change : changes) {
+        out.write(change.getDatabase() + "\t" + change.getTable() + "\n");
+      }
+    }
+    // rename, so that readers do not see partially written files
+    if (!fs.rename(tmp, new Path(dir, name))) {
+      fs.delete(tmp, false);
+      throw new IOException("Could not write change log file " + new Path(dir, name));
+    }
+    sequence++;
+  }
+
+  private List<Change> read(Path path) throws IOException {
+    List<Change> changes = Lists.newArrayList();
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(fs.open(path), UTF8))) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        int tab = line.indexOf('\t');
+        if (tab > 0) {
+          changes.add(new Change(line.substring(0, tab), line.substring(tab + 1)));
+        }
+      }
+    } catch (FileNotFoundException e) {
+      // deleted by the writer after retention
+      log.warn("Change log file {} was deleted before being read", path);
+    }
+    return changes;
+  }
+
+  /** parse file name into server id and sequence, null if not a change log file */
+  private static String[] parse(String name) {
+    int separator = name.lastIndexOf(SEQUENCE_SEPARATOR);
+    if (name.startsWith(".") || separator <= 0 || separator == name.length() - 1) {
+      return null;
+    }
+    String seq = name.substring(separator + 1);
+    for (int i = 0; i < seq.length(); i++) {
+      if (!Character.isDigit(seq.charAt(i))) {
+        return null;
+      }
+    }
+    return new String[]{name.substring(0, separator), seq};
+  }
+}
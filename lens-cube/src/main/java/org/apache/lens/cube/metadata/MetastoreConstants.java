@@ -95,6 +95,20 @@ public final class MetastoreConstants {
   public static final String HIERARCHY_SFX = ".hierarchy.";
   public static final String CLASS_SFX = ".class";
   public static final String METASTORE_ENABLE_CACHING = "cube.metastore.enable.cache";
+  public static final String METASTORE_BULK_FETCH_BATCH_SIZE = "cube.metastore.bulk.fetch.batch.size";
+  public static final int DEFAULT_METASTORE_BULK_FETCH_BATCH_SIZE = 100;
+  public static final String METASTORE_BULK_FETCH_THREADS = "cube.metastore.bulk.fetch.threads";
+  public static final int DEFAULT_METASTORE_BULK_FETCH_THREADS = 4;
+  public static final String METASTORE_PARTITION_TIMELINE_DEFAULT_CLASS =
+    "cube.metastore.partition.timeline.default.class";
+  public static final String METASTORE_PARTITION_TIMELINE_SNAPSHOT_DIR =
+    "cube.metastore.partition.timeline.snapshot.dir";
+  public static final String METASTORE_CHANGE_LOG_DIR = "cube.metastore.change.log.dir";
+  public static final String METASTORE_CHANGE_LOG_SYNC_INTERVAL_MILLIS =
+    "cube.metastore.change.log.sync.interval.millis";
+  public static final long DEFAULT_METASTORE_CHANGE_LOG_SYNC_INTERVAL_MILLIS = 5000;
+  public static final String METASTORE_CHANGE_LOG_RETENTION_MILLIS = "cube.metastore.change.log.retention.millis";
+  public static final long DEFAULT_METASTORE_CHANGE_LOG_RETENTION_MILLIS = 3600000;
 
   // join chain constants
   public static final String JOIN_CHAIN_KEY = "joinchain.";
@@ -162,12 +162,14 @@ public class SchemaGraph {
       this.source = source;
       this.target = target;
 
+      // out and in graphs are taken from the same published graphs
+      Graphs graphs = graph.graphs;
       if (target instanceof CubeInterface) {
-        this.outGraph = graph.getCubeGraph((CubeInterface) target);
-        this.inGraph = graph.getCubeInGraph((CubeInterface) target);
+        this.outGraph = graphs.cubeOutGraph.get((CubeInterface) target);
+        this.inGraph = graphs.cubeInGraph.get((CubeInterface) target);
       } else if (target instanceof Dimension) {
-        this.outGraph = graph.getDimOnlyGraph();
-        this.inGraph = graph.getDimOnlyInGraph();
+        this.outGraph = graphs.dimOnlyOutGraph;
+        this.inGraph = graphs.dimOnlyInGraph;
       } else {
         throw new IllegalArgumentException("Target neither cube nor dimension");
       }
@@ -216,41 +218,288 @@ public class SchemaGraph {
     }
   }
 
+  /**
+   * Join paths found between a source and a target, kept as arrays of edge ids along with the names of all tables
+   * whose incoming edges were looked at while searching. The entry is stale once any of those tables gain or lose an
+   * incoming edge.
+   */
+  private static class IndexedPaths {
+    private final int[][] paths;
+    private final Set<String> touchedTables;
+
+    IndexedPaths(int[][] paths, Set<String> touchedTables) {
+      this.paths = paths;
+      this.touchedTables = touchedTables;
+    }
+  }
+
+  /**
+   * Out and in graphs of all cubes and the dimension only graphs. Published graphs are never modified, so that they
+   * can be read without locking; refresh modifies a copy and publishes it.
+   */
+  private static final class Graphs {
+    // Graph for each cube
+    // graph with out going edges
+    private final Map<CubeInterface, Map<AbstractCubeTable, Set<TableRelationship>>> cubeOutGraph
+      = new HashMap<CubeInterface, Map<AbstractCubeTable, Set<TableRelationship>>>();
+    // graph with incoming edges
+    private final Map<CubeInterface, Map<AbstractCubeTable, Set<TableRelationship>>> cubeInGraph
+      = new HashMap<CubeInterface, Map<AbstractCubeTable, Set<TableRelationship>>>();
+
+    // sub graph that contains only dimensions, mainly used while checking connectivity between a set of dimensions
+    // graph with out going edges
+    private final Map<AbstractCubeTable, Set<TableRelationship>> dimOnlyOutGraph;
+    // graph with incoming edges
+    private final Map<AbstractCubeTable, Set<TableRelationship>> dimOnlyInGraph;
+
+    Graphs() {
+      dimOnlyOutGraph = new HashMap<AbstractCubeTable, Set<TableRelationship>>();
+      dimOnlyInGraph = new HashMap<AbstractCubeTable, Set<TableRelationship>>();
+    }
+
+    // Copy of the graphs, which shares only the tables and edges with the other
+    Graphs(Graphs other) {
+      for (CubeInterface cube : other.cubeOutGraph.keySet()) {
+        cubeOutGraph.put(cube, copy(other.cubeOutGraph.get(cube)));
+        cubeInGraph.put(cube, copy(other.cubeInGraph.get(cube)));
+      }
+      dimOnlyOutGraph = copy(other.dimOnlyOutGraph);
+      dimOnlyInGraph = copy(other.dimOnlyInGraph);
+    }
+
+    private static Map<AbstractCubeTable, Set<TableRelationship>> copy(
+      Map<AbstractCubeTable, Set<TableRelationship>> graph) {
+      Map<AbstractCubeTable, Set<TableRelationship>> copy = new HashMap<AbstractCubeTable, Set<TableRelationship>>();
+      for (Map.Entry<AbstractCubeTable, Set<TableRelationship>> entry : graph.entrySet()) {
+        copy.put(entry.getKey(), new LinkedHashSet<TableRelationship>(entry.getValue()));
+      }
+      return copy;
+    }
+
+    private List<Map<AbstractCubeTable, Set<TableRelationship>>> allInGraphs() {
+      List<Map<AbstractCubeTable, Set<TableRelationship>>> inGraphs
+        = new ArrayList<Map<AbstractCubeTable, Set<TableRelationship>>>(cubeInGraph.values());
+      inGraphs.add(dimOnlyInGraph);
+      return inGraphs;
+    }
+  }
+
   /**
    * Graph of tables in the cube metastore. Links between the tables are relationships in the cube.
    */
   private final CubeMetastoreClient metastore;
-  // Graph for each cube
-  // graph with out going edges
-  private Map<CubeInterface, Map<AbstractCubeTable, Set<TableRelationship>>> cubeOutGraph;
-  // graph with incoming edges
-  private Map<CubeInterface, Map<AbstractCubeTable, Set<TableRelationship>>> cubeInGraph;
-
-  // sub graph that contains only dimensions, mainly used while checking connectivity between a set of dimensions
-  // graph with out going edges
-  private Map<AbstractCubeTable, Set<TableRelationship>> dimOnlyOutGraph;
-  // graph with incoming edges
-  private Map<AbstractCubeTable, Set<TableRelationship>> dimOnlyInGraph;
+  // The published graphs, replaced as a whole on refresh
+  private volatile Graphs graphs;
+
+  // All edges of the graph by id. An edge shared by several graphs has a single id. Ids of removed edges are not reused
+  private final List<TableRelationship> edgesById = new ArrayList<TableRelationship>();
+  private final Map<TableRelationship, Integer> edgeIds = new HashMap<TableRelationship, Integer>();
+  // Join paths already searched, keyed on source and target names
+  private final Map<String, IndexedPaths> pathIndex = new HashMap<String, IndexedPaths>();
+  // Incremented every time the graph is refreshed
+  @Getter
+  private volatile long version = 0;
 
   public SchemaGraph(CubeMetastoreClient metastore) throws HiveException {
     this.metastore = metastore;
     buildSchemaGraph();
   }
 
+  /**
+   * Get all join paths from source to target. Paths are searched once and then served from the path index till any
+   * table on the way to target is changed.
+   *
+   * @param source source table
+   * @param target target cube or dimension
+   * @return all join paths, each one a new {@link JoinPath} the caller is free to modify
+   */
+  public synchronized List<JoinPath> getAllPaths(AbstractCubeTable source, AbstractCubeTable target) {
+    String key = source.getName().toLowerCase() + "->" + target.getName().toLowerCase();
+    IndexedPaths indexed = pathIndex.get(key);
+    if (indexed == null) {
+      Set<AbstractCubeTable> visited = new HashSet<AbstractCubeTable>();
+      List<JoinPath> found = new GraphSearch(source, target, this).findAllPathsToTarget(source, new JoinPath(),
+        visited);
+      int[][] paths = new int[found.size()][];
+      for (int i = 0; i < paths.length; i++) {
+        List<TableRelationship> edges = found.get(i).getEdges();
+        paths[i] = new int[edges.size()];
+        for (int j = 0; j < paths[i].length; j++) {
+          paths[i][j] = edgeIds.get(edges.get(j));
+        }
+      }
+      Set<String> touchedTables = new HashSet<String>();
+      touchedTables.add(target.getName().toLowerCase());
+      for (AbstractCubeTable table : visited) {
+        touchedTables.add(table.getName().toLowerCase());
+      }
+      indexed = new IndexedPaths(paths, touchedTables);
+      pathIndex.put(key, indexed);
+    }
+    List<JoinPath> joinPaths = new ArrayList<JoinPath>(indexed.paths.length);
+    for (int[] path : indexed.paths) {
+      JoinPath joinPath = new JoinPath();
+      for (int edgeId : path) {
+        joinPath.addEdge(edgesById.get(edgeId));
+      }
+      joinPaths.add(joinPath);
+    }
+    return joinPaths;
+  }
+
+  /**
+   * Refresh the graph after the given cubes or dimensions were created, altered or dropped. Only the edges going out
+   * of the changed tables and of the tables referring to them are rebuilt, and only the indexed join paths which
+   * could have gone through the rebuilt edges are dropped.
+   *
+   * @param changedTables names of the cubes and dimensions changed
+   * @throws HiveException
+   */
+  synchronized void refresh(Set<String> changedTables) throws HiveException {
+    Set<String> changed = new HashSet<String>();
+    for (String table : changedTables) {
+      changed.add(table.trim().toLowerCase());
+    }
+    // readers keep using the published graphs till the refreshed copy is published
+    Graphs updated = new Graphs(graphs);
+    // changed tables along with the tables having edges into them
+    Set<String> affected = new HashSet<String>(changed);
+    for (Map<AbstractCubeTable, Set<TableRelationship>> inGraph : updated.allInGraphs()) {
+      for (Map.Entry<AbstractCubeTable, Set<TableRelationship>> entry : inGraph.entrySet()) {
+        if (changed.contains(entry.getKey().getName().toLowerCase())) {
+          for (TableRelationship edge : entry.getValue()) {
+            affected.add(edge.getFromTable().getName().toLowerCase());
+          }
+        }
+      }
+    }
+    List<Dimension> affectedDims = new ArrayList<Dimension>();
+    for (String table : affected) {
+      if (metastore.tableExists(table) && metastore.isDimension(table)) {
+        affectedDims.add(metastore.getDimension(table));
+      }
+    }
+
+    // Cube graphs of changed cubes and their derived cubes are built again
+    Set<String> rebuiltCubes = new HashSet<String>();
+    for (CubeInterface cube : new ArrayList<CubeInterface>(updated.cubeOutGraph.keySet())) {
+      String cubeName = cube.getName().toLowerCase();
+      if (isCubeChanged(cube, changed)) {
+        updated.cubeOutGraph.remove(cube);
+        updated.cubeInGraph.remove(cube);
+        rebuiltCubes.add(cubeName);
+      }
+    }
+    for (CubeInterface cube : metastore.getAllCubes()) {
+      if (isCubeChanged(cube, changed)) {
+        buildCubeGraph(cube, updated);
+        rebuiltCubes.add(cube.getName().toLowerCase());
+      }
+    }
+
+    // Rest of the graphs get the out going edges of affected tables rebuilt
+    Set<String> changedDestinations = new HashSet<String>();
+    for (CubeInterface cube : updated.cubeOutGraph.keySet()) {
+      if (!rebuiltCubes.contains(cube.getName().toLowerCase())) {
+        refreshEdges(cube, affected, affectedDims, updated.cubeOutGraph.get(cube), updated.cubeInGraph.get(cube),
+          changedDestinations);
+      }
+    }
+    refreshEdges(null, affected, affectedDims, updated.dimOnlyOutGraph, updated.dimOnlyInGraph, changedDestinations);
+
+    // Drop indexed paths which could have changed
+    Iterator<IndexedPaths> iter = pathIndex.values().iterator();
+    while (iter.hasNext()) {
+      IndexedPaths indexed = iter.next();
+      for (String table : indexed.touchedTables) {
+        if (affected.contains(table) || changedDestinations.contains(table) || rebuiltCubes.contains(table)) {
+          iter.remove();
+          break;
+        }
+      }
+    }
+    releaseRemovedEdges(updated);
+    graphs = updated;
+    version++;
+  }
+
+  // A derived cube changes along with its parent
+  private static boolean isCubeChanged(CubeInterface cube, Set<String> changed) {
+    return changed.contains(cube.getName().toLowerCase())
+      || (cube instanceof DerivedCube && changed.contains(((DerivedCube) cube).getParent().getName().toLowerCase()));
+  }
+
+  private void refreshEdges(CubeInterface cube, Set<String> affected, List<Dimension> affectedDims,
+    Map<AbstractCubeTable, Set<TableRelationship>> outGraph, Map<AbstractCubeTable, Set<TableRelationship>> inGraph,
+    Set<String> changedDestinations) throws HiveException {
+    Iterator<Map.Entry<AbstractCubeTable, Set<TableRelationship>>> outIter = outGraph.entrySet().iterator();
+    while (outIter.hasNext()) {
+      Map.Entry<AbstractCubeTable, Set<TableRelationship>> entry = outIter.next();
+      if (!affected.contains(entry.getKey().getName().toLowerCase())) {
+        continue;
+      }
+      for (TableRelationship edge : entry.getValue()) {
+        changedDestinations.add(edge.getToTable().getName().toLowerCase());
+        Set<TableRelationship> inEdges = inGraph.get(edge.getToTable());
+        if (inEdges != null) {
+          inEdges.remove(edge);
+          if (inEdges.isEmpty()) {
+            inGraph.remove(edge.getToTable());
+          }
+        }
+      }
+      outIter.remove();
+    }
+    if (cube != null && affected.contains(cube.getName().toLowerCase())) {
+      buildGraph((AbstractCubeTable) cube, outGraph, inGraph);
+    }
+    for (Dimension dim : affectedDims) {
+      buildGraph(dim, outGraph, inGraph);
+      if (outGraph.get(dim) != null) {
+        for (TableRelationship edge : outGraph.get(dim)) {
+          changedDestinations.add(edge.getToTable().getName().toLowerCase());
+        }
+      }
+    }
+    if (cube != null && affected.contains(cube.getName().toLowerCase()) && outGraph.get(cube) != null) {
+      for (TableRelationship edge : outGraph.get(cube)) {
+        changedDestinations.add(edge.getToTable().getName().toLowerCase());
+      }
+    }
+  }
+
+  // Forget ids of the edges which are not part of any of the graphs anymore
+  private void releaseRemovedEdges(Graphs updated) {
+    Set<TableRelationship> liveEdges = new HashSet<TableRelationship>();
+    for (Map<AbstractCubeTable, Set<TableRelationship>> inGraph : updated.allInGraphs()) {
+      for (Set<TableRelationship> edges : inGraph.values()) {
+        liveEdges.addAll(edges);
+      }
+    }
+    Iterator<Map.Entry<TableRelationship, Integer>> iter = edgeIds.entrySet().iterator();
+    while (iter.hasNext()) {
+      Map.Entry<TableRelationship, Integer> entry = iter.next();
+      if (!liveEdges.contains(entry.getKey())) {
+        edgesById.set(entry.getValue(), null);
+        iter.remove();
+      }
+    }
+  }
+
   public Map<AbstractCubeTable, Set<TableRelationship>> getCubeGraph(CubeInterface cube) {
-    return cubeOutGraph.get(cube);
+    return graphs.cubeOutGraph.get(cube);
   }
 
   public Map<AbstractCubeTable, Set<TableRelationship>> getDimOnlyGraph() {
-    return dimOnlyOutGraph;
+    return graphs.dimOnlyOutGraph;
   }
 
   public Map<AbstractCubeTable, Set<TableRelationship>> getCubeInGraph(CubeInterface cube) {
-    return cubeInGraph.get(cube);
+    return graphs.cubeInGraph.get(cube);
   }
 
   public Map<AbstractCubeTable, Set<TableRelationship>> getDimOnlyInGraph() {
-    return dimOnlyInGraph;
+    return graphs.dimOnlyInGraph;
   }
 
   /**
@@ -260,28 +509,30 @@ public class SchemaGraph {
    * @throws org.apache.hadoop.hive.ql.metadata.HiveException
    */
   private void buildSchemaGraph() throws HiveException {
-    cubeOutGraph = new HashMap<CubeInterface, Map<AbstractCubeTable, Set<TableRelationship>>>();
-    cubeInGraph = new HashMap<CubeInterface, Map<AbstractCubeTable, Set<TableRelationship>>>();
+    Graphs built = new Graphs();
     for (CubeInterface cube : metastore.getAllCubes()) {
-      Map<AbstractCubeTable, Set<TableRelationship>> outGraph
-        = new HashMap<AbstractCubeTable, Set<TableRelationship>>();
-      Map<AbstractCubeTable, Set<TableRelationship>> inGraph
-        = new HashMap<AbstractCubeTable, Set<TableRelationship>>();
-      buildGraph((AbstractCubeTable) cube, outGraph, inGraph);
-
-      for (Dimension dim : metastore.getAllDimensions()) {
-        buildGraph(dim, outGraph, inGraph);
-      }
+      buildCubeGraph(cube, built);
+    }
 
-      cubeOutGraph.put(cube, outGraph);
-      cubeInGraph.put(cube, inGraph);
+    for (Dimension dim : metastore.getAllDimensions()) {
+      buildGraph(dim, built.dimOnlyOutGraph, built.dimOnlyInGraph);
     }
+    graphs = built;
+  }
+
+  private void buildCubeGraph(CubeInterface cube, Graphs built) throws HiveException {
+    Map<AbstractCubeTable, Set<TableRelationship>> outGraph
+      = new HashMap<AbstractCubeTable, Set<TableRelationship>>();
+    Map<AbstractCubeTable, Set<TableRelationship>> inGraph
+      = new HashMap<AbstractCubeTable, Set<TableRelationship>>();
+    buildGraph((AbstractCubeTable) cube, outGraph, inGraph);
 
-    dimOnlyOutGraph = new HashMap<AbstractCubeTable, Set<TableRelationship>>();
-    dimOnlyInGraph = new HashMap<AbstractCubeTable, Set<TableRelationship>>();
     for (Dimension dim : metastore.getAllDimensions()) {
-      buildGraph(dim, dimOnlyOutGraph, dimOnlyInGraph);
+      buildGraph(dim, outGraph, inGraph);
     }
+
+    built.cubeOutGraph.put(cube, outGraph);
+    built.cubeInGraph.put(cube, inGraph);
   }
 
   private List<CubeDimAttribute> getRefDimensions(AbstractCubeTable cube) throws HiveException {
@@ -345,6 +596,13 @@ public class SchemaGraph {
     Map<AbstractCubeTable, Set<TableRelationship>> outGraph, Map<AbstractCubeTable, Set<TableRelationship>> inGraph) {
 
     TableRelationship rel = new TableRelationship(srcCol, srcTbl, destCol, destTbl);
+    Integer edgeId = edgeIds.get(rel);
+    if (edgeId == null) {
+      edgeIds.put(rel, edgesById.size());
+      edgesById.add(rel);
+    } else {
+      rel = edgesById.get(edgeId);
+    }
 
     Set<TableRelationship> inEdges = inGraph.get(destTbl);
     if (inEdges == null) {
@@ -364,6 +622,11 @@ public class SchemaGraph {
   }
 
   public void print() {
+    Graphs graphs = this.graphs;
+    Map<CubeInterface, Map<AbstractCubeTable, Set<TableRelationship>>> cubeOutGraph = graphs.cubeOutGraph;
+    Map<CubeInterface, Map<AbstractCubeTable, Set<TableRelationship>>> cubeInGraph = graphs.cubeInGraph;
+    Map<AbstractCubeTable, Set<TableRelationship>> dimOnlyOutGraph = graphs.dimOnlyOutGraph;
+    Map<AbstractCubeTable, Set<TableRelationship>> dimOnlyInGraph = graphs.dimOnlyInGraph;
     for (CubeInterface cube : cubeOutGraph.keySet()) {
       Map<AbstractCubeTable, Set<TableRelationship>> graph = cubeOutGraph.get(cube);
       System.out.println("**Cube " + cube.getName() + " Out egdes");
@@ -23,6 +23,7 @@ import java.util.*;
 
 import org.apache.lens.cube.metadata.MetastoreUtil;
 import org.apache.lens.cube.metadata.TimePartition;
+import org.apache.lens.cube.metadata.TimePartitionRange;
 import org.apache.lens.cube.metadata.UpdatePeriod;
 import org.apache.lens.cube.parse.TimeRange;
 import org.apache.lens.server.api.error.LensException;
@@ -183,6 +184,29 @@ public class EndsAndHolesPartitionTimeline extends PartitionTimeline {
     return !isEmpty() && !toCheck.before(first) && !toCheck.after(latest) && !holes.contains(toCheck);
   }
 
+  @Override
+  public List<TimePartitionRange> getCoveredRanges(TimePartitionRange range) throws LensException {
+    List<TimePartitionRange> covered = new ArrayList<TimePartitionRange>();
+    if (isEmpty() || !range.isValidAndNonEmpty()) {
+      return covered;
+    }
+    TimePartition cur = TimePartition.max(range.getBegin(), first);
+    TimePartition end = TimePartition.min(range.getEnd(), latest.next());
+    if (!cur.before(end)) {
+      return covered;
+    }
+    for (TimePartition hole : holes.subSet(cur, true, end, false)) {
+      if (cur.before(hole)) {
+        covered.add(cur.rangeUpto(hole));
+      }
+      cur = hole.next();
+    }
+    if (cur.before(end)) {
+      covered.add(cur.rangeUpto(end));
+    }
+    return covered;
+  }
+
   @Override
   public Iterator<TimePartition> iterator() {
 
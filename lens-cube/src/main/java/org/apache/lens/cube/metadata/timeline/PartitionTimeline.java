@@ -42,6 +42,8 @@ import lombok.extern.slf4j.Slf4j;
  *
  * @see org.apache.lens.cube.metadata.timeline.EndsAndHolesPartitionTimeline
  * @see org.apache.lens.cube.metadata.timeline.StoreAllPartitionTimeline
+ * @see org.apache.lens.cube.metadata.timeline.RangesPartitionTimeline
+ * @see org.apache.lens.cube.metadata.timeline.RunLengthPartitionTimeline
  */
 @Data
 @Slf4j
@@ -220,4 +222,31 @@ public abstract class PartitionTimeline implements Iterable<TimePartition> {
    * @return
    */
   public abstract boolean exists(TimePartition partition);
+
+  /**
+   * Sub ranges of the given range in which all partitions exist, in increasing order. Default implementation checks
+   * existence of each partition of the range. Implementing classes can override.
+   *
+   * @param range
+   * @return covered sub ranges, empty if no partition of the range exists
+   * @throws LensException
+   */
+  public List<TimePartitionRange> getCoveredRanges(TimePartitionRange range) throws LensException {
+    List<TimePartitionRange> covered = new ArrayList<TimePartitionRange>();
+    TimePartition begin = null;
+    for (TimePartition part : range) {
+      if (exists(part)) {
+        if (begin == null) {
+          begin = part;
+        }
+      } else if (begin != null) {
+        covered.add(begin.rangeUpto(part));
+        begin = null;
+      }
+    }
+    if (begin != null) {
+      covered.add(begin.rangeUpto(range.getEnd()));
+    }
+    return covered;
+  }
 }
@@ -22,6 +22,7 @@ package org.apache.lens.cube.metadata.timeline;
 import java.lang.reflect.Constructor;
 
 import org.apache.lens.cube.metadata.CubeMetastoreClient;
+import org.apache.lens.cube.metadata.MetastoreConstants;
 import org.apache.lens.cube.metadata.MetastoreUtil;
 import org.apache.lens.cube.metadata.UpdatePeriod;
 
@@ -32,7 +33,8 @@ public final class PartitionTimelineFactory {
   }
 
   /**
-   * Checks in table params if desired implementing class is given. Otherwise by default returns instance of {@link
+   * Checks in table params if desired implementing class is given. Otherwise returns instance of the class given by
+   * {@link MetastoreConstants#METASTORE_PARTITION_TIMELINE_DEFAULT_CLASS} in client's conf, or by default of {@link
    * org.apache.lens.cube.metadata.timeline.EndsAndHolesPartitionTimeline}.
    *
    * @param client
@@ -47,13 +49,23 @@ public final class PartitionTimelineFactory {
       String storageClassName = client.getTable(storageTable).getParameters().get(
         MetastoreUtil.getPartitionTimelineStorageClassKey(
           updatePeriod, partitionColumn));
-      Class<? extends PartitionTimeline> clz = (Class<? extends PartitionTimeline>) Class.forName(storageClassName);
-      Constructor<? extends PartitionTimeline> constructor = clz.getConstructor(
-        String.class, UpdatePeriod.class, String.class);
-      return constructor.newInstance(
-        storageTable, updatePeriod, partitionColumn);
+      return newInstance(storageClassName, storageTable, updatePeriod, partitionColumn);
     } catch (Exception e) {
-      return new EndsAndHolesPartitionTimeline(storageTable, updatePeriod, partitionColumn);
+      try {
+        return newInstance(client.getConf().get(MetastoreConstants.METASTORE_PARTITION_TIMELINE_DEFAULT_CLASS),
+          storageTable, updatePeriod, partitionColumn);
+      } catch (Exception e1) {
+        return new EndsAndHolesPartitionTimeline(storageTable, updatePeriod, partitionColumn);
+      }
     }
   }
+
+  private static PartitionTimeline newInstance(String storageClassName, String storageTable,
+    UpdatePeriod updatePeriod, String partitionColumn) throws Exception {
+    Class<? extends PartitionTimeline> clz = (Class<? extends PartitionTimeline>) Class.forName(storageClassName);
+    Constructor<? extends PartitionTimeline> constructor = clz.getConstructor(
+      String.class, UpdatePeriod.class, String.class);
+    return constructor.newInstance(
+      storageTable, updatePeriod, partitionColumn);
+  }
 }
@@ -0,0 +1,279 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.cube.metadata.timeline;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+import org.apache.lens.cube.metadata.UpdatePeriod;
+import org.apache.lens.server.api.error.LensException;
+
+import com.google.common.collect.Maps;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compact local file with all partition timelines of storage tables, along with the lastDdlTime of each storage table
+ * at the time its timelines were saved. The file is memory mapped and an entry is decoded only when its storage table
+ * is looked up. Since every change of timelines is written back to storage table properties, which moves the
+ * lastDdlTime of the table, an entry is valid only as long as the lastDdlTime saved with it matches the table's.
+ *
+ * @see PartitionTimeline#toProperties()
+ */
+@Slf4j
+public final class PartitionTimelineSnapshot {
+  private static final int MAGIC = 0x4c505453;
+  private static final int VERSION = 1;
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final ByteBuffer buffer;
+  // storage table name to offset of its entry in buffer
+  private final Map<String, Integer> offsets = Maps.newHashMap();
+
+  /**
+   * Saved timelines of a storage table
+   */
+  public static final class Entry {
+    @Getter
+    private final String ddlTime;
+    // update period and partition column to class name and properties of the timeline
+    private final Map<String, String> classNames = Maps.newLinkedHashMap();
+    private final Map<String, Map<String, String>> properties = Maps.newLinkedHashMap();
+
+    public Entry(String ddlTime) {
+      this.ddlTime = ddlTime;
+    }
+
+    private static String key(UpdatePeriod updatePeriod, String partCol) {
+      return updatePeriod.name() + "." + partCol.toLowerCase();
+    }
+
+    /**
+     * Save the timeline in this entry
+     *
+     * @param timeline
+     */
+    public void add(PartitionTimeline timeline) {
+      String key = key(timeline.getUpdatePeriod(), timeline.getPartCol());
+      classNames.put(key, timeline.getClass().getCanonicalName());
+      properties.put(key, timeline.toProperties());
+    }
+
+    /**
+     * Initialize the timeline from this entry.
+     *
+     * @param timeline
+     * @return true if the timeline was saved in this entry with same implementation and is consistent once restored
+     * @throws LensException
+     */
+    public boolean restore(PartitionTimeline timeline) throws LensException {
+      String key = key(timeline.getUpdatePeriod(), timeline.getPartCol());
+      if (!timeline.getClass().getCanonicalName().equals(classNames.get(key))) {
+        return false;
+      }
+      return timeline.initFromProperties(properties.get(key));
+    }
+
+    public int size() {
+      return classNames.size();
+    }
+  }
+
+  private PartitionTimelineSnapshot(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    ByteBuffer in = buffer.duplicate();
+    if (in.remaining() < 12 || in.getInt() != MAGIC) {
+      throw new IOException("Not a partition timeline snapshot");
+    }
+    int version = in.getInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported partition timeline snapshot version " + version);
+    }
+    int count = in.getInt();
+    for (int i = 0; i < count; i++) {
+      offsets.put(readString(in), in.position());
+      skipEntry(in);
+    }
+  }
+
+  /**
+   * Memory map the snapshot file.
+   *
+   * @param file
+   * @return the snapshot, null if file does not exist
+   * @throws IOException if file is not a valid snapshot
+   */
+  public static PartitionTimelineSnapshot open(File file) throws IOException {
+    if (!file.isFile()) {
+      return null;
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      PartitionTimelineSnapshot snapshot = new PartitionTimelineSnapshot(mapped);
+      log.info("Opened partition timeline snapshot {} with {} storage tables", file, snapshot.size());
+      return snapshot;
+    } catch (BufferUnderflowException | IllegalArgumentException e) {
+      throw new IOException("Truncated partition timeline snapshot " + file, e);
+    }
+  }
+
+  /**
+   * Number of storage tables in the snapshot
+   *
+   * @return
+   */
+  public int size() {
+    return offsets.size();
+  }
+
+  /**
+   * Names of all storage tables in the snapshot
+   *
+   * @return
+   */
+  public Set<String> getStorageTables() {
+    return Collections.unmodifiableSet(offsets.keySet());
+  }
+
+  /**
+   * Get saved timelines of the storage table.
+   *
+   * @param storageTable storage table name
+   * @param ddlTime      current lastDdlTime of the storage table, null to get the entry irrespective of it
+   * @return the entry, null if the table is not in snapshot or was saved with a different lastDdlTime
+   */
+  public Entry get(String storageTable, String ddlTime) {
+    Integer offset = offsets.get(storageTable.toLowerCase());
+    if (offset == null) {
+      return null;
+    }
+    ByteBuffer in = buffer.duplicate();
+    in.position(offset);
+    String savedDdlTime = readString(in);
+    if (ddlTime != null && !ddlTime.equals(savedDdlTime)) {
+      return null;
+    }
+    Entry entry = new Entry(savedDdlTime);
+    int timelines = in.getInt();
+    for (int i = 0; i < timelines; i++) {
+      String key = readString(in);
+      entry.classNames.put(key, readString(in));
+      int numProperties = in.getInt();
+      Map<String, String> properties = Maps.newHashMapWithExpectedSize(numProperties);
+      for (int j = 0; j < numProperties; j++) {
+        properties.put(readString(in), readString(in));
+      }
+      entry.properties.put(key, properties);
+    }
+    return entry;
+  }
+
+  /**
+   * Write the entries to snapshot file. Written to a temporary file first, which then replaces the snapshot file, so
+   * that readers never see a partially written snapshot.
+   *
+   * @param file    snapshot file
+   * @param entries storage table name to its entry
+   * @throws IOException
+   */
+  public static void write(File file, Map<String, Entry> entries) throws IOException {
+    File dir = file.getAbsoluteFile().getParentFile();
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Could not create directory " + dir);
+    }
+    File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(entries.size());
+        for (Map.Entry<String, Entry> tableEntry : entries.entrySet()) {
+          Entry entry = tableEntry.getValue();
+          writeString(out, tableEntry.getKey().toLowerCase());
+          writeString(out, entry.ddlTime);
+          out.writeInt(entry.classNames.size());
+          for (Map.Entry<String, String> timeline : entry.classNames.entrySet()) {
+            writeString(out, timeline.getKey());
+            writeString(out, timeline.getValue());
+            Map<String, String> properties = entry.properties.get(timeline.getKey());
+            out.writeInt(properties.size());
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+              writeString(out, property.getKey());
+              writeString(out, property.getValue());
+            }
+          }
+        }
+      }
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      if (tmp.exists() && !tmp.delete()) {
+        log.warn("Could not delete temporary file {}", tmp);
+      }
+    }
+    log.info("Saved partition timelines of {} storage tables to {}", entries.size(), file);
+  }
+
+  private static void skipEntry(ByteBuffer in) {
+    skipString(in);
+    int timelines = in.getInt();
+    for (int i = 0; i < timelines; i++) {
+      skipString(in);
+      skipString(in);
+      int numProperties = in.getInt();
+      for (int j = 0; j < 2 * numProperties; j++) {
+        skipString(in);
+      }
+    }
+  }
+
+  private static void skipString(ByteBuffer in) {
+    int length = in.getInt();
+    if (length > 0) {
+      in.position(in.position() + length);
+    }
+  }
+
+  private static String readString(ByteBuffer in) {
+    int length = in.getInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.get(bytes);
+    return new String(bytes, UTF8);
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(UTF8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+}
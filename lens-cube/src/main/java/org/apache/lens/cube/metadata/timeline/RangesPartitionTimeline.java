@@ -19,9 +19,7 @@
 package org.apache.lens.cube.metadata.timeline;
 
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.*;
 
 import org.apache.lens.cube.metadata.*;
 import org.apache.lens.server.api.error.LensException;
@@ -233,6 +231,24 @@ public class RangesPartitionTimeline extends PartitionTimeline {
     return false;
   }
 
+  @Override
+  public List<TimePartitionRange> getCoveredRanges(TimePartitionRange range) throws LensException {
+    List<TimePartitionRange> covered = new ArrayList<TimePartitionRange>();
+    if (!range.isValidAndNonEmpty()) {
+      return covered;
+    }
+    // start from the last sub range beginning at or before begin of the range
+    for (int i = Math.max(getStrictlyAfterIndex(range.getBegin()) - 1, 0);
+         i < ranges.size() && ranges.get(i).getBegin().before(range.getEnd()); i++) {
+      TimePartition begin = TimePartition.max(ranges.get(i).getBegin(), range.getBegin());
+      TimePartition end = TimePartition.min(ranges.get(i).getEnd(), range.getEnd());
+      if (begin.before(end)) {
+        covered.add(begin.rangeUpto(end));
+      }
+    }
+    return covered;
+  }
+
   @Override
   public Iterator<TimePartition> iterator() {
 
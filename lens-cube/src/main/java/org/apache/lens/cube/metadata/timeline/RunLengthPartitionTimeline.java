@@ -0,0 +1,292 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.cube.metadata.timeline;
+
+
+import java.util.*;
+
+import org.apache.lens.cube.metadata.*;
+import org.apache.lens.server.api.error.LensException;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NonNull;
+import lombok.ToString;
+
+/**
+ * Timeline which stores partitions as runs of consecutive partition offsets, counted in update periods from a fixed
+ * anchor partition (the one containing epoch). Runs are kept in a sorted map from begin to end(exclusive) offset, so
+ * existence checks and lookups of covered sub ranges are logarithmic in the number of runs, and memory does not grow
+ * with the length of a run. In table properties, runs are written as gap from the end of previous run and length of
+ * run, both in base 36.
+ */
+@Data
+@EqualsAndHashCode(callSuper = true, exclude = "anchor")
+@ToString(callSuper = true, exclude = "anchor")
+public class RunLengthPartitionTimeline extends PartitionTimeline {
+  private static final int RADIX = Character.MAX_RADIX;
+  private static final String RUN_SEPARATOR = ".";
+
+  private final TimePartition anchor;
+  private TreeMap<Long, Long> runs = Maps.newTreeMap();
+
+  public RunLengthPartitionTimeline(String storageTableName, UpdatePeriod updatePeriod,
+    String partCol) {
+    super(storageTableName, updatePeriod, partCol);
+    try {
+      this.anchor = TimePartition.of(updatePeriod, new Date(0));
+    } catch (LensException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public boolean add(@NonNull TimePartition partition) throws LensException {
+    long offset = offsetOf(partition);
+    addRun(offset, offset + 1);
+    return true;
+  }
+
+  @Override
+  public boolean add(TimePartitionRange partitionRange) throws LensException {
+    if (partitionRange.isValidAndNonEmpty()) {
+      addRun(offsetOf(partitionRange.getBegin()), offsetOf(partitionRange.getEnd()));
+    }
+    return true;
+  }
+
+  private void addRun(long begin, long end) {
+    Map.Entry<Long, Long> floor = runs.floorEntry(begin);
+    if (floor != null && floor.getValue() >= begin) {
+      // overlaps with or touches the run before
+      begin = floor.getKey();
+      end = Math.max(end, floor.getValue());
+    }
+    // swallow all runs beginning within or right after the new run
+    Map.Entry<Long, Long> next = runs.ceilingEntry(begin);
+    while (next != null && next.getKey() <= end) {
+      end = Math.max(end, next.getValue());
+      runs.remove(next.getKey());
+      next = runs.higherEntry(next.getKey());
+    }
+    runs.put(begin, end);
+  }
+
+  @Override
+  public boolean drop(@NonNull TimePartition toDrop) throws LensException {
+    long offset = offsetOf(toDrop);
+    Map.Entry<Long, Long> floor = runs.floorEntry(offset);
+    if (floor == null || floor.getValue() <= offset) {
+      return true; // nothing to do
+    }
+    runs.remove(floor.getKey());
+    if (floor.getKey() < offset) {
+      runs.put(floor.getKey(), offset);
+    }
+    if (offset + 1 < floor.getValue()) {
+      runs.put(offset + 1, floor.getValue());
+    }
+    return true;
+  }
+
+  @Override
+  public TimePartition latest() {
+    if (isEmpty()) {
+      return null;
+    }
+    return partitionAt(runs.lastEntry().getValue() - 1);
+  }
+
+  @Override
+  public Map<String, String> toProperties() {
+    HashMap<String, String> ret = Maps.newHashMap();
+    List<Named> encodedRuns = Lists.newArrayListWithCapacity(runs.size());
+    long previousEnd = 0;
+    for (Map.Entry<Long, Long> run : runs.entrySet()) {
+      final String encoded = Long.toString(run.getKey() - previousEnd, RADIX) + RUN_SEPARATOR
+        + Long.toString(run.getValue() - run.getKey(), RADIX);
+      encodedRuns.add(new Named() {
+        @Override
+        public String getName() {
+          return encoded;
+        }
+      });
+      previousEnd = run.getValue();
+    }
+    MetastoreUtil.addNameStrings(ret, "runs", encodedRuns);
+    return ret;
+  }
+
+  @Override
+  public boolean initFromProperties(Map<String, String> properties) throws LensException {
+    runs.clear();
+    String runsStr = MetastoreUtil.getNamedStringValue(properties, "runs");
+    if (!Strings.isNullOrEmpty(runsStr)) {
+      long previousEnd = 0;
+      for (String run : runsStr.split("\\s*,\\s*")) {
+        String[] gapAndLength = run.split("\\" + RUN_SEPARATOR);
+        if (gapAndLength.length != 2) {
+          throw new LensException("Run incomplete: " + run);
+        }
+        try {
+          long begin = previousEnd + Long.parseLong(gapAndLength[0], RADIX);
+          previousEnd = begin + Long.parseLong(gapAndLength[1], RADIX);
+          runs.put(begin, previousEnd);
+        } catch (NumberFormatException e) {
+          throw new LensException("Invalid run: " + run, e);
+        }
+      }
+    }
+    return isConsistent();
+  }
+
+  public boolean isEmpty() {
+    return runs.isEmpty();
+  }
+
+  @Override
+  public boolean isConsistent() {
+    Long previousEnd = null;
+    for (Map.Entry<Long, Long> run : runs.entrySet()) {
+      if (run.getKey() >= run.getValue()) {
+        return false;
+      }
+      if (previousEnd != null && previousEnd >= run.getKey()) {
+        return false;
+      }
+      previousEnd = run.getValue();
+    }
+    return true;
+  }
+
+  @Override
+  public boolean exists(TimePartition toCheck) {
+    long offset = offsetOf(toCheck);
+    Map.Entry<Long, Long> floor = runs.floorEntry(offset);
+    return floor != null && floor.getValue() > offset;
+  }
+
+  @Override
+  public List<TimePartitionRange> getCoveredRanges(TimePartitionRange range) throws LensException {
+    List<TimePartitionRange> covered = Lists.newArrayList();
+    if (!range.isValidAndNonEmpty()) {
+      return covered;
+    }
+    long from = offsetOf(range.getBegin());
+    long to = offsetOf(range.getEnd());
+    Map.Entry<Long, Long> floor = runs.floorEntry(from);
+    if (floor != null && floor.getValue() > from) {
+      covered.add(partitionAt(from).rangeUpto(partitionAt(Math.min(floor.getValue(), to))));
+    }
+    for (Map.Entry<Long, Long> run : runs.subMap(from, false, to, false).entrySet()) {
+      covered.add(partitionAt(run.getKey()).rangeUpto(partitionAt(Math.min(run.getValue(), to))));
+    }
+    return covered;
+  }
+
+  @Override
+  public Iterator<TimePartition> iterator() {
+
+    return new Iterator<TimePartition>() {
+      Iterator<Map.Entry<Long, Long>> uber = runs.entrySet().iterator();
+      long cur;
+      long end;
+
+      @Override
+      public boolean hasNext() {
+        if (cur >= end) {
+          if (!uber.hasNext()) {
+            return false;
+          }
+          Map.Entry<Long, Long> run = uber.next();
+          cur = run.getKey();
+          end = run.getValue();
+        }
+        return true;
+      }
+
+      @Override
+      public TimePartition next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return partitionAt(cur++);
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /** number of update periods from anchor to the partition */
+  private long offsetOf(TimePartition partition) {
+    Date anchorDate = anchor.getDate();
+    switch (getUpdatePeriod().calendarField()) {
+    case Calendar.MONTH:
+    case Calendar.YEAR:
+      Calendar anchorCal = Calendar.getInstance();
+      anchorCal.setTime(anchorDate);
+      Calendar cal = Calendar.getInstance();
+      cal.setTime(partition.getDate());
+      long months = 12L * (cal.get(Calendar.YEAR) - anchorCal.get(Calendar.YEAR))
+        + cal.get(Calendar.MONTH) - anchorCal.get(Calendar.MONTH);
+      switch (getUpdatePeriod()) {
+      case QUARTERLY:
+        return months / 3;
+      case YEARLY:
+        return months / 12;
+      default:
+        return months;
+      }
+    default:
+      // day and week lengths vary by an hour across daylight saving changes, which rounding takes care of
+      return Math.round((double) (partition.getDate().getTime() - anchorDate.getTime()) / unitMillis());
+    }
+  }
+
+  private long unitMillis() {
+    switch (getUpdatePeriod().calendarField()) {
+    case Calendar.SECOND:
+      return UpdatePeriod.SECONDLY.weight();
+    case Calendar.MINUTE:
+      return UpdatePeriod.MINUTELY.weight();
+    case Calendar.HOUR_OF_DAY:
+      return UpdatePeriod.HOURLY.weight();
+    case Calendar.DAY_OF_MONTH:
+      return UpdatePeriod.DAILY.weight();
+    default:
+      return UpdatePeriod.WEEKLY.weight();
+    }
+  }
+
+  private TimePartition partitionAt(long offset) {
+    TimePartition partition = anchor;
+    while (offset != 0) {
+      int step = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, offset));
+      partition = partition.partitionAtDiff(step);
+      offset -= step;
+    }
+    return partition;
+  }
+}
@@ -96,6 +96,8 @@ public final class CubeQueryConfUtil {
   public static final String DISABLE_AUTO_JOINS = "lens.cube.query.disable.auto.join";
   public static final boolean DEFAULT_DISABLE_AUTO_JOINS = true;
   public static final String JOIN_TYPE_KEY = "lens.cube.query.join.type";
+  public static final String MAX_JOIN_PATH_SEARCH_STEPS = "lens.cube.query.max.join.path.search.steps";
+  public static final long DEFAULT_MAX_JOIN_PATH_SEARCH_STEPS = 1000000;
   public static final String DISABLE_AGGREGATE_RESOLVER = "lens.cube.query.disable.aggregate.resolver";
   public static final boolean DEFAULT_DISABLE_AGGREGATE_RESOLVER = true;
   public static final String LIGHTEST_FACT_FIRST = "lens.cube.query.pick.lightest.fact.first";
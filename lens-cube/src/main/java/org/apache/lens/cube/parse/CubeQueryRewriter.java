@@ -204,15 +204,8 @@ public class CubeQueryRewriter {
     if (command != null) {
       command = command.replace("\n", "");
     }
-    ASTNode tree;
-    try {
-      ParseDriver pd = new ParseDriver();
-      tree = pd.parse(command, qlCtx, false);
-      tree = ParseUtils.findRootNonNullToken(tree);
-    } catch (ParseException e) {
-      throw new LensException(SYNTAX_ERROR.getLensErrorInfo(), e, e.getMessage());
-    }
-    return rewrite(tree);
+    // same cube query gets rewritten for every driver, parse is shared between them
+    return rewrite(HQLParser.parseHQLCached(command, hconf));
   }
 
   private static final String ITER_STR = "-ITER-";
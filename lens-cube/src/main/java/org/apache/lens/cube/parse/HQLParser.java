@@ -28,8 +28,11 @@ import java.lang.reflect.Field;
 import java.util.*;
 import java.util.regex.Pattern;
 
+import org.apache.lens.server.api.LensConfConstants;
 import org.apache.lens.server.api.error.LensException;
+import org.apache.lens.server.api.query.AbstractQueryContext;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.Context;
 import org.apache.hadoop.hive.ql.exec.FunctionRegistry;
@@ -39,7 +42,11 @@ import org.apache.hadoop.hive.ql.parse.*;
 import org.antlr.runtime.tree.Tree;
 
 import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 
@@ -163,6 +170,94 @@ public final class HQLParser {
     return tree;
   }
 
+  /** Configuration properties which change how a query text is parsed */
+  private static final List<String> PARSE_CONF_KEYS = Collections.unmodifiableList(Arrays.asList(
+    HiveConf.ConfVars.HIVE_QUOTEDID_SUPPORT.varname));
+
+  /**
+   * Key of cached parse, the query text along with the configuration affecting the parse.
+   */
+  @EqualsAndHashCode
+  @RequiredArgsConstructor
+  private static final class ParseKey {
+    private final String query;
+    private final List<String> parseConf;
+  }
+
+  // Parsed ASTs of recently seen query texts. Never handed out as is, only copies
+  private static volatile Cache<ParseKey, ASTNode> parseCache = newParseCache(
+    LensConfConstants.DEFAULT_QUERY_PARSE_CACHE_MAX_SIZE);
+  private static long parseCacheMaxSize = LensConfConstants.DEFAULT_QUERY_PARSE_CACHE_MAX_SIZE;
+
+  private static Cache<ParseKey, ASTNode> newParseCache(long maxSize) {
+    return CacheBuilder.newBuilder().maximumSize(maxSize).build();
+  }
+
+  /**
+   * Size the parse cache as configured. Parses cached so far are dropped if the size changes.
+   *
+   * @param conf the server configuration
+   */
+  public static synchronized void initParseCache(Configuration conf) {
+    long maxSize = conf.getLong(LensConfConstants.QUERY_PARSE_CACHE_MAX_SIZE,
+      LensConfConstants.DEFAULT_QUERY_PARSE_CACHE_MAX_SIZE);
+    if (maxSize != parseCacheMaxSize) {
+      parseCache = newParseCache(maxSize);
+      parseCacheMaxSize = maxSize;
+      log.info("Query parse cache max size: {}", maxSize);
+    }
+  }
+
+  private static ParseKey getParseKey(String query, HiveConf conf) {
+    List<String> parseConf = new ArrayList<String>(PARSE_CONF_KEYS.size());
+    for (String key : PARSE_CONF_KEYS) {
+      parseConf.add(conf.get(key));
+    }
+    return new ParseKey(query, parseConf);
+  }
+
+  private static ASTNode getCachedParse(String query, HiveConf conf) throws LensException {
+    Cache<ParseKey, ASTNode> cache = parseCache;
+    ParseKey key = getParseKey(query, conf);
+    ASTNode ast = cache.getIfPresent(key);
+    if (ast == null) {
+      ast = parseHQL(query, conf);
+      cache.put(key, ast);
+    }
+    return ast;
+  }
+
+  /**
+   * Parse the query, reusing the parse of the same query text when it was parsed recently. The returned AST is a copy
+   * which the caller is free to modify.
+   *
+   * @param query the query
+   * @param conf  the conf
+   * @return the AST
+   * @throws LensException
+   */
+  public static ASTNode parseHQLCached(String query, HiveConf conf) throws LensException {
+    return copyAST(getCachedParse(query, conf));
+  }
+
+  /**
+   * Parse the query text seen in the life of the query, be it the user query or a driver query. The text is parsed
+   * once for the query and the returned AST is a copy which the caller is free to modify.
+   *
+   * @param ctx   the query context
+   * @param query the query text
+   * @return the AST
+   * @throws LensException
+   */
+  public static ASTNode parseHQL(AbstractQueryContext ctx, String query) throws LensException {
+    ASTNode ast = ctx.getParsedQuery(query);
+    if (ast == null) {
+      ast = getCachedParse(query, ctx.getHiveConf());
+      ctx.setParsedQuery(query, ast);
+    }
+    return copyAST(ast);
+  }
+
   public static ASTNode parseExpr(String expr) throws ParseException {
     ParseDriver driver = new ParseDriver();
     ASTNode tree = driver.parseExpression(expr);
@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.cube.parse;
+
+import java.util.*;
+
+import org.apache.lens.cube.metadata.SchemaGraph;
+import org.apache.lens.cube.metadata.SchemaGraph.TableRelationship;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Branch and bound search for the join path of each dimension, such that the join tree merging all chosen paths has
+ * least number of edges. Cost of a selection is the number of distinct prefixes, from the target table, of the chosen
+ * paths, which is the number of edges in the tree built by
+ * {@link JoinResolver.JoinClause#mergeJoinChains(java.util.Map)}.
+ * <p></p>
+ * Selections are searched depth first in the order of enumeration of the cartesian product of paths, and a leaf
+ * replaces the best selection only if it is strictly cheaper. So among selections of least cost the first in
+ * enumeration order is picked, same as enumerating the whole product. A partial selection is pruned when its cost,
+ * plus the largest of the least number of edges any remaining dimension has to add, is not less than the best cost.
+ * <p></p>
+ * Search stops after the given number of steps, returning the best selection found till then.
+ */
+@Slf4j
+final class JoinPathSearch {
+  // prefix ids of paths. pathPrefixes[dim][path] has one id per edge of the path
+  private final int[][][] pathPrefixes;
+  // number of chosen paths having each prefix
+  private final int[] prefixUsage;
+  private final int[] selection;
+  private final long maxSteps;
+
+  @Getter
+  private long steps;
+  @Getter
+  private boolean exhausted;
+  private int[] bestSelection;
+  @Getter
+  private int bestCost = Integer.MAX_VALUE;
+  private int currentCost;
+
+  JoinPathSearch(List<List<SchemaGraph.JoinPath>> pathSets, long maxSteps) {
+    this.maxSteps = maxSteps;
+    this.pathPrefixes = new int[pathSets.size()][][];
+    this.selection = new int[pathSets.size()];
+    // Assign an id to every distinct prefix, by walking a trie of edges from the target table
+    List<Map<TableRelationship, Integer>> trie = new ArrayList<Map<TableRelationship, Integer>>();
+    trie.add(new HashMap<TableRelationship, Integer>());
+    for (int d = 0; d < pathSets.size(); d++) {
+      List<SchemaGraph.JoinPath> paths = pathSets.get(d);
+      pathPrefixes[d] = new int[paths.size()][];
+      for (int p = 0; p < paths.size(); p++) {
+        List<TableRelationship> edges = paths.get(p).getEdges();
+        int[] prefixes = new int[edges.size()];
+        int node = 0;
+        // Last element in the path is link from target to first dimension
+        for (int e = edges.size() - 1, i = 0; e >= 0; e--, i++) {
+          Integer child = trie.get(node).get(edges.get(e));
+          if (child == null) {
+            child = trie.size();
+            trie.get(node).put(edges.get(e), child);
+            trie.add(new HashMap<TableRelationship, Integer>());
+          }
+          node = child;
+          prefixes[i] = node;
+        }
+        pathPrefixes[d][p] = prefixes;
+      }
+    }
+    this.prefixUsage = new int[trie.size()];
+  }
+
+  /**
+   * @return index of chosen path for each dimension, null if some dimension has no path
+   */
+  int[] search() {
+    for (int[][] paths : pathPrefixes) {
+      if (paths.length == 0) {
+        return null;
+      }
+    }
+    exhausted = false;
+    search(0);
+    log.debug("Join path search took {} steps. Exhausted budget: {}", steps, exhausted);
+    return bestSelection;
+  }
+
+  private void search(int dim) {
+    if (dim == pathPrefixes.length) {
+      if (currentCost < bestCost) {
+        bestCost = currentCost;
+        bestSelection = selection.clone();
+      }
+      return;
+    }
+    for (int p = 0; p < pathPrefixes[dim].length; p++) {
+      if (bestSelection != null && ++steps > maxSteps) {
+        exhausted = true;
+        return;
+      }
+      choose(pathPrefixes[dim][p]);
+      selection[dim] = p;
+      if (bestSelection == null || currentCost + lowerBoundOfRemaining(dim + 1) < bestCost) {
+        search(dim + 1);
+      }
+      unchoose(pathPrefixes[dim][p]);
+      if (exhausted) {
+        return;
+      }
+    }
+  }
+
+  // Every remaining dimension adds at least the edges of its cheapest path not already chosen
+  private int lowerBoundOfRemaining(int fromDim) {
+    int bound = 0;
+    for (int d = fromDim; d < pathPrefixes.length && bound < bestCost; d++) {
+      int least = Integer.MAX_VALUE;
+      for (int[] prefixes : pathPrefixes[d]) {
+        int added = 0;
+        for (int prefix : prefixes) {
+          if (prefixUsage[prefix] == 0) {
+            added++;
+          }
+        }
+        least = Math.min(least, added);
+      }
+      bound = Math.max(bound, least);
+    }
+    return bound;
+  }
+
+  private void choose(int[] prefixes) {
+    for (int prefix : prefixes) {
+      if (prefixUsage[prefix]++ == 0) {
+        currentCost++;
+      }
+    }
+  }
+
+  private void unchoose(int[] prefixes) {
+    for (int prefix : prefixes) {
+      if (--prefixUsage[prefix] == 0) {
+        currentCost--;
+      }
+    }
+  }
+}
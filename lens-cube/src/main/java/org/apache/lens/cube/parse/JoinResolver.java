@@ -735,10 +735,13 @@ class JoinResolver implements ContextRewriter {
 
     /**
      * There can be multiple join paths between a dimension and the target. Set of all possible join clauses is the
-     * cartesian product of join paths of all dimensions
+     * cartesian product of join paths of all dimensions. Finds the clause of least cost in it by branch and bound,
+     * without building a join clause for every element.
+     *
+     * @see JoinPathSearch
      */
-    private Iterator<JoinClause> getJoinClausesForAllPaths(final CandidateFact fact,
-      final Set<Dimension> qdims, final CubeQueryContext cubeql) {
+    private JoinClause getMinCostJoinClause(final CandidateFact fact, final Set<Dimension> qdims,
+      final CubeQueryContext cubeql) {
       Map<Aliased<Dimension>, List<SchemaGraph.JoinPath>> allPaths;
       // if fact is passed only look at paths possible from fact to dims
       if (fact != null) {
@@ -747,68 +750,37 @@ class JoinResolver implements ContextRewriter {
         allPaths = new LinkedHashMap<Aliased<Dimension>, List<SchemaGraph.JoinPath>>(this.allPaths);
       }
       // prune allPaths with qdims
-      log.info("pruning allPaths before generating all permutations.");
+      log.info("pruning allPaths before searching join paths.");
       log.info("allPaths: {}", allPaths);
       log.info("qdims: {}", qdims);
       pruneAllPathsWithQueriedDims(allPaths, qdims);
 
-      // Number of paths in each path set
-      final int[] groupSizes = new int[allPaths.values().size()];
-      // Total number of elements in the cartesian product
-      int numSamples = 1;
       // All path sets
       final List<List<SchemaGraph.JoinPath>> pathSets = new ArrayList<List<SchemaGraph.JoinPath>>();
       // Dimension corresponding to the path sets
-      final List<Aliased<Dimension>> dimensions = new ArrayList<Aliased<Dimension>>(groupSizes.length);
-
-      int i = 0;
+      final List<Aliased<Dimension>> dimensions = new ArrayList<Aliased<Dimension>>();
       for (Map.Entry<Aliased<Dimension>, List<SchemaGraph.JoinPath>> entry : allPaths.entrySet()) {
         dimensions.add(entry.getKey());
-        List<SchemaGraph.JoinPath> group = entry.getValue();
-        pathSets.add(group);
-        groupSizes[i] = group.size();
-        numSamples *= groupSizes[i];
-        i++;
+        pathSets.add(entry.getValue());
       }
 
-      final int[] selection = new int[groupSizes.length];
-      final int MAX_SAMPLE_COUNT = numSamples;
-
-      // Return a lazy iterator over all possible join chains
-      return new Iterator<JoinClause>() {
-        int sample = 0;
-
-        @Override
-        public boolean hasNext() {
-          return sample < MAX_SAMPLE_COUNT;
-        }
-
-        @Override
-        public JoinClause next() {
-          Map<Aliased<Dimension>, List<TableRelationship>> chain
-            = new LinkedHashMap<Aliased<Dimension>, List<TableRelationship>>();
-          //generate next permutation.
-          for (int i = groupSizes.length - 1, base = sample; i >= 0; base /= groupSizes[i], i--) {
-            selection[i] = base % groupSizes[i];
-          }
-          for (int i = 0; i < selection.length; i++) {
-            int selectedPath = selection[i];
-            List<TableRelationship> path = pathSets.get(i).get(selectedPath).getEdges();
-            chain.put(dimensions.get(i), path);
-          }
-
-          Set<Dimension> dimsOnPath = getDimsOnPath(chain, qdims);
-
-          sample++;
-          // Cost of join = number of tables joined in the clause
-          return new JoinClause(cubeql, chain, dimsOnPath);
-        }
-
-        @Override
-        public void remove() {
-          throw new UnsupportedOperationException("Cannot remove elements!");
-        }
-      };
+      JoinPathSearch search = new JoinPathSearch(pathSets, cubeql.getConf().getLong(
+        CubeQueryConfUtil.MAX_JOIN_PATH_SEARCH_STEPS, CubeQueryConfUtil.DEFAULT_MAX_JOIN_PATH_SEARCH_STEPS));
+      int[] selection = search.search();
+      if (selection == null) {
+        return null;
+      }
+      if (search.isExhausted()) {
+        log.warn("Join path search for fact {} stopped after {} steps, picking join clause of cost {}", fact,
+          search.getSteps(), search.getBestCost());
+      }
+      Map<Aliased<Dimension>, List<TableRelationship>> chain
+        = new LinkedHashMap<Aliased<Dimension>, List<TableRelationship>>();
+      for (int i = 0; i < selection.length; i++) {
+        chain.put(dimensions.get(i), pathSets.get(i).get(selection[i]).getEdges());
+      }
+      // Cost of join = number of tables joined in the clause
+      return new JoinClause(cubeql, chain, getDimsOnPath(chain, qdims));
     }
 
     /**
@@ -837,14 +809,7 @@ class JoinResolver implements ContextRewriter {
         return joiningOptionalTables;
       }
       // find least cost path
-      Iterator<JoinClause> itr = getJoinClausesForAllPaths(fact, qdims, cubeql);
-      JoinClause minCostClause = null;
-      while (itr.hasNext()) {
-        JoinClause clause = itr.next();
-        if (minCostClause == null || minCostClause.getCost() > clause.getCost()) {
-          minCostClause = clause;
-        }
-      }
+      JoinClause minCostClause = getMinCostJoinClause(fact, qdims, cubeql);
 
       if (minCostClause == null) {
         throw new LensException(LensCubeErrorCode.NO_JOIN_PATH.getLensErrorInfo(),
@@ -1040,11 +1005,10 @@ class JoinResolver implements ContextRewriter {
     for (Dimension joinee : dimTables) {
       if (dimensionInJoinChain.get(joinee) == null) {
         // Find all possible join paths
-        SchemaGraph.GraphSearch search = new SchemaGraph.GraphSearch(joinee, target, graph);
-        List<SchemaGraph.JoinPath> joinPaths = search.findAllPathsToTarget();
+        List<SchemaGraph.JoinPath> joinPaths = graph.getAllPaths(joinee, target);
         if (joinPaths != null && !joinPaths.isEmpty()) {
           Aliased<Dimension> aliasedJoinee = Aliased.create(joinee);
-          multipleJoinPaths.put(aliasedJoinee, new ArrayList<SchemaGraph.JoinPath>(search.findAllPathsToTarget()));
+          multipleJoinPaths.put(aliasedJoinee, joinPaths);
           addOptionalTables(cubeql, multipleJoinPaths.get(aliasedJoinee), cubeql.getDimensions().contains(joinee));
         } else {
           // No link to cube from this dim, can't proceed with query
@@ -581,6 +581,14 @@ class StorageTableResolver implements ContextRewriter {
     int lookAheadNumParts =
       conf.getInt(CubeQueryConfUtil.getLookAheadPTPartsKey(interval), CubeQueryConfUtil.DEFAULT_LOOK_AHEAD_PT_PARTS);
 
+    // Look up existing partitions from ceilFrom to floorTo once per storage table, instead of once per partition
+    log.debug("candidate storage tables for searching partitions: {}", storageTbls);
+    Map<String, PartitionCoverage> coverages = new LinkedHashMap<>();
+    for (String storageTbl : storageTbls) {
+      coverages.put(storageTbl, new PartitionCoverage(client.getFactPartitionCoverage(fact, storageTbl, interval,
+        partCol, ceilFromDate, floorToDate)));
+    }
+
     TimeRange.Iterable.Iterator iter = TimeRange.iterable(ceilFromDate, floorToDate, interval, 1)
       .iterator();
     // add partitions from ceilFrom to floorTo
@@ -588,8 +596,12 @@ class StorageTableResolver implements ContextRewriter {
       Date dt = iter.next();
       Date nextDt = iter.peekNext();
       FactPartition part = new FactPartition(partCol, dt, interval, null, partWhereClauseFormat);
-      log.debug("candidate storage tables for searching partitions: {}", storageTbls);
-      updateFactPartitionStorageTablesFrom(fact, part, storageTbls);
+      for (Map.Entry<String, PartitionCoverage> coverage : coverages.entrySet()) {
+        if (coverage.getValue().covers(dt)) {
+          part.getStorageTables().add(coverage.getKey());
+          part.setFound(true);
+        }
+      }
       log.debug("Storage tables containing Partition {} are: {}", part, part.getStorageTables());
       if (part.isFound()) {
         log.debug("Adding existing partition {}", part);
@@ -683,6 +695,26 @@ class StorageTableResolver implements ContextRewriter {
         updatePeriods, addNonExistingParts, failOnPartialData, skipStorageCauses, missingPartitions);
   }
 
+  /**
+   * Covered ranges of a storage table, answering whether partitions exist for dates asked in increasing order.
+   */
+  static class PartitionCoverage {
+    private final Iterator<TimePartitionRange> ranges;
+    private TimePartitionRange current;
+
+    PartitionCoverage(List<TimePartitionRange> coveredRanges) {
+      this.ranges = coveredRanges.iterator();
+      this.current = ranges.hasNext() ? ranges.next() : null;
+    }
+
+    boolean covers(Date date) {
+      while (current != null && !date.before(current.getEnd().getDate())) {
+        current = ranges.hasNext() ? ranges.next() : null;
+      }
+      return current != null && !date.before(current.getBegin().getDate());
+    }
+  }
+
   void updateFactPartitionStorageTablesFrom(CubeFactTable fact,
     FactPartition part, Set<String> storageTableNames) throws LensException, HiveException, ParseException {
     for (String storageTableName : storageTableNames) {
@@ -20,6 +20,7 @@ package org.apache.lens.driver.cube;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.lens.cube.metadata.FactPartition;
@@ -44,6 +45,20 @@ public final class RewriterPlan extends DriverQueryPlan {
     extractPlan(cubeQueries);
   }
 
+  /**
+   * Copy of the plan, which can be used by another query without sharing any of its collections.
+   *
+   * @param plan the plan to copy
+   */
+  public RewriterPlan(RewriterPlan plan) {
+    tablesQueried.addAll(plan.tablesQueried);
+    tableWeights.putAll(plan.tableWeights);
+    for (Map.Entry<String, Set<?>> entry : plan.partitions.entrySet()) {
+      partitions.put(entry.getKey(), entry.getValue() == null ? null : new HashSet<Object>(entry.getValue()));
+    }
+    setHasSubQuery(plan.hasSubQuery);
+  }
+
   @SuppressWarnings("unchecked") // required for (Set<FactPartition>) casting
   void extractPlan(Collection<CubeQueryContext> cubeQueries) {
 
@@ -21,7 +21,10 @@ package org.apache.lens.cube.metadata;
 
 import static org.testng.Assert.assertEquals;
 
+import java.io.File;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lens.cube.metadata.ExprColumn.ExprSpec;
 import org.apache.lens.cube.metadata.ReferencedDimAtrribute.ChainRefCol;
@@ -51,6 +54,7 @@ import org.testng.annotations.Test;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 public class TestCubeMetastoreClient {
 
@@ -2578,4 +2582,209 @@ public class TestCubeMetastoreClient {
     conf.setBoolean(MetastoreConstants.METASTORE_ENABLE_CACHING, true);
     client = CubeMetastoreClient.getInstance(conf);
   }
+
+  @Test(priority = 4)
+  public void testLoadAllTables() throws HiveException {
+    client = CubeMetastoreClient.getInstance(conf);
+    // expected counts are read from hive directly, so that they don't depend on tables created by other tests
+    Hive metastore = Hive.get(conf);
+    List<String> hiveTables = metastore.getAllTables(TestCubeMetastoreClient.class.getSimpleName());
+    int numCubes = 0;
+    for (String table : hiveTables) {
+      if (client.isCube(metastore.getTable(table))) {
+        numCubes++;
+      }
+    }
+    final AtomicInteger listed = new AtomicInteger();
+    final AtomicInteger fetched = new AtomicInteger();
+    client.clearHiveTableCache();
+    client.loadAllTables(new CubeMetastoreClient.TableLoadListener() {
+      @Override
+      public void tablesListed(int count) {
+        listed.addAndGet(count);
+      }
+
+      @Override
+      public void tablesFetched(int count) {
+        fetched.addAndGet(count);
+      }
+    });
+    assertEquals(listed.get(), hiveTables.size());
+    assertEquals(fetched.get(), listed.get());
+    Assert.assertTrue(numCubes > 0);
+    assertEquals(client.getAllCubes().size(), numCubes);
+    Assert.assertNotNull(client.getCube("testcache1"));
+  }
+
+  @Test(priority = 4)
+  public void testCubeTableIndexes() throws HiveException {
+    client = CubeMetastoreClient.getInstance(conf);
+    for (CubeFactTable fact : client.getAllFacts()) {
+      Assert.assertTrue(client.getAllFacts(client.getCube(fact.getCubeName())).contains(fact));
+      for (String storage : fact.getStorages()) {
+        Assert.assertTrue(client.getAllStorageTableNames(storage).contains(
+          MetastoreUtil.getFactOrDimtableStorageTableName(fact.getName(), storage)));
+      }
+    }
+    for (CubeDimensionTable dimTable : client.getAllDimensionTables()) {
+      Assert.assertTrue(client.getAllDimensionTables(client.getDimension(dimTable.getDimName())).contains(dimTable));
+      for (String storage : dimTable.getStorages()) {
+        Assert.assertTrue(client.getAllStorageTableNames(storage).contains(
+          MetastoreUtil.getFactOrDimtableStorageTableName(dimTable.getName(), storage)));
+      }
+    }
+
+    StorageTableDesc storageTableDesc = new StorageTableDesc();
+    storageTableDesc.setInputFormat(TextInputFormat.class.getCanonicalName());
+    storageTableDesc.setOutputFormat(HiveIgnoreKeyTextOutputFormat.class.getCanonicalName());
+    storageTableDesc.setPartCols(Lists.newArrayList(getDatePartition()));
+    storageTableDesc.setTimePartCols(Lists.newArrayList(getDatePartitionKey()));
+
+    // indexes follow create, storage changes and drop of a fact
+    String factName = "testindexfact";
+    CubeInterface cube = client.getCube(CUBE_NAME);
+    List<FieldSchema> factColumns = Lists.newArrayList(new FieldSchema("msr1", "int", "first measure"));
+    Map<String, Set<UpdatePeriod>> updatePeriods = new HashMap<String, Set<UpdatePeriod>>();
+    updatePeriods.put(c1, Sets.newHashSet(UpdatePeriod.HOURLY));
+    Map<String, StorageTableDesc> factStorageTables = new HashMap<String, StorageTableDesc>();
+    factStorageTables.put(c1, storageTableDesc);
+    client.createCubeFactTable(CUBE_NAME, factName, factColumns, updatePeriods, 0L, null, factStorageTables);
+    Assert.assertTrue(client.getAllFacts(cube).contains(client.getCubeFact(factName)));
+    assertStorageTableIndexed(factName, c1, true);
+
+    client.addStorage(client.getCubeFact(factName), c2, Sets.newHashSet(UpdatePeriod.HOURLY), storageTableDesc);
+    assertStorageTableIndexed(factName, c1, true);
+    assertStorageTableIndexed(factName, c2, true);
+    client.dropStorageFromFact(factName, c1);
+    assertStorageTableIndexed(factName, c1, false);
+    assertStorageTableIndexed(factName, c2, true);
+    Assert.assertTrue(client.getAllFacts(cube).contains(client.getCubeFact(factName)));
+
+    int numFactsOfCube = client.getAllFacts(cube).size();
+    client.dropFact(factName, true);
+    assertEquals(client.getAllFacts(cube).size(), numFactsOfCube - 1);
+    for (CubeFactTable fact : client.getAllFacts(cube)) {
+      Assert.assertFalse(fact.getName().equalsIgnoreCase(factName));
+    }
+    assertStorageTableIndexed(factName, c2, false);
+
+    // and of a dimension table
+    String dimTblName = "testindexdimtable";
+    List<FieldSchema> dimColumns = Lists.newArrayList(new FieldSchema("zipcode", "int", "code"));
+    Map<String, UpdatePeriod> dumpPeriods = new HashMap<String, UpdatePeriod>();
+    dumpPeriods.put(c1, UpdatePeriod.HOURLY);
+    Map<String, StorageTableDesc> dimStorageTables = new HashMap<String, StorageTableDesc>();
+    dimStorageTables.put(c1, storageTableDesc);
+    client.createCubeDimensionTable(zipDim.getName(), dimTblName, dimColumns, 0L, dumpPeriods, null,
+      dimStorageTables);
+    Assert.assertTrue(client.getAllDimensionTables(zipDim).contains(client.getDimensionTable(dimTblName)));
+    assertStorageTableIndexed(dimTblName, c1, true);
+
+    client.addStorage(client.getDimensionTable(dimTblName), c2, UpdatePeriod.HOURLY, storageTableDesc);
+    assertStorageTableIndexed(dimTblName, c1, true);
+    assertStorageTableIndexed(dimTblName, c2, true);
+    client.dropStorageFromDim(dimTblName, c1);
+    assertStorageTableIndexed(dimTblName, c1, false);
+    assertStorageTableIndexed(dimTblName, c2, true);
+    Assert.assertTrue(client.getAllDimensionTables(zipDim).contains(client.getDimensionTable(dimTblName)));
+
+    int numDimTablesOfDim = client.getAllDimensionTables(zipDim).size();
+    client.dropDimensionTable(dimTblName, true);
+    assertEquals(client.getAllDimensionTables(zipDim).size(), numDimTablesOfDim - 1);
+    for (CubeDimensionTable dimTable : client.getAllDimensionTables(zipDim)) {
+      Assert.assertFalse(dimTable.getName().equalsIgnoreCase(dimTblName));
+    }
+    assertStorageTableIndexed(dimTblName, c2, false);
+  }
+
+  private void assertStorageTableIndexed(String cubeTableName, String storage, boolean indexed) throws HiveException {
+    assertEquals(client.getAllStorageTableNames(storage).contains(
+      MetastoreUtil.getFactOrDimtableStorageTableName(cubeTableName, storage)), indexed,
+      cubeTableName + " on " + storage);
+  }
+
+  @Test(priority = 5)
+  public void testPartitionTimelineWarmUpAndSnapshot() throws Exception {
+    String dbName = "TestTimelineSnapshot";
+    File snapshotDir = Files.createTempDirectory("timelines").toFile();
+    HiveConf snapshotConf = new HiveConf(conf);
+    snapshotConf.setBoolean(MetastoreConstants.METASTORE_ENABLE_CACHING, true);
+    snapshotConf.set(MetastoreConstants.METASTORE_PARTITION_TIMELINE_SNAPSHOT_DIR, snapshotDir.getAbsolutePath());
+    Database database = new Database();
+    database.setName(dbName);
+    Hive.get(conf).createDatabase(database);
+    // client of a database of its own, so that it reads the snapshot dir
+    SessionState.get().setCurrentDatabase(dbName);
+    try {
+      CubeMetastoreClient snapshotClient = CubeMetastoreClient.getInstance(snapshotConf);
+      snapshotClient.createStorage(new HDFSStorage(c1));
+      snapshotClient.createStorage(new HDFSStorage(c2));
+      snapshotClient.createCube(CUBE_NAME, cubeMeasures, cubeDimensions);
+
+      String factName = "testTimelineSnapshotFact";
+      List<FieldSchema> factColumns = new ArrayList<FieldSchema>(cubeMeasures.size());
+      for (CubeMeasure measure : cubeMeasures) {
+        factColumns.add(measure.getColumn());
+      }
+      StorageTableDesc s1 = new StorageTableDesc();
+      s1.setInputFormat(TextInputFormat.class.getCanonicalName());
+      s1.setOutputFormat(HiveIgnoreKeyTextOutputFormat.class.getCanonicalName());
+      s1.setPartCols(Lists.newArrayList(getDatePartition()));
+      s1.setTimePartCols(Lists.newArrayList(getDatePartitionKey()));
+      Map<String, Set<UpdatePeriod>> updatePeriods = new HashMap<String, Set<UpdatePeriod>>();
+      Map<String, StorageTableDesc> storageTables = new HashMap<String, StorageTableDesc>();
+      for (String storage : new String[]{c1, c2}) {
+        updatePeriods.put(storage, Sets.newHashSet(UpdatePeriod.HOURLY));
+        storageTables.put(storage, s1);
+      }
+      snapshotClient.createCubeFactTable(CUBE_NAME, factName, factColumns, updatePeriods, 0L, null, storageTables);
+      Map<String, Date> timeParts = new HashMap<String, Date>();
+      timeParts.put(getDatePartitionKey(), now);
+      for (String storage : new String[]{c1, c2}) {
+        snapshotClient.addPartition(new StoragePartitionDesc(factName, timeParts, null, UpdatePeriod.HOURLY), storage);
+      }
+      String c1TableName = MetastoreUtil.getFactOrDimtableStorageTableName(factName, c1);
+      String c2TableName = MetastoreUtil.getFactOrDimtableStorageTableName(factName, c2);
+
+      // warm up loads timelines of all fact storage tables
+      snapshotClient.partitionTimelineCache.invalidate(c1TableName);
+      snapshotClient.partitionTimelineCache.invalidate(c2TableName);
+      assertEquals(snapshotClient.loadAllPartitionTimelines(), 2);
+      Assert.assertNotNull(snapshotClient.partitionTimelineCache.get(c1TableName));
+      Assert.assertNotNull(snapshotClient.partitionTimelineCache.get(c2TableName));
+
+      // mark timelines in memory only, so that timelines loaded from the snapshot can be told apart from timelines
+      // loaded from table properties
+      TimePartition marker = TimePartition.of(UpdatePeriod.HOURLY, nowMinus5);
+      for (String storage : new String[]{c1, c2}) {
+        snapshotClient.partitionTimelineCache.get(factName, storage, UpdatePeriod.HOURLY, getDatePartitionKey())
+          .add(marker);
+      }
+      // timelines written back to table properties in the last second are left out of the snapshot
+      Thread.sleep(2000);
+      assertEquals(snapshotClient.saveTimelineSnapshot(), 2);
+
+      snapshotClient.partitionTimelineCache.invalidate(c1TableName);
+      snapshotClient.partitionTimelineCache.invalidate(c2TableName);
+      Assert.assertTrue(snapshotClient.partitionTimelineCache.get(factName, c1, UpdatePeriod.HOURLY,
+        getDatePartitionKey()).exists(marker));
+
+      // change of lastDdlTime of the table makes its snapshot entry stale
+      Table c2Table = snapshotClient.getHiveTable(c2TableName);
+      c2Table.getParameters().put("test.timeline.snapshot", "changed");
+      snapshotClient.pushHiveTable(c2Table);
+      snapshotClient.partitionTimelineCache.invalidate(c2TableName);
+      PartitionTimeline reloaded = snapshotClient.partitionTimelineCache.get(factName, c2, UpdatePeriod.HOURLY,
+        getDatePartitionKey());
+      Assert.assertFalse(reloaded.exists(marker));
+      Assert.assertTrue(reloaded.exists(TimePartition.of(UpdatePeriod.HOURLY, now)));
+    } finally {
+      SessionState.get().setCurrentDatabase(TestCubeMetastoreClient.class.getSimpleName());
+      Hive.get(conf).dropDatabase(dbName, true, true, true);
+      for (File file : snapshotDir.listFiles()) {
+        Assert.assertTrue(file.delete());
+      }
+      Assert.assertTrue(snapshotDir.delete());
+    }
+  }
 }
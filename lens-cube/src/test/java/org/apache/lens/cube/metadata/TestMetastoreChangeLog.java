@@ -0,0 +1,171 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.cube.metadata;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.metastore.api.Database;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.ql.metadata.Hive;
+import org.apache.hadoop.hive.ql.metadata.Table;
+import org.apache.hadoop.hive.ql.session.SessionState;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Sets;
+
+public class TestMetastoreChangeLog {
+
+  private final Configuration conf = new Configuration();
+  private Path dir;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    dir = new Path("target/metastore-change-log-" + System.nanoTime());
+  }
+
+  @AfterMethod
+  public void tearDown() throws IOException {
+    FileSystem.getLocal(conf).delete(dir, true);
+  }
+
+  private static MetastoreChangeLog.Change change(String database, String table) {
+    return new MetastoreChangeLog.Change(database, table);
+  }
+
+  @Test
+  public void testChangesReachOtherServers() throws IOException {
+    MetastoreChangeLog server1 = new MetastoreChangeLog(conf, dir, "server1", 3600000);
+    server1.publish("db1", "written_before_start");
+    Assert.assertTrue(server1.sync().isEmpty());
+    // changes written before the log is created are skipped
+    MetastoreChangeLog server2 = new MetastoreChangeLog(conf, dir, "server2", 3600000);
+    Assert.assertTrue(server2.sync().isEmpty());
+
+    // changes written after the log is created are read, even by its first sync
+    MetastoreChangeLog server4 = new MetastoreChangeLog(conf, dir, "server4", 3600000);
+    server1.publish("db1", "written_after_start");
+    server1.sync();
+    Assert.assertEquals(server4.sync(), Collections.singletonList(change("db1", "written_after_start")));
+    Assert.assertEquals(server2.sync(), Collections.singletonList(change("db1", "written_after_start")));
+
+    server1.publish("DB1", "Fact1");
+    server1.publish("db1", "fact1");
+    server1.publish("db2", "dim1");
+    Assert.assertTrue(server1.sync().isEmpty());
+    server1.publish("db1", "fact2");
+    server2.publish("db1", "cube1");
+    Assert.assertTrue(server1.sync().isEmpty());
+    Assert.assertEquals(server2.sync(), Arrays.asList(change("db1", "fact1"), change("db2", "dim1"),
+      change("db1", "fact2")));
+    Assert.assertTrue(server2.sync().isEmpty());
+    Assert.assertEquals(server1.sync(), Collections.singletonList(change("db1", "cube1")));
+
+    // a new server with the same id continues the sequence of earlier run
+    MetastoreChangeLog server3 = new MetastoreChangeLog(conf, dir, "server3", 3600000);
+    MetastoreChangeLog restarted = new MetastoreChangeLog(conf, dir, "server1", 3600000);
+    restarted.publish("db1", "fact3");
+    restarted.sync();
+    Assert.assertEquals(server2.sync(), Collections.singletonList(change("db1", "fact3")));
+    Assert.assertEquals(server3.sync(), Collections.singletonList(change("db1", "fact3")));
+  }
+
+  @Test
+  public void testExpiredChangesAreDeleted() throws IOException, InterruptedException {
+    MetastoreChangeLog server1 = new MetastoreChangeLog(conf, dir, "server1", 2000);
+    MetastoreChangeLog server2 = new MetastoreChangeLog(conf, dir, "server2", 2000);
+    server2.sync();
+    server1.publish("db1", "fact1");
+    server1.sync();
+    Assert.assertEquals(server2.sync(), Collections.singletonList(change("db1", "fact1")));
+    // written files are deleted by their writer once expired
+    Thread.sleep(3100);
+    server1.sync();
+    Assert.assertEquals(FileSystem.getLocal(conf).listStatus(dir).length, 0);
+  }
+
+  /**
+   * A change made by another server is applied to the cached metadata of the client once the change log is synced,
+   * also when the database name is used in different case by the server and the client.
+   */
+  @Test
+  public void testRemoteChangeRefreshesClient() throws Exception {
+    HiveConf hiveConf = new HiveConf(TestMetastoreChangeLog.class);
+    // the change log of clients is started once per jvm, so it gets a directory of its own
+    Path clientsDir = new Path("target/metastore-change-log-clients");
+    hiveConf.set(MetastoreConstants.METASTORE_CHANGE_LOG_DIR, clientsDir.toString());
+    // sync only when the test does
+    hiveConf.setLong(MetastoreConstants.METASTORE_CHANGE_LOG_SYNC_INTERVAL_MILLIS, 3600000);
+    String dbName = "Test_Metastore_Change_Log";
+    String cubeName = "change_log_cube";
+    SessionState previous = SessionState.get();
+    SessionState.start(hiveConf);
+    Database database = new Database();
+    database.setName(dbName);
+    Hive.get(hiveConf).createDatabase(database);
+    SessionState.get().setCurrentDatabase(dbName);
+    try {
+      CubeMetastoreClient client = CubeMetastoreClient.getInstance(hiveConf);
+      Set<CubeMeasure> measures = Sets.<CubeMeasure>newHashSet(new ColumnMeasure(new FieldSchema("msr1", "int",
+        "first measure")));
+      Set<CubeDimAttribute> dimensions = Sets.<CubeDimAttribute>newHashSet(new BaseDimAttribute(
+        new FieldSchema("dim1", "string", "first dimension")));
+      client.createCube(cubeName, measures, dimensions);
+      Assert.assertNull(client.getCube(cubeName).getProperties().get("test.changed.by"));
+
+      // another server alters the cube and publishes the change
+      Table table = Hive.get(hiveConf).getTable(dbName, cubeName);
+      table.getParameters().put("test.changed.by", "remote");
+      Hive.get(hiveConf).alterTable(cubeName, table);
+      MetastoreChangeLog remote = new MetastoreChangeLog(hiveConf, clientsDir, "remote-" + System.nanoTime(),
+        3600000);
+      remote.publish(dbName.toUpperCase(), cubeName);
+      remote.sync();
+      // cached cube is stale till the change log is synced
+      Assert.assertNull(client.getCube(cubeName).getProperties().get("test.changed.by"));
+
+      CubeMetastoreClient.syncChangeLog(hiveConf);
+      Assert.assertEquals(client.getCube(cubeName).getProperties().get("test.changed.by"), "remote");
+    } finally {
+      CubeMetastoreClient.stopChangeLog();
+      Hive.get(hiveConf).dropDatabase(dbName, true, true, true);
+      if (previous != null) {
+        SessionState.setCurrentSessionState(previous);
+      } else {
+        SessionState.detachSession();
+      }
+      FileSystem.getLocal(hiveConf).delete(clientsDir, true);
+    }
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testInvalidServerId() throws IOException {
+    new MetastoreChangeLog(conf, dir, "server_1", 3600000);
+  }
+}
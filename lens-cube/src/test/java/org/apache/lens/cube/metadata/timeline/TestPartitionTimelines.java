@@ -20,7 +20,10 @@ package org.apache.lens.cube.metadata.timeline;
 
 import static org.testng.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
 import java.util.*;
 
 import org.apache.lens.cube.metadata.TestTimePartition;
@@ -44,7 +47,8 @@ public class TestPartitionTimelines {
   private static final List<Class<? extends PartitionTimeline>> TIMELINE_IMPLEMENTATIONS = Arrays.asList(
     StoreAllPartitionTimeline.class,
     EndsAndHolesPartitionTimeline.class,
-    RangesPartitionTimeline.class
+    RangesPartitionTimeline.class,
+    RunLengthPartitionTimeline.class
   );
 
   @DataProvider(name = "update-periods")
@@ -107,6 +111,123 @@ public class TestPartitionTimelines {
     }
   }
 
+  @Test(dataProvider = "update-periods-and-timeline-classes")
+  public <T extends PartitionTimeline> void testExistsAndCoveredRanges(UpdatePeriod period, Class<T> clz) throws
+    LensException, InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+    T timeline = getInstance(clz, period);
+    // covered: [0, 3), [5, 6), [8, 10)
+    for (int i : new int[]{0, 1, 2, 5, 8, 9}) {
+      timeline.add(partitionAtDiff(period, i));
+    }
+    for (int i = -2; i < 12; i++) {
+      assertEquals(timeline.exists(partitionAtDiff(period, i)), (i >= 0 && i < 3) || i == 5 || i == 8 || i == 9);
+    }
+    assertEquals(timeline.getCoveredRanges(partitionAtDiff(period, 1).rangeUpto(partitionAtDiff(period, 9))),
+      Lists.newArrayList(partitionAtDiff(period, 1).rangeUpto(partitionAtDiff(period, 3)),
+        partitionAtDiff(period, 5).rangeUpto(partitionAtDiff(period, 6)),
+        partitionAtDiff(period, 8).rangeUpto(partitionAtDiff(period, 9))));
+    assertTrue(timeline.getCoveredRanges(partitionAtDiff(period, 3).rangeUpto(partitionAtDiff(period, 5))).isEmpty());
+  }
+
+  @Test
+  public void testCoveredRangesOfMultiYearTimelines() throws LensException, InvocationTargetException,
+    NoSuchMethodException, InstantiationException, IllegalAccessException {
+    // three years of hourly partitions with a few random holes and a few missing days
+    final Random randomGenerator = new Random(42);
+    int numParts = 3 * 365 * 24;
+    List<TimePartition> parts = Lists.newArrayListWithCapacity(numParts);
+    for (int i = 0; i < numParts; i++) {
+      if (randomGenerator.nextInt(100) != 0 && (i / 24) % 100 != 0) {
+        parts.add(partitionAtDiff(UpdatePeriod.HOURLY, -i));
+      }
+    }
+    TimePartitionRange queried = partitionAtDiff(UpdatePeriod.HOURLY, -numParts + 1000)
+      .rangeUpto(partitionAtDiff(UpdatePeriod.HOURLY, -1000));
+    List<TimePartitionRange> expected = null;
+    for (Class<? extends PartitionTimeline> clazz : TIMELINE_IMPLEMENTATIONS) {
+      PartitionTimeline timeline = getInstance(clazz, UpdatePeriod.HOURLY);
+      timeline.add(parts);
+      int found = 0;
+      for (TimePartition part : queried) {
+        if (timeline.exists(part)) {
+          found++;
+        }
+      }
+      List<TimePartitionRange> covered = timeline.getCoveredRanges(queried);
+      long coveredParts = 0;
+      for (TimePartitionRange range : covered) {
+        coveredParts += range.size();
+      }
+      assertEquals(coveredParts, found);
+      if (expected == null) {
+        expected = covered;
+      } else {
+        assertEquals(covered, expected, clazz.getSimpleName());
+      }
+    }
+  }
+
+  @Test
+  public void testSnapshotRoundTrip() throws Exception {
+    File file = File.createTempFile("timelines", ".snapshot");
+    try {
+      Map<String, PartitionTimelineSnapshot.Entry> entries = Maps.newHashMap();
+      List<PartitionTimeline> saved = Lists.newArrayList();
+      for (Class<? extends PartitionTimeline> clazz : TIMELINE_IMPLEMENTATIONS) {
+        PartitionTimelineSnapshot.Entry entry = new PartitionTimelineSnapshot.Entry("1000");
+        for (UpdatePeriod period : new UpdatePeriod[]{UpdatePeriod.HOURLY, UpdatePeriod.DAILY}) {
+          PartitionTimeline timeline = getInstance(clazz, period);
+          for (int i : new int[]{0, 1, 2, 5, 8, 9}) {
+            timeline.add(partitionAtDiff(period, -i));
+          }
+          entry.add(timeline);
+          saved.add(timeline);
+        }
+        entries.put(TABLE_NAME + "_" + clazz.getSimpleName(), entry);
+      }
+      PartitionTimelineSnapshot.write(file, entries);
+
+      PartitionTimelineSnapshot snapshot = PartitionTimelineSnapshot.open(file);
+      assertEquals(snapshot.size(), TIMELINE_IMPLEMENTATIONS.size());
+      Iterator<PartitionTimeline> savedIterator = saved.iterator();
+      for (Class<? extends PartitionTimeline> clazz : TIMELINE_IMPLEMENTATIONS) {
+        String storageTable = TABLE_NAME + "_" + clazz.getSimpleName();
+        // entries saved with a different lastDdlTime are not valid any more
+        assertNull(snapshot.get(storageTable, "1001"));
+        PartitionTimelineSnapshot.Entry entry = snapshot.get(storageTable.toUpperCase(), "1000");
+        assertEquals(entry.size(), 2);
+        for (UpdatePeriod period : new UpdatePeriod[]{UpdatePeriod.HOURLY, UpdatePeriod.DAILY}) {
+          PartitionTimeline restored = getInstance(clazz, period);
+          assertTrue(entry.restore(restored));
+          assertEquals(restored, savedIterator.next());
+        }
+        // timelines of other implementations or update periods are not restored
+        Class<? extends PartitionTimeline> other = TIMELINE_IMPLEMENTATIONS.get(
+          (TIMELINE_IMPLEMENTATIONS.indexOf(clazz) + 1) % TIMELINE_IMPLEMENTATIONS.size());
+        assertFalse(entry.restore(getInstance(other, UpdatePeriod.HOURLY)));
+        assertFalse(entry.restore(getInstance(clazz, UpdatePeriod.MONTHLY)));
+      }
+      assertNull(snapshot.get("unknown_table", "1000"));
+    } finally {
+      assertTrue(file.delete());
+    }
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void testInvalidSnapshot() throws IOException {
+    File file = File.createTempFile("timelines", ".snapshot");
+    try {
+      Files.write(file.toPath(), "not a snapshot".getBytes("UTF-8"));
+      PartitionTimelineSnapshot.open(file);
+    } finally {
+      assertTrue(file.delete());
+    }
+  }
+
+  private static TimePartition partitionAtDiff(UpdatePeriod period, int diff) throws LensException {
+    return TimePartition.of(period, TestTimePartition.timeAtDiff(TestTimePartition.NOW, period, diff));
+  }
+
   public static void assertSameTimelines(List<PartitionTimeline> timelines) {
     List<Iterator<TimePartition>> iterators = Lists.newArrayList();
     for (PartitionTimeline timeline : timelines) {
@@ -0,0 +1,153 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.cube.parse;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.*;
+
+import org.apache.lens.cube.metadata.*;
+import org.apache.lens.cube.metadata.timeline.*;
+import org.apache.lens.server.api.error.LensException;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Benchmark of partition lookups done by {@link StorageTableResolver} for a time range, comparing the earlier path
+ * which checks every partition in every storage table against the path which gets covered ranges of each storage table
+ * once and walks them with {@link StorageTableResolver.PartitionCoverage}.
+ * <p></p>
+ * Not part of the regular test run, run with mvn test -P benchmarks
+ */
+@Slf4j
+public class StorageTableResolverBenchmark {
+
+  private static final String PART_COL = "pt";
+  private static final int NUM_STORAGE_TABLES = 3;
+  private static final int YEARS = 3;
+  private static final int WARMUP_RUNS = 5;
+  private static final int MEASURED_RUNS = 20;
+  private static final List<Class<? extends PartitionTimeline>> TIMELINE_IMPLEMENTATIONS = Arrays.asList(
+    StoreAllPartitionTimeline.class,
+    EndsAndHolesPartitionTimeline.class,
+    RangesPartitionTimeline.class,
+    RunLengthPartitionTimeline.class
+  );
+
+  @Test
+  public void benchmarkHourlyPartitionLookup() throws Exception {
+    UpdatePeriod period = UpdatePeriod.HOURLY;
+    int numParts = YEARS * 365 * 24;
+    Date from = TestTimePartition.timeAtDiff(TestTimePartition.NOW, period, -numParts + 1000);
+    Date to = TestTimePartition.timeAtDiff(TestTimePartition.NOW, period, -1000);
+    for (Class<? extends PartitionTimeline> clazz : TIMELINE_IMPLEMENTATIONS) {
+      Map<String, PartitionTimeline> timelines = createTimelines(clazz, period, numParts);
+      List<FactPartition> expected = lookupEachPartition(timelines, from, to, period);
+      assertEquals(lookupCoveredRanges(timelines, from, to, period), expected, clazz.getSimpleName());
+
+      long perPartitionNanos = 0;
+      long coveredRangesNanos = 0;
+      for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+        long startTime = System.nanoTime();
+        lookupEachPartition(timelines, from, to, period);
+        long midTime = System.nanoTime();
+        lookupCoveredRanges(timelines, from, to, period);
+        long endTime = System.nanoTime();
+        if (run >= WARMUP_RUNS) {
+          perPartitionNanos += midTime - startTime;
+          coveredRangesNanos += endTime - midTime;
+        }
+      }
+      log.info("{}: {} partitions in {} storage tables, lookup of each partition took {} micros, covered ranges took"
+          + " {} micros on average", clazz.getSimpleName(), numParts - 2000, NUM_STORAGE_TABLES,
+        perPartitionNanos / MEASURED_RUNS / 1000, coveredRangesNanos / MEASURED_RUNS / 1000);
+    }
+  }
+
+  /**
+   * Timelines of storage tables, each having partitions for all of the period except a few random holes and a few
+   * missing days of its own.
+   */
+  private Map<String, PartitionTimeline> createTimelines(Class<? extends PartitionTimeline> clazz,
+    UpdatePeriod period, int numParts) throws Exception {
+    Random randomGenerator = new Random(42);
+    Map<String, PartitionTimeline> timelines = new LinkedHashMap<String, PartitionTimeline>();
+    for (int t = 0; t < NUM_STORAGE_TABLES; t++) {
+      String storageTable = "c" + t + "_fact";
+      PartitionTimeline timeline = clazz.getConstructor(String.class, UpdatePeriod.class, String.class)
+        .newInstance(storageTable, period, PART_COL);
+      List<TimePartition> parts = Lists.newArrayListWithCapacity(numParts);
+      for (int i = 0; i < numParts; i++) {
+        if (randomGenerator.nextInt(100) != 0 && (i / 24 + t) % 100 != 0) {
+          parts.add(TimePartition.of(period, TestTimePartition.timeAtDiff(TestTimePartition.NOW, period, -i)));
+        }
+      }
+      timeline.add(parts);
+      timelines.put(storageTable, timeline);
+    }
+    return timelines;
+  }
+
+  /** Earlier path: every partition of the range is looked up in every storage table */
+  private List<FactPartition> lookupEachPartition(Map<String, PartitionTimeline> timelines, Date from, Date to,
+    UpdatePeriod period) throws LensException {
+    List<FactPartition> found = new ArrayList<FactPartition>();
+    for (Date dt : TimeRange.iterable(from, to, period, 1)) {
+      FactPartition part = new FactPartition(PART_COL, dt, period, null, null);
+      for (Map.Entry<String, PartitionTimeline> timeline : timelines.entrySet()) {
+        if (timeline.getValue().exists(TimePartition.of(period, part.getPartSpec()))) {
+          part.getStorageTables().add(timeline.getKey());
+          part.setFound(true);
+        }
+      }
+      if (part.isFound()) {
+        found.add(part);
+      }
+    }
+    return found;
+  }
+
+  /** Current path: covered ranges of each storage table are got once and walked along with the partitions */
+  private List<FactPartition> lookupCoveredRanges(Map<String, PartitionTimeline> timelines, Date from, Date to,
+    UpdatePeriod period) throws LensException {
+    Map<String, StorageTableResolver.PartitionCoverage> coverages =
+      new LinkedHashMap<String, StorageTableResolver.PartitionCoverage>();
+    for (Map.Entry<String, PartitionTimeline> timeline : timelines.entrySet()) {
+      coverages.put(timeline.getKey(), new StorageTableResolver.PartitionCoverage(
+        timeline.getValue().getCoveredRanges(TimePartitionRange.between(from, to, period))));
+    }
+    List<FactPartition> found = new ArrayList<FactPartition>();
+    for (Date dt : TimeRange.iterable(from, to, period, 1)) {
+      FactPartition part = new FactPartition(PART_COL, dt, period, null, null);
+      for (Map.Entry<String, StorageTableResolver.PartitionCoverage> coverage : coverages.entrySet()) {
+        if (coverage.getValue().covers(dt)) {
+          part.getStorageTables().add(coverage.getKey());
+          part.setFound(true);
+        }
+      }
+      if (part.isFound()) {
+        found.add(part);
+      }
+    }
+    return found;
+  }
+}
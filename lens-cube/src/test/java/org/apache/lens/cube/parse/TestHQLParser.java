@@ -346,4 +346,41 @@ public class TestHQLParser {
     String genQuery = HQLParser.getString(selectAST);
     Assert.assertEquals(genQuery, select);
   }
+
+  @Test
+  public void testCachedParseHandsOutCopies() throws LensException {
+    String query = "select a, b from tab where c = 'x'";
+    ASTNode first = HQLParser.parseHQLCached(query, conf);
+    ASTNode second = HQLParser.parseHQLCached(query, conf);
+    Assert.assertNotSame(first, second);
+    Assert.assertTrue(HQLParser.equalsAST(first, second));
+    Assert.assertEquals(first.dump(), HQLParser.parseHQL(query, conf).dump());
+
+    // changes to one copy do not show up in others
+    ASTNode where = HQLParser.findNodeByPath(first, TOK_INSERT, TOK_WHERE);
+    where.deleteChild(0);
+    Assert.assertNotNull(HQLParser.findNodeByPath(HQLParser.parseHQLCached(query, conf), TOK_INSERT, TOK_WHERE)
+      .getChild(0));
+    Assert.assertNotNull(HQLParser.findNodeByPath(second, TOK_INSERT, TOK_WHERE).getChild(0));
+  }
+
+  @Test
+  public void testCachedParseKeyedOnParseConf() throws LensException {
+    String query = "select `a b` from tab";
+    HiveConf quotedConf = new HiveConf(conf);
+    quotedConf.set(HiveConf.ConfVars.HIVE_QUOTEDID_SUPPORT.varname, "column");
+    ASTNode quoted = HQLParser.parseHQLCached(query, quotedConf);
+    Assert.assertEquals(HQLParser.findNodeByPath(quoted, TOK_INSERT, TOK_SELECT, TOK_SELEXPR, TOK_TABLE_OR_COL)
+      .getChild(0).getText(), "a b");
+
+    // parse of the same text without quoted identifier support is not served from the cache
+    HiveConf unquotedConf = new HiveConf(conf);
+    unquotedConf.set(HiveConf.ConfVars.HIVE_QUOTEDID_SUPPORT.varname, "none");
+    try {
+      HQLParser.parseHQLCached(query, unquotedConf);
+      Assert.fail("Query with quoted identifier should not parse without quoted identifier support");
+    } catch (LensException e) {
+      // expected
+    }
+  }
 }
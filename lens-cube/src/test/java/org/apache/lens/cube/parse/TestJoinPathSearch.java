@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.lens.cube.parse;
+
+import java.util.*;
+
+import org.apache.lens.cube.metadata.CubeDimAttribute;
+import org.apache.lens.cube.metadata.Dimension;
+import org.apache.lens.cube.metadata.SchemaGraph;
+import org.apache.lens.cube.metadata.SchemaGraph.TableRelationship;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestJoinPathSearch {
+
+  private static final int NUM_TABLES = 6;
+
+  private final List<Dimension> tables = new ArrayList<Dimension>();
+
+  public TestJoinPathSearch() {
+    for (int i = 0; i < NUM_TABLES; i++) {
+      tables.add(new Dimension("table" + i, new HashSet<CubeDimAttribute>()));
+    }
+  }
+
+  /**
+   * Random path from table0, with edges listed from the destination back to table0 as in schema graph.
+   */
+  private SchemaGraph.JoinPath randomPath(Random random) {
+    List<TableRelationship> edges = new ArrayList<TableRelationship>();
+    int from = 0;
+    int length = 1 + random.nextInt(3);
+    for (int i = 0; i < length; i++) {
+      int to = 1 + random.nextInt(NUM_TABLES - 1);
+      edges.add(new TableRelationship("col" + random.nextInt(2), tables.get(from), "id", tables.get(to)));
+      from = to;
+    }
+    SchemaGraph.JoinPath path = new SchemaGraph.JoinPath();
+    for (int i = edges.size() - 1; i >= 0; i--) {
+      path.addEdge(edges.get(i));
+    }
+    return path;
+  }
+
+  private static int cost(List<List<SchemaGraph.JoinPath>> pathSets, int[] selection) {
+    Set<List<TableRelationship>> prefixes = new HashSet<List<TableRelationship>>();
+    for (int d = 0; d < selection.length; d++) {
+      List<TableRelationship> edges = pathSets.get(d).get(selection[d]).getEdges();
+      List<TableRelationship> prefix = new ArrayList<TableRelationship>();
+      for (int e = edges.size() - 1; e >= 0; e--) {
+        prefix.add(edges.get(e));
+        prefixes.add(new ArrayList<TableRelationship>(prefix));
+      }
+    }
+    return prefixes.size();
+  }
+
+  // first selection of least cost, in enumeration order of the cartesian product
+  private static int[] bruteForce(List<List<SchemaGraph.JoinPath>> pathSets) {
+    int[] selection = new int[pathSets.size()];
+    int[] best = null;
+    int bestCost = Integer.MAX_VALUE;
+    while (true) {
+      int cost = cost(pathSets, selection);
+      if (cost < bestCost) {
+        bestCost = cost;
+        best = selection.clone();
+      }
+      int d = selection.length - 1;
+      while (d >= 0 && ++selection[d] == pathSets.get(d).size()) {
+        selection[d--] = 0;
+      }
+      if (d < 0) {
+        return best;
+      }
+    }
+  }
+
+  @Test
+  public void testSameAsEnumeration() {
+    Random random = new Random(7);
+    for (int iter = 0; iter < 200; iter++) {
+      List<List<SchemaGraph.JoinPath>> pathSets = new ArrayList<List<SchemaGraph.JoinPath>>();
+      int numDims = 1 + random.nextInt(6);
+      for (int d = 0; d < numDims; d++) {
+        List<SchemaGraph.JoinPath> paths = new ArrayList<SchemaGraph.JoinPath>();
+        int numPaths = 1 + random.nextInt(4);
+        for (int p = 0; p < numPaths; p++) {
+          paths.add(randomPath(random));
+        }
+        pathSets.add(paths);
+      }
+      JoinPathSearch search = new JoinPathSearch(pathSets, Long.MAX_VALUE);
+      int[] expected = bruteForce(pathSets);
+      Assert.assertEquals(search.search(), expected, "path sets: " + pathSets);
+      Assert.assertEquals(search.getBestCost(), cost(pathSets, expected));
+      Assert.assertFalse(search.isExhausted());
+    }
+  }
+
+  @Test
+  public void testBudget() {
+    Random random = new Random(11);
+    List<List<SchemaGraph.JoinPath>> pathSets = new ArrayList<List<SchemaGraph.JoinPath>>();
+    for (int d = 0; d < 12; d++) {
+      List<SchemaGraph.JoinPath> paths = new ArrayList<SchemaGraph.JoinPath>();
+      for (int p = 0; p < 4; p++) {
+        paths.add(randomPath(random));
+      }
+      pathSets.add(paths);
+    }
+    JoinPathSearch search = new JoinPathSearch(pathSets, 1);
+    int[] selection = search.search();
+    Assert.assertNotNull(selection);
+    Assert.assertEquals(selection.length, 12);
+    Assert.assertTrue(search.isExhausted());
+    Assert.assertEquals(search.getBestCost(), cost(pathSets, selection));
+  }
+
+  @Test
+  public void testNoPath() {
+    List<List<SchemaGraph.JoinPath>> pathSets = new ArrayList<List<SchemaGraph.JoinPath>>();
+    pathSets.add(Collections.singletonList(randomPath(new Random(3))));
+    pathSets.add(new ArrayList<SchemaGraph.JoinPath>());
+    Assert.assertNull(new JoinPathSearch(pathSets, Long.MAX_VALUE).search());
+    Assert.assertEquals(new JoinPathSearch(new ArrayList<List<SchemaGraph.JoinPath>>(), Long.MAX_VALUE).search(),
+      new int[0]);
+  }
+}
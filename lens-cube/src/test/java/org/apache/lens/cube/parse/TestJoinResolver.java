@@ -135,6 +135,62 @@ public class TestJoinResolver extends TestQueryRewrite {
     validatePath(paths.get(5), zipDim, cityDim, testDim2, (AbstractCubeTable) testCube);
   }
 
+  private void assertIndexedPaths(SchemaGraph graph, AbstractCubeTable source, AbstractCubeTable target) {
+    List<SchemaGraph.JoinPath> searched = new SchemaGraph.GraphSearch(source, target, graph).findAllPathsToTarget();
+    List<SchemaGraph.JoinPath> indexed = graph.getAllPaths(source, target);
+    Assert.assertEquals(indexed.size(), searched.size());
+    for (int i = 0; i < searched.size(); i++) {
+      Assert.assertEquals(indexed.get(i).getEdges(), searched.get(i).getEdges());
+    }
+    // served from index now, paths handed out must not be shared
+    List<SchemaGraph.JoinPath> again = graph.getAllPaths(source, target);
+    for (int i = 0; i < again.size(); i++) {
+      Assert.assertNotSame(again.get(i), indexed.get(i));
+      Assert.assertEquals(again.get(i).getEdges(), indexed.get(i).getEdges());
+    }
+  }
+
+  @Test
+  public void testIndexedJoinPaths() throws Exception {
+    SchemaGraph schemaGraph = metastore.getSchemaGraph();
+    for (CubeInterface cube : metastore.getAllCubes()) {
+      for (Dimension dim : metastore.getAllDimensions()) {
+        assertIndexedPaths(schemaGraph, dim, (AbstractCubeTable) cube);
+      }
+    }
+    for (Dimension dim : metastore.getAllDimensions()) {
+      for (Dimension otherDim : metastore.getAllDimensions()) {
+        if (otherDim != dim) {
+          assertIndexedPaths(schemaGraph, dim, otherDim);
+        }
+      }
+    }
+
+    // altering a dimension refreshes the graph, paths through it are searched again
+    long version = schemaGraph.getVersion();
+    CubeInterface testCube = metastore.getCube("testcube");
+    Map<AbstractCubeTable, Set<TableRelationship>> inGraphBefore = schemaGraph.getCubeInGraph(testCube);
+    Map<AbstractCubeTable, Set<TableRelationship>> inGraphCopy = new HashMap<AbstractCubeTable,
+      Set<TableRelationship>>();
+    for (Map.Entry<AbstractCubeTable, Set<TableRelationship>> entry : inGraphBefore.entrySet()) {
+      inGraphCopy.put(entry.getKey(), new HashSet<TableRelationship>(entry.getValue()));
+    }
+    metastore.alterDimension("citydim", metastore.getDimension("citydim"));
+    Assert.assertSame(metastore.getSchemaGraph(), schemaGraph);
+    Assert.assertEquals(schemaGraph.getVersion(), version + 1);
+    // graphs read before the refresh are left as they were, refresh publishes new graphs
+    Assert.assertNotSame(schemaGraph.getCubeInGraph(testCube), inGraphBefore);
+    Assert.assertEquals(inGraphBefore.keySet(), inGraphCopy.keySet());
+    for (Map.Entry<AbstractCubeTable, Set<TableRelationship>> entry : inGraphCopy.entrySet()) {
+      Assert.assertEquals(new HashSet<TableRelationship>(inGraphBefore.get(entry.getKey())), entry.getValue());
+    }
+    for (Dimension dim : metastore.getAllDimensions()) {
+      assertIndexedPaths(schemaGraph, dim, (AbstractCubeTable) testCube);
+    }
+    Assert.assertEquals(schemaGraph.getAllPaths(metastore.getDimension("zipdim"), (AbstractCubeTable) testCube).size(),
+      6);
+  }
+
   private void validatePath(SchemaGraph.JoinPath jp, AbstractCubeTable... tables) {
     Assert.assertTrue(!jp.getEdges().isEmpty());
     Set<AbstractCubeTable> expected = new HashSet<AbstractCubeTable>(Arrays.asList(tables));
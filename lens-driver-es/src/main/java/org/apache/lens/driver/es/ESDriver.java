@@ -49,7 +49,6 @@ import org.apache.lens.server.api.query.cost.QueryCost;
 
 import org.apache.commons.lang.Validate;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.metadata.Table;
 import org.apache.hadoop.hive.ql.parse.ASTNode;
@@ -267,7 +266,7 @@ public class ESDriver implements LensDriver {
     if (rewrittenQueriesCache.containsKey(key)) {
       return rewrittenQueriesCache.get(key);
     } else {
-      final ASTNode rootQueryNode = HQLParser.parseHQL(context.getDriverQuery(this), new HiveConf());
+      final ASTNode rootQueryNode = HQLParser.parseHQL(context, context.getDriverQuery(this));
       setIndexAndTypeIfNotPresent(context, rootQueryNode);
       final ESQuery esQuery = ESVisitor.rewrite(config, rootQueryNode);
       rewrittenQueriesCache.put(key, esQuery);
@@ -23,6 +23,7 @@ import static org.apache.lens.server.api.util.LensUtil.getImplementations;
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -31,6 +32,7 @@ import org.apache.lens.api.LensConf;
 import org.apache.lens.api.LensSessionHandle;
 import org.apache.lens.api.query.QueryHandle;
 import org.apache.lens.api.query.QueryPrepareHandle;
+import org.apache.lens.cube.metadata.CubeMetastoreClient;
 import org.apache.lens.cube.query.cost.FactPartitionBasedQueryCostCalculator;
 import org.apache.lens.server.api.LensConfConstants;
 import org.apache.lens.server.api.driver.*;
@@ -48,6 +50,7 @@ import org.apache.lens.server.api.query.cost.QueryCostCalculator;
 import org.apache.lens.server.api.query.priority.CostRangePriorityDecider;
 import org.apache.lens.server.api.query.priority.CostToPriorityRangeConf;
 import org.apache.lens.server.api.query.priority.QueryPriorityDecider;
+import org.apache.lens.server.api.util.LayeredConfiguration;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.conf.Configuration;
@@ -82,6 +85,28 @@ public class HiveDriver implements LensDriver {
   /** The Constant HS2_CONNECTION_EXPIRY_DELAY. */
   public static final String HS2_CONNECTION_EXPIRY_DELAY = "lens.driver.hive.hs2.connection.expiry.delay";
 
+  /** Maximum number of connections to HiveServer2 for each user. */
+  public static final String HS2_CONNECTION_POOL_MAX_PER_USER = "lens.driver.hive.hs2.connection.pool.max.per.user";
+
+  /** Maximum time (in milliseconds) to wait for a connection to HiveServer2 when all are in use. */
+  public static final String HS2_CONNECTION_POOL_WAIT_TIMEOUT = "lens.driver.hive.hs2.connection.pool.wait.timeout";
+
+  /** Idle time (in milliseconds) after which a pooled connection to HiveServer2 is validated before reuse. */
+  public static final String HS2_CONNECTION_VALIDATION_INTERVAL =
+    "lens.driver.hive.hs2.connection.validation.interval";
+
+  /** Whether plans of explained queries are cached. */
+  public static final String HS2_PLAN_CACHE_ENABLED = "lens.driver.hive.plan.cache.enabled";
+
+  /** Maximum number of cached plans. */
+  public static final String HS2_PLAN_CACHE_MAX_SIZE = "lens.driver.hive.plan.cache.max.size";
+
+  /** Time (in milliseconds) after which a cached plan is dropped. */
+  public static final String HS2_PLAN_CACHE_EXPIRY_MILLIS = "lens.driver.hive.plan.cache.expiry.millis";
+
+  /** Configuration properties which affect planning, plans are cached separately for their values. */
+  public static final String HS2_PLAN_CACHE_CONF_KEYS = "lens.driver.hive.plan.cache.conf.keys";
+
   public static final String HS2_CALCULATE_PRIORITY = "lens.driver.hive.calculate.priority";
   public static final String HS2_COST_CALCULATOR = "lens.driver.hive.cost.calculator.class";
 
@@ -90,8 +115,26 @@ public class HiveDriver implements LensDriver {
    */
   public static final String HS2_PRIORITY_RANGES = "lens.driver.hive.priority.ranges";
 
+  /** Number of rows fetched from hive server in the first fetch of an in memory result. */
+  public static final String INMEMORY_RESULT_FETCH_SIZE = "lens.driver.hive.inmemory.result.fetch.size";
+
+  /** Maximum number of rows fetched from hive server in a single fetch of an in memory result. */
+  public static final String INMEMORY_RESULT_MAX_FETCH_SIZE = "lens.driver.hive.inmemory.result.max.fetch.size";
+
+  /** Number of threads polling status of queries registered for completion notification. */
+  public static final String COMPLETION_NOTIFIER_POOL_SIZE = "lens.driver.hive.completion.notifier.pool.size";
+
   // Default values of conf params
   public static final long DEFAULT_EXPIRY_DELAY = 600 * 1000;
+  public static final int DEFAULT_CONNECTION_POOL_MAX_PER_USER = 8;
+  public static final long DEFAULT_CONNECTION_POOL_WAIT_TIMEOUT = 60 * 1000;
+  public static final long DEFAULT_CONNECTION_VALIDATION_INTERVAL = 30 * 1000;
+  public static final boolean DEFAULT_PLAN_CACHE_ENABLED = false;
+  public static final long DEFAULT_PLAN_CACHE_MAX_SIZE = 1000;
+  public static final long DEFAULT_PLAN_CACHE_EXPIRY_MILLIS = 600 * 1000;
+  public static final int DEFAULT_INMEMORY_RESULT_FETCH_SIZE = 100;
+  public static final int DEFAULT_INMEMORY_RESULT_MAX_FETCH_SIZE = 10000;
+  public static final int DEFAULT_COMPLETION_NOTIFIER_POOL_SIZE = 1;
   public static final String HS2_PRIORITY_DEFAULT_RANGES = "VERY_HIGH,7.0,HIGH,30.0,NORMAL,90,LOW";
   public static final String SESSION_KEY_DELIMITER = ".";
 
@@ -113,16 +156,12 @@ public class HiveDriver implements LensDriver {
   /** The session lock. */
   private final Lock sessionLock;
 
-  // connections need to be separate for each user and each thread
-  /** The thread connections. */
-  private final Map<String, ExpirableConnection> threadConnections =
-    new ConcurrentHashMap<String, ExpirableConnection>();
-
-  /** The thrift conn expiry queue. */
-  private final DelayQueue<ExpirableConnection> thriftConnExpiryQueue = new DelayQueue<ExpirableConnection>();
+  // connections are separate for each user, and shared by all threads
+  /** The connection pool, in case of remote connection. */
+  private ThriftConnectionPool connectionPool;
 
-  /** The connection expiry thread. */
-  private final Thread connectionExpiryThread = new Thread(new ConnectionExpiryRunnable());
+  /** The cache of explained plans. */
+  private HiveQueryPlanCache planCache;
 
   // assigned only in case of embedded connection
   /** The embedded connection. */
@@ -174,125 +213,13 @@ public class HiveDriver implements LensDriver {
     resourcesAddedForSession.put(hiveSession, Boolean.TRUE);
   }
 
-  /**
-   * The Class ConnectionExpiryRunnable.
-   */
-  class ConnectionExpiryRunnable implements Runnable {
-
-    /*
-     * (non-Javadoc)
-     *
-     * @see java.lang.Runnable#run()
-     */
-    @Override
-    public void run() {
-      try {
-        while (true) {
-          ExpirableConnection expired = thriftConnExpiryQueue.take();
-          expired.setExpired();
-          ThriftConnection thConn = expired.getConnection();
-
-          if (thConn != null) {
-            try {
-              log.info("Closed connection: {}", expired.getConnId());
-              thConn.close();
-            } catch (IOException e) {
-              log.error("Error closing connection", e);
-            }
-          }
-        }
-      } catch (InterruptedException intr) {
-        log.warn("Connection expiry thread interrupted", intr);
-        return;
-      }
-    }
-  }
-
-  /** The Constant CONNECTION_COUNTER. */
-  private static final AtomicInteger CONNECTION_COUNTER = new AtomicInteger();
-
-  /**
-   * The Class ExpirableConnection.
-   */
-  static class ExpirableConnection implements Delayed {
-
-    /** The access time. */
-    long accessTime;
-
-    /** The conn. */
-    private final ThriftConnection conn;
-
-    /** The timeout. */
-    private final long timeout;
-
-    /** The expired. */
-    private volatile boolean expired;
-
-    /** The conn id. */
-    private final int connId;
-
-    /**
-     * Instantiates a new expirable connection.
-     *
-     * @param conn    the conn
-     * @param timeout the timeout
-     */
-    public ExpirableConnection(ThriftConnection conn, long timeout) {
-      this.conn = conn;
-      this.timeout = timeout;
-      connId = CONNECTION_COUNTER.incrementAndGet();
-      accessTime = System.currentTimeMillis();
-    }
-
-    private ThriftConnection getConnection() {
-      accessTime = System.currentTimeMillis();
-      return conn;
-    }
-
-    private boolean isExpired() {
-      return expired;
-    }
-
-    /**
-     * Sets the expired.
-     */
-    private void setExpired() {
-      expired = true;
-    }
-
-    private int getConnId() {
-      return connId;
-    }
-
-    /*
-     * (non-Javadoc)
-     *
-     * @see java.lang.Comparable#compareTo(java.lang.Object)
-     */
-    @Override
-    public int compareTo(Delayed other) {
-      return (int) (this.getDelay(TimeUnit.MILLISECONDS) - other.getDelay(TimeUnit.MILLISECONDS));
-    }
-
-    /*
-     * (non-Javadoc)
-     *
-     * @see java.util.concurrent.Delayed#getDelay(java.util.concurrent.TimeUnit)
-     */
-    @Override
-    public long getDelay(TimeUnit unit) {
-      long age = System.currentTimeMillis() - accessTime;
-      return unit.convert(timeout - age, TimeUnit.MILLISECONDS);
-    }
-  }
-
   /**
    * Open connections.
    *
    * @return the int
    */
   int openConnections() {
-    return thriftConnExpiryQueue.size();
+    return connectionPool == null ? 0 : connectionPool.getActiveConnections() + connectionPool.getIdleConnections();
   }
 
   /** The connection class. */
@@ -301,9 +228,6 @@ public class HiveDriver implements LensDriver {
   /** The is embedded. */
   private boolean isEmbedded;
 
-  /** The connection expiry timeout. */
-  private long connectionExpiryTimeout;
-
   /**
    * Instantiates a new hive driver.
    *
@@ -313,9 +237,6 @@ public class HiveDriver implements LensDriver {
     this.sessionLock = new ReentrantLock();
     lensToHiveSession = new HashMap<String, SessionHandle>();
     resourcesAddedForSession = new HashMap<SessionHandle, Boolean>();
-    connectionExpiryThread.setDaemon(true);
-    connectionExpiryThread.setName("HiveDriver-ConnectionExpiryThread");
-    connectionExpiryThread.start();
     driverListeners = new ArrayList<LensEventListener<DriverEvent>>();
     log.info("Hive driver inited");
   }
@@ -345,7 +266,40 @@ public class HiveDriver implements LensDriver {
     connectionClass = this.driverConf.getClass(HIVE_CONNECTION_CLASS, EmbeddedThriftConnection.class,
       ThriftConnection.class);
     isEmbedded = (connectionClass.getName().equals(EmbeddedThriftConnection.class.getName()));
-    connectionExpiryTimeout = this.driverConf.getLong(HS2_CONNECTION_EXPIRY_DELAY, DEFAULT_EXPIRY_DELAY);
+    if (connectionPool != null) {
+      connectionPool.close();
+      connectionPool = null;
+    }
+    if (!isEmbedded) {
+      connectionPool = new ThriftConnectionPool(connectionClass, hiveConf,
+        this.driverConf.getInt(HS2_CONNECTION_POOL_MAX_PER_USER, DEFAULT_CONNECTION_POOL_MAX_PER_USER),
+        this.driverConf.getLong(HS2_CONNECTION_EXPIRY_DELAY, DEFAULT_EXPIRY_DELAY),
+        this.driverConf.getLong(HS2_CONNECTION_POOL_WAIT_TIMEOUT, DEFAULT_CONNECTION_POOL_WAIT_TIMEOUT),
+        this.driverConf.getLong(HS2_CONNECTION_VALIDATION_INTERVAL, DEFAULT_CONNECTION_VALIDATION_INTERVAL));
+    }
+    if (planCache != null) {
+      CubeMetastoreClient.removeTableChangeListener(planCache);
+    }
+    planCache = new HiveQueryPlanCache(this.driverConf.getBoolean(HS2_PLAN_CACHE_ENABLED, DEFAULT_PLAN_CACHE_ENABLED),
+      this.driverConf.getLong(HS2_PLAN_CACHE_MAX_SIZE, DEFAULT_PLAN_CACHE_MAX_SIZE),
+      this.driverConf.getLong(HS2_PLAN_CACHE_EXPIRY_MILLIS, DEFAULT_PLAN_CACHE_EXPIRY_MILLIS),
+      this.driverConf.getTrimmedStringCollection(HS2_PLAN_CACHE_CONF_KEYS));
+    CubeMetastoreClient.addTableChangeListener(planCache);
+    if (completionNotifierPool != null) {
+      completionNotifierPool.shutdownNow();
+    }
+    completionNotifierPool = Executors.newScheduledThreadPool(
+      this.driverConf.getInt(COMPLETION_NOTIFIER_POOL_SIZE, DEFAULT_COMPLETION_NOTIFIER_POOL_SIZE),
+      new ThreadFactory() {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread th = new Thread(r, "HiveDriver-completion-notifier-" + threadCount.incrementAndGet());
+          th.setDaemon(true);
+          return th;
+        }
+      });
     whetherCalculatePriority = this.driverConf.getBoolean(HS2_CALCULATE_PRIORITY, true);
     Class<? extends QueryCostCalculator> queryCostCalculatorClass = this.driverConf.getClass(HS2_COST_CALCULATOR,
       FactPartitionBasedQueryCostCalculator.class, QueryCostCalculator.class);
@@ -405,7 +359,7 @@ public class HiveDriver implements LensDriver {
    * @see org.apache.lens.server.api.driver.LensDriver#explain(java.lang.String, org.apache.hadoop.conf.Configuration)
    */
   @Override
-  public HiveQueryPlan explain(AbstractQueryContext explainCtx) throws LensException {
+  public HiveQueryPlan explain(final AbstractQueryContext explainCtx) throws LensException {
     if (explainCtx.getDriverQuery(this) == null) {
       throw new NullPointerException("Null driver query for " + explainCtx.getUserQuery());
     }
@@ -413,8 +367,29 @@ public class HiveDriver implements LensDriver {
       // explain called again and again
       return (HiveQueryPlan) explainCtx.getDriverContext().getDriverQueryPlan(this);
     }
+    HiveQueryPlan plan = planCache.get(explainCtx.getDriverQuery(this), explainCtx.getDatabase(),
+      explainCtx.getSubmittedUser(), explainCtx.getDriverConf(this), new Callable<HiveQueryPlan>() {
+        @Override
+        public HiveQueryPlan call() throws LensException {
+          return explainWithHive(explainCtx);
+        }
+      });
+    // cached plan is shared, so the context gets a copy with its own cost
+    HiveQueryPlan hqp = plan.copy(calculateQueryCost(explainCtx));
+    explainCtx.getDriverContext().setDriverQueryPlan(this, hqp);
+    return hqp;
+  }
+
+  /**
+   * Explain the query on HiveServer2.
+   *
+   * @param explainCtx the query context
+   * @return the plan, without cost
+   * @throws LensException the lens exception
+   */
+  private HiveQueryPlan explainWithHive(AbstractQueryContext explainCtx) throws LensException {
     log.info("Explain: {}", explainCtx.getDriverQuery(this));
-    Configuration explainConf = new Configuration(explainCtx.getDriverConf(this));
+    Configuration explainConf = new LayeredConfiguration(explainCtx.getDriverConf(this));
     explainConf.setClassLoader(explainCtx.getConf().getClassLoader());
     explainConf.setBoolean(LensConfConstants.QUERY_PERSISTENT_RESULT_INDRIVER, false);
     final String explainQuery = "EXPLAIN EXTENDED " + explainCtx.getDriverQuery(this);
@@ -431,9 +406,7 @@ public class HiveDriver implements LensDriver {
     closeQuery(explainQueryCtx.getQueryHandle());
     try {
       hiveConf.setClassLoader(explainCtx.getConf().getClassLoader());
-      HiveQueryPlan hqp = new HiveQueryPlan(explainOutput, null, hiveConf, calculateQueryCost(explainCtx));
-      explainCtx.getDriverContext().setDriverQueryPlan(this, hqp);
-      return hqp;
+      return new HiveQueryPlan(explainOutput, null, hiveConf, null);
     } catch (HiveException e) {
       throw new LensException("Unable to create hive query plan", e);
     }
@@ -444,6 +417,11 @@ public class HiveDriver implements LensDriver {
     return hiveHandles.size();
   }
 
+  // this is used for tests
+  HiveQueryPlanCache getPlanCache() {
+    return planCache;
+  }
+
   /*
    * (non-Javadoc)
    *
@@ -653,6 +631,12 @@ public class HiveDriver implements LensDriver {
       context.getDriverStatus().setProgress(progress);
       context.getDriverStatus().setDriverStartTime(opStatus.getOperationStarted());
       context.getDriverStatus().setDriverFinishTime(opStatus.getOperationCompleted());
+      if (context.getDriverStatus().isFinished()) {
+        QueryCompletionNotifier notifier = completionNotifiers.get(context.getQueryHandle());
+        if (notifier != null) {
+          notifier.onCompletion();
+        }
+      }
     } catch (Exception e) {
       log.error("Error getting query status", e);
       handleHiveServerError(context, e);
@@ -770,6 +754,15 @@ public class HiveDriver implements LensDriver {
     } finally {
       sessionLock.unlock();
     }
+    if (connectionPool != null) {
+      connectionPool.close();
+    }
+    if (planCache != null) {
+      CubeMetastoreClient.removeTableChangeListener(planCache);
+    }
+    if (completionNotifierPool != null) {
+      completionNotifierPool.shutdownNow();
+    }
   }
 
   /**
@@ -782,12 +775,28 @@ public class HiveDriver implements LensDriver {
     driverListeners.add(driverEventListener);
   }
 
+  /**
+   * Push status change of the query to driver listeners.
+   *
+   * @param handle the query handle
+   */
+  private void notifyStatusChange(QueryHandle handle) {
+    DriverQueryStatusChanged event = new DriverQueryStatusChanged(System.currentTimeMillis(), this, handle);
+    for (LensEventListener<DriverEvent> listener : driverListeners) {
+      try {
+        listener.onEvent(event);
+      } catch (Exception e) {
+        log.warn("Driver event listener {} could not handle status change of {}", listener, handle, e);
+      }
+    }
+  }
+
   @Override
   public ImmutableSet<WaitingQueriesSelectionPolicy> getWaitingQuerySelectionPolicies() {
     return selectionPolicies;
   }
 
-  protected CLIServiceClient getClient() throws LensException {
+  protected ICLIService getClient() throws LensException {
     if (isEmbedded) {
       if (embeddedConnection == null) {
         try {
@@ -805,27 +814,7 @@ public class HiveDriver implements LensDriver {
         user = SessionState.get().getUserName();
       }
 
-      String connectionKey = user.toLowerCase() + Thread.currentThread().getId();
-      ExpirableConnection connection = threadConnections.get(connectionKey);
-      if (connection == null || connection.isExpired()) {
-        try {
-          ThriftConnection tconn = connectionClass.newInstance();
-          tconn.init(hiveConf, user);
-          connection = new ExpirableConnection(tconn, connectionExpiryTimeout);
-          thriftConnExpiryQueue.offer(connection);
-          threadConnections.put(connectionKey, connection);
-          log.info("New thrift connection {} for thread: {} for user: {} connection ID={}", connectionClass,
-            Thread.currentThread().getId(), user, connection.getConnId());
-        } catch (Exception e) {
-          throw new LensException(e);
-        }
-      } else {
-        synchronized (thriftConnExpiryQueue) {
-          thriftConnExpiryQueue.remove(connection);
-          thriftConnExpiryQueue.offer(connection);
-        }
-      }
-      return connection.getConnection().getClient();
+      return connectionPool.getClient(user);
     }
   }
 
@@ -844,7 +833,9 @@ public class HiveDriver implements LensDriver {
       if (context.isDriverPersistent()) {
         return new HivePersistentResultSet(new Path(context.getDriverResultPath()), op, getClient());
       } else if (op.hasResultSet()) {
-        return new HiveInMemoryResultSet(op, getClient(), closeAfterFetch);
+        return new HiveInMemoryResultSet(op, getClient(), closeAfterFetch,
+          driverConf.getInt(INMEMORY_RESULT_FETCH_SIZE, DEFAULT_INMEMORY_RESULT_FETCH_SIZE),
+          driverConf.getInt(INMEMORY_RESULT_MAX_FETCH_SIZE, DEFAULT_INMEMORY_RESULT_MAX_FETCH_SIZE));
       } else {
         // queries that do not have result
         return null;
@@ -914,7 +905,7 @@ public class HiveDriver implements LensDriver {
       SessionHandle hiveSession;
       if (!lensToHiveSession.containsKey(sessionDbKey)) {
         try {
-          hiveSession = getClient().openSession(ctx.getClusterUser(), "");
+          hiveSession = getClient().openSession(ctx.getClusterUser(), "", Collections.<String, String>emptyMap());
           lensToHiveSession.put(sessionDbKey, hiveSession);
           log.info("New hive session for user: {} , lens session: {} hive session handle: {}", ctx.getClusterUser(),
             sessionDbKey, hiveSession.getHandleIdentifier());
@@ -953,25 +944,41 @@ public class HiveDriver implements LensDriver {
     return opHandle;
   }
 
+  /**
+   * Polls status of queries registered for completion notification. Notifiers are scheduled on this executor instead
+   * of running a thread per registration.
+   */
+  private ScheduledExecutorService completionNotifierPool;
+
+  /** The notifiers of queries registered for completion notification. */
+  private final Map<QueryHandle, QueryCompletionNotifier> completionNotifiers =
+    new ConcurrentHashMap<QueryHandle, QueryCompletionNotifier>();
+
   /**
    * The Class QueryCompletionNotifier.
+   * <p></p>
+   * Checks status of the query once every poll interval till the query is complete or timeout has reached. The
+   * listener is also notified as soon as a finished status is seen by {@link #updateStatus(QueryContext)}.
    */
   private class QueryCompletionNotifier implements Runnable {
 
     /** The poll interval. */
-    long pollInterval;
+    final long pollInterval;
 
-    /** The hive handle. */
-    OperationHandle hiveHandle;
-
-    /** The timeout millis. */
-    long timeoutMillis;
+    /** The time by which query should complete. */
+    final long deadline;
 
     /** The listener. */
-    QueryCompletionListener listener;
+    final QueryCompletionListener listener;
 
     /** The handle. */
-    QueryHandle handle;
+    final QueryHandle handle;
+
+    /** Whether listener is already notified. */
+    private final AtomicBoolean notified = new AtomicBoolean(false);
+
+    /** The scheduled poll. */
+    private ScheduledFuture<?> poll;
 
     /**
      * Instantiates a new query completion notifier.
@@ -979,14 +986,22 @@ public class HiveDriver implements LensDriver {
      * @param handle        the handle
      * @param timeoutMillis the timeout millis
      * @param listener      the listener
-     * @throws LensException the lens exception
      */
-    QueryCompletionNotifier(QueryHandle handle, long timeoutMillis, QueryCompletionListener listener)
-      throws LensException {
+    QueryCompletionNotifier(QueryHandle handle, long timeoutMillis, QueryCompletionListener listener) {
       this.handle = handle;
-      this.timeoutMillis = timeoutMillis;
+      this.deadline = System.currentTimeMillis() + timeoutMillis;
       this.listener = listener;
-      this.pollInterval = timeoutMillis / 10;
+      this.pollInterval = Math.max(timeoutMillis / 10, 1);
+    }
+
+    /**
+     * Schedule polling of query status.
+     */
+    synchronized void schedule() {
+      if (notified.get()) {
+        return;
+      }
+      poll = completionNotifierPool.scheduleWithFixedDelay(this, 0, pollInterval, TimeUnit.MILLISECONDS);
     }
 
     /*
@@ -996,29 +1011,52 @@ public class HiveDriver implements LensDriver {
      */
     @Override
     public void run() {
-      // till query is complete or timeout has reached
-      long timeSpent = 0;
-      String error;
       try {
-        while (timeSpent <= timeoutMillis) {
-          try {
-            hiveHandle = getHiveHandle(handle);
-            if (isFinished(hiveHandle)) {
-              listener.onCompletion(handle);
-              return;
-            }
-          } catch (LensException e) {
-            log.debug("query handle: {} Not yet launched on driver", handle);
+        try {
+          if (isFinished(getHiveHandle(handle))) {
+            onCompletion();
+            // status is polled by the server at backed off intervals, push the change seen here
+            notifyStatusChange(handle);
+            return;
           }
-          Thread.sleep(pollInterval);
-          timeSpent += pollInterval;
+        } catch (LensException e) {
+          log.debug("query handle: {} Not yet launched on driver", handle);
+        }
+        if (System.currentTimeMillis() >= deadline) {
+          onError("timedout");
         }
-        error = "timedout";
       } catch (Exception e) {
         log.warn("Error while polling for status", e);
-        error = "error polling";
+        onError("error polling");
       }
-      listener.onError(handle, error);
+    }
+
+    /**
+     * Notify listener of completion, if not done already.
+     */
+    void onCompletion() {
+      if (finish()) {
+        listener.onCompletion(handle);
+      }
+    }
+
+    private void onError(String error) {
+      if (finish()) {
+        listener.onError(handle, error);
+      }
+    }
+
+    private boolean finish() {
+      if (!notified.compareAndSet(false, true)) {
+        return false;
+      }
+      completionNotifiers.remove(handle);
+      synchronized (this) {
+        if (poll != null) {
+          poll.cancel(false);
+        }
+      }
+      return true;
     }
 
     /**
@@ -1054,8 +1092,9 @@ public class HiveDriver implements LensDriver {
   public void registerForCompletionNotification(
     QueryHandle handle, long timeoutMillis, QueryCompletionListener listener)
     throws LensException {
-    Thread th = new Thread(new QueryCompletionNotifier(handle, timeoutMillis, listener));
-    th.start();
+    QueryCompletionNotifier notifier = new QueryCompletionNotifier(handle, timeoutMillis, listener);
+    completionNotifiers.put(handle, notifier);
+    notifier.schedule();
   }
 
   /*
@@ -1258,15 +1297,8 @@ public class HiveDriver implements LensDriver {
    * Close all connections.
    */
   private void closeAllConnections() {
-    synchronized (thriftConnExpiryQueue) {
-      for (ExpirableConnection connection : threadConnections.values()) {
-        try {
-          connection.getConnection().close();
-        } catch (Exception ce) {
-          log.warn("Error closing connection to hive server");
-        }
-      }
-      threadConnections.clear();
+    if (connectionPool != null) {
+      connectionPool.closeAllConnections();
     }
   }
 
@@ -39,7 +39,7 @@ import lombok.extern.slf4j.Slf4j;
 public class HiveInMemoryResultSet extends InMemoryResultSet {
 
   /** The client. */
-  private final CLIServiceClient client;
+  private final ICLIService client;
 
   /** The op handle. */
   private final OperationHandle opHandle;
@@ -51,7 +51,10 @@ public class HiveInMemoryResultSet extends InMemoryResultSet {
   private RowSet rowSet;
 
   /** The fetch size. */
-  private int fetchSize = 100;
+  private int fetchSize;
+
+  /** The fetch size to which fetch size grows while result is read. */
+  private int maxFetchSize;
 
   /** The fetched rows itr. */
   private Iterator<Object[]> fetchedRowsItr;
@@ -74,8 +77,27 @@ public class HiveInMemoryResultSet extends InMemoryResultSet {
    * @param closeAfterFecth the close after fecth
    * @throws HiveSQLException the hive sql exception
    */
-  public HiveInMemoryResultSet(OperationHandle hiveHandle, CLIServiceClient client, boolean closeAfterFecth)
+  public HiveInMemoryResultSet(OperationHandle hiveHandle, ICLIService client, boolean closeAfterFecth)
     throws HiveSQLException {
+    this(hiveHandle, client, closeAfterFecth, HiveDriver.DEFAULT_INMEMORY_RESULT_FETCH_SIZE,
+      HiveDriver.DEFAULT_INMEMORY_RESULT_MAX_FETCH_SIZE);
+  }
+
+  /**
+   * Instantiates a new hive in memory result set, whose fetch size doubles after every full fetch till the max fetch
+   * size. So small results are fetched in small batches and large results in fewer calls to hive server.
+   *
+   * @param hiveHandle      the hive handle
+   * @param client          the client
+   * @param closeAfterFecth the close after fecth
+   * @param fetchSize       the initial fetch size
+   * @param maxFetchSize    the max fetch size
+   * @throws HiveSQLException the hive sql exception
+   */
+  public HiveInMemoryResultSet(OperationHandle hiveHandle, ICLIService client, boolean closeAfterFecth,
+    int fetchSize, int maxFetchSize) throws HiveSQLException {
+    this.fetchSize = fetchSize;
+    this.maxFetchSize = Math.max(fetchSize, maxFetchSize);
     this.client = client;
     this.opHandle = hiveHandle;
     this.closeAfterFecth = closeAfterFecth;
@@ -106,6 +128,7 @@ public class HiveInMemoryResultSet extends InMemoryResultSet {
   @Override
   public boolean seekToStart() {
     orientation = FetchOrientation.FETCH_FIRST;
+    fetchedRowsItr = null;
     return true;
   }
 
@@ -128,6 +151,9 @@ public class HiveInMemoryResultSet extends InMemoryResultSet {
           }
           return false;
         }
+        if (rowSet.numRows() >= fetchSize && fetchSize < maxFetchSize) {
+          fetchSize = (int) Math.min((long) fetchSize * 2, maxFetchSize);
+        }
         fetchedRowsItr = rowSet.iterator();
       } catch (Exception e) {
         throw new LensException(e);
@@ -154,5 +180,6 @@ public class HiveInMemoryResultSet extends InMemoryResultSet {
   public void setFetchSize(int size) throws LensException {
     assert size >= 0;
     fetchSize = size == 0 ? Integer.MAX_VALUE : size;
+    maxFetchSize = fetchSize;
   }
 }
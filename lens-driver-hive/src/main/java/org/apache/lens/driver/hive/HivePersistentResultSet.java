@@ -23,8 +23,8 @@ import org.apache.lens.server.api.driver.PersistentResultSet;
 import org.apache.lens.server.api.error.LensException;
 
 import org.apache.hadoop.fs.Path;
-import org.apache.hive.service.cli.CLIServiceClient;
 import org.apache.hive.service.cli.HiveSQLException;
+import org.apache.hive.service.cli.ICLIService;
 import org.apache.hive.service.cli.OperationHandle;
 import org.apache.hive.service.cli.TableSchema;
 
@@ -47,7 +47,7 @@ public class HivePersistentResultSet extends PersistentResultSet {
    * @param client        the client
    * @throws HiveSQLException the hive sql exception
    */
-  public HivePersistentResultSet(Path resultSetPath, OperationHandle opHandle, CLIServiceClient client)
+  public HivePersistentResultSet(Path resultSetPath, OperationHandle opHandle, ICLIService client)
     throws HiveSQLException {
     this.path = resultSetPath;
     this.metadata = client.getResultSetMetadata(opHandle);
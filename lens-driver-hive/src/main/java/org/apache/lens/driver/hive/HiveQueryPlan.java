@@ -108,6 +108,36 @@ public class HiveQueryPlan extends DriverQueryPlan {
     extractPlanDetails(explainOutput, metastoreConf);
   }
 
+  /**
+   * Instantiates a copy of the plan with another cost, without the prepare handle.
+   *
+   * @param plan the plan to copy
+   * @param cost the cost
+   */
+  private HiveQueryPlan(HiveQueryPlan plan, QueryCost cost) {
+    this.cost = cost;
+    this.explainOutput = plan.explainOutput;
+    this.tablesQueried.addAll(plan.tablesQueried);
+    this.tableWeights.putAll(plan.tableWeights);
+    for (Map.Entry<String, Set<?>> entry : plan.partitions.entrySet()) {
+      this.partitions.put(entry.getKey(), entry.getValue() == null ? null : new HashSet<Object>(entry.getValue()));
+    }
+    this.hasSubQuery = plan.hasSubQuery;
+    this.resultDestination = plan.resultDestination;
+    this.execMode = plan.execMode;
+    this.scanMode = plan.scanMode;
+  }
+
+  /**
+   * Copy of this plan with the given cost, so that a cached plan is never modified by its users.
+   *
+   * @param cost the cost of the copy
+   * @return the copy
+   */
+  HiveQueryPlan copy(QueryCost cost) {
+    return new HiveQueryPlan(this, cost);
+  }
+
   /**
    * Extract plan details.
    *
@@ -0,0 +1,267 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.driver.hive;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lens.cube.metadata.CubeMetastoreClient;
+import org.apache.lens.server.api.error.LensException;
+import org.apache.lens.server.api.metrics.LensMetricsRegistry;
+
+import org.apache.hadoop.conf.Configuration;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cache of plans got by explaining queries on HiveServer2.
+ * <p></p>
+ * A plan depends on the driver query, the database it runs in, the user running it (through authorization) and the
+ * configuration affecting planning, which together make the key of the plan. Plans are kept till the expiry, and are
+ * dropped earlier when any table they read, or its partitions, is changed through cube metastore clients of this
+ * server or of other servers sharing the metastore change log. Changes made to tables outside lens are picked up only
+ * after the expiry.
+ */
+@Slf4j
+public class HiveQueryPlanCache implements CubeMetastoreClient.TableChangeListener {
+
+  static final String HITS_COUNTER = MetricRegistry.name(HiveQueryPlanCache.class, "hits");
+  static final String MISSES_COUNTER = MetricRegistry.name(HiveQueryPlanCache.class, "misses");
+  static final String HIT_RATE_GAUGE = MetricRegistry.name(HiveQueryPlanCache.class, "hit.rate");
+
+  /** The cached plans, null if caching is disabled */
+  private final Cache<PlanKey, HiveQueryPlan> plans;
+
+  /** Configuration properties which are part of plan key */
+  private final List<String> confKeys;
+
+  /** Database qualified table name to keys of cached plans reading the table */
+  private final ConcurrentMap<String, Set<PlanKey>> keysByTable = new ConcurrentHashMap<String, Set<PlanKey>>();
+
+  /** Incremented on every table change, to detect changes while a plan is loaded */
+  private final AtomicLong changes = new AtomicLong();
+
+  private final Counter hits;
+  private final Counter misses;
+
+  /**
+   * Key of cached plan.
+   */
+  @EqualsAndHashCode
+  @RequiredArgsConstructor
+  static final class PlanKey {
+    private final String query;
+    private final String database;
+    private final String user;
+    private final Map<String, String> planningConf;
+  }
+
+  /**
+   * Instantiates a new plan cache.
+   *
+   * @param enabled      whether plans are cached
+   * @param maxSize      maximum number of cached plans
+   * @param expiryMillis time after which a cached plan is dropped
+   * @param confKeys     configuration properties which can change the plan
+   */
+  public HiveQueryPlanCache(boolean enabled, long maxSize, long expiryMillis, Collection<String> confKeys) {
+    if (enabled) {
+      this.plans = CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(expiryMillis, TimeUnit.MILLISECONDS)
+        .removalListener(new RemovalListener<PlanKey, HiveQueryPlan>() {
+          @Override
+          public void onRemoval(RemovalNotification<PlanKey, HiveQueryPlan> notification) {
+            // a replacing plan is indexed under the same key before it is put
+            if (notification.getCause() != RemovalCause.REPLACED) {
+              unindex(notification.getKey(), notification.getValue());
+            }
+          }
+        }).build();
+    } else {
+      this.plans = null;
+    }
+    this.confKeys = new ArrayList<String>(confKeys);
+    Collections.sort(this.confKeys);
+    MetricRegistry registry = LensMetricsRegistry.getStaticRegistry();
+    hits = registry.counter(HITS_COUNTER);
+    misses = registry.counter(MISSES_COUNTER);
+    registerHitRate(registry);
+    log.info("Hive query plan cache enabled: {}, max size: {}, expiry millis: {}, conf keys: {}", enabled, maxSize,
+      expiryMillis, this.confKeys);
+  }
+
+  private static synchronized void registerHitRate(MetricRegistry registry) {
+    if (!registry.getGauges().containsKey(HIT_RATE_GAUGE)) {
+      final Counter hits = registry.counter(HITS_COUNTER);
+      final Counter misses = registry.counter(MISSES_COUNTER);
+      registry.register(HIT_RATE_GAUGE, new RatioGauge() {
+        @Override
+        protected Ratio getRatio() {
+          return Ratio.of(hits.getCount(), hits.getCount() + misses.getCount());
+        }
+      });
+    }
+  }
+
+  /**
+   * Get the plan from cache, loading it if not available.
+   *
+   * @param query      the driver query
+   * @param database   the database of the query
+   * @param user       the user of the query
+   * @param driverConf the driver configuration of the query
+   * @param loader     the loader which explains the query
+   * @return the plan, which should not be modified
+   * @throws LensException the lens exception
+   */
+  HiveQueryPlan get(String query, String database, String user, Configuration driverConf,
+    Callable<HiveQueryPlan> loader) throws LensException {
+    if (plans == null) {
+      return load(loader);
+    }
+    PlanKey key = new PlanKey(query, database.toLowerCase(), user, getPlanningConf(driverConf));
+    HiveQueryPlan plan = plans.getIfPresent(key);
+    if (plan != null) {
+      hits.inc();
+      return plan;
+    }
+    misses.inc();
+    long changesBeforeLoad = changes.get();
+    plan = load(loader);
+    index(key, plan);
+    plans.put(key, plan);
+    // a table could have changed after the plan was explained and before it was indexed
+    if (changes.get() != changesBeforeLoad) {
+      plans.invalidate(key);
+    }
+    return plan;
+  }
+
+  private static HiveQueryPlan load(Callable<HiveQueryPlan> loader) throws LensException {
+    try {
+      return loader.call();
+    } catch (LensException e) {
+      throw e;
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new LensException(e);
+    }
+  }
+
+  private Map<String, String> getPlanningConf(Configuration driverConf) {
+    Map<String, String> planningConf = new TreeMap<String, String>();
+    for (String confKey : confKeys) {
+      String value = driverConf.get(confKey);
+      if (value != null) {
+        planningConf.put(confKey, value);
+      }
+    }
+    return planningConf;
+  }
+
+  private void index(PlanKey key, HiveQueryPlan plan) {
+    for (String table : plan.getTablesQueried()) {
+      String name = qualify(key.database, table);
+      Set<PlanKey> keys = keysByTable.get(name);
+      if (keys == null) {
+        keysByTable.putIfAbsent(name, Collections.newSetFromMap(new ConcurrentHashMap<PlanKey, Boolean>()));
+        keys = keysByTable.get(name);
+      }
+      keys.add(key);
+    }
+  }
+
+  private void unindex(PlanKey key, HiveQueryPlan plan) {
+    if (key == null || plan == null) {
+      return;
+    }
+    for (String table : plan.getTablesQueried()) {
+      Set<PlanKey> keys = keysByTable.get(qualify(key.database, table));
+      if (keys != null) {
+        keys.remove(key);
+      }
+    }
+  }
+
+  /** database qualified name of the table, in lower case */
+  private static String qualify(String database, String table) {
+    String name = table.toLowerCase();
+    return name.indexOf('.') < 0 ? database + "." + name : name;
+  }
+
+  /**
+   * Drop cached plans reading the table.
+   *
+   * @param database database of the table
+   * @param table    table name, null to drop plans reading any table of the database
+   */
+  @Override
+  public void tableChanged(String database, String table) {
+    changes.incrementAndGet();
+    if (plans == null) {
+      return;
+    }
+    String db = database.toLowerCase();
+    if (table == null) {
+      String prefix = db + ".";
+      for (Map.Entry<String, Set<PlanKey>> entry : keysByTable.entrySet()) {
+        if (entry.getKey().startsWith(prefix)) {
+          plans.invalidateAll(new ArrayList<PlanKey>(entry.getValue()));
+        }
+      }
+    } else {
+      Set<PlanKey> keys = keysByTable.get(db + "." + table.toLowerCase());
+      if (keys != null) {
+        plans.invalidateAll(new ArrayList<PlanKey>(keys));
+      }
+    }
+  }
+
+  /**
+   * Number of cached plans
+   *
+   * @return the size
+   */
+  public long size() {
+    return plans == null ? 0 : plans.size();
+  }
+
+  /**
+   * Drop all cached plans
+   */
+  public void invalidateAll() {
+    if (plans != null) {
+      plans.invalidateAll();
+    }
+  }
+}
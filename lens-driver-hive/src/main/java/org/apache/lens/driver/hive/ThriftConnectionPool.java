@@ -0,0 +1,411 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.driver.hive;
+
+import java.io.Closeable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lens.server.api.metrics.LensMetricsRegistry;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hive.service.cli.CLIService;
+import org.apache.hive.service.cli.GetInfoType;
+import org.apache.hive.service.cli.HandleIdentifier;
+import org.apache.hive.service.cli.HiveSQLException;
+import org.apache.hive.service.cli.ICLIService;
+import org.apache.hive.service.cli.SessionHandle;
+import org.apache.thrift.transport.TTransportException;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded pool of thrift connections to HiveServer2 for each user. Clients handed out by {@link #getClient(String)}
+ * borrow a connection of the user for each call and return it once the call is done, so any number of threads share
+ * the connections of a user. Callers wait fairly for a connection when all of them are in use.
+ *
+ * Connections failing with transport errors are closed instead of being returned, and idle connections are closed
+ * after the idle timeout. Connections idle for longer than the validation interval are validated with a GetInfo call
+ * before they are reused, so that connections whose transport got closed behind the pool are not handed out.
+ */
+@Slf4j
+public class ThriftConnectionPool implements Closeable {
+
+  /** The Constant CONNECTION_COUNTER. */
+  private static final AtomicInteger CONNECTION_COUNTER = new AtomicInteger();
+
+  // connections of all pools, for metrics
+  private static final AtomicInteger ACTIVE_CONNECTIONS = new AtomicInteger();
+  private static final AtomicInteger IDLE_CONNECTIONS = new AtomicInteger();
+
+  static final String ACTIVE_CONNECTIONS_GAUGE = MetricRegistry.name(ThriftConnectionPool.class, "active");
+  static final String IDLE_CONNECTIONS_GAUGE = MetricRegistry.name(ThriftConnectionPool.class, "idle");
+  static final String WAIT_TIMER = MetricRegistry.name(ThriftConnectionPool.class, "wait");
+
+  // session unknown to HiveServer2, calls with it fail on the server unless the transport fails
+  private static final SessionHandle VALIDATION_SESSION = new SessionHandle(new HandleIdentifier(),
+    CLIService.SERVER_VERSION);
+
+  /** The connection class. */
+  private final Class<? extends ThriftConnection> connectionClass;
+
+  /** The conf of connections. */
+  private final HiveConf conf;
+
+  /** The maximum connections of each user. */
+  private final int maxConnectionsPerUser;
+
+  /** The idle time after which connections are closed. */
+  private final long idleTimeout;
+
+  /** The maximum time to wait for a connection. */
+  private final long borrowTimeout;
+
+  /** The idle time after which connections are validated before reuse. */
+  private final long validationInterval;
+
+  /** The pools of users. */
+  private final ConcurrentMap<String, UserPool> userPools = new ConcurrentHashMap<String, UserPool>();
+
+  /** The idle connection closer. */
+  private final ScheduledExecutorService idleConnectionCloser;
+
+  /** Connections of earlier generations are closed on return. */
+  private volatile int generation;
+
+  private final Timer waitTimer;
+
+  /**
+   * A connection in the pool.
+   */
+  private static class PooledConnection {
+    private final ThriftConnection connection;
+    private final int connId;
+    private final int generation;
+    private volatile long lastUsed;
+
+    PooledConnection(ThriftConnection connection, int generation) {
+      this.connection = connection;
+      this.generation = generation;
+      this.connId = CONNECTION_COUNTER.incrementAndGet();
+      this.lastUsed = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * Connections of a user.
+   */
+  private class UserPool {
+    private final String user;
+    private final Semaphore permits = new Semaphore(maxConnectionsPerUser, true);
+    // most recently used first, so that the least used ones expire
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+    private final ICLIService client;
+
+    UserPool(String user) {
+      this.user = user;
+      this.client = (ICLIService) Proxy.newProxyInstance(ICLIService.class.getClassLoader(),
+        new Class<?>[]{ICLIService.class}, new PooledClientHandler(this));
+    }
+  }
+
+  /**
+   * Invokes each call on a connection borrowed for the call.
+   */
+  private class PooledClientHandler implements InvocationHandler {
+    private final UserPool pool;
+
+    PooledClientHandler(UserPool pool) {
+      this.pool = pool;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (method.getDeclaringClass() == Object.class) {
+        if ("equals".equals(method.getName())) {
+          return proxy == args[0];
+        } else if ("hashCode".equals(method.getName())) {
+          return System.identityHashCode(proxy);
+        }
+        return "Pooled HiveServer2 client of user " + pool.user;
+      }
+      PooledConnection connection = borrow(pool);
+      boolean broken = false;
+      try {
+        return method.invoke(connection.connection.getClient(), args);
+      } catch (InvocationTargetException e) {
+        broken = isTransportFailure(e.getCause());
+        throw e.getCause();
+      } catch (Exception e) {
+        broken = true;
+        throw new HiveSQLException("Could not get client of connection to HiveServer2", e);
+      } finally {
+        release(pool, connection, broken);
+      }
+    }
+  }
+
+  /**
+   * Instantiates a new connection pool.
+   *
+   * @param connectionClass       the connection class
+   * @param conf                  the conf of connections
+   * @param maxConnectionsPerUser the maximum number of connections of a user
+   * @param idleTimeout           the idle time in millis after which connections are closed
+   * @param borrowTimeout         the maximum time in millis to wait for a connection
+   * @param validationInterval    the idle time in millis after which connections are validated before reuse
+   */
+  public ThriftConnectionPool(Class<? extends ThriftConnection> connectionClass, HiveConf conf,
+    int maxConnectionsPerUser, long idleTimeout, long borrowTimeout, long validationInterval) {
+    this.connectionClass = connectionClass;
+    this.conf = conf;
+    this.maxConnectionsPerUser = maxConnectionsPerUser;
+    this.idleTimeout = idleTimeout;
+    this.borrowTimeout = borrowTimeout;
+    this.validationInterval = validationInterval;
+    idleConnectionCloser = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread th = new Thread(runnable, "HiveDriver-ConnectionExpiryThread");
+        th.setDaemon(true);
+        return th;
+      }
+    });
+    long interval = Math.max(1, Math.min(idleTimeout, 60000));
+    idleConnectionCloser.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          closeIdleConnections();
+        } catch (Exception e) {
+          log.error("Error closing idle connections", e);
+        }
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS);
+    waitTimer = registerMetrics();
+  }
+
+  private static synchronized Timer registerMetrics() {
+    MetricRegistry registry = LensMetricsRegistry.getStaticRegistry();
+    if (!registry.getGauges().containsKey(ACTIVE_CONNECTIONS_GAUGE)) {
+      registry.register(ACTIVE_CONNECTIONS_GAUGE, new Gauge<Integer>() {
+        @Override
+        public Integer getValue() {
+          return ACTIVE_CONNECTIONS.get();
+        }
+      });
+    }
+    if (!registry.getGauges().containsKey(IDLE_CONNECTIONS_GAUGE)) {
+      registry.register(IDLE_CONNECTIONS_GAUGE, new Gauge<Integer>() {
+        @Override
+        public Integer getValue() {
+          return IDLE_CONNECTIONS.get();
+        }
+      });
+    }
+    return registry.timer(WAIT_TIMER);
+  }
+
+  /**
+   * Get client of the user, which can be shared by any number of threads.
+   *
+   * @param user the user
+   * @return the client
+   */
+  public ICLIService getClient(String user) {
+    String key = user.toLowerCase();
+    UserPool pool = userPools.get(key);
+    if (pool == null) {
+      userPools.putIfAbsent(key, new UserPool(user));
+      pool = userPools.get(key);
+    }
+    return pool.client;
+  }
+
+  private PooledConnection borrow(UserPool pool) throws HiveSQLException {
+    Timer.Context waitTime = waitTimer.time();
+    try {
+      if (!pool.permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+        throw new HiveSQLException("Timed out waiting for a connection to HiveServer2 for user " + pool.user
+          + ", all " + maxConnectionsPerUser + " connections are in use");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new HiveSQLException("Interrupted while waiting for a connection to HiveServer2", e);
+    } finally {
+      waitTime.stop();
+    }
+    PooledConnection connection = pool.idle.pollFirst();
+    if (connection != null) {
+      IDLE_CONNECTIONS.decrementAndGet();
+    }
+    while (connection != null && !isReusable(connection)) {
+      close(connection);
+      connection = pool.idle.pollFirst();
+      if (connection != null) {
+        IDLE_CONNECTIONS.decrementAndGet();
+      }
+    }
+    if (connection == null) {
+      try {
+        ThriftConnection tconn = connectionClass.newInstance();
+        tconn.init(conf, pool.user);
+        connection = new PooledConnection(tconn, generation);
+        log.info("New thrift connection {} for user: {} connection ID={}", connectionClass, pool.user,
+          connection.connId);
+      } catch (Exception e) {
+        pool.permits.release();
+        throw new HiveSQLException("Could not create connection to HiveServer2", e);
+      }
+    }
+    ACTIVE_CONNECTIONS.incrementAndGet();
+    return connection;
+  }
+
+  /**
+   * Whether the idle connection can be handed out again. Connections of earlier generations, idle beyond the idle
+   * timeout or failing validation are not reused.
+   */
+  private boolean isReusable(PooledConnection connection) {
+    long idleTime = System.currentTimeMillis() - connection.lastUsed;
+    return connection.generation == generation && idleTime <= idleTimeout
+      && (idleTime < validationInterval || isAlive(connection));
+  }
+
+  /**
+   * Check that the connection still reaches HiveServer2 with a GetInfo call. The call is made for a session unknown
+   * to the server, so it fails with a server error on a live connection and with a transport error on a dead one.
+   */
+  private boolean isAlive(PooledConnection connection) {
+    try {
+      connection.connection.getClient().getInfo(VALIDATION_SESSION, GetInfoType.CLI_SERVER_NAME);
+      return true;
+    } catch (HiveSQLException e) {
+      if (isTransportFailure(e)) {
+        log.warn("Connection {} failed validation", connection.connId, e);
+        return false;
+      }
+      return true;
+    } catch (Exception e) {
+      log.warn("Connection {} failed validation", connection.connId, e);
+      return false;
+    }
+  }
+
+  private void release(UserPool pool, PooledConnection connection, boolean broken) {
+    ACTIVE_CONNECTIONS.decrementAndGet();
+    try {
+      if (broken || connection.generation != generation) {
+        close(connection);
+      } else {
+        connection.lastUsed = System.currentTimeMillis();
+        IDLE_CONNECTIONS.incrementAndGet();
+        pool.idle.offerFirst(connection);
+      }
+    } finally {
+      pool.permits.release();
+    }
+  }
+
+  private static boolean isTransportFailure(Throwable e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof TTransportException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void close(PooledConnection connection) {
+    try {
+      log.info("Closed connection: {}", connection.connId);
+      connection.connection.close();
+    } catch (Exception e) {
+      log.error("Error closing connection", e);
+    }
+  }
+
+  /**
+   * Close connections idle for more than the idle timeout.
+   */
+  void closeIdleConnections() {
+    long now = System.currentTimeMillis();
+    for (UserPool pool : userPools.values()) {
+      for (PooledConnection connection : pool.idle) {
+        if (now - connection.lastUsed > idleTimeout && pool.idle.remove(connection)) {
+          IDLE_CONNECTIONS.decrementAndGet();
+          close(connection);
+        }
+      }
+    }
+  }
+
+  /**
+   * Close all idle connections, connections in use are closed when returned.
+   */
+  public synchronized void closeAllConnections() {
+    generation++;
+    for (UserPool pool : userPools.values()) {
+      PooledConnection connection;
+      while ((connection = pool.idle.pollFirst()) != null) {
+        IDLE_CONNECTIONS.decrementAndGet();
+        close(connection);
+      }
+    }
+  }
+
+  /**
+   * Number of connections in use.
+   *
+   * @return the count
+   */
+  public int getActiveConnections() {
+    int active = 0;
+    for (UserPool pool : userPools.values()) {
+      active += maxConnectionsPerUser - pool.permits.availablePermits();
+    }
+    return active;
+  }
+
+  /**
+   * Number of idle connections.
+   *
+   * @return the count
+   */
+  public int getIdleConnections() {
+    int idle = 0;
+    for (UserPool pool : userPools.values()) {
+      idle += pool.idle.size();
+    }
+    return idle;
+  }
+
+  @Override
+  public void close() {
+    idleConnectionCloser.shutdownNow();
+    closeAllConnections();
+  }
+}
@@ -33,6 +33,7 @@ import org.apache.lens.server.api.LensConfConstants;
 import org.apache.lens.server.api.driver.*;
 import org.apache.lens.server.api.driver.DriverQueryStatus.DriverQueryState;
 import org.apache.lens.server.api.error.LensException;
+import org.apache.lens.server.api.metrics.LensMetricsRegistry;
 import org.apache.lens.server.api.query.*;
 import org.apache.lens.server.api.query.cost.QueryCost;
 import org.apache.lens.server.api.query.priority.CostRangePriorityDecider;
@@ -53,6 +54,7 @@ import org.apache.hive.service.cli.ColumnDescriptor;
 
 import org.testng.annotations.*;
 
+import com.codahale.metrics.Counter;
 import com.google.common.collect.Lists;
 
 
@@ -742,6 +744,51 @@ public class TestHiveDriver {
     assertTrue(((String) plan.getPartitions().get(dataBase + ".test_part_table").iterator().next()).contains("dt"));
   }
 
+  /**
+   * Test caching of explained plans.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testExplainPlanCache() throws Exception {
+    createTestTable("test_plan_cache");
+    SessionState.setCurrentSessionState(ss);
+    HiveConf cacheConf = new HiveConf(conf);
+    cacheConf.setBoolean(HiveDriver.HS2_PLAN_CACHE_ENABLED, true);
+    HiveDriver cacheDriver = new HiveDriver();
+    cacheDriver.configure(cacheConf);
+    List<LensDriver> cacheDrivers = Lists.<LensDriver>newArrayList(cacheDriver);
+    Counter hits = LensMetricsRegistry.getStaticRegistry().counter(HiveQueryPlanCache.HITS_COUNTER);
+    try {
+      String query = "SELECT ID FROM test_plan_cache";
+      ExplainQueryContext ectx = new ExplainQueryContext(UUID.randomUUID().toString(), query, "testuser", null,
+        cacheConf, cacheDrivers);
+      ectx.setLensSessionIdentifier(sessionid);
+      DriverQueryPlan plan = cacheDriver.explain(ectx);
+      assertEquals(cacheDriver.getPlanCache().size(), 1);
+
+      // same query again is served from cache, with a plan of its own
+      long hitsBefore = hits.getCount();
+      ectx = new ExplainQueryContext(UUID.randomUUID().toString(), query, "testuser", null, cacheConf, cacheDrivers);
+      ectx.setLensSessionIdentifier(sessionid);
+      DriverQueryPlan cached = cacheDriver.explain(ectx);
+      assertEquals(hits.getCount(), hitsBefore + 1);
+      assertNotSame(cached, plan);
+      assertEquals(cached.getPlan(), plan.getPlan());
+      assertEquals(cached.getTableWeight(dataBase + ".test_plan_cache"), 500.0);
+      assertEquals(cached.getCost(), plan.getCost());
+      assertEquals(0, cacheDriver.getHiveHandleSize());
+
+      // change of another table keeps the plan, change of the queried table drops it
+      cacheDriver.getPlanCache().tableChanged(dataBase, "other_table");
+      assertEquals(cacheDriver.getPlanCache().size(), 1);
+      cacheDriver.getPlanCache().tableChanged(dataBase, "TEST_PLAN_CACHE");
+      assertEquals(cacheDriver.getPlanCache().size(), 0);
+    } finally {
+      cacheDriver.close();
+    }
+  }
+
   /**
    * Test explain output.
    *
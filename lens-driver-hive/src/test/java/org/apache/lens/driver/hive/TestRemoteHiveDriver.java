@@ -154,6 +154,8 @@ public class TestRemoteHiveDriver extends TestHiveDriver {
     createTestTable("test_multithreads");
     HiveConf thConf = new HiveConf(conf, TestRemoteHiveDriver.class);
     thConf.setLong(HiveDriver.HS2_CONNECTION_EXPIRY_DELAY, 10000);
+    // all pollers share the pooled connections
+    thConf.setInt(HiveDriver.HS2_CONNECTION_POOL_MAX_PER_USER, 2);
     final HiveDriver thrDriver = new HiveDriver();
     thrDriver.configure(thConf);
     QueryContext ctx = createContext("USE " + dataBase, conf, thrDriver);
@@ -220,6 +222,7 @@ public class TestRemoteHiveDriver extends TestHiveDriver {
       }
     }
     Assert.assertEquals(0, thrDriver.getHiveHandleSize());
+    Assert.assertTrue(thrDriver.openConnections() <= 2, "Open connections: " + thrDriver.openConnections());
     log.info("@@ Completed all pollers. Total thrift errors: " + errCount.get());
     assertEquals(launchedQueries, QUERIES);
     assertEquals(thrs.size(), QUERIES * THREADS);
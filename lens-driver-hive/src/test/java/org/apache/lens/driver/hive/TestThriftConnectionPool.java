@@ -0,0 +1,279 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.driver.hive;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hive.service.cli.CLIServiceClient;
+import org.apache.hive.service.cli.HiveSQLException;
+import org.apache.hive.service.cli.ICLIService;
+import org.apache.thrift.transport.TTransportException;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class TestThriftConnectionPool {
+
+  private static final String USER = "testuser";
+
+  private ThriftConnectionPool pool;
+
+  /**
+   * Connection whose client answers calls with {@link #behaviour}, recording the connections created by the pool.
+   * Calls fail with transport errors once {@link #transportClosed} is set, as they do when the server drops the
+   * connection.
+   */
+  public static class MockConnection implements ThriftConnection {
+    static final List<MockConnection> CREATED = new CopyOnWriteArrayList<MockConnection>();
+    static volatile Answer<Object> behaviour;
+
+    private final CLIServiceClient client = mock(CLIServiceClient.class, new Answer<Object>() {
+      @Override
+      public Object answer(InvocationOnMock invocation) throws Throwable {
+        if (transportClosed) {
+          throw new HiveSQLException("Transport closed", new TTransportException(TTransportException.NOT_OPEN));
+        }
+        if ("getInfo".equals(invocation.getMethod().getName())) {
+          validations.incrementAndGet();
+          throw new HiveSQLException("Invalid SessionHandle");
+        }
+        return behaviour == null ? null : behaviour.answer(invocation);
+      }
+    });
+    final AtomicInteger validations = new AtomicInteger();
+    volatile boolean transportClosed;
+    volatile boolean closed;
+
+    public MockConnection() {
+      CREATED.add(this);
+    }
+
+    @Override
+    public CLIServiceClient getClient() {
+      return client;
+    }
+
+    @Override
+    public void init(HiveConf conf, String user) {
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  @BeforeMethod
+  public void setUp() {
+    MockConnection.CREATED.clear();
+    MockConnection.behaviour = null;
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    if (pool != null) {
+      pool.close();
+      pool = null;
+    }
+  }
+
+  /** Answer blocking calls of the thread with given name till released */
+  private static Answer<Object> blockThread(final String threadName, final CountDownLatch inCall,
+    final CountDownLatch release, final List<String> callers) {
+    return new Answer<Object>() {
+      @Override
+      public Object answer(InvocationOnMock invocation) throws Throwable {
+        callers.add(Thread.currentThread().getName());
+        if (Thread.currentThread().getName().equals(threadName)) {
+          inCall.countDown();
+          release.await();
+        }
+        return null;
+      }
+    };
+  }
+
+  private static Thread callInThread(final ICLIService client, String name) {
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          client.closeSession(null);
+        } catch (HiveSQLException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }, name);
+    thread.start();
+    return thread;
+  }
+
+  @Test(timeOut = 20000)
+  public void testBorrowTimeout() throws Exception {
+    pool = new ThriftConnectionPool(MockConnection.class, new HiveConf(), 1, 60000, 100, 60000);
+    ICLIService client = pool.getClient(USER);
+    CountDownLatch inCall = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    MockConnection.behaviour = blockThread("holder", inCall, release, new CopyOnWriteArrayList<String>());
+    Thread holder = callInThread(client, "holder");
+    try {
+      inCall.await();
+      assertEquals(pool.getActiveConnections(), 1);
+      try {
+        client.closeSession(null);
+        fail("Borrowing a connection should have timed out");
+      } catch (HiveSQLException e) {
+        assertTrue(e.getMessage().startsWith("Timed out waiting for a connection"), e.getMessage());
+      }
+    } finally {
+      release.countDown();
+      holder.join();
+    }
+    // the connection in use is returned, and no connection is created for the timed out call
+    assertEquals(MockConnection.CREATED.size(), 1);
+    assertEquals(pool.getActiveConnections(), 0);
+    assertEquals(pool.getIdleConnections(), 1);
+  }
+
+  @Test
+  public void testBrokenConnectionDiscarded() throws Exception {
+    pool = new ThriftConnectionPool(MockConnection.class, new HiveConf(), 2, 60000, 1000, 60000);
+    ICLIService client = pool.getClient(USER);
+    MockConnection.behaviour = new Answer<Object>() {
+      @Override
+      public Object answer(InvocationOnMock invocation) throws Throwable {
+        throw new HiveSQLException("Broken", new TTransportException("Connection reset"));
+      }
+    };
+    try {
+      client.closeSession(null);
+      fail("Call should have failed");
+    } catch (HiveSQLException e) {
+      assertEquals(e.getMessage(), "Broken");
+    }
+    assertEquals(MockConnection.CREATED.size(), 1);
+    assertTrue(MockConnection.CREATED.get(0).closed);
+    assertEquals(pool.getIdleConnections(), 0);
+    assertEquals(pool.getActiveConnections(), 0);
+
+    // failures other than transport failures don't break the connection
+    MockConnection.behaviour = new Answer<Object>() {
+      @Override
+      public Object answer(InvocationOnMock invocation) throws Throwable {
+        throw new HiveSQLException("Query failed");
+      }
+    };
+    try {
+      client.closeSession(null);
+      fail("Call should have failed");
+    } catch (HiveSQLException e) {
+      assertEquals(e.getMessage(), "Query failed");
+    }
+    assertEquals(MockConnection.CREATED.size(), 2);
+    assertFalse(MockConnection.CREATED.get(1).closed);
+    assertEquals(pool.getIdleConnections(), 1);
+
+    MockConnection.behaviour = null;
+    client.closeSession(null);
+    assertEquals(MockConnection.CREATED.size(), 2);
+  }
+
+  @Test
+  public void testIdleExpiry() throws Exception {
+    pool = new ThriftConnectionPool(MockConnection.class, new HiveConf(), 2, 50, 1000, 60000);
+    ICLIService client = pool.getClient(USER);
+    client.closeSession(null);
+    assertEquals(pool.getIdleConnections(), 1);
+    Thread.sleep(100);
+    pool.closeIdleConnections();
+    assertEquals(pool.getIdleConnections(), 0);
+    assertTrue(MockConnection.CREATED.get(0).closed);
+
+    client.closeSession(null);
+    assertEquals(MockConnection.CREATED.size(), 2);
+  }
+
+  @Test
+  public void testIdleConnectionValidatedOnBorrow() throws Exception {
+    pool = new ThriftConnectionPool(MockConnection.class, new HiveConf(), 2, 60000, 1000, 50);
+    ICLIService client = pool.getClient(USER);
+    client.closeSession(null);
+    // connections used within the validation interval are not validated
+    client.closeSession(null);
+    assertEquals(MockConnection.CREATED.size(), 1);
+    assertEquals(MockConnection.CREATED.get(0).validations.get(), 0);
+
+    // a live connection passes validation though the server rejects the validation call
+    Thread.sleep(100);
+    client.closeSession(null);
+    assertEquals(MockConnection.CREATED.size(), 1);
+    assertEquals(MockConnection.CREATED.get(0).validations.get(), 1);
+
+    // transport closed behind the pool
+    MockConnection.CREATED.get(0).transportClosed = true;
+    Thread.sleep(100);
+    client.closeSession(null);
+    assertEquals(MockConnection.CREATED.size(), 2);
+    assertTrue(MockConnection.CREATED.get(0).closed);
+    assertFalse(MockConnection.CREATED.get(1).closed);
+    assertEquals(pool.getIdleConnections(), 1);
+  }
+
+  @Test(timeOut = 20000)
+  public void testFairWaiting() throws Exception {
+    pool = new ThriftConnectionPool(MockConnection.class, new HiveConf(), 1, 60000, 10000, 60000);
+    ICLIService client = pool.getClient(USER);
+    CountDownLatch inCall = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> callers = new CopyOnWriteArrayList<String>();
+    MockConnection.behaviour = blockThread("holder", inCall, release, callers);
+    Thread holder = callInThread(client, "holder");
+    List<Thread> waiters = new CopyOnWriteArrayList<Thread>();
+    try {
+      inCall.await();
+      // start waiters one after another, each waiting for the connection before the next one is started
+      for (String name : Arrays.asList("waiter1", "waiter2", "waiter3")) {
+        Thread waiter = callInThread(client, name);
+        waiters.add(waiter);
+        while (waiter.getState() != Thread.State.TIMED_WAITING) {
+          Thread.sleep(10);
+        }
+      }
+    } finally {
+      release.countDown();
+      holder.join();
+      for (Thread waiter : waiters) {
+        waiter.join();
+      }
+    }
+    assertEquals(callers, Arrays.asList("holder", "waiter1", "waiter2", "waiter3"));
+    assertEquals(MockConnection.CREATED.size(), 1);
+  }
+}
@@ -1174,7 +1174,7 @@ public class ColumnarSQLRewriter implements QueryRewriter {
         String[] queries = query.toLowerCase().split("union all");
         for (int i = 0; i < queries.length; i++) {
           log.info("Union Query Part {} : {}", i, queries[i]);
-          ast = HQLParser.parseHQL(queries[i], metastoreConf);
+          ast = HQLParser.parseHQLCached(queries[i], metastoreConf);
           buildQuery(conf, metastoreConf);
           mergedQuery = rewrittenQuery.append(" union all ");
           finalRewrittenQuery = mergedQuery.toString().substring(0, mergedQuery.lastIndexOf("union all"));
@@ -1184,7 +1184,7 @@ public class ColumnarSQLRewriter implements QueryRewriter {
         log.info("Input Query : {}", query);
         log.info("Rewritten Query : {}", queryReplacedUdf);
       } else {
-        ast = HQLParser.parseHQL(query, metastoreConf);
+        ast = HQLParser.parseHQLCached(query, metastoreConf);
         buildQuery(conf, metastoreConf);
         queryReplacedUdf = replaceUDFForDB(rewrittenQuery.toString());
         log.info("Input Query : {}", query);
@@ -31,6 +31,7 @@ import java.io.ObjectOutput;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -98,6 +99,10 @@ public class JDBCDriver implements LensDriver {
   private ConnectionProvider estimateConnectionProvider;
 
   private LogSegregationContext logSegregationContext;
+
+  /** The driver listeners. */
+  private final List<LensEventListener<DriverEvent>> driverListeners
+    = new CopyOnWriteArrayList<LensEventListener<DriverEvent>>();
   private DriverQueryHook queryHook;
 
   @Getter
@@ -551,7 +556,7 @@ public class JDBCDriver implements LensDriver {
       CHECK_ALLOWED_QUERY);
     // check if it is select query
 
-    ASTNode ast = HQLParser.parseHQL(query, ctx.getHiveConf());
+    ASTNode ast = HQLParser.parseHQL(ctx, query);
     if (ast.getToken().getType() != HiveParser.TOK_QUERY) {
       throw new LensException("Not allowed statement:" + query);
     } else {
@@ -916,14 +921,23 @@ public class JDBCDriver implements LensDriver {
     JdbcQueryContext jdbcCtx = new JdbcQueryContext(context, logSegregationContext);
     jdbcCtx.setRewrittenQuery(rewrittenQuery);
     queryHook.preLaunch(context);
+    final QueryHandle handle = context.getQueryHandle();
+    FutureTask<QueryResult> future = new FutureTask<QueryResult>(new QueryCallable(jdbcCtx, logSegregationContext)) {
+      @Override
+      protected void done() {
+        notifyStatusChange(handle);
+      }
+    };
+    jdbcCtx.setResultFuture(future);
+    // context has to be available before the query can complete and push its status change
+    queryContextMap.put(handle, jdbcCtx);
     try {
-      Future<QueryResult> future = asyncQueryPool.submit(new QueryCallable(jdbcCtx, logSegregationContext));
-      jdbcCtx.setResultFuture(future);
+      asyncQueryPool.execute(future);
     } catch (RejectedExecutionException e) {
+      queryContextMap.remove(handle);
       log.error("Query execution rejected: {} reason:{}", context.getQueryHandle(), e.getMessage(), e);
       throw new LensException("Query execution rejected: " + context.getQueryHandle() + " reason:" + e.getMessage(), e);
     }
-    queryContextMap.put(context.getQueryHandle(), jdbcCtx);
     log.info("ExecuteAsync: {}", context.getQueryHandle());
   }
 
@@ -1100,7 +1114,23 @@ public class JDBCDriver implements LensDriver {
    */
   @Override
   public void registerDriverEventListener(LensEventListener<DriverEvent> driverEventListener) {
+    driverListeners.add(driverEventListener);
+  }
 
+  /**
+   * Push status change of the query to driver listeners.
+   *
+   * @param handle the query handle
+   */
+  private void notifyStatusChange(QueryHandle handle) {
+    DriverQueryStatusChanged event = new DriverQueryStatusChanged(System.currentTimeMillis(), this, handle);
+    for (LensEventListener<DriverEvent> listener : driverListeners) {
+      try {
+        listener.onEvent(event);
+      } catch (Exception e) {
+        log.warn("Driver event listener {} could not handle status change of {}", listener, handle, e);
+      }
+    }
   }
 
   @Override
@@ -28,6 +28,7 @@ import java.util.concurrent.TimeUnit;
 import org.apache.lens.api.LensConf;
 import org.apache.lens.api.query.QueryHandle;
 import org.apache.lens.api.query.ResultRow;
+import org.apache.lens.cube.parse.HQLParser;
 import org.apache.lens.server.api.LensConfConstants;
 import org.apache.lens.server.api.driver.*;
 import org.apache.lens.server.api.driver.DriverQueryStatus.DriverQueryState;
@@ -42,6 +43,7 @@ import org.apache.lens.server.api.util.LensUtil;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.parse.ASTNode;
 import org.apache.hadoop.hive.ql.session.SessionState;
 import org.apache.hive.service.cli.ColumnDescriptor;
 
@@ -190,6 +192,26 @@ public class TestJdbcDriver {
     }
   }
 
+  /**
+   * Test that the driver uses the parse of its query kept in the query context, instead of parsing the text again.
+   *
+   * @throws LensException the lens exception
+   */
+  @Test
+  public void testRewriteUsesParseOfQueryContext() throws LensException {
+    String query = "SELECT * FROM execute_test";
+    QueryContext ctx = createQueryContext(query);
+    ASTNode kept = HQLParser.parseHQL("DROP TABLE TEMP", new HiveConf());
+    ctx.setParsedQuery(query, kept);
+    try {
+      driver.rewriteQuery(ctx);
+      fail("Rewrite should have checked the parse kept in the query context");
+    } catch (LensException e) {
+      assertEquals(e.getMessage(), "Not allowed statement:" + query);
+    }
+    assertSame(ctx.getParsedQuery(query), kept);
+  }
+
   /**
    * Test ddl queries.
    */
@@ -18,7 +18,10 @@
  */
 package org.apache.lens.lib.query;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 
 import org.apache.lens.server.api.driver.LensResultSetMetadata;
 import org.apache.lens.server.api.query.QueryContext;
@@ -87,6 +90,23 @@ public abstract class AbstractFileFormatter extends AbstractOutputFormatter impl
     // dummy
   }
 
+  /**
+   * Write rows already encoded in the result encoding, each followed by a new line. Implementations can copy the
+   * bytes as is, this one decodes the rows and writes them one by one.
+   *
+   * @param rows    the encoded rows
+   * @param numRows number of rows in the stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void writeEncodedRows(InputStream rows, int numRows) throws IOException {
+    BufferedReader in = new BufferedReader(new InputStreamReader(rows, ctx.getResultEncoding()));
+    String row = in.readLine();
+    while (row != null) {
+      writeRow(row);
+      row = in.readLine();
+    }
+  }
+
   public String getFinalOutputPath() {
     return finalPath.toString();
   }
@@ -18,13 +18,16 @@
  */
 package org.apache.lens.lib.query;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.*;
+import java.nio.charset.Charset;
 import java.text.ParseException;
-import java.util.Map;
+import java.util.Collection;
+import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.lens.server.api.LensConfConstants;
 import org.apache.lens.server.api.driver.LensResultSetMetadata;
 import org.apache.lens.server.api.query.PersistedOutputFormatter;
 import org.apache.lens.server.api.query.QueryContext;
@@ -33,13 +36,20 @@ import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * File formatter for {@link PersistedOutputFormatter}
  * <p></p>
- * This is a {@link WrappedFileFormatter} which can wrap any {@link FileFormatter}.
+ * This is a {@link WrappedFileFormatter} which can wrap any {@link FileFormatter}. Part files can be transcoded in
+ * parallel into temporary files, which are then concatenated in order, see
+ * {@link LensConfConstants#RESULT_FORMAT_PART_FILE_THREADS}. If part files need no transcoding at all, they can be
+ * published as is, see {@link LensConfConstants#RESULT_FORMAT_PASSTHROUGH}.
  */
 @Slf4j
 public class FilePersistentFormatter extends WrappedFileFormatter implements PersistedOutputFormatter {
@@ -117,26 +127,180 @@ public class FilePersistentFormatter extends WrappedFileFormatter implements Per
       for (FileStatus file : partFiles) {
         partFileMap.put(new PartFile(file.getPath().getName()), file);
       }
+    } catch (ParseException e) {
+      throw new IOException(e);
+    }
 
-      for (Map.Entry<PartFile, FileStatus> entry : partFileMap.entrySet()) {
-        log.info("Processing file:{}", entry.getValue().getPath());
-        BufferedReader in = null;
-        try {
-          // default encoding in hadoop filesystem is utf-8
-          in = new BufferedReader(new InputStreamReader(persistFs.open(entry.getValue().getPath()), "UTF-8"));
-          String row = in.readLine();
-          while (row != null) {
-            writeRow(row);
-            row = in.readLine();
-          }
-        } finally {
-          if (in != null) {
-            in.close();
+    if (canPassThrough(partFileMap.values())) {
+      passThrough(persistFs, partFileMap.values());
+      return;
+    }
+
+    int threads = Math.min(partFileMap.size(), ctx.getConf().getInt(LensConfConstants.RESULT_FORMAT_PART_FILE_THREADS,
+      LensConfConstants.DEFAULT_RESULT_FORMAT_PART_FILE_THREADS));
+    if (threads > 1 && canConcatenate(ctx.getResultEncoding())) {
+      addRowsInParallel(persistFs, partFileMap.values(), threads);
+      return;
+    }
+
+    for (FileStatus file : partFileMap.values()) {
+      log.info("Processing file:{}", file.getPath());
+      BufferedReader in = null;
+      try {
+        // default encoding in hadoop filesystem is utf-8
+        in = new BufferedReader(new InputStreamReader(persistFs.open(file.getPath()), "UTF-8"));
+        String row = in.readLine();
+        while (row != null) {
+          writeRow(row);
+          row = in.readLine();
+        }
+      } finally {
+        if (in != null) {
+          in.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * Whether the part files can be published as is. Rows of part files are written as they are, so that is the case
+   * when the output is a single file in the encoding of part files, which is utf-8, without compression.
+   *
+   * @param partFiles the part files
+   * @return true if part files need no transcoding
+   */
+  private boolean canPassThrough(Collection<FileStatus> partFiles) {
+    if (!ctx.getConf().getBoolean(LensConfConstants.RESULT_FORMAT_PASSTHROUGH,
+      LensConfConstants.DEFAULT_RESULT_FORMAT_PASSTHROUGH) || !(getFormatter() instanceof HadoopFileFormatter)
+      || ctx.getCompressOutput()) {
+      return false;
+    }
+    if (!Charset.forName(ctx.getResultEncoding()).name().equals(LensFileOutputFormat.UTF8)) {
+      return false;
+    }
+    // part files compressed by driver
+    CompressionCodecFactory codecs = new CompressionCodecFactory(ctx.getConf());
+    for (FileStatus file : partFiles) {
+      if (codecs.getCodec(file.getPath()) != null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Publish the part files as is. A single part file is renamed as output if there is no header or footer, otherwise
+   * part files are copied byte by byte after the header.
+   *
+   * @param persistFs the file system of part files
+   * @param partFiles the part files, in order
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void passThrough(FileSystem persistFs, Collection<FileStatus> partFiles) throws IOException {
+    HadoopFileFormatter output = (HadoopFileFormatter) getFormatter();
+    if (partFiles.size() == 1 && !ctx.getConf().getBoolean(LensConfConstants.QUERY_OUTPUT_WRITE_FOOTER,
+      LensConfConstants.DEFAULT_OUTPUT_WRITE_FOOTER)
+      && output.renameOnCommit(persistFs, partFiles.iterator().next().getPath())) {
+      log.info("Publishing file:{} as is", partFiles.iterator().next().getPath());
+      return;
+    }
+    for (FileStatus file : partFiles) {
+      log.info("Copying file:{}", file.getPath());
+      try (InputStream in = persistFs.open(file.getPath())) {
+        output.writeEncodedRows(in, -1);
+      }
+    }
+  }
+
+  /**
+   * Transcode the part files in parallel into temporary files, each appended to the output as is once it and all part
+   * files before it are done.
+   *
+   * @param persistFs the file system of part files
+   * @param partFiles the part files, in order
+   * @param threads   number of threads transcoding
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void addRowsInParallel(final FileSystem persistFs, Collection<FileStatus> partFiles, int threads)
+    throws IOException {
+    final String encoding = ctx.getResultEncoding();
+    final String handle = ctx.getQueryHandle().toString();
+    Path tmpDir = new Path(ctx.getResultSetParentDir(), handle + ".tmp.parts");
+    final FileSystem tmpFs = tmpDir.getFileSystem(ctx.getConf());
+    ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      private final AtomicInteger thId = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread th = new Thread(runnable, "part_file_formatter_" + handle + "_" + thId.incrementAndGet());
+        th.setDaemon(true);
+        return th;
+      }
+    });
+    List<Path> transcodedFiles = Lists.newArrayList();
+    List<Future<Integer>> rowCounts = Lists.newArrayList();
+    try {
+      for (final FileStatus file : partFiles) {
+        final Path transcoded = new Path(tmpDir, file.getPath().getName());
+        transcodedFiles.add(transcoded);
+        rowCounts.add(pool.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() throws IOException {
+            return transcode(persistFs, file.getPath(), tmpFs, transcoded, encoding);
           }
+        }));
+      }
+      for (int i = 0; i < transcodedFiles.size(); i++) {
+        int numRows;
+        try {
+          numRows = rowCounts.get(i).get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while transcoding part files");
+        } catch (ExecutionException e) {
+          Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+          throw new IOException(e.getCause());
         }
+        try (InputStream in = tmpFs.open(transcodedFiles.get(i))) {
+          writeEncodedRows(in, numRows);
+        }
+        tmpFs.delete(transcodedFiles.get(i), false);
+      }
+    } finally {
+      pool.shutdownNow();
+      tmpFs.delete(tmpDir, true);
+    }
+  }
+
+  /**
+   * Transcode rows of the part file into the result encoding.
+   *
+   * @return number of rows
+   */
+  private static int transcode(FileSystem persistFs, Path partFile, FileSystem tmpFs, Path transcoded,
+    String encoding) throws IOException {
+    log.info("Transcoding file:{}", partFile);
+    int numRows = 0;
+    // default encoding in hadoop filesystem is utf-8
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(persistFs.open(partFile), "UTF-8"));
+         Writer out = new BufferedWriter(new OutputStreamWriter(tmpFs.create(transcoded, true), encoding))) {
+      String row = in.readLine();
+      while (row != null) {
+        out.write(row);
+        out.write(LensFileOutputFormat.NEWLINE);
+        numRows++;
+        row = in.readLine();
       }
-    } catch (ParseException e) {
-      throw new IOException(e);
     }
+    return numRows;
+  }
+
+  /**
+   * Whether rows encoded separately can be concatenated as is. Not the case for encodings starting with a byte order
+   * mark, like UTF-16.
+   */
+  private static boolean canConcatenate(String encoding) throws UnsupportedEncodingException {
+    String newline = LensFileOutputFormat.NEWLINE;
+    return (newline + newline).getBytes(encoding).length == 2 * newline.getBytes(encoding).length;
   }
 }
@@ -18,7 +18,9 @@
  */
 package org.apache.lens.lib.query;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.apache.lens.lib.query.LensFileOutputFormat.LensRowWriter;
 
@@ -47,6 +49,16 @@ public class HadoopFileFormatter extends AbstractFileFormatter {
    */
   protected LensRowWriter rowWriter;
 
+  /**
+   * Whether anything is written.
+   */
+  private boolean written;
+
+  /**
+   * The file to be renamed as output, in place of the written rows.
+   */
+  private Path renamedFile;
+
   /*
    * (non-Javadoc)
    *
@@ -76,6 +88,7 @@ public class HadoopFileFormatter extends AbstractFileFormatter {
    * @see org.apache.lens.lib.query.FileFormatter#writeHeader(java.lang.String)
    */
   public void writeHeader(String header) throws IOException {
+    written = true;
     rowWriter.write(null, new Text(header));
   }
 
@@ -85,6 +98,7 @@ public class HadoopFileFormatter extends AbstractFileFormatter {
    * @see org.apache.lens.lib.query.FileFormatter#writeFooter(java.lang.String)
    */
   public void writeFooter(String footer) throws IOException {
+    written = true;
     rowWriter.write(null, new Text(footer));
   }
 
@@ -102,11 +116,83 @@ public class HadoopFileFormatter extends AbstractFileFormatter {
     if (cachedRow == null) {
       cachedRow = new Text();
     }
+    written = true;
     cachedRow.set(row);
     rowWriter.write(null, cachedRow);
     numRows++;
   }
 
+  /**
+   * Write rows already encoded in the result encoding, as is.
+   *
+   * @param rows  the encoded rows, each followed by a new line
+   * @param count number of rows in the stream, -1 to count new lines while copying, which works only for encodings
+   *              with single byte new line
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Override
+  public void writeEncodedRows(InputStream rows, int count) throws IOException {
+    written = true;
+    if (count >= 0) {
+      rowWriter.writeEncoded(rows);
+      numRows += count;
+    } else {
+      NewlineCountingInputStream counting = new NewlineCountingInputStream(rows);
+      rowWriter.writeEncoded(counting);
+      numRows += counting.newlines;
+    }
+  }
+
+  /**
+   * Counts new line bytes read through it.
+   */
+  private static class NewlineCountingInputStream extends FilterInputStream {
+    private int newlines;
+
+    NewlineCountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b == '\n') {
+        newlines++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = super.read(b, off, len);
+      for (int i = off; i < off + read; i++) {
+        if (b[i] == '\n') {
+          newlines++;
+        }
+      }
+      return read;
+    }
+  }
+
+  /**
+   * Publish the file as output on commit by renaming it, instead of writing its rows. Possible only if nothing is
+   * written and the file is on the file system of the output. Nothing should be written afterwards, and number of rows
+   * is unknown.
+   *
+   * @param fs   file system of the file
+   * @param file the file, with content in the result encoding
+   * @return true if the file will be renamed as output
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public boolean renameOnCommit(FileSystem fs, Path file) throws IOException {
+    if (written || !fs.getUri().equals(outputPath.getFileSystem(ctx.getConf()).getUri())) {
+      return false;
+    }
+    renamedFile = file;
+    numRows = null;
+    return true;
+  }
+
   /*
    * (non-Javadoc)
    *
@@ -122,7 +208,14 @@ public class HadoopFileFormatter extends AbstractFileFormatter {
         finalPath = new Path(outputPath + rowWriter.getExtn());
       }
       finalPath = finalPath.makeQualified(fs);
-      fs.rename(rowWriter.getTmpPath(), finalPath);
+      if (renamedFile != null) {
+        fs.delete(rowWriter.getTmpPath(), false);
+        if (!fs.rename(renamedFile, finalPath)) {
+          throw new IOException("Could not rename " + renamedFile + " to " + finalPath);
+        }
+      } else {
+        fs.rename(rowWriter.getTmpPath(), finalPath);
+      }
       ctx.setResultSetPath(finalPath.toString());
       fileSize = fs.getFileStatus(finalPath).getLen();
     }
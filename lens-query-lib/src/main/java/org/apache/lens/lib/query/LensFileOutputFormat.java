@@ -20,6 +20,7 @@ package org.apache.lens.lib.query;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.regex.Matcher;
@@ -33,6 +34,7 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.mapred.FileOutputFormat;
 import org.apache.hadoop.mapred.JobConf;
@@ -76,6 +78,11 @@ public class LensFileOutputFormat extends FileOutputFormat<NullWritable, Text> {
      */
     protected OutputStreamWriter out;
 
+    /**
+     * The stream under out.
+     */
+    private DataOutputStream rawOut;
+
     /**
      * The tmp path.
      */
@@ -97,6 +104,7 @@ public class LensFileOutputFormat extends FileOutputFormat<NullWritable, Text> {
     public LensRowWriter(DataOutputStream out, String encoding, Path tmpPath, String extn) {
       this.tmpPath = tmpPath;
       this.extn = extn;
+      this.rawOut = out;
       try {
         this.out = new OutputStreamWriter(out, encoding);
       } catch (UnsupportedEncodingException uee) {
@@ -126,6 +134,17 @@ public class LensFileOutputFormat extends FileOutputFormat<NullWritable, Text> {
       out.write(NEWLINE);
     }
 
+    /**
+     * Write rows already encoded in the encoding of this writer, as is.
+     *
+     * @param rows the encoded rows, each followed by a new line
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public synchronized void writeEncoded(InputStream rows) throws IOException {
+      out.flush();
+      IOUtils.copyBytes(rows, rawOut, 65536, false);
+    }
+
     /*
      * (non-Javadoc)
      *
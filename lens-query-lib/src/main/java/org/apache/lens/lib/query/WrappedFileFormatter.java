@@ -19,6 +19,7 @@
 package org.apache.lens.lib.query;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.apache.lens.server.api.driver.LensResultSetMetadata;
 import org.apache.lens.server.api.query.QueryContext;
@@ -93,6 +94,21 @@ public abstract class WrappedFileFormatter extends AbstractOutputFormatter {
     formatter.writeRow(row);
   }
 
+  protected AbstractFileFormatter getFormatter() {
+    return formatter;
+  }
+
+  /**
+   * Write rows already encoded in the result encoding.
+   *
+   * @param rows    the encoded rows, each followed by a new line
+   * @param numRows number of rows in the stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected void writeEncodedRows(InputStream rows, int numRows) throws IOException {
+    formatter.writeEncodedRows(rows, numRows);
+  }
+
   @Override
   public Integer getNumRows() {
     return formatter.getNumRows();
@@ -19,6 +19,7 @@
 package org.apache.lens.lib.query;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -193,8 +194,18 @@ public class ZipFileFormatter extends AbstractFileFormatter {
    * @see org.apache.lens.lib.query.FileFormatter#writeRow(java.lang.String)
    */
   public void writeRow(String row) throws IOException {
-    // close zip entry and add new one, if numRows has crossed max rows in the
-    // cuurent file
+    nextPartIfFull();
+    out.write(row);
+    out.write("\n");
+    numRows++;
+  }
+
+  /**
+   * Close zip entry and add new one, if numRows has crossed max rows in the current file.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void nextPartIfFull() throws IOException {
     if (numRows != 0 && numRows % maxSplitRows == 0) {
       currentPart++;
       out.flush();
@@ -209,9 +220,56 @@ public class ZipFileFormatter extends AbstractFileFormatter {
       }
       writeHeader();
     }
-    out.write(row);
-    out.write("\n");
-    numRows++;
+  }
+
+  /**
+   * Copies the encoded bytes into zip entries, looking for new lines only to start a new entry after max rows.
+   *
+   * @param rows  the encoded rows
+   * @param count number of rows in the stream, rows are counted while copying
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Override
+  public void writeEncodedRows(InputStream rows, int count) throws IOException {
+    byte[] newline = LensFileOutputFormat.NEWLINE.getBytes(encoding);
+    int width = newline.length;
+    byte[] buffer = new byte[65536];
+    int filled = 0;
+    boolean rowStart = true;
+    int read;
+    out.flush();
+    while ((read = rows.read(buffer, filled, buffer.length - filled)) != -1) {
+      filled += read;
+      // scan whole characters only, rest is scanned with next read
+      int end = filled - filled % width;
+      int from = 0;
+      for (int i = 0; i < end; i += width) {
+        if (rowStart) {
+          nextPartIfFull();
+          out.flush();
+          rowStart = false;
+        }
+        if (isNewline(buffer, i, newline)) {
+          zipOut.write(buffer, from, i + width - from);
+          from = i + width;
+          numRows++;
+          rowStart = true;
+        }
+      }
+      zipOut.write(buffer, from, end - from);
+      System.arraycopy(buffer, end, buffer, 0, filled - end);
+      filled -= end;
+    }
+    zipOut.write(buffer, 0, filled);
+  }
+
+  private static boolean isNewline(byte[] buffer, int offset, byte[] newline) {
+    for (int i = 0; i < newline.length; i++) {
+      if (buffer[offset + i] != newline[i]) {
+        return false;
+      }
+    }
+    return true;
   }
 
   /*
@@ -22,6 +22,7 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -256,6 +257,148 @@ public class TestFilePersistentFormatter extends TestAbstractFileFormatter {
     Assert.assertEquals(actual, getExpectedCSVRowsWithMultiple());
   }
 
+  /**
+   * Test csv with part files transcoded in parallel.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test
+  public void testCSVWithParallelPartFiles() throws IOException {
+    Configuration conf = new Configuration();
+    setConf(conf);
+    conf.set(LensConfConstants.QUERY_OUTPUT_HEADER, "");
+    conf.setInt(LensConfConstants.RESULT_FORMAT_PART_FILE_THREADS, 3);
+    testFormatter(conf, "UTF8", LensConfConstants.RESULT_SET_PARENT_DIR_DEFAULT, ".csv", getMockedResultSet());
+    // validate rows
+    Assert.assertEquals(readFinalOutputFile(new Path(formatter.getFinalOutputPath()), conf, "UTF-8"),
+      getExpectedCSVRows());
+    // transcoded part files are cleaned up
+    Path tmpDir = new Path(LensConfConstants.RESULT_SET_PARENT_DIR_DEFAULT,
+      formatter.ctx.getQueryHandle() + ".tmp.parts");
+    Assert.assertFalse(tmpDir.getFileSystem(conf).exists(tmpDir));
+  }
+
+  /**
+   * Test text files with compression, with part files transcoded in parallel.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test
+  public void testTextFilesWithCompressionAndParallelPartFiles() throws IOException {
+    Configuration conf = new Configuration();
+    setConf(conf);
+    conf.set("test.partfile.dir", partFileTextDir.toString());
+    conf.set(LensConfConstants.QUERY_OUTPUT_FILE_EXTN, ".txt");
+    conf.setBoolean(LensConfConstants.QUERY_OUTPUT_ENABLE_COMPRESSION, true);
+    conf.set(LensConfConstants.QUERY_OUTPUT_HEADER,
+      "firstcolformat(secondcol,2)thirdcolfourthcolfifthcolsixthcolseventhcol");
+    conf.setInt(LensConfConstants.RESULT_FORMAT_PART_FILE_THREADS, 2);
+    testFormatter(conf, "UTF8", LensConfConstants.RESULT_SET_PARENT_DIR_DEFAULT, ".txt.gz",
+      getMockedResultSetWithoutComma());
+    // validate rows
+    Assert.assertEquals(readCompressedFile(new Path(formatter.getFinalOutputPath()), conf, "UTF-8"),
+      getExpectedTextRows());
+  }
+
+  /**
+   * Test csv with zip formatter, with part files transcoded in parallel. Splits fall within part files.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test
+  public void testCSVWithZipFormatterAndParallelPartFiles() throws IOException {
+    Configuration conf = new Configuration();
+    setConf(conf);
+    conf.set(LensConfConstants.QUERY_OUTPUT_HEADER, "");
+    conf.setBoolean(LensConfConstants.RESULT_SPLIT_INTO_MULTIPLE, true);
+    conf.setLong(LensConfConstants.RESULT_SPLIT_MULTIPLE_MAX_ROWS, 2L);
+    conf.setInt(LensConfConstants.RESULT_FORMAT_PART_FILE_THREADS, 3);
+    testFormatter(conf, "UTF8", LensConfConstants.RESULT_SET_PARENT_DIR_DEFAULT, ".zip", getMockedResultSet());
+    // validate rows
+    Assert.assertEquals(readZipOutputFile(new Path(formatter.getFinalOutputPath()), conf, "UTF-8"),
+      getExpectedCSVRowsWithMultiple());
+  }
+
+  /**
+   * Test csv with zip formatter in a two byte encoding, with part files transcoded in parallel.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test
+  public void testEncodingWithZipFormatterAndParallelPartFiles() throws IOException {
+    Configuration conf = new Configuration();
+    conf.set(LensConfConstants.QUERY_OUTPUT_CHARSET_ENCODING, "UTF-16LE");
+    setConf(conf);
+    conf.set(LensConfConstants.QUERY_OUTPUT_HEADER, "");
+    conf.setBoolean(LensConfConstants.RESULT_SPLIT_INTO_MULTIPLE, true);
+    conf.setLong(LensConfConstants.RESULT_SPLIT_MULTIPLE_MAX_ROWS, 2L);
+    conf.setInt(LensConfConstants.RESULT_FORMAT_PART_FILE_THREADS, 3);
+    testFormatter(conf, "UnicodeLittleUnmarked", LensConfConstants.RESULT_SET_PARENT_DIR_DEFAULT, ".zip",
+      getMockedResultSet());
+    // validate rows, each zip entry starts with byte order mark
+    List<String> actual = new ArrayList<String>();
+    for (String row : readZipOutputFile(new Path(formatter.getFinalOutputPath()), conf, "UTF-16LE")) {
+      actual.add(row.replace("\uFEFF", ""));
+    }
+    Assert.assertEquals(actual, getExpectedCSVRowsWithMultiple());
+  }
+
+  /**
+   * Test csv with part files copied as is after header.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test
+  public void testCSVWithPassThrough() throws IOException {
+    Configuration conf = new Configuration();
+    setConf(conf);
+    conf.set(LensConfConstants.QUERY_OUTPUT_HEADER, "");
+    conf.set(LensConfConstants.QUERY_OUTPUT_FOOTER, "");
+    conf.setBoolean(LensConfConstants.RESULT_FORMAT_PASSTHROUGH, true);
+    testFormatter(conf, "UTF8", LensConfConstants.RESULT_SET_PARENT_DIR_DEFAULT, ".csv", getMockedResultSet());
+    // validate rows, footer has the rows counted while copying
+    Assert.assertEquals(readFinalOutputFile(new Path(formatter.getFinalOutputPath()), conf, "UTF-8"),
+      getExpectedCSVRows());
+    Assert.assertEquals(formatter.getNumRows().intValue(), 5);
+  }
+
+  /**
+   * Test single part file renamed as output.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test
+  public void testPassThroughByRename() throws IOException {
+    Configuration conf = new Configuration();
+    conf.setBoolean(LensConfConstants.RESULT_FORMAT_PASSTHROUGH, true);
+    Path singlePartDir = new Path("target/singlepartfile");
+    FileSystem fs = singlePartDir.getFileSystem(conf);
+    Path partFile = new Path(singlePartDir, "000000_0");
+    BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(fs.create(partFile), "UTF-8"));
+    writer.write("\"1\",\"one\"\n");
+    writer.write("\"2\",\"two\"\n");
+    writer.close();
+    try {
+      QueryContext ctx = createContext(conf, null);
+      formatter = createFormatter();
+      formatter.init(ctx, getMockedResultSet());
+      ((PersistedOutputFormatter) formatter).addRowsFromPersistedPath(singlePartDir);
+      formatter.commit();
+      formatter.close();
+      Path finalPath = new Path(formatter.getFinalOutputPath());
+      Assert.assertEquals(finalPath, new Path(LensConfConstants.RESULT_SET_PARENT_DIR_DEFAULT,
+        ctx.getQueryHandle() + ".csv").makeQualified(fs));
+      Assert.assertEquals(readFinalOutputFile(finalPath, conf, "UTF-8"), Arrays.asList("\"1\",\"one\"",
+        "\"2\",\"two\""));
+      Assert.assertFalse(fs.exists(partFile));
+      Assert.assertFalse(fs.exists(formatter.getTmpPath()));
+      // rows are not counted
+      Assert.assertNull(formatter.getNumRows());
+    } finally {
+      fs.delete(singlePartDir, true);
+    }
+  }
+
   /**
    * Test text files output path.
    *
@@ -214,6 +214,22 @@ public final class LensConfConstants {
    */
   public static final boolean DEFAULT_SERVER_UI_ENABLE_CACHING = true;
 
+  /**
+   * Databases whose cube metastore catalog is loaded in bulk when the server starts.
+   */
+  public static final String METASTORE_WARM_UP_DATABASES = SERVER_PFX + "metastore.warm.up.databases";
+
+  /**
+   * Whether partition timelines of all fact storage tables are also loaded by metastore warm up.
+   */
+  public static final String METASTORE_WARM_UP_PARTITION_TIMELINES = SERVER_PFX
+    + "metastore.warm.up.partition.timelines";
+
+  /**
+   * The Constant DEFAULT_METASTORE_WARM_UP_PARTITION_TIMELINES.
+   */
+  public static final boolean DEFAULT_METASTORE_WARM_UP_PARTITION_TIMELINES = false;
+
   /**
    * The Constant SERVER_SNAPSHOT_INTERVAL.
    */
@@ -697,6 +713,56 @@ public final class LensConfConstants {
    */
   public static final long DEFAULT_RESULT_FORMAT_SIZE_THRESHOLD = 10737418240L; // 10GB
 
+  /**
+   * Number of threads transcoding part files of driver persisted result in parallel, 1 to transcode them one by one.
+   */
+  public static final String RESULT_FORMAT_PART_FILE_THREADS = QUERY_PFX + "result.format.part.file.threads";
+
+  /**
+   * The Constant DEFAULT_RESULT_FORMAT_PART_FILE_THREADS.
+   */
+  public static final int DEFAULT_RESULT_FORMAT_PART_FILE_THREADS = 1;
+
+  /**
+   * Whether driver persisted result, which needs no change of encoding, compression or splits, is published as is.
+   */
+  public static final String RESULT_FORMAT_PASSTHROUGH = QUERY_PFX + "result.format.passthrough";
+
+  /**
+   * The Constant DEFAULT_RESULT_FORMAT_PASSTHROUGH.
+   */
+  public static final boolean DEFAULT_RESULT_FORMAT_PASSTHROUGH = false;
+
+  /**
+   * Size of driver persisted result above which it is formatted in the large lane of result formatter.
+   */
+  public static final String RESULT_FORMATTER_LARGE_LANE_SIZE = SERVER_PFX + "result.formatter.large.lane.size";
+
+  /**
+   * The Constant DEFAULT_RESULT_FORMATTER_LARGE_LANE_SIZE.
+   */
+  public static final long DEFAULT_RESULT_FORMATTER_LARGE_LANE_SIZE = 104857600L; // 100MB
+
+  /**
+   * Number of threads formatting results in the small lane of result formatter.
+   */
+  public static final String RESULT_FORMATTER_SMALL_LANE_THREADS = SERVER_PFX + "result.formatter.small.lane.threads";
+
+  /**
+   * The Constant DEFAULT_RESULT_FORMATTER_SMALL_LANE_THREADS.
+   */
+  public static final int DEFAULT_RESULT_FORMATTER_SMALL_LANE_THREADS = 4;
+
+  /**
+   * Number of threads formatting results in the large lane of result formatter.
+   */
+  public static final String RESULT_FORMATTER_LARGE_LANE_THREADS = SERVER_PFX + "result.formatter.large.lane.threads";
+
+  /**
+   * The Constant DEFAULT_RESULT_FORMATTER_LARGE_LANE_THREADS.
+   */
+  public static final int DEFAULT_RESULT_FORMATTER_LARGE_LANE_THREADS = 1;
+
   /**
    * The Constant RESULT_SPLIT_INTO_MULTIPLE.
    */
@@ -783,6 +849,12 @@ public final class LensConfConstants {
    */
   public static final int DEFAULT_PURGE_INTERVAL = 10000;
 
+  /**
+   * Key for number of finished queries saved to DB in a batch by the query purger
+   */
+  public static final String PURGE_BATCH_SIZE = SERVER_PFX + "querypurger.batch.size";
+  public static final int DEFAULT_PURGE_BATCH_SIZE = 100;
+
   // Server DB configuration
   /**
    * The Constant SERVER_DB_DRIVER_NAME.
@@ -846,6 +918,24 @@ public final class LensConfConstants {
    */
   public static final int DEFAULT_STATE_PERSIST_OUT_STREAM_BUFF_SIZE = 1048576;
 
+  /**
+   * Key to enable journaling of server state changes between snapshots
+   */
+  public static final String STATE_JOURNAL_ENABLED = SERVER_PFX + "state.journal.enabled";
+  public static final boolean DEFAULT_STATE_JOURNAL_ENABLED = true;
+
+  /**
+   * Key for interval in milliseconds at which journal of server state changes is flushed to file system
+   */
+  public static final String STATE_JOURNAL_SYNC_INTERVAL = SERVER_PFX + "state.journal.sync.interval";
+  public static final long DEFAULT_STATE_JOURNAL_SYNC_INTERVAL = 1000;
+
+  /**
+   * Key for number of journal records after which a snapshot is taken before the snapshot interval
+   */
+  public static final String STATE_JOURNAL_COMPACTION_RECORDS = SERVER_PFX + "state.journal.compaction.records";
+  public static final long DEFAULT_STATE_JOURNAL_COMPACTION_RECORDS = 100000;
+
   /**
    * Key for top level dir of database specific resources
    */
@@ -907,6 +997,80 @@ public final class LensConfConstants {
   public static final String ESTIMATE_POOL_KEEP_ALIVE_MILLIS = SERVER_PFX + "estimate.pool.keepalive.millis";
   public static final int DEFAULT_ESTIMATE_POOL_KEEP_ALIVE_MILLIS = 60000; // 1 minute
 
+  /**
+   * Key to enable sharing of cube rewrite plans across queries
+   */
+  public static final String REWRITE_PLAN_CACHE_ENABLED = SERVER_PFX + "rewrite.plan.cache.enabled";
+  public static final boolean DEFAULT_REWRITE_PLAN_CACHE_ENABLED = false;
+
+  /**
+   * Key used to get maximum number of rewrite plans kept in the shared rewrite plan cache
+   */
+  public static final String REWRITE_PLAN_CACHE_MAX_SIZE = SERVER_PFX + "rewrite.plan.cache.max.size";
+  public static final long DEFAULT_REWRITE_PLAN_CACHE_MAX_SIZE = 1000;
+
+  /**
+   * Key used to get the time after which an entry in the shared rewrite plan cache expires
+   */
+  public static final String REWRITE_PLAN_CACHE_EXPIRY_MILLIS = SERVER_PFX + "rewrite.plan.cache.expiry.millis";
+  public static final long DEFAULT_REWRITE_PLAN_CACHE_EXPIRY_MILLIS = 300000; // 5 minutes
+
+  /**
+   * Key used to get the width of time bucket within which rewrite plans of queries with relative time ranges
+   * are shared
+   */
+  public static final String REWRITE_PLAN_CACHE_RELATIVE_TIME_BUCKET_MILLIS = SERVER_PFX
+    + "rewrite.plan.cache.relative.time.bucket.millis";
+  public static final long DEFAULT_REWRITE_PLAN_CACHE_RELATIVE_TIME_BUCKET_MILLIS = 0;
+
+  /**
+   * Key used to get maximum number of parsed query texts kept for reuse across queries and drivers
+   */
+  public static final String QUERY_PARSE_CACHE_MAX_SIZE = SERVER_PFX + "query.parse.cache.max.size";
+  public static final long DEFAULT_QUERY_PARSE_CACHE_MAX_SIZE = 1000;
+
+  /**
+   * Key used to get number of threads in the pool updating status of launched queries
+   */
+  public static final String STATUS_UPDATE_POOL_THREADS = SERVER_PFX + "status.update.pool.threads";
+  public static final int DEFAULT_STATUS_UPDATE_POOL_THREADS = 10;
+
+  /**
+   * Key used to get minimum interval between two status polls of a launched query
+   */
+  public static final String STATUS_POLL_MIN_INTERVAL_MILLIS = SERVER_PFX + "status.poll.min.interval.millis";
+  public static final long DEFAULT_STATUS_POLL_MIN_INTERVAL_MILLIS = 1000;
+
+  /**
+   * Key used to get maximum interval between two status polls of a launched query
+   */
+  public static final String STATUS_POLL_MAX_INTERVAL_MILLIS = SERVER_PFX + "status.poll.max.interval.millis";
+  public static final long DEFAULT_STATUS_POLL_MAX_INTERVAL_MILLIS = 10000;
+
+  /**
+   * Key used to get the fraction of elapsed run time of a launched query used as interval between its status polls
+   */
+  public static final String STATUS_POLL_BACKOFF_FACTOR = SERVER_PFX + "status.poll.backoff.factor";
+  public static final float DEFAULT_STATUS_POLL_BACKOFF_FACTOR = 0.05f;
+
+  /**
+   * Key used to get number of threads in the pool completing executions with timeout
+   */
+  public static final String QUERY_COMPLETION_POOL_THREADS = SERVER_PFX + "query.completion.pool.threads";
+  public static final int DEFAULT_QUERY_COMPLETION_POOL_THREADS = 5;
+
+  /**
+   * Key used to get number of threads launching queries of each driver
+   */
+  public static final String QUERY_LAUNCHER_THREADS_PER_DRIVER = SERVER_PFX + "query.launcher.threads.per.driver";
+  public static final int DEFAULT_QUERY_LAUNCHER_THREADS_PER_DRIVER = 1;
+
+  /**
+   * Key used to get number of stripes of the lock held while admitting queries for launch
+   */
+  public static final String QUERY_LAUNCH_ADMISSION_LOCK_STRIPES = SERVER_PFX + "query.launch.admission.lock.stripes";
+  public static final int DEFAULT_QUERY_LAUNCH_ADMISSION_LOCK_STRIPES = 16;
+
   public static final String QUERY_PHASE1_REWRITERS = SERVER_PFX + "query.phase1.rewriters";
 
   /**
@@ -18,6 +18,7 @@
  */
 package org.apache.lens.server.api.driver;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -26,10 +27,12 @@ import org.apache.lens.api.query.ResultRow;
 import org.apache.lens.server.api.error.LensException;
 
 import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * The Class InMemoryResultSet.
  */
+@Slf4j
 public abstract class InMemoryResultSet extends LensResultSet {
 
   public abstract boolean seekToStart() throws LensException;
@@ -37,6 +40,9 @@ public abstract class InMemoryResultSet extends LensResultSet {
   @Setter
   private boolean fullyAccessed = false;
 
+  /** Index of the row to be read next, kept by {@link #rewind()} and {@link #readRows(long, int, RowConsumer)} */
+  private long position = 0;
+
   @Override
   public boolean canBePurged() {
     return fullyAccessed;
@@ -76,13 +82,115 @@ public abstract class InMemoryResultSet extends LensResultSet {
    * @see org.apache.lens.server.api.driver.LensResultSet#toQueryResult()
    */
   public InMemoryQueryResult toQueryResult() throws LensException {
-    List<ResultRow> rows = new ArrayList<ResultRow>();
-    while (hasNext()) {
-      rows.add(next());
-    }
-    fullyAccessed = true;
+    return toQueryResult(0, 0);
+  }
+
+  /**
+   * Get a page of the result.
+   *
+   * @param startIndex index of the first row of the page, starting from 0
+   * @param fetchSize  maximum number of rows in the page, 0 or less to read till the end
+   * @return the rows of the page
+   * @throws LensException the lens exception
+   */
+  public InMemoryQueryResult toQueryResult(long startIndex, int fetchSize) throws LensException {
+    final List<ResultRow> rows = new ArrayList<ResultRow>();
+    readRows(startIndex, fetchSize, new RowConsumer() {
+      @Override
+      public void consume(ResultRow row) {
+        rows.add(row);
+      }
+    });
     return new InMemoryQueryResult(rows);
   }
+
+  /**
+   * Seek to the start of the result, so that the next read starts from the first row.
+   *
+   * @return true if the result set could seek to start, false otherwise
+   * @throws LensException the lens exception
+   */
+  public synchronized boolean rewind() throws LensException {
+    if (!seekToStart()) {
+      return false;
+    }
+    position = 0;
+    return true;
+  }
+
+  /**
+   * Pass rows of the result to the consumer as they are read, without holding them in memory.
+   * <p></p>
+   * Position of the result set is remembered across calls, so reading pages in order does not read the result again.
+   * The result set should be moved only through {@link #rewind()} and this method, rows read directly through
+   * {@link #next()} or seeks done through {@link #seekToStart()} are not accounted.
+   * <p></p>
+   * If the start index is before the current position and the result set can not seek to start, rows are read from
+   * the current position, as they were before paging of results.
+   *
+   * @param startIndex index of the first row to be read, starting from 0
+   * @param fetchSize  maximum number of rows to be read, 0 or less to read till the end
+   * @param consumer   the consumer of rows
+   * @return number of rows read
+   * @throws LensException the lens exception
+   */
+  public long readRows(long startIndex, int fetchSize, RowConsumer consumer) throws LensException {
+    return readRows(startIndex, fetchSize, consumer, false);
+  }
+
+  /**
+   * Pass rows of the result to the consumer as they are read, like {@link #readRows(long, int, RowConsumer)}.
+   *
+   * @param startIndex   index of the first row to be read, starting from 0
+   * @param fetchSize    maximum number of rows to be read, 0 or less to read till the end
+   * @param consumer     the consumer of rows
+   * @param randomAccess whether reading must start at the start index, failing if rows before the current position
+   *                     can not be read again
+   * @return number of rows read
+   * @throws LensException if random access is asked for and the result set can not seek to start
+   */
+  public synchronized long readRows(long startIndex, int fetchSize, RowConsumer consumer, boolean randomAccess)
+    throws LensException {
+    if (startIndex < position && !rewind()) {
+      if (randomAccess) {
+        throw new LensException("Result set can not be read again from row " + startIndex);
+      }
+      log.warn("Result set can not seek to start, reading from row {} instead of row {}", position, startIndex);
+    }
+    while (position < startIndex && hasNext()) {
+      next();
+      position++;
+    }
+    long read = 0;
+    while ((fetchSize <= 0 || read < fetchSize) && hasNext()) {
+      try {
+        consumer.consume(next());
+      } catch (IOException e) {
+        throw new LensException("Error consuming result row", e);
+      }
+      position++;
+      read++;
+    }
+    if (fetchSize <= 0 || read < fetchSize) {
+      fullyAccessed = true;
+    }
+    return read;
+  }
+
+  /**
+   * Consumer of rows read from the result set.
+   */
+  public interface RowConsumer {
+
+    /**
+     * Consume a result row.
+     *
+     * @param row the row
+     * @throws IOException if row could not be written out
+     */
+    void consume(ResultRow row) throws IOException;
+  }
+
   public boolean isHttpResultAvailable() throws LensException {
     return false;
   }
@@ -56,6 +56,16 @@ public interface MetricsService extends LensService {
    */
   void incrCounter(Class<?> cls, String counter);
 
+  /**
+   * Increment a counter by the given count. The counter is named in the same way as
+   * {@link #incrCounter(Class, String)}.
+   *
+   * @param cls     Class of the counter for namespacing the counter
+   * @param counter the counter
+   * @param count   the count to increment by
+   */
+  void incrCounter(Class<?> cls, String counter, long count);
+
   /**
    * Decrement a counter with the name costructed using given class and counter name Actual name of the counter will be
    * <p></p>
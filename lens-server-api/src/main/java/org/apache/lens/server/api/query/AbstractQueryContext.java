@@ -20,6 +20,7 @@ package org.apache.lens.server.api.query;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -36,6 +37,7 @@ import org.apache.lens.server.api.util.LensUtil;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.parse.ASTNode;
 import org.apache.hadoop.hive.ql.session.SessionState;
 
 import lombok.Getter;
@@ -126,8 +128,16 @@ public abstract class AbstractQueryContext implements Serializable {
   /** Lock used to synchronize HiveConf access */
   private transient Lock hiveConfLock = new ReentrantLock();
 
+  /** ASTs of user query and driver queries parsed so far, by query text */
+  private transient Map<String, ASTNode> parsedQueries = new ConcurrentHashMap<String, ASTNode>();
+
   protected AbstractQueryContext(final String query, final String user, final LensConf qconf, final Configuration conf,
     final Collection<LensDriver> drivers, boolean mergeDriverConf) {
+    this(query, user, qconf, conf, drivers, mergeDriverConf, getCurrentDatabase());
+  }
+
+  protected AbstractQueryContext(final String query, final String user, final LensConf qconf, final Configuration conf,
+    final Collection<LensDriver> drivers, boolean mergeDriverConf, String database) {
     if (conf.getBoolean(LensConfConstants.ENABLE_QUERY_METRICS, LensConfConstants.DEFAULT_ENABLE_QUERY_METRICS)) {
       UUID metricId = UUID.randomUUID();
       conf.set(LensConfConstants.QUERY_METRIC_UNIQUE_ID_CONF_KEY, metricId.toString());
@@ -145,19 +155,43 @@ public abstract class AbstractQueryContext implements Serializable {
       this.selectedDriverQuery = query;
       setSelectedDriver(drivers.iterator().next());
     }
+    this.database = database;
+  }
 
+  private static String getCurrentDatabase() {
     // If this is created under an 'acquire' current db would be set
     if (SessionState.get() != null) {
       String currDb = SessionState.get().getCurrentDatabase();
-      database = currDb == null ? "default" : currDb;
-    } else {
-      database = "default";
+      return currDb == null ? "default" : currDb;
     }
+    return "default";
   }
 
   // called after the object is constructed from serialized object
   public void initTransientState() {
     hiveConfLock = new ReentrantLock();
+    parsedQueries = new ConcurrentHashMap<String, ASTNode>();
+  }
+
+  /**
+   * Get the AST of query text parsed earlier in the life of this query. The AST is shared by everyone parsing the same
+   * text, so it must not be modified; copy it before making changes.
+   *
+   * @param query the query text
+   * @return the parsed AST, null if the text was not parsed yet
+   */
+  public ASTNode getParsedQuery(String query) {
+    return parsedQueries.get(query);
+  }
+
+  /**
+   * Keep the AST of query text for others parsing the same text in the life of this query.
+   *
+   * @param query the query text
+   * @param ast   the parsed AST, not to be modified after this
+   */
+  public void setParsedQuery(String query, ASTNode ast) {
+    parsedQueries.put(query, ast);
   }
 
   /**
@@ -461,5 +495,6 @@ public abstract class AbstractQueryContext implements Serializable {
   public void clearTransientStateAfterCompleted() {
     driverContext.clearTransientStateAfterCompleted();
     hiveConf = null;
+    parsedQueries.clear();
   }
 }
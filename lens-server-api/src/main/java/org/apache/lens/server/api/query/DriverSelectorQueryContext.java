@@ -25,6 +25,7 @@ import org.apache.lens.server.api.driver.DriverQueryPlan;
 import org.apache.lens.server.api.driver.LensDriver;
 import org.apache.lens.server.api.error.LensException;
 import org.apache.lens.server.api.query.cost.QueryCost;
+import org.apache.lens.server.api.util.LayeredConfiguration;
 import org.apache.lens.server.api.util.LensUtil;
 
 import org.apache.commons.lang3.StringUtils;
@@ -60,10 +61,15 @@ public class DriverSelectorQueryContext {
 
   public DriverSelectorQueryContext(final String userQuery, final Configuration queryConf,
     final Collection<LensDriver> drivers, boolean mergeConf) {
+    // query conf is layered on top of each driver's conf, snapshot is taken once for all drivers
+    LayeredConfiguration.Layer queryLayer = null;
     for (LensDriver driver : drivers) {
       DriverQueryContext ctx = new DriverQueryContext(driver);
       if (mergeConf) {
-        ctx.setDriverSpecificConf(mergeConf(driver, queryConf));
+        if (queryLayer == null) {
+          queryLayer = LayeredConfiguration.snapshot(queryConf);
+        }
+        ctx.setDriverSpecificConf(mergeConf(driver, queryConf, queryLayer));
       } else {
         ctx.setDriverSpecificConf(queryConf);
       }
@@ -144,15 +150,13 @@ public class DriverSelectorQueryContext {
   /**
    * Gets the driver query conf.
    *
-   * @param driver    the driver
-   * @param queryConf the query conf
+   * @param driver     the driver
+   * @param queryConf  the query conf
+   * @param queryLayer snapshot of the query conf
    * @return the final query conf
    */
-  private Configuration mergeConf(LensDriver driver, Configuration queryConf) {
-    Configuration conf = new Configuration(driver.getConf());
-    for (Map.Entry<String, String> entry : queryConf) {
-      conf.set(entry.getKey(), entry.getValue());
-    }
+  private Configuration mergeConf(LensDriver driver, Configuration queryConf, LayeredConfiguration.Layer queryLayer) {
+    Configuration conf = new LayeredConfiguration(queryLayer.over(LayeredConfiguration.shared(driver.getConf())));
     conf.setClassLoader(queryConf.getClassLoader());
     return conf;
   }
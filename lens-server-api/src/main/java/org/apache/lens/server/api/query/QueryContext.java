@@ -19,6 +19,7 @@
 package org.apache.lens.server.api.query;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.UUID;
 
@@ -34,6 +35,7 @@ import org.apache.lens.server.api.driver.LensDriver;
 import org.apache.lens.server.api.error.LensException;
 import org.apache.lens.server.api.query.collect.WaitingQueriesSelectionPolicy;
 import org.apache.lens.server.api.query.constraint.QueryLaunchingConstraint;
+import org.apache.lens.server.api.util.LayeredConfiguration;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
@@ -83,7 +85,7 @@ public class QueryContext extends AbstractQueryContext {
    * The status.
    */
   @Getter
-  private QueryStatus status;
+  private volatile QueryStatus status;
 
   /**
    * The result set path.
@@ -235,6 +237,42 @@ public class QueryContext extends AbstractQueryContext {
     this.driverStatus = new DriverQueryStatus();
   }
 
+  /**
+   * Instantiates a query context recovered from the state recorded at its submission.
+   */
+  private QueryContext(QueryHandle queryHandle, String userQuery, String user, LensConf qconf, Configuration conf,
+    long submissionTime, Priority priority, String database) {
+    super(userQuery, user, qconf, conf, Collections.<LensDriver>emptyList(), false, database);
+    this.submissionTime = submissionTime;
+    this.queryHandle = queryHandle;
+    this.status = new QueryStatus(0.0f, null, Status.NEW, "Query just got created", false, null, null, null);
+    this.priority = priority;
+    this.isPersistent = conf.getBoolean(LensConfConstants.QUERY_PERSISTENT_RESULT_SET,
+      LensConfConstants.DEFAULT_PERSISTENT_RESULT_SET);
+    this.isDriverPersistent = conf.getBoolean(LensConfConstants.QUERY_PERSISTENT_RESULT_INDRIVER,
+      LensConfConstants.DEFAULT_DRIVER_PERSISTENT_RESULT_SET);
+    this.driverStatus = new DriverQueryStatus();
+  }
+
+  /**
+   * Recreate context of a submitted query from the state recorded at its submission. The driver context is empty;
+   * the query service sets it up along with the selected driver and the driver query.
+   *
+   * @param queryHandle    the query handle
+   * @param userQuery      the user query
+   * @param user           the submitted user
+   * @param qconf          the query lens conf
+   * @param conf           the query conf, which decides whether result is persisted
+   * @param submissionTime the submission time
+   * @param priority       the priority
+   * @param database       the database in which query was submitted
+   * @return the query context
+   */
+  public static QueryContext recoverSubmitted(QueryHandle queryHandle, String userQuery, String user,
+    LensConf qconf, Configuration conf, long submissionTime, Priority priority, String database) {
+    return new QueryContext(queryHandle, userQuery, user, qconf, conf, submissionTime, priority, database);
+  }
+
   /**
    * Utility create method to create context with single driver.
    *
@@ -262,14 +300,8 @@ public class QueryContext extends AbstractQueryContext {
    * @return the configuration
    */
   private static Configuration mergeConf(Configuration prepared, Configuration current) {
-    Configuration conf = new Configuration(false);
-    for (Map.Entry<String, String> entry : prepared) {
-      conf.set(entry.getKey(), entry.getValue());
-    }
-    for (Map.Entry<String, String> entry : current) {
-      conf.set(entry.getKey(), entry.getValue());
-    }
-    return conf;
+    return new LayeredConfiguration(
+      LayeredConfiguration.snapshot(current).over(LayeredConfiguration.snapshot(prepared)));
   }
 
   /**
@@ -28,6 +28,8 @@ import org.apache.lens.api.query.*;
 import org.apache.lens.server.api.error.LensException;
 import org.apache.lens.server.api.query.cost.QueryCost;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 /**
  * The Interface QueryExecutionService.
  */
@@ -158,6 +160,32 @@ public interface QueryExecutionService {
   QueryHandleWithResultSet execute(LensSessionHandle sessionHandle, String query, long timeoutmillis,
     LensConf conf, String queryName) throws LensException;
 
+  /**
+   * Execute the query with a timeout, without blocking the calling thread. The query is submitted before returning and
+   * the returned future completes when the query finishes or the timeout, counted from submission, has reached.
+   *
+   * @param sessionHandle the session handle
+   * @param query         The query should be in HiveQL(SQL like)
+   * @param timeoutmillis The timeout after which the future will complete with handle, if query did not finish before.
+   * @param conf          The query configuration
+   * @param queryName     the query name
+   * @return future of the query handle, with the result if query finished within the timeout specified.
+   * @throws LensException the lens exception
+   */
+  ListenableFuture<QueryHandleWithResultSet> executeWithTimeoutAsync(LensSessionHandle sessionHandle, String query,
+    long timeoutmillis, LensConf conf, String queryName) throws LensException;
+
+  /**
+   * Get a future which completes with the final status of the query, once the query finishes.
+   *
+   * @param sessionHandle the session handle
+   * @param queryHandle   the query handle
+   * @return future of query status
+   * @throws LensException the lens exception
+   */
+  ListenableFuture<QueryStatus> getCompletionFuture(LensSessionHandle sessionHandle, QueryHandle queryHandle)
+    throws LensException;
+
   /**
    * Get the query, specified by the handle.
    *
@@ -202,6 +230,32 @@ public interface QueryExecutionService {
    */
   Response getHttpResultSet(LensSessionHandle sessionHandle, QueryHandle queryHandle) throws LensException;
 
+  /**
+   * Get rows of an in memory result as a stream of json arrays, one per row, written as they are read from driver.
+   *
+   * @param sessionHandle the session handle
+   * @param queryHandle   the query handle
+   * @param startIndex    the start index
+   * @param fetchSize     the fetch size, 0 or less for all rows from start index
+   * @return the streaming result set response
+   * @throws LensException the lens exception
+   */
+  Response getStreamingResultSet(LensSessionHandle sessionHandle, QueryHandle queryHandle, long startIndex,
+    int fetchSize) throws LensException;
+
+  /**
+   * Get rows of an in memory result in columnar format, written in batches as they are read from driver.
+   *
+   * @param sessionHandle the session handle
+   * @param queryHandle   the query handle
+   * @param startIndex    the start index
+   * @param fetchSize     the fetch size, 0 or less for all rows from start index
+   * @return the response with result in {@link org.apache.lens.api.query.ColumnarResultWriter} format
+   * @throws LensException the lens exception
+   */
+  Response getColumnarResultSet(LensSessionHandle sessionHandle, QueryHandle queryHandle, long startIndex,
+    int fetchSize) throws LensException;
+
   /**
    * Closes result set by releasing any resources used in serving the resultset.
    *
@@ -237,6 +291,25 @@ public interface QueryExecutionService {
   List<QueryHandle> getAllQueries(LensSessionHandle sessionHandle, String state, String user, String queryName,
     long fromDate, long toDate) throws LensException;
 
+  /**
+   * Returns a page of queries submitted in the session, latest submitted first. Pages are fetched by passing the last
+   * query of previous page as cursor.
+   *
+   * @param sessionHandle the session handle
+   * @param state         return queries in this state. if null, all queries will be returned
+   * @param user          Get queries submitted by a specific user.
+   *                      If this set to "all", queries of all users are returned
+   * @param queryName     return queries containing the query name. If null, all queries will be returned
+   * @param fromDate      start date of time range interval
+   * @param toDate        end date of the time range interval
+   * @param limit         maximum number of queries returned. If not positive, all queries after cursor are returned
+   * @param cursor        handle of the last query of previous page. If null, queries from the latest are returned
+   * @return List of query handles
+   * @throws LensException the lens exception
+   */
+  List<QueryHandle> getAllQueries(LensSessionHandle sessionHandle, String state, String user, String queryName,
+    long fromDate, long toDate, int limit, QueryHandle cursor) throws LensException;
+
   /**
    * Returns all the prepared queries for the specified user. If no user is passed, queries of all users will be
    * returned.
@@ -21,6 +21,7 @@ package org.apache.lens.server.api.query.collect;
 
 import java.util.Set;
 
+import org.apache.lens.api.Priority;
 import org.apache.lens.server.api.driver.LensDriver;
 import org.apache.lens.server.api.query.QueryContext;
 import org.apache.lens.server.api.query.cost.QueryCost;
@@ -62,4 +63,21 @@ public interface EstimatedImmutableQueryCollection extends ImmutableQueryCollect
    * @return total query cost of all queries of user
    */
   QueryCost getTotalQueryCost(final String user);
+
+  /**
+   *
+   * Get total query cost of all queries of given driver
+   *
+   * @param driver
+   * @return total query cost of all queries of driver
+   */
+  QueryCost getTotalQueryCost(final LensDriver driver);
+
+  /**
+   *
+   * @param priority Priority for which count of queries have to be returned.
+   *
+   * @return count of queries of given priority.
+   */
+  int getQueriesCount(final Priority priority);
 }
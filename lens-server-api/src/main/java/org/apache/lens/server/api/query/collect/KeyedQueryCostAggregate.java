@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.api.query.collect;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.lens.server.api.query.QueryContext;
+import org.apache.lens.server.api.query.cost.QueryCost;
+
+import lombok.AllArgsConstructor;
+
+/**
+ * Running count and total cost of queries, grouped by a key of query. Count and cost of a key are read in O(1).
+ * Queries for which key is null are not counted.
+ * <p></p>
+ * Key and cost of a query are remembered when it is added, and the same are taken off when it is removed. Costs can
+ * only be added, so on removal of a query the total cost of its key is summed again from the remaining queries of the
+ * key.
+ *
+ * @param <K> the type of key
+ */
+public abstract class KeyedQueryCostAggregate<K> implements QueryAggregate {
+
+  @AllArgsConstructor
+  private static class Total {
+    private final int count;
+    private final QueryCost cost;
+  }
+
+  @AllArgsConstructor
+  private static class Contribution<K> {
+    private final K key;
+    private final QueryCost cost;
+  }
+
+  private final ConcurrentMap<K, Total> totals = new ConcurrentHashMap<K, Total>();
+  private final Map<QueryContext, Contribution<K>> contributions = new HashMap<QueryContext, Contribution<K>>();
+  private final Map<K, Set<QueryContext>> queriesByKey = new HashMap<K, Set<QueryContext>>();
+
+  /**
+   * @param query the query
+   * @return the key by which query is aggregated, null if query should not be counted
+   */
+  protected abstract K getKey(final QueryContext query);
+
+  @Override
+  public void add(final QueryContext query) {
+    K key = getKey(query);
+    if (key == null || contributions.containsKey(query)) {
+      return;
+    }
+    QueryCost cost = query.getSelectedDriverQueryCost();
+    contributions.put(query, new Contribution<K>(key, cost));
+    Set<QueryContext> queries = queriesByKey.get(key);
+    if (queries == null) {
+      queries = new LinkedHashSet<QueryContext>();
+      queriesByKey.put(key, queries);
+    }
+    queries.add(query);
+    Total total = totals.get(key);
+    if (total == null) {
+      totals.put(key, new Total(1, cost));
+    } else {
+      totals.put(key, new Total(total.count + 1, add(total.cost, cost)));
+    }
+  }
+
+  @Override
+  public void remove(final QueryContext query) {
+    Contribution<K> contribution = contributions.remove(query);
+    if (contribution == null) {
+      return;
+    }
+    Set<QueryContext> queries = queriesByKey.get(contribution.key);
+    queries.remove(query);
+    if (queries.isEmpty()) {
+      queriesByKey.remove(contribution.key);
+      totals.remove(contribution.key);
+    } else {
+      QueryCost cost = null;
+      for (QueryContext remaining : queries) {
+        cost = add(cost, contributions.get(remaining).cost);
+      }
+      totals.put(contribution.key, new Total(queries.size(), cost));
+    }
+  }
+
+  /**
+   * @param key the key
+   * @return count of queries of the key
+   */
+  public int getCount(final K key) {
+    Total total = key == null ? null : totals.get(key);
+    return total == null ? 0 : total.count;
+  }
+
+  /**
+   * @param key the key
+   * @return total cost of queries of the key, null if there are no queries of the key with a cost
+   */
+  public QueryCost getTotalCost(final K key) {
+    Total total = key == null ? null : totals.get(key);
+    return total == null ? null : total.cost;
+  }
+
+  private static QueryCost add(QueryCost total, QueryCost cost) {
+    if (total == null) {
+      return cost;
+    }
+    return cost == null ? total : total.add(cost);
+  }
+}
@@ -0,0 +1,46 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.api.query.collect;
+
+import org.apache.lens.server.api.query.QueryContext;
+
+/**
+ * Aggregate over queries of a collection, which the collection updates as queries are added to and removed from it.
+ * Checks which need counts or costs of queries can read them from an aggregate, instead of iterating over queries.
+ * <p></p>
+ * A query is added to an aggregate only once till it is removed. Thread safe collections update aggregates holding
+ * their lock, so updates are never concurrent. An aggregate read without the lock of the collection should be safe to
+ * read while it is being updated.
+ */
+public interface QueryAggregate {
+
+  /**
+   * Account for a query added to the collection.
+   *
+   * @param query the query
+   */
+  void add(final QueryContext query);
+
+  /**
+   * Account for a query removed from the collection.
+   *
+   * @param query the query
+   */
+  void remove(final QueryContext query);
+}
@@ -0,0 +1,36 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.api.query.constraint;
+
+import java.util.Set;
+
+import org.apache.lens.server.api.query.collect.QueryAggregate;
+
+/**
+ * A {@link QueryLaunchingConstraint} which is evaluated over its own aggregates of launched queries. Lens server
+ * registers these aggregates with launched queries once, and keeps them updated as queries are launched and finish,
+ * so that the constraint does not have to look at launched queries on every check.
+ */
+public interface AggregatingQueryLaunchingConstraint extends QueryLaunchingConstraint {
+
+  /**
+   * @return aggregates of launched queries which this constraint reads
+   */
+  Set<QueryAggregate> getLaunchedQueriesAggregates();
+}
@@ -132,4 +132,12 @@ public interface SessionService {
    * Returns true if the session is open
    */
   boolean isOpen(LensSessionHandle sessionHandle);
+
+  /**
+   * Record a change made to the session by other services, such as change of its current database, so that the
+   * change is recovered on restart.
+   *
+   * @param sessionHandle the session handle
+   */
+  void sessionChanged(LensSessionHandle sessionHandle);
 }
@@ -0,0 +1,368 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.api.util;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.util.*;
+
+import org.apache.hadoop.conf.Configuration;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A {@link Configuration} on top of immutable layers, which are shared with other configurations. Only the properties
+ * set or unset on this configuration are kept with it, lookups fall through to the layers below. Copying a layered
+ * configuration, even through {@link Configuration#Configuration(Configuration)}, copies only the properties kept with
+ * it, so server, driver and session configurations can be shared by all the queries using them.
+ *
+ * Anything reloading the configuration, like adding a resource or building a HiveConf from it, still ends up with a
+ * full copy of all the properties.
+ */
+@Slf4j
+public class LayeredConfiguration extends Configuration {
+
+  private static final Field PROPERTIES_FIELD;
+  private static final Field OVERLAY_FIELD;
+
+  static {
+    Field properties = null;
+    Field overlay = null;
+    try {
+      properties = Configuration.class.getDeclaredField("properties");
+      overlay = Configuration.class.getDeclaredField("overlay");
+      properties.setAccessible(true);
+      overlay.setAccessible(true);
+    } catch (NoSuchFieldException | SecurityException e) {
+      log.warn("Could not access properties of configuration, layered configurations will be full copies", e);
+      properties = null;
+      overlay = null;
+    }
+    PROPERTIES_FIELD = properties;
+    OVERLAY_FIELD = overlay;
+  }
+
+  // Layers of configurations which do not change once set up, by configuration object
+  private static final Cache<Configuration, Layer> SHARED_LAYERS = CacheBuilder.newBuilder().weakKeys().build();
+
+  /**
+   * An immutable set of properties on top of an optional lower layer.
+   */
+  public static final class Layer implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final Layer EMPTY = new Layer(null, Collections.<String, String>emptyMap(),
+      Collections.<String>emptySet());
+
+    private final Layer lower;
+    private final Map<String, String> values;
+    // keys unset in this layer, hiding values of lower layers
+    private final Set<String> removed;
+    private transient volatile Map<String, String> flattened;
+
+    private Layer(Layer lower, Map<String, String> values, Set<String> removed) {
+      this.lower = lower;
+      this.values = values;
+      this.removed = removed;
+    }
+
+    String get(String key) {
+      for (Layer layer = this; layer != null; layer = layer.lower) {
+        String value = layer.values.get(key);
+        if (value != null) {
+          return value;
+        }
+        if (layer.removed.contains(key)) {
+          return null;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Get all properties visible through this layer
+     *
+     * @return unmodifiable map of properties
+     */
+    public Map<String, String> flatten() {
+      if (flattened == null) {
+        if (lower == null && removed.isEmpty()) {
+          flattened = Collections.unmodifiableMap(values);
+        } else {
+          Map<String, String> all = new HashMap<String, String>(lower == null ? EMPTY.flatten() : lower.flatten());
+          all.keySet().removeAll(removed);
+          all.putAll(values);
+          flattened = Collections.unmodifiableMap(all);
+        }
+      }
+      return flattened;
+    }
+
+    /**
+     * Put all properties visible through this layer on top of the given layer.
+     *
+     * @param base the layer to go below
+     * @return new layer
+     */
+    public Layer over(Layer base) {
+      return new Layer(base, flatten(), Collections.<String>emptySet());
+    }
+  }
+
+  /**
+   * Take an immutable snapshot of the configuration. Cheap for a layered configuration, a full copy otherwise.
+   *
+   * @param conf configuration
+   * @return layer with all properties of conf
+   */
+  public static Layer snapshot(Configuration conf) {
+    Properties properties = getProperties(conf);
+    if (properties instanceof LayeredProperties) {
+      return ((LayeredProperties) properties).freeze();
+    }
+    Map<String, String> values = new HashMap<String, String>();
+    for (Map.Entry<String, String> entry : conf) {
+      values.put(entry.getKey(), entry.getValue());
+    }
+    return new Layer(null, values, Collections.<String>emptySet());
+  }
+
+  /**
+   * Get the snapshot of a configuration which does not change once set up, like server or driver configuration. The
+   * snapshot is taken once and shared by everyone layering on the same configuration object.
+   *
+   * @param conf configuration
+   * @return layer with all properties of conf
+   */
+  public static Layer shared(Configuration conf) {
+    Layer layer = SHARED_LAYERS.getIfPresent(conf);
+    if (layer == null) {
+      layer = snapshot(conf);
+      SHARED_LAYERS.put(conf, layer);
+    }
+    return layer;
+  }
+
+  private static Properties getProperties(Configuration conf) {
+    if (PROPERTIES_FIELD == null) {
+      return null;
+    }
+    synchronized (conf) {
+      try {
+        return (Properties) PROPERTIES_FIELD.get(conf);
+      } catch (IllegalAccessException e) {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Create configuration on top of given layer
+   *
+   * @param base the base layer
+   */
+  public LayeredConfiguration(Layer base) {
+    super(false);
+    if (PROPERTIES_FIELD != null) {
+      try {
+        PROPERTIES_FIELD.set(this, new LayeredProperties(base));
+        OVERLAY_FIELD.set(this, new LayeredProperties(base));
+        return;
+      } catch (IllegalAccessException e) {
+        log.warn("Could not set layered properties, falling back to full copy", e);
+        reloadConfiguration();
+      }
+    }
+    for (Map.Entry<String, String> entry : base.flatten().entrySet()) {
+      set(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Create configuration on top of a snapshot of given configuration
+   *
+   * @param base the base configuration
+   */
+  public LayeredConfiguration(Configuration base) {
+    this(snapshot(base));
+    setClassLoader(base.getClassLoader());
+  }
+
+  /**
+   * Properties looking up a base layer for the keys not set locally.
+   */
+  private static final class LayeredProperties extends Properties {
+    private static final long serialVersionUID = 1L;
+
+    private Layer base;
+    private Set<String> removed = new HashSet<String>();
+
+    LayeredProperties(Layer base) {
+      this.base = base;
+    }
+
+    synchronized Layer freeze() {
+      if (super.isEmpty() && removed.isEmpty()) {
+        return base;
+      }
+      Map<String, String> values = new HashMap<String, String>();
+      for (Map.Entry<Object, Object> entry : super.entrySet()) {
+        values.put((String) entry.getKey(), (String) entry.getValue());
+      }
+      return new Layer(base, values, new HashSet<String>(removed));
+    }
+
+    private Map<Object, Object> merged() {
+      Map<Object, Object> merged = new HashMap<Object, Object>(base.flatten());
+      merged.keySet().removeAll(removed);
+      for (Map.Entry<Object, Object> entry : super.entrySet()) {
+        merged.put(entry.getKey(), entry.getValue());
+      }
+      return merged;
+    }
+
+    @Override
+    public synchronized Object get(Object key) {
+      Object value = super.get(key);
+      if (value == null && key instanceof String && !removed.contains(key)) {
+        value = base.get((String) key);
+      }
+      return value;
+    }
+
+    @Override
+    public String getProperty(String key) {
+      Object value = get(key);
+      return value instanceof String ? (String) value : null;
+    }
+
+    @Override
+    public String getProperty(String key, String defaultValue) {
+      String value = getProperty(key);
+      return value == null ? defaultValue : value;
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+      return get(key) != null;
+    }
+
+    @Override
+    public synchronized Object put(Object key, Object value) {
+      Object previous = get(key);
+      removed.remove(key);
+      super.put(key, value);
+      return previous;
+    }
+
+    @Override
+    public synchronized void putAll(Map<?, ?> t) {
+      for (Map.Entry<?, ?> entry : t.entrySet()) {
+        put(entry.getKey(), entry.getValue());
+      }
+    }
+
+    @Override
+    public synchronized Object remove(Object key) {
+      Object previous = get(key);
+      super.remove(key);
+      if (key instanceof String && base.get((String) key) != null) {
+        removed.add((String) key);
+      }
+      return previous;
+    }
+
+    @Override
+    public synchronized void clear() {
+      super.clear();
+      removed.clear();
+      base = Layer.EMPTY;
+    }
+
+    @Override
+    public synchronized int size() {
+      return merged().size();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+      return merged().isEmpty();
+    }
+
+    @Override
+    public synchronized boolean contains(Object value) {
+      return merged().containsValue(value);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+      return contains(value);
+    }
+
+    @Override
+    public synchronized Set<Map.Entry<Object, Object>> entrySet() {
+      return Collections.unmodifiableMap(merged()).entrySet();
+    }
+
+    @Override
+    public synchronized Set<Object> keySet() {
+      return Collections.unmodifiableSet(merged().keySet());
+    }
+
+    @Override
+    public synchronized Collection<Object> values() {
+      return Collections.unmodifiableCollection(merged().values());
+    }
+
+    @Override
+    public synchronized Enumeration<Object> keys() {
+      return Collections.enumeration(merged().keySet());
+    }
+
+    @Override
+    public synchronized Enumeration<Object> elements() {
+      return Collections.enumeration(merged().values());
+    }
+
+    @Override
+    public Enumeration<?> propertyNames() {
+      return keys();
+    }
+
+    @Override
+    public synchronized Set<String> stringPropertyNames() {
+      Set<String> names = new HashSet<String>();
+      for (Map.Entry<Object, Object> entry : merged().entrySet()) {
+        if (entry.getKey() instanceof String && entry.getValue() instanceof String) {
+          names.add((String) entry.getKey());
+        }
+      }
+      return Collections.unmodifiableSet(names);
+    }
+
+    @Override
+    public synchronized Object clone() {
+      LayeredProperties copy = (LayeredProperties) super.clone();
+      copy.removed = new HashSet<String>(removed);
+      return copy;
+    }
+  }
+}
@@ -0,0 +1,187 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.api.driver;
+
+import static org.testng.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lens.api.query.InMemoryQueryResult;
+import org.apache.lens.api.query.ResultRow;
+import org.apache.lens.server.api.error.LensException;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests for paged and streamed reads of {@link InMemoryResultSet}.
+ */
+public class TestInMemoryResultSet {
+
+  /**
+   * In memory result set over a list of integers, counting rows read and seeks done.
+   */
+  private static class ListResultSet extends InMemoryResultSet {
+    private final int numRows;
+    private final boolean seekable;
+    private int next = 0;
+    private int rowsRead = 0;
+    private int seeks = 0;
+
+    ListResultSet(int numRows, boolean seekable) {
+      this.numRows = numRows;
+      this.seekable = seekable;
+    }
+
+    @Override
+    public boolean seekToStart() {
+      if (seekable) {
+        next = 0;
+        seeks++;
+      }
+      return seekable;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next < numRows;
+    }
+
+    @Override
+    public ResultRow next() {
+      rowsRead++;
+      return new ResultRow(Collections.<Object>singletonList(next++));
+    }
+
+    @Override
+    public void setFetchSize(int size) {
+    }
+
+    @Override
+    public Integer size() {
+      return numRows;
+    }
+
+    @Override
+    public LensResultSetMetadata getMetadata() {
+      return null;
+    }
+  }
+
+  private static List<Object> firstColumn(InMemoryQueryResult result) {
+    List<Object> values = new ArrayList<Object>();
+    for (ResultRow row : result.getRows()) {
+      values.add(row.getValues().get(0));
+    }
+    return values;
+  }
+
+  /**
+   * Pages read in order are read without reading the result again.
+   *
+   * @throws LensException the lens exception
+   */
+  @Test
+  public void testPagesInOrder() throws LensException {
+    ListResultSet resultSet = new ListResultSet(25, true);
+    assertEquals(firstColumn(resultSet.toQueryResult(0, 10)).get(0), 0);
+    InMemoryQueryResult page = resultSet.toQueryResult(10, 10);
+    assertEquals(page.getRows().size(), 10);
+    assertEquals(firstColumn(page).get(0), 10);
+    assertFalse(resultSet.canBePurged());
+
+    page = resultSet.toQueryResult(20, 10);
+    assertEquals(page.getRows().size(), 5);
+    assertEquals(firstColumn(page).get(4), 24);
+    assertTrue(resultSet.canBePurged());
+    assertEquals(resultSet.rowsRead, 25);
+    assertEquals(resultSet.seeks, 0);
+
+    // skipping rows and reading backwards
+    assertEquals(firstColumn(resultSet.toQueryResult(5, 2)), Arrays.<Object>asList(5, 6));
+    assertEquals(resultSet.seeks, 1);
+    assertEquals(resultSet.toQueryResult().getRows().size(), 25);
+    assertEquals(resultSet.seeks, 2);
+  }
+
+  /**
+   * Rewind seeks to start and resets the read position along with it.
+   *
+   * @throws LensException the lens exception
+   */
+  @Test
+  public void testRewind() throws LensException {
+    ListResultSet resultSet = new ListResultSet(10, true);
+    assertEquals(firstColumn(resultSet.toQueryResult(0, 4)), Arrays.<Object>asList(0, 1, 2, 3));
+    assertTrue(resultSet.rewind());
+    assertEquals(resultSet.seeks, 1);
+    // already at start, read does not seek again
+    assertEquals(firstColumn(resultSet.toQueryResult(0, 2)), Arrays.<Object>asList(0, 1));
+    assertEquals(resultSet.seeks, 1);
+    // read position follows the rewind, rows after it are skipped from start
+    assertTrue(resultSet.rewind());
+    assertEquals(firstColumn(resultSet.toQueryResult(6, 2)), Arrays.<Object>asList(6, 7));
+    assertEquals(resultSet.seeks, 2);
+    assertEquals(resultSet.toQueryResult().getRows().size(), 10);
+    assertEquals(resultSet.seeks, 3);
+
+    assertFalse(new ListResultSet(10, false).rewind());
+  }
+
+  /**
+   * Rows are passed to consumer as they are read.
+   *
+   * @throws LensException the lens exception
+   */
+  @Test
+  public void testReadRows() throws LensException {
+    final ListResultSet resultSet = new ListResultSet(5, false);
+    final List<Object> consumed = new ArrayList<Object>();
+    long read = resultSet.readRows(1, 0, new InMemoryResultSet.RowConsumer() {
+      @Override
+      public void consume(ResultRow row) {
+        consumed.add(row.getValues().get(0));
+        // rows are not read ahead of the consumer, first row is skipped
+        assertEquals(resultSet.rowsRead, consumed.size() + 1);
+      }
+    });
+    assertEquals(read, 4);
+    assertEquals(consumed.get(0), 1);
+    assertTrue(resultSet.canBePurged());
+
+    // rows are read from current position of a result set which can not seek to start
+    ListResultSet unseekable = new ListResultSet(5, false);
+    assertEquals(firstColumn(unseekable.toQueryResult(0, 2)), Arrays.<Object>asList(0, 1));
+    assertEquals(firstColumn(unseekable.toQueryResult(0, 2)), Arrays.<Object>asList(2, 3));
+
+    try {
+      unseekable.readRows(0, 1, new InMemoryResultSet.RowConsumer() {
+        @Override
+        public void consume(ResultRow row) {
+          fail("Row should not be read");
+        }
+      }, true);
+      fail("Result set which can not seek to start should not be read again with random access");
+    } catch (LensException e) {
+      assertTrue(e.getMessage().contains("can not be read again"));
+    }
+  }
+}
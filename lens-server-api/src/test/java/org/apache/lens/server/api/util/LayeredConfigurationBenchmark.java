@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.api.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Allocation benchmark of merging a query conf with a few driver confs, as done for each query, comparing full copies
+ * of driver conf with layering on shared driver confs.
+ * <p></p>
+ * Not part of the regular test run, run with mvn test -P benchmarks
+ */
+@Slf4j
+public class LayeredConfigurationBenchmark {
+
+  private static final int NUM_DRIVERS = 4;
+  private static final int NUM_QUERIES = 200;
+
+  private static Configuration createBase(int numProperties) {
+    Configuration base = new Configuration(false);
+    for (int i = 0; i < numProperties; i++) {
+      base.set("base.property." + i, "value" + i);
+    }
+    return base;
+  }
+
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+      throw new SkipException("Thread allocation is not measurable on this jvm");
+    }
+    return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  @Test
+  public void benchmarkQueryConfAllocation() {
+    Configuration[] drivers = new Configuration[NUM_DRIVERS];
+    for (int i = 0; i < NUM_DRIVERS; i++) {
+      drivers[i] = createBase(2000);
+    }
+    Configuration query = new Configuration(false);
+    for (int i = 0; i < 20; i++) {
+      query.set("query.property." + i, "value" + i);
+    }
+
+    long start = allocatedBytes();
+    for (int q = 0; q < NUM_QUERIES; q++) {
+      for (Configuration driver : drivers) {
+        Configuration conf = new Configuration(driver);
+        for (Map.Entry<String, String> entry : query) {
+          conf.set(entry.getKey(), entry.getValue());
+        }
+        Assert.assertEquals(conf.get("query.property.1"), "value1");
+      }
+    }
+    long copied = allocatedBytes() - start;
+
+    start = allocatedBytes();
+    for (int q = 0; q < NUM_QUERIES; q++) {
+      LayeredConfiguration.Layer queryLayer = LayeredConfiguration.snapshot(query);
+      for (Configuration driver : drivers) {
+        Configuration conf = new LayeredConfiguration(queryLayer.over(LayeredConfiguration.shared(driver)));
+        Assert.assertEquals(conf.get("query.property.1"), "value1");
+      }
+    }
+    long layered = allocatedBytes() - start;
+
+    log.info("Bytes allocated for {} queries on {} drivers: full copies {}, layered {}", NUM_QUERIES, NUM_DRIVERS,
+      copied, layered);
+  }
+}
@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.api.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for layered configuration
+ */
+public class TestLayeredConfiguration {
+
+  private static Configuration createBase(int numProperties) {
+    Configuration base = new Configuration(false);
+    for (int i = 0; i < numProperties; i++) {
+      base.set("base.property." + i, "value" + i);
+    }
+    return base;
+  }
+
+  private static Map<String, String> toMap(Configuration conf) {
+    Map<String, String> map = new HashMap<String, String>();
+    for (Map.Entry<String, String> entry : conf) {
+      map.put(entry.getKey(), entry.getValue());
+    }
+    return map;
+  }
+
+  @Test
+  public void testLookupsFallThroughLayers() {
+    Configuration base = createBase(10);
+    Configuration conf = new LayeredConfiguration(LayeredConfiguration.shared(base));
+    Assert.assertEquals(conf.get("base.property.1"), "value1");
+    Assert.assertEquals(conf.size(), 10);
+
+    conf.set("base.property.1", "overridden");
+    conf.set("query.property", "${base.property.2}-query");
+    conf.unset("base.property.3");
+    Assert.assertEquals(conf.get("base.property.1"), "overridden");
+    Assert.assertEquals(conf.get("query.property"), "value2-query");
+    Assert.assertNull(conf.get("base.property.3"));
+    Assert.assertEquals(conf.size(), 10);
+    Assert.assertFalse(toMap(conf).containsKey("base.property.3"));
+
+    // base is not affected
+    Assert.assertEquals(base.get("base.property.1"), "value1");
+    Assert.assertEquals(base.get("base.property.3"), "value3");
+    Assert.assertNull(base.get("query.property"));
+
+    // setting again brings back the unset property
+    conf.set("base.property.3", "again");
+    Assert.assertEquals(conf.get("base.property.3"), "again");
+  }
+
+  @Test
+  public void testCopies() {
+    Configuration conf = new LayeredConfiguration(createBase(10));
+    conf.set("query.property", "query");
+    conf.unset("base.property.0");
+
+    Configuration copy = new Configuration(conf);
+    copy.set("copy.property", "copy");
+    Assert.assertEquals(toMap(copy).size(), 11);
+    Assert.assertEquals(copy.get("query.property"), "query");
+    Assert.assertNull(copy.get("base.property.0"));
+    Assert.assertNull(conf.get("copy.property"));
+
+    // layer over a layered configuration
+    Configuration layered = new LayeredConfiguration(conf);
+    conf.set("query.property", "changed later");
+    Assert.assertEquals(layered.get("query.property"), "query");
+    Assert.assertEquals(toMap(layered), toMap(new Configuration(layered)));
+
+    // Reloading keeps all the properties
+    HiveConf hiveConf = new HiveConf(layered, TestLayeredConfiguration.class);
+    Assert.assertEquals(hiveConf.get("query.property"), "query");
+    Assert.assertEquals(hiveConf.get("base.property.5"), "value5");
+    Assert.assertNull(hiveConf.get("base.property.0"));
+  }
+
+  @Test
+  public void testQueryLayerOverDriverLayers() {
+    Configuration query = new Configuration(false);
+    query.set("query.property", "query");
+    query.set("base.property.1", "query");
+    LayeredConfiguration.Layer queryLayer = LayeredConfiguration.snapshot(query);
+
+    Configuration driver1 = createBase(5);
+    Configuration driver2 = createBase(5);
+    driver2.set("driver.property", "driver2");
+    Configuration conf1 = new LayeredConfiguration(queryLayer.over(LayeredConfiguration.shared(driver1)));
+    Configuration conf2 = new LayeredConfiguration(queryLayer.over(LayeredConfiguration.shared(driver2)));
+    Assert.assertEquals(conf1.get("base.property.1"), "query");
+    Assert.assertEquals(conf2.get("base.property.1"), "query");
+    Assert.assertNull(conf1.get("driver.property"));
+    Assert.assertEquals(conf2.get("driver.property"), "driver2");
+    Assert.assertSame(LayeredConfiguration.shared(driver1), LayeredConfiguration.shared(driver1));
+  }
+}
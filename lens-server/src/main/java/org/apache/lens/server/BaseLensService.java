@@ -41,6 +41,7 @@ import org.apache.lens.server.api.error.LensException;
 import org.apache.lens.server.api.events.LensEvent;
 import org.apache.lens.server.api.events.LensEventService;
 import org.apache.lens.server.api.health.HealthStatus;
+import org.apache.lens.server.api.util.LayeredConfiguration;
 import org.apache.lens.server.session.LensSessionImpl;
 import org.apache.lens.server.user.UserConfigLoaderFactory;
 import org.apache.lens.server.util.UtilityMethods;
@@ -78,6 +79,9 @@ public abstract class BaseLensService extends CompositeService implements Extern
   /** Utility to validate and get valid paths for input paths **/
   private PathValidator pathValidator;
 
+  /** The journal of state changes, null if state changes are not journaled. */
+  private volatile StateJournal journal;
+
   // Static session map which is used by query submission thread to get the
   // lens session before submitting a query to hive server
   /** The session map. */
@@ -371,10 +375,8 @@ public abstract class BaseLensService extends CompositeService implements Extern
    * @throws LensException the lens exception
    */
   public Configuration getLensConf(LensSessionHandle sessionHandle, LensConf conf) throws LensException {
-    Configuration qconf = new Configuration(false);
-    for (Map.Entry<String, String> entry : getSession(sessionHandle).getSessionConf()) {
-      qconf.set(entry.getKey(), entry.getValue());
-    }
+    Configuration qconf = new LayeredConfiguration(LayeredConfiguration.snapshot(
+      getSession(sessionHandle).getSessionConf()));
 
     if (conf != null && !conf.getProperties().isEmpty()) {
       for (Map.Entry<String, String> entry : conf.getProperties().entrySet()) {
@@ -428,6 +430,50 @@ public abstract class BaseLensService extends CompositeService implements Extern
   public void writeExternal(ObjectOutput out) throws IOException {
   }
 
+  /**
+   * Replay a state change recorded in journal, after the state is read from snapshot. Records are replayed in the
+   * order they were appended, and a record can be replayed over a snapshot which already reflects it.
+   *
+   * @param type    the record type
+   * @param payload the payload
+   * @throws IOException            Signals that an I/O exception has occurred.
+   * @throws ClassNotFoundException the class not found exception
+   */
+  public void replayJournalRecord(byte type, byte[] payload) throws IOException, ClassNotFoundException {
+  }
+
+  /**
+   * Rebuild state derived from persisted state, once the snapshot is read and journal is replayed.
+   */
+  public void recoverState() {
+  }
+
+  void setJournal(StateJournal journal) {
+    this.journal = journal;
+  }
+
+  /**
+   * Whether state changes are journaled. Services can check this before building the payload of a record.
+   *
+   * @return true if journal is available
+   */
+  protected boolean isJournaled() {
+    return journal != null;
+  }
+
+  /**
+   * Append a state change to journal, if journal is available.
+   *
+   * @param type    the record type
+   * @param payload the payload
+   */
+  protected void appendToJournal(byte type, byte[] payload) {
+    StateJournal current = journal;
+    if (current != null) {
+      current.append(type, payload);
+    }
+  }
+
   /**
    * Returns the health status of the service.
    *
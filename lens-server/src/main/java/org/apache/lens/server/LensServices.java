@@ -23,6 +23,7 @@ import static org.apache.lens.server.api.LensConfConstants.*;
 import java.io.*;
 import java.lang.reflect.Constructor;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.lens.api.error.ErrorCollection;
 import org.apache.lens.api.error.ErrorCollectionFactory;
@@ -91,6 +92,15 @@ public class LensServices extends CompositeService implements ServiceProvider {
   /** The snap shot interval. */
   private long snapShotInterval;
 
+  /** The journals of state changes of lens services. */
+  private final Map<BaseLensService, StateJournal> journals = new LinkedHashMap<BaseLensService, StateJournal>();
+
+  /** Whether state changes are journaled between snapshots. */
+  private boolean journalEnabled;
+
+  /** Whether a snapshot is scheduled to compact the journals. */
+  private final AtomicBoolean compactionScheduled = new AtomicBoolean(false);
+
   /**
    * The metrics service.
    */
@@ -109,6 +119,9 @@ public class LensServices extends CompositeService implements ServiceProvider {
   /** The timer. */
   private Timer timer;
 
+  /** The timer flushing journals. */
+  private Timer journalTimer;
+
   /* Lock for synchronizing persistence of LensServices state */
   private final Object statePersistenceLock = new Object();
 
@@ -247,6 +260,8 @@ public class LensServices extends CompositeService implements ServiceProvider {
         configuration.setInt(FS_IO_FILE_BUFFER_SIZE, outStreamBufferSize);
         log.info("STATE_PERSIST_OUT_STREAM_BUFF_SIZE IN BYTES:{}", outStreamBufferSize);
         persistenceFS = FileSystem.newInstance(persistDir.toUri(), configuration);
+        journalEnabled = conf.getBoolean(SERVER_RESTART_ENABLED, DEFAULT_SERVER_RESTART_ENABLED)
+          && conf.getBoolean(STATE_JOURNAL_ENABLED, DEFAULT_STATE_JOURNAL_ENABLED);
         setupPersistedState();
       } catch (Exception e) {
         log.error("Could not recover from persisted state", e);
@@ -256,6 +271,9 @@ public class LensServices extends CompositeService implements ServiceProvider {
         DEFAULT_SERVER_SNAPSHOT_INTERVAL);
       log.info("Initialized services: {}", services.keySet().toString());
       timer = new Timer("lens-server-snapshotter", true);
+      if (journalEnabled) {
+        journalTimer = new Timer("lens-server-journal-syncer", true);
+      }
     }
   }
 
@@ -282,6 +300,49 @@ public class LensServices extends CompositeService implements ServiceProvider {
         }
       }
     }, snapShotInterval, snapShotInterval);
+    if (journalTimer != null) {
+      long syncInterval = conf.getLong(STATE_JOURNAL_SYNC_INTERVAL, DEFAULT_STATE_JOURNAL_SYNC_INTERVAL);
+      final long compactionRecords = conf.getLong(STATE_JOURNAL_COMPACTION_RECORDS,
+        DEFAULT_STATE_JOURNAL_COMPACTION_RECORDS);
+      journalTimer.schedule(new TimerTask() {
+        @Override
+        public void run() {
+          boolean compact = false;
+          for (StateJournal journal : journals.values()) {
+            journal.sync();
+            compact |= journal.needsCompaction(compactionRecords);
+          }
+          if (compact && compactionScheduled.compareAndSet(false, true)) {
+            scheduleCompaction();
+          }
+        }
+      }, syncInterval, syncInterval);
+    }
+  }
+
+  /**
+   * Take a snapshot on the snapshotter thread ahead of snapshot interval, so that journals are compacted.
+   */
+  private void scheduleCompaction() {
+    try {
+      timer.schedule(new TimerTask() {
+        @Override
+        public void run() {
+          try {
+            persistLensServiceState();
+            log.info("SnapShot of Lens Services created to compact journals");
+          } catch (IOException e) {
+            incrCounter(SERVER_STATE_PERSISTENCE_ERRORS);
+            log.warn("Unable to persist lens server state", e);
+          } finally {
+            compactionScheduled.set(false);
+          }
+        }
+      }, 0);
+    } catch (IllegalStateException e) {
+      // snapshotter is cancelled as server is stopping
+      compactionScheduled.set(false);
+    }
   }
 
   /**
@@ -291,27 +352,57 @@ public class LensServices extends CompositeService implements ServiceProvider {
    * @throws ClassNotFoundException the class not found exception
    */
   private void setupPersistedState() throws IOException, ClassNotFoundException {
-    if (conf.getBoolean(SERVER_RECOVER_ON_RESTART,
-      DEFAULT_SERVER_RECOVER_ON_RESTART)) {
+    boolean recover = conf.getBoolean(SERVER_RECOVER_ON_RESTART, DEFAULT_SERVER_RECOVER_ON_RESTART);
+    for (final BaseLensService service : lensServices) {
+      StateJournal journal = new StateJournal(persistenceFS, persistDir, service.getName());
+      journals.put(service, journal);
+      if (recover) {
+        recoverService(service, journal);
+      } else {
+        // journal is relative to the snapshot which is not recovered
+        journal.deleteSegmentsBefore(Long.MAX_VALUE);
+      }
+      if (journalEnabled) {
+        journal.open();
+        service.setJournal(journal);
+      }
+    }
+  }
 
-      for (BaseLensService service : lensServices) {
-        ObjectInputStream in = null;
-        try {
-          try {
-            in = new ObjectInputStream(persistenceFS.open(getServicePersistPath(service)));
-          } catch (FileNotFoundException fe) {
-            log.warn("No persist path available for service:{}", service.getName());
-            continue;
-          }
-          service.readExternal(in);
-          log.info("Recovered service {} from persisted state", service.getName());
-        } finally {
-          if (in != null) {
-            in.close();
-          }
-        }
+  /**
+   * Recover a service from its snapshot, and replay its journal over the snapshot.
+   *
+   * @param service the service
+   * @param journal the journal of service
+   * @throws IOException            Signals that an I/O exception has occurred.
+   * @throws ClassNotFoundException the class not found exception
+   */
+  private void recoverService(final BaseLensService service, StateJournal journal)
+    throws IOException, ClassNotFoundException {
+    ObjectInputStream in = null;
+    try {
+      try {
+        in = new ObjectInputStream(persistenceFS.open(getServicePersistPath(service)));
+      } catch (FileNotFoundException fe) {
+        log.warn("No persist path available for service:{}", service.getName());
+      }
+      if (in != null) {
+        service.readExternal(in);
+        log.info("Recovered service {} from persisted state", service.getName());
+      }
+    } finally {
+      if (in != null) {
+        in.close();
       }
     }
+    long replayed = journal.replay(new StateJournal.RecordHandler() {
+      @Override
+      public void replay(byte type, byte[] payload) throws IOException, ClassNotFoundException {
+        service.replayJournalRecord(type, payload);
+      }
+    });
+    log.info("Replayed {} journal records of service {}", replayed, service.getName());
+    service.recoverState();
   }
 
   /**
@@ -330,6 +421,9 @@ public class LensServices extends CompositeService implements ServiceProvider {
 
           for (BaseLensService service : lensServices) {
             log.info("Persisting state of service: {}", service.getName());
+            // changes after this are journaled in new segment, older segments are not needed once snapshot is taken
+            StateJournal journal = journals.get(service);
+            long retainedSegment = journalEnabled ? journal.roll() : Long.MAX_VALUE;
             Path serviceWritePath = new Path(persistDir, service.getName() + ".out" + "." + now);
             ObjectOutputStream out = null;
             try {
@@ -352,6 +446,7 @@ public class LensServices extends CompositeService implements ServiceProvider {
               log.error("Failed to persist {} to [{}]", service.getName(), servicePath);
             } else {
               log.info("Persisted service {} to [{}]", service.getName(), servicePath);
+              journal.deleteSegmentsBefore(retainedSegment);
             }
           }
         } else {
@@ -387,11 +482,17 @@ public class LensServices extends CompositeService implements ServiceProvider {
       if (timer != null) {
         timer.cancel();
       }
+      if (journalTimer != null) {
+        journalTimer.cancel();
+      }
 
       try {
         // persist all the services
         persistLensServiceState();
 
+        for (StateJournal journal : journals.values()) {
+          journal.close();
+        }
         persistenceFS.close();
         log.info("Persistence File system object close complete");
       } catch (IOException e) {
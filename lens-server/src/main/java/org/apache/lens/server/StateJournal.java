@@ -0,0 +1,407 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append only journal of state changes of a service, kept between snapshots of the service.
+ * <p></p>
+ * The journal is a sequence of segment files named &lt;service&gt;.journal.&lt;sequence&gt; in the persist location.
+ * Every record is the record type, length of payload, checksum of payload and the payload. Payload is written by the
+ * service and is opaque to the journal, though services write it as plain binary fields with the helpers here
+ * instead of object streams, to keep records small. A record which is partially written, as when the server crashes
+ * while appending, fails the checksum and ends the replay of its segment.
+ * <p></p>
+ * Before a snapshot is written, journal is rolled over to a new segment. Once the snapshot is written, segments
+ * before the new one are deleted. On restart, the segments which are present are replayed in order over the last
+ * snapshot, so services should record changes such that replaying a record which is already reflected in the
+ * snapshot is harmless.
+ */
+@Slf4j
+public class StateJournal implements Closeable {
+
+  private static final String SEGMENT_PREFIX = ".journal.";
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /** The file system of the persist location */
+  private final FileSystem fs;
+
+  /** The persist location */
+  private final Path dir;
+
+  /** The prefix of segment file names */
+  private final String prefix;
+
+  /** The current segment */
+  private FSDataOutputStream out;
+
+  /** Sequence of the current segment */
+  private long segment = -1;
+
+  /** Whether an append has failed since the journal was last rolled */
+  private volatile boolean failed = false;
+
+  /** Records appended since the journal was last rolled */
+  private final AtomicLong numRecords = new AtomicLong();
+
+  /**
+   * Handler of records read from journal.
+   */
+  public interface RecordHandler {
+
+    /**
+     * Replay a record.
+     *
+     * @param type    the record type
+     * @param payload the payload
+     * @throws IOException            Signals that an I/O exception has occurred.
+     * @throws ClassNotFoundException the class not found exception
+     */
+    void replay(byte type, byte[] payload) throws IOException, ClassNotFoundException;
+  }
+
+  /**
+   * Instantiates a new state journal.
+   *
+   * @param fs          the file system of persist location
+   * @param dir         the persist location
+   * @param serviceName the name of the service whose changes are journaled
+   */
+  public StateJournal(FileSystem fs, Path dir, String serviceName) {
+    this.fs = fs;
+    this.dir = dir;
+    this.prefix = serviceName + SEGMENT_PREFIX;
+  }
+
+  /**
+   * Get sequences of segments present in persist location, in order.
+   *
+   * @return the segment sequences
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  List<Long> getSegments() throws IOException {
+    List<Long> segments = new ArrayList<Long>();
+    if (!fs.exists(dir)) {
+      return segments;
+    }
+    for (FileStatus status : fs.listStatus(dir)) {
+      String name = status.getPath().getName();
+      if (name.startsWith(prefix)) {
+        try {
+          segments.add(Long.parseLong(name.substring(prefix.length())));
+        } catch (NumberFormatException e) {
+          log.warn("Ignoring file {} in persist location", status.getPath());
+        }
+      }
+    }
+    Collections.sort(segments);
+    return segments;
+  }
+
+  private Path getSegmentPath(long sequence) {
+    return new Path(dir, prefix + sequence);
+  }
+
+  /**
+   * Replay all segments present in persist location, in order.
+   *
+   * @param handler the handler of records
+   * @return the number of records replayed
+   * @throws IOException            Signals that an I/O exception has occurred.
+   * @throws ClassNotFoundException the class not found exception
+   */
+  public long replay(RecordHandler handler) throws IOException, ClassNotFoundException {
+    long replayed = 0;
+    for (long sequence : getSegments()) {
+      Path path = getSegmentPath(sequence);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(fs.open(path)));
+      try {
+        replayed += replaySegment(in, handler, path);
+      } finally {
+        in.close();
+      }
+    }
+    return replayed;
+  }
+
+  /**
+   * Replay records of a segment.
+   *
+   * @param in      the segment
+   * @param handler the handler of records
+   * @param path    the path of segment, for logging
+   * @return the number of records replayed
+   * @throws IOException            Signals that an I/O exception has occurred.
+   * @throws ClassNotFoundException the class not found exception
+   */
+  static long replaySegment(DataInputStream in, RecordHandler handler, Object path)
+    throws IOException, ClassNotFoundException {
+    long replayed = 0;
+    CRC32 crc = new CRC32();
+    while (true) {
+      byte type;
+      byte[] payload;
+      try {
+        type = in.readByte();
+      } catch (EOFException e) {
+        break;
+      }
+      try {
+        int length = in.readInt();
+        long checksum = in.readInt() & 0xffffffffL;
+        if (length < 0) {
+          log.warn("Invalid record in journal {} after {} records, ignoring rest of it", path, replayed);
+          break;
+        }
+        payload = new byte[length];
+        in.readFully(payload);
+        crc.reset();
+        crc.update(payload, 0, length);
+        if (crc.getValue() != checksum) {
+          log.warn("Checksum mismatch in journal {} after {} records, ignoring rest of it", path, replayed);
+          break;
+        }
+      } catch (EOFException e) {
+        log.warn("Incomplete record in journal {} after {} records, ignoring it", path, replayed);
+        break;
+      }
+      handler.replay(type, payload);
+      replayed++;
+    }
+    return replayed;
+  }
+
+  /**
+   * Write a record.
+   *
+   * @param out     the output
+   * @param type    the record type
+   * @param payload the payload
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static void writeRecord(DataOutput out, byte type, byte[] payload) throws IOException {
+    CRC32 crc = new CRC32();
+    crc.update(payload, 0, payload.length);
+    out.writeByte(type);
+    out.writeInt(payload.length);
+    out.writeInt((int) crc.getValue());
+    out.write(payload);
+  }
+
+  /**
+   * Write a string field of payload, which can be null and is not limited in length like
+   * {@link DataOutput#writeUTF(String)}.
+   *
+   * @param out   the output
+   * @param value the value
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static void writeString(DataOutput out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+    } else {
+      writeBytes(out, value.getBytes(UTF8));
+    }
+  }
+
+  /**
+   * Read a string field written by {@link #writeString(DataOutput, String)}.
+   *
+   * @param in the input
+   * @return the value
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static String readString(DataInput in) throws IOException {
+    byte[] bytes = readBytes(in);
+    return bytes == null ? null : new String(bytes, UTF8);
+  }
+
+  /**
+   * Write a field of payload which has no binary form of its own, with java serialization. Services should use this
+   * only for state which is rarely journaled.
+   *
+   * @param out   the output
+   * @param value the value, can be null
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static void writeSerializable(DataOutput out, Serializable value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+    objectOut.writeObject(value);
+    objectOut.close();
+    writeBytes(out, bytes.toByteArray());
+  }
+
+  /**
+   * Read a field written by {@link #writeSerializable(DataOutput, Serializable)}.
+   *
+   * @param in the input
+   * @return the value
+   * @throws IOException            Signals that an I/O exception has occurred.
+   * @throws ClassNotFoundException the class not found exception
+   */
+  public static Object readSerializable(DataInput in) throws IOException, ClassNotFoundException {
+    byte[] bytes = readBytes(in);
+    if (bytes == null) {
+      return null;
+    }
+    ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(bytes));
+    try {
+      return objectIn.readObject();
+    } finally {
+      objectIn.close();
+    }
+  }
+
+  private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static byte[] readBytes(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  /**
+   * Start a new segment after the segments present in persist location.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public synchronized void open() throws IOException {
+    List<Long> segments = getSegments();
+    segment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+    roll();
+  }
+
+  /**
+   * Append a record to the current segment. Failure to append is logged and remembered till the journal is rolled,
+   * since the change is still captured by the next snapshot.
+   *
+   * @param type    the record type
+   * @param payload the payload
+   */
+  public synchronized void append(byte type, byte[] payload) {
+    if (out == null) {
+      return;
+    }
+    try {
+      writeRecord(out, type, payload);
+      numRecords.incrementAndGet();
+    } catch (IOException e) {
+      if (!failed) {
+        log.error("Could not append to journal {}", getSegmentPath(segment), e);
+      }
+      failed = true;
+    }
+  }
+
+  /**
+   * Flush appended records to file system.
+   */
+  public synchronized void sync() {
+    if (out == null) {
+      return;
+    }
+    try {
+      out.hflush();
+    } catch (IOException e) {
+      log.error("Could not flush journal {}", getSegmentPath(segment), e);
+      failed = true;
+    }
+  }
+
+  /**
+   * Close the current segment and start a new one.
+   *
+   * @return sequence of the new segment
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public synchronized long roll() throws IOException {
+    closeSegment();
+    segment++;
+    out = fs.create(getSegmentPath(segment), true);
+    failed = false;
+    numRecords.set(0);
+    return segment;
+  }
+
+  /**
+   * Delete segments before the given segment, once the state in them has been captured in a snapshot.
+   *
+   * @param sequence the sequence of first segment to retain
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void deleteSegmentsBefore(long sequence) throws IOException {
+    for (long s : getSegments()) {
+      if (s < sequence && !fs.delete(getSegmentPath(s), false)) {
+        log.warn("Could not delete journal {}", getSegmentPath(s));
+      }
+    }
+  }
+
+  /**
+   * Whether the journal should be compacted by taking a snapshot.
+   *
+   * @param maxRecords the number of records beyond which journal should be compacted
+   * @return true if appends failed or records exceed maxRecords
+   */
+  public boolean needsCompaction(long maxRecords) {
+    return failed || numRecords.get() >= maxRecords;
+  }
+
+  private void closeSegment() throws IOException {
+    if (out != null) {
+      try {
+        out.close();
+      } finally {
+        out = null;
+      }
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    closeSegment();
+  }
+}
@@ -18,6 +18,9 @@
  */
 package org.apache.lens.server.metastore;
 
+import static org.apache.lens.server.api.LensConfConstants.DEFAULT_METASTORE_WARM_UP_PARTITION_TIMELINES;
+import static org.apache.lens.server.api.LensConfConstants.METASTORE_WARM_UP_DATABASES;
+import static org.apache.lens.server.api.LensConfConstants.METASTORE_WARM_UP_PARTITION_TIMELINES;
 import static org.apache.lens.server.metastore.JAXBUtils.*;
 
 import java.util.*;
@@ -32,9 +35,12 @@ import org.apache.lens.cube.metadata.Dimension;
 import org.apache.lens.cube.metadata.timeline.PartitionTimeline;
 import org.apache.lens.server.BaseLensService;
 import org.apache.lens.server.LensServerConf;
+import org.apache.lens.server.LensServices;
 import org.apache.lens.server.api.error.LensException;
 import org.apache.lens.server.api.health.HealthStatus;
 import org.apache.lens.server.api.metastore.CubeMetastoreService;
+import org.apache.lens.server.api.metrics.MetricsService;
+import org.apache.lens.server.api.session.SessionService;
 import org.apache.lens.server.session.LensSessionImpl;
 
 import org.apache.commons.lang.StringUtils;
@@ -43,6 +49,7 @@ import org.apache.hadoop.hive.ql.metadata.*;
 import org.apache.hadoop.hive.ql.metadata.Partition;
 import org.apache.hadoop.hive.ql.metadata.Table;
 import org.apache.hadoop.hive.ql.parse.ParseException;
+import org.apache.hadoop.hive.ql.session.SessionState;
 import org.apache.hive.service.cli.CLIService;
 import org.apache.hive.service.cli.HiveSQLException;
 import org.apache.thrift.TException;
@@ -53,10 +60,125 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class CubeMetastoreServiceImpl extends BaseLensService implements CubeMetastoreService {
 
+  /** Number of tables listed by catalog warm up */
+  public static final String WARM_UP_TABLES_LISTED = "warm-up-tables-listed";
+
+  /** Number of tables fetched by catalog warm up */
+  public static final String WARM_UP_TABLES_FETCHED = "warm-up-tables-fetched";
+
+  /** Number of databases loaded by catalog warm up */
+  public static final String WARM_UP_DATABASES_LOADED = "warm-up-databases-loaded";
+
+  /** Number of databases catalog warm up failed to load */
+  public static final String WARM_UP_ERRORS = "warm-up-errors";
+
+  /** Number of fact storage tables whose partition timelines are loaded by warm up */
+  public static final String WARM_UP_TIMELINES_LOADED = "warm-up-timelines-loaded";
+
+  private Thread warmUpThread;
+
+  private String[] warmUpDatabases = new String[0];
+
+  private boolean warmUpTimelines;
+
+  private MetricsService metricsService;
+
   public CubeMetastoreServiceImpl(CLIService cliService) {
     super(NAME, cliService);
   }
 
+  @Override
+  public synchronized void start() {
+    super.start();
+    warmUpDatabases = LensServerConf.getHiveConf().getTrimmedStrings(METASTORE_WARM_UP_DATABASES);
+    warmUpTimelines = LensServerConf.getHiveConf().getBoolean(METASTORE_WARM_UP_PARTITION_TIMELINES,
+      DEFAULT_METASTORE_WARM_UP_PARTITION_TIMELINES);
+    if (warmUpDatabases.length > 0) {
+      final String[] databases = warmUpDatabases;
+      warmUpThread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          warmUp(databases);
+        }
+      }, "MetastoreWarmUp");
+      warmUpThread.setDaemon(true);
+      warmUpThread.start();
+    }
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (warmUpThread != null) {
+      warmUpThread.interrupt();
+    }
+    if (warmUpTimelines) {
+      for (String database : warmUpDatabases) {
+        SessionState sessionState = new SessionState(LensServerConf.getHiveConf());
+        sessionState.setCurrentDatabase(database);
+        SessionState.setCurrentSessionState(sessionState);
+        try {
+          CubeMetastoreClient.getInstance(LensServerConf.getHiveConf()).saveTimelineSnapshot();
+        } catch (Exception e) {
+          log.error("Could not save partition timeline snapshot of database {}", database, e);
+        } finally {
+          SessionState.detachSession();
+        }
+      }
+    }
+    super.stop();
+  }
+
+  /**
+   * Load catalog of given databases into cube metastore client cache, one database at a time.
+   *
+   * @param databases the databases
+   */
+  private void warmUp(String[] databases) {
+    CubeMetastoreClient.TableLoadListener listener = new CubeMetastoreClient.TableLoadListener() {
+      @Override
+      public void tablesListed(int count) {
+        incrCounter(WARM_UP_TABLES_LISTED, count);
+      }
+
+      @Override
+      public void tablesFetched(int count) {
+        incrCounter(WARM_UP_TABLES_FETCHED, count);
+      }
+    };
+    for (String database : databases) {
+      if (Thread.currentThread().isInterrupted()) {
+        log.info("Metastore warm up interrupted");
+        return;
+      }
+      long startTime = System.currentTimeMillis();
+      SessionState sessionState = new SessionState(LensServerConf.getHiveConf());
+      sessionState.setCurrentDatabase(database);
+      SessionState.setCurrentSessionState(sessionState);
+      try {
+        CubeMetastoreClient client = CubeMetastoreClient.getInstance(LensServerConf.getHiveConf());
+        client.loadAllTables(listener);
+        if (warmUpTimelines) {
+          incrCounter(WARM_UP_TIMELINES_LOADED, client.loadAllPartitionTimelines());
+          client.saveTimelineSnapshot();
+        }
+        incrCounter(WARM_UP_DATABASES_LOADED, 1);
+        log.info("Loaded catalog of database {} in {} millis", database, System.currentTimeMillis() - startTime);
+      } catch (Exception e) {
+        incrCounter(WARM_UP_ERRORS, 1);
+        log.error("Could not load catalog of database {}", database, e);
+      } finally {
+        SessionState.detachSession();
+      }
+    }
+  }
+
+  private void incrCounter(String counter, int count) {
+    if (metricsService == null) {
+      metricsService = LensServices.get().getService(MetricsService.NAME);
+    }
+    metricsService.incrCounter(CubeMetastoreService.class, counter, count);
+  }
+
   synchronized CubeMetastoreClient getClient(LensSessionHandle sessionid) throws LensException {
     return ((LensSessionImpl) getSession(sessionid)).getCubeMetastoreClient();
   }
@@ -91,6 +213,8 @@ public class CubeMetastoreServiceImpl extends BaseLensService implements CubeMet
       }
       log.info("Set database " + database);
       getSession(sessionid).setCurrentDatabase(database);
+      SessionService sessionService = LensServices.get().getService(SessionService.NAME);
+      sessionService.sessionChanged(sessionid);
     } catch (HiveException e) {
       throw new LensException(e);
     } finally {
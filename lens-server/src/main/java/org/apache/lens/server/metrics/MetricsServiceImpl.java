@@ -488,6 +488,16 @@ public class MetricsServiceImpl extends AbstractService implements MetricsServic
     metricRegistry.counter(MetricRegistry.name(cls, counter)).inc();
   }
 
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.lens.server.api.metrics.MetricsService#incrCounter(java.lang.Class, java.lang.String, long)
+   */
+  @Override
+  public void incrCounter(Class<?> cls, String counter, long count) {
+    metricRegistry.counter(MetricRegistry.name(cls, counter)).inc(count);
+  }
+
   /*
    * (non-Javadoc)
    *
@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.query;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.lens.server.api.query.QueryContext;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Lock over launch admission of queries, striped by selected driver and by submitter of the query.
+ * <p></p>
+ * Admission of a query holds the stripes of its driver and its user while launching constraints are checked and the
+ * query is added to launched or waiting queries. So queries of different drivers and users are admitted in parallel,
+ * while checks of per driver and per user constraints stay atomic with the addition. Removal from launched queries
+ * holds all stripes, since a removal can make a waiting query of any driver or user eligible to launch, and the
+ * decision to add a query to waiting queries must not miss it.
+ * <p></p>
+ * Stripes are always locked in the order of their index, so admissions and removals do not deadlock.
+ */
+class LaunchAdmissionLock {
+
+  private final ReentrantLock[] stripes;
+
+  LaunchAdmissionLock(final int numStripes) {
+    Preconditions.checkArgument(numStripes > 0, "Number of stripes should be positive");
+    this.stripes = new ReentrantLock[numStripes];
+    for (int i = 0; i < numStripes; i++) {
+      stripes[i] = new ReentrantLock();
+    }
+  }
+
+  /**
+   * Lock the stripes of driver and user of query, for admission of the query.
+   *
+   * @param query the query
+   */
+  void lockAdmission(final QueryContext query) {
+    for (int stripe : getStripes(query)) {
+      stripes[stripe].lock();
+    }
+  }
+
+  /**
+   * Unlock the stripes locked by {@link #lockAdmission(QueryContext)}.
+   *
+   * @param query the query
+   */
+  void unlockAdmission(final QueryContext query) {
+    int[] queryStripes = getStripes(query);
+    for (int i = queryStripes.length - 1; i >= 0; i--) {
+      stripes[queryStripes[i]].unlock();
+    }
+  }
+
+  /**
+   * Lock all stripes, for removal from launched queries.
+   */
+  void lockAll() {
+    for (ReentrantLock stripe : stripes) {
+      stripe.lock();
+    }
+  }
+
+  /**
+   * Unlock all stripes.
+   */
+  void unlockAll() {
+    for (int i = stripes.length - 1; i >= 0; i--) {
+      stripes[i].unlock();
+    }
+  }
+
+  /**
+   * @param query the query
+   * @return indexes of stripes of driver and user of query, in increasing order
+   */
+  int[] getStripes(final QueryContext query) {
+    int driverStripe = getStripe(query.getSelectedDriver());
+    int userStripe = getStripe(query.getSubmittedUser());
+    if (driverStripe == userStripe) {
+      return new int[]{driverStripe};
+    }
+    return driverStripe < userStripe ? new int[]{driverStripe, userStripe} : new int[]{userStripe, driverStripe};
+  }
+
+  private int getStripe(final Object key) {
+    return key == null ? 0 : (key.hashCode() & Integer.MAX_VALUE) % stripes.length;
+  }
+}
@@ -18,11 +18,8 @@
  */
 package org.apache.lens.server.query;
 
-import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
+import java.sql.*;
+import java.util.*;
 
 import javax.sql.DataSource;
 
@@ -35,6 +32,7 @@ import org.apache.commons.dbutils.DbUtils;
 import org.apache.commons.dbutils.QueryRunner;
 import org.apache.commons.dbutils.ResultSetHandler;
 import org.apache.commons.dbutils.handlers.BeanHandler;
+import org.apache.commons.dbutils.handlers.BeanListHandler;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.hadoop.conf.Configuration;
 
@@ -49,6 +47,25 @@ public class LensServerDAO {
   /** The ds. */
   private DataSource ds;
 
+  /** The columns inserted for a finished query. */
+  private static final String INSERT_FINISHED_QUERY_SQL = "insert into finished_queries (handle, userquery,submitter,"
+    + "starttime,endtime,result,status,metadata,rows,filesize,"
+    + "errormessage,driverstarttime,driverendtime, metadataclass, queryname, submissiontime)"
+    + " values (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+
+  /**
+   * Indexes on finished queries table, by name. Queries are listed in descending order of submission time, with
+   * optional filters on submitter and status, so the indexes lead with the filter and end with submission time.
+   */
+  private static final Map<String, String> FINISHED_QUERIES_INDEXES = new LinkedHashMap<String, String>();
+
+  static {
+    FINISHED_QUERIES_INDEXES.put("finished_queries_submission_idx", "submissiontime, handle");
+    FINISHED_QUERIES_INDEXES.put("finished_queries_submitter_idx", "submitter, submissiontime");
+    FINISHED_QUERIES_INDEXES.put("finished_queries_status_idx", "status, submissiontime");
+    FINISHED_QUERIES_INDEXES.put("finished_queries_queryname_idx", "queryname");
+  }
+
   /**
    * Inits the.
    *
@@ -94,6 +111,47 @@ public class LensServerDAO {
     } catch (SQLException e) {
       log.warn("Unable to create finished queries table", e);
     }
+    createFinishedQueriesIndexes();
+  }
+
+  /**
+   * Create the indexes on finished queries table which are not present. This migrates a table created before the
+   * indexes were introduced, and is a no-op once they are present.
+   */
+  public void createFinishedQueriesIndexes() {
+    Connection conn = null;
+    try {
+      conn = getConnection();
+      Set<String> existing = new HashSet<String>();
+      DatabaseMetaData metaData = conn.getMetaData();
+      // table names are stored in upper or lower case depending on the database
+      for (String table : new String[]{"finished_queries", "FINISHED_QUERIES"}) {
+        ResultSet rs = metaData.getIndexInfo(null, null, table, false, true);
+        try {
+          while (rs.next()) {
+            if (rs.getString("INDEX_NAME") != null) {
+              existing.add(rs.getString("INDEX_NAME").toLowerCase());
+            }
+          }
+        } finally {
+          DbUtils.closeQuietly(rs);
+        }
+      }
+      QueryRunner runner = new QueryRunner();
+      for (Map.Entry<String, String> index : FINISHED_QUERIES_INDEXES.entrySet()) {
+        if (!existing.contains(index.getKey())) {
+          runner.update(conn, "CREATE INDEX " + index.getKey() + " ON finished_queries (" + index.getValue() + ")");
+          log.info("Created index {} on finished queries table", index.getKey());
+        }
+      }
+      if (!conn.getAutoCommit()) {
+        conn.commit();
+      }
+    } catch (SQLException e) {
+      log.warn("Unable to create indexes on finished queries table", e);
+    } finally {
+      DbUtils.closeQuietly(conn);
+    }
   }
 
   /**
@@ -107,17 +165,10 @@ public class LensServerDAO {
     if (alreadyExisting == null) {
       // The expected case
       Connection conn = null;
-      String sql = "insert into finished_queries (handle, userquery,submitter,"
-        + "starttime,endtime,result,status,metadata,rows,filesize,"
-        + "errormessage,driverstarttime,driverendtime, metadataclass, queryname, submissiontime)"
-        + " values (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
       try {
         conn = getConnection();
         QueryRunner runner = new QueryRunner();
-        runner.update(conn, sql, query.getHandle(), query.getUserQuery(), query.getSubmitter(), query.getStartTime(),
-          query.getEndTime(), query.getResult(), query.getStatus(), query.getMetadata(), query.getRows(),
-          query.getFileSize(), query.getErrorMessage(), query.getDriverStartTime(), query.getDriverEndTime(),
-          query.getMetadataClass(), query.getQueryName(), query.getSubmissionTime());
+        runner.update(conn, INSERT_FINISHED_QUERY_SQL, toInsertParams(query));
         conn.commit();
       } finally {
         DbUtils.closeQuietly(conn);
@@ -135,6 +186,100 @@ public class LensServerDAO {
     }
   }
 
+  private static Object[] toInsertParams(FinishedLensQuery query) {
+    return new Object[]{query.getHandle(), query.getUserQuery(), query.getSubmitter(), query.getStartTime(),
+      query.getEndTime(), query.getResult(), query.getStatus(), query.getMetadata(), query.getRows(),
+      query.getFileSize(), query.getErrorMessage(), query.getDriverStartTime(), query.getDriverEndTime(),
+      query.getMetadataClass(), query.getQueryName(), query.getSubmissionTime(), };
+  }
+
+  /**
+   * Insert finished queries in a single batch and transaction. Queries already present in DB with same values are
+   * skipped. If the batch fails, queries are inserted one at a time, so that a bad query does not hold back others.
+   *
+   * @param queries the queries to be inserted
+   * @return handles of the queries which are present in DB after the insert
+   */
+  public Set<String> insertFinishedQueries(List<FinishedLensQuery> queries) {
+    Set<String> saved = new HashSet<String>();
+    if (queries.isEmpty()) {
+      return saved;
+    }
+    List<FinishedLensQuery> toInsert = new ArrayList<FinishedLensQuery>(queries.size());
+    Connection conn = null;
+    try {
+      Map<String, FinishedLensQuery> existing = getQueries(queries);
+      for (FinishedLensQuery query : queries) {
+        FinishedLensQuery alreadyExisting = existing.get(query.getHandle());
+        if (alreadyExisting == null) {
+          toInsert.add(query);
+        } else if (alreadyExisting.equals(query)) {
+          log.warn("Skipping Re-insert. Finished Query found in DB while trying to insert, handle={}",
+            query.getHandle());
+          saved.add(query.getHandle());
+        } else {
+          log.error("Found different value pre-existing in DB while trying to insert finished query. Old = {}"
+            + "\nNew = {}", alreadyExisting, query);
+        }
+      }
+      if (toInsert.isEmpty()) {
+        return saved;
+      }
+      Object[][] params = new Object[toInsert.size()][];
+      for (int i = 0; i < params.length; i++) {
+        params[i] = toInsertParams(toInsert.get(i));
+      }
+      conn = getConnection();
+      new QueryRunner().batch(conn, INSERT_FINISHED_QUERY_SQL, params);
+      conn.commit();
+      for (FinishedLensQuery query : toInsert) {
+        saved.add(query.getHandle());
+      }
+      return saved;
+    } catch (SQLException e) {
+      log.warn("Batch insert of {} finished queries failed, inserting them one at a time", toInsert.size(), e);
+      if (conn != null) {
+        DbUtils.rollbackAndCloseQuietly(conn);
+        conn = null;
+      }
+      for (FinishedLensQuery query : toInsert) {
+        try {
+          insertFinishedQuery(query);
+          saved.add(query.getHandle());
+        } catch (SQLException ex) {
+          log.warn("Exception while inserting finished query {}", query.getHandle(), ex);
+        }
+      }
+      return saved;
+    } finally {
+      DbUtils.closeQuietly(conn);
+    }
+  }
+
+  /**
+   * Fetch finished queries from Database, which have same handles as the given queries.
+   *
+   * @param queries the queries
+   * @return the finished queries present in DB, by handle
+   * @throws SQLException the SQL exception
+   */
+  private Map<String, FinishedLensQuery> getQueries(List<FinishedLensQuery> queries) throws SQLException {
+    StringBuilder sql = new StringBuilder("select * from finished_queries where handle in (");
+    Object[] handles = new Object[queries.size()];
+    for (int i = 0; i < handles.length; i++) {
+      sql.append(i == 0 ? "?" : ",?");
+      handles[i] = queries.get(i).getHandle();
+    }
+    sql.append(")");
+    List<FinishedLensQuery> found = new QueryRunner(ds).query(sql.toString(),
+      new BeanListHandler<FinishedLensQuery>(FinishedLensQuery.class), handles);
+    Map<String, FinishedLensQuery> existing = new HashMap<String, FinishedLensQuery>();
+    for (FinishedLensQuery query : found) {
+      existing.put(query.getHandle(), query);
+    }
+    return existing;
+  }
+
   /**
    * Fetch Finished query from Database.
    *
@@ -225,4 +370,66 @@ public class LensServerDAO {
     }
   }
 
+  /**
+   * Find a page of finished queries, in descending order of submission time and handle. Pages are fetched by keyset,
+   * so that fetching a page does not scan the queries in pages before it.
+   *
+   * @param state              the state
+   * @param user               the user
+   * @param queryName          the query name
+   * @param fromDate           the from date
+   * @param toDate             the to date
+   * @param limit              the maximum number of queries to return, all queries are returned if not positive
+   * @param cursorSubmitTime   submission time of the last query of previous page, ignored if cursorHandle is null
+   * @param cursorHandle       handle of the last query of previous page, null for the first page
+   * @return the finished queries, with only handle and submission time populated
+   * @throws LensException the lens exception
+   */
+  public List<FinishedLensQuery> findFinishedQueries(String state, String user, String queryName, long fromDate,
+    long toDate, int limit, long cursorSubmitTime, String cursorHandle) throws LensException {
+    List<String> filters = new ArrayList<String>();
+    List<Object> params = new ArrayList<Object>();
+    if (StringUtils.isNotBlank(state)) {
+      filters.add("status=?");
+      params.add(state);
+    }
+    if (StringUtils.isNotBlank(user)) {
+      filters.add("submitter=?");
+      params.add(user);
+    }
+    if (StringUtils.isNotBlank(queryName)) {
+      filters.add("queryname like ?");
+      params.add("%" + queryName + "%");
+    }
+    filters.add("submissiontime BETWEEN ? AND ?");
+    params.add(fromDate);
+    params.add(toDate);
+    if (cursorHandle != null) {
+      filters.add("(submissiontime < ? OR (submissiontime = ? AND handle < ?))");
+      params.add(cursorSubmitTime);
+      params.add(cursorSubmitTime);
+      params.add(cursorHandle);
+    }
+    String sql = "SELECT handle, submissiontime FROM finished_queries WHERE " + StringUtils.join(filters, " AND ")
+      + " ORDER BY submissiontime DESC, handle DESC";
+
+    Connection conn = null;
+    PreparedStatement stmt = null;
+    ResultSet rs = null;
+    try {
+      conn = getConnection();
+      stmt = conn.prepareStatement(sql);
+      new QueryRunner().fillStatement(stmt, params.toArray());
+      if (limit > 0) {
+        stmt.setMaxRows(limit);
+      }
+      rs = stmt.executeQuery();
+      return new BeanListHandler<FinishedLensQuery>(FinishedLensQuery.class).handle(rs);
+    } catch (SQLException e) {
+      throw new LensException(e);
+    } finally {
+      DbUtils.closeQuietly(conn, stmt, rs);
+    }
+  }
+
 }
@@ -28,8 +28,8 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantLock;
 
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.NotFoundException;
@@ -39,14 +39,17 @@ import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.lens.api.LensConf;
 import org.apache.lens.api.LensSessionHandle;
+import org.apache.lens.api.Priority;
 import org.apache.lens.api.error.ErrorCollection;
 import org.apache.lens.api.query.*;
 import org.apache.lens.api.query.QueryStatus.Status;
 import org.apache.lens.api.result.LensErrorTO;
+import org.apache.lens.cube.parse.HQLParser;
 import org.apache.lens.driver.hive.HiveDriver;
 import org.apache.lens.server.BaseLensService;
 import org.apache.lens.server.LensServerConf;
 import org.apache.lens.server.LensServices;
+import org.apache.lens.server.StateJournal;
 import org.apache.lens.server.api.driver.*;
 import org.apache.lens.server.api.error.LensException;
 import org.apache.lens.server.api.error.LensMultiCauseException;
@@ -56,14 +59,18 @@ import org.apache.lens.server.api.metrics.MethodMetricsContext;
 import org.apache.lens.server.api.metrics.MethodMetricsFactory;
 import org.apache.lens.server.api.metrics.MetricsService;
 import org.apache.lens.server.api.query.*;
+import org.apache.lens.server.api.query.collect.QueryAggregate;
 import org.apache.lens.server.api.query.collect.WaitingQueriesSelectionPolicy;
+import org.apache.lens.server.api.query.constraint.AggregatingQueryLaunchingConstraint;
 import org.apache.lens.server.api.query.constraint.QueryLaunchingConstraint;
+import org.apache.lens.server.api.query.cost.FactPartitionBasedQueryCost;
 import org.apache.lens.server.api.query.cost.QueryCost;
 import org.apache.lens.server.model.LogSegregationContext;
 import org.apache.lens.server.model.MappedDiagnosticLogSegregationContext;
 import org.apache.lens.server.query.collect.*;
 import org.apache.lens.server.query.constraint.DefaultQueryLaunchingConstraintsChecker;
 import org.apache.lens.server.query.constraint.QueryLaunchingConstraintsChecker;
+import org.apache.lens.server.rewrite.RewritePlanCache;
 import org.apache.lens.server.rewrite.RewriteUtil;
 import org.apache.lens.server.rewrite.UserQueryToCubeQueryRewriter;
 import org.apache.lens.server.session.LensSessionImpl;
@@ -91,6 +98,9 @@ import org.slf4j.LoggerFactory;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
@@ -176,7 +186,23 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
   /**
    * The all queries.
    */
-  protected ConcurrentMap<QueryHandle, QueryContext> allQueries = new ConcurrentHashMap<QueryHandle, QueryContext>();
+  protected QueryRegistry allQueries = new QueryRegistry();
+
+  /** Journal record of submitted query, with the state needed to recover the query. */
+  static final byte JOURNAL_QUERY_SUBMITTED = 1;
+
+  /** Journal record of change in status of query, with the state which changes along with status. */
+  static final byte JOURNAL_QUERY_STATUS = 2;
+
+  /** Journal record of query purged from server. */
+  static final byte JOURNAL_QUERY_PURGED = 3;
+
+  /**
+   * Queries found launched on replaying journal, but not in snapshot. Drivers recover their state of queries only
+   * from snapshot, so status of these is re-checked with the driver, and they are failed if the driver has lost them.
+   */
+  private final Set<QueryHandle> launchedAfterSnapshot = Collections.newSetFromMap(
+    new ConcurrentHashMap<QueryHandle, Boolean>());
 
   /**
    * The conf.
@@ -199,6 +225,16 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
    */
   private final Thread statusPoller = new Thread(new StatusPoller(), "StatusPoller");
 
+  /**
+   * Decides when status of launched queries is to be polled.
+   */
+  private QueryStatusPollScheduler statusPollScheduler;
+
+  /**
+   * Thread pool used for updating status of launched queries in parallel
+   */
+  private ExecutorService statusUpdatePool;
+
   /**
    * The query purger.
    */
@@ -244,6 +280,11 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
    */
   int purgeInterval;
 
+  /**
+   * The number of finished queries saved to DB in a batch.
+   */
+  int purgeBatchSize;
+
   /**
    * The lens server dao.
    */
@@ -254,10 +295,32 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
    */
   private ExecutorService estimatePool;
 
+  /**
+   * Thread pool used for completing executions with timeout
+   */
+  private ScheduledExecutorService queryCompletionPool;
+
+  /**
+   * Futures waiting for completion of queries
+   */
+  private final ConcurrentMap<QueryHandle, SettableFuture<QueryStatus>> completionFutures =
+    new ConcurrentHashMap<QueryHandle, SettableFuture<QueryStatus>>();
+
+  /**
+   * Cache of cube rewrite plans shared across drivers and queries
+   */
+  private RewritePlanCache rewritePlanCache;
+
   private final LogSegregationContext logSegregationContext;
 
   private final ErrorCollection errorCollection = LensServices.get().getErrorCollection();
 
+  /** Factory of generators writing streamed result rows as json arrays */
+  private static final JsonFactory STREAMING_RESULT_JSON_FACTORY = new MappingJsonFactory();
+
+  /** Number of rows after which streamed result is flushed to client */
+  private static final int STREAMING_RESULT_FLUSH_ROWS = 1000;
+
   private QueryLaunchingConstraintsChecker queryConstraintsChecker;
 
   private WaitingQueriesSelector waitingQueriesSelector;
@@ -268,10 +331,16 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
    * removed from launched queries, while query not allowed to launch was still to be added to waiting
    * queries, then waiting query will have to wait for next launched query to finish.
    * This sort of delay in waiting query execution can be avoided if removal of a query from launched
-   * queries is locked using removalFromLaunchedQueriesLock, until the decision to add to waiting queries
-   * and actual addition to waiting query is complete.
+   * queries is locked using launchAdmissionLock, until the decision to add to waiting queries
+   * and actual addition to waiting query is complete. The lock is striped by driver and user of queries, so that
+   * queries of different drivers are admitted in parallel.
    * */
-  private final ReentrantLock removalFromLaunchedQueriesLock = new ReentrantLock();
+  private LaunchAdmissionLock launchAdmissionLock;
+
+  /**
+   * Queues of queries to be launched, one per driver. Queries are routed to them from queued queries.
+   */
+  private SubmissionLanes submissionLanes;
 
   private final ExecutorService waitingQueriesSelectionSvc = Executors.newSingleThreadExecutor();
 
@@ -285,6 +354,8 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
       if (event instanceof DriverSessionStarted) {
         log.info("New driver event by driver {}", event.getDriver());
         handleDriverSessionStart(event);
+      } else if (event instanceof DriverQueryStatusChanged) {
+        handleDriverQueryStatusChange((DriverQueryStatusChanged) event);
       }
     }
   };
@@ -539,63 +610,12 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
       while (!pausedForTest && !stopped && !querySubmitter.isInterrupted()) {
         try {
           QueryContext query = queuedQueries.take();
-          synchronized (query) {
-
-            /* Setting log segregation id */
-            logSegregationContext.setLogSegragationAndQueryId(query.getQueryHandleString());
-
-            if (!query.queued()) {
-              log.info("Probably the query got cancelled. Skipping it. Query Status:{}", query.getStatus());
-              continue;
-            }
-
-            log.info("Processing query:{}", query.getUserQuery());
-            try {
-              // acquire session before any query operation.
-              acquire(query.getLensSessionIdentifier());
-
-              /* Check javadoc of QueryExecutionServiceImpl#removalFromLaunchedQueriesLock for reason for existence
-              of this lock. */
-              log.debug("Acquiring lock in QuerySubmitter");
-              removalFromLaunchedQueriesLock.lock();
-              try {
-
-                boolean isQueryAllowedToLaunch = this.constraintsChecker.canLaunch(query, launchedQueries);
-
-                log.debug("isQueryAllowedToLaunch:{}", isQueryAllowedToLaunch);
-                if (isQueryAllowedToLaunch) {
-
-                  /* Query is not going to be added to waiting queries. No need to keep the lock.
-                  First release lock, then launch query */
-                  removalFromLaunchedQueriesLock.unlock();
-                  launchQuery(query);
-                } else {
-
-                  /* Query is going to be added to waiting queries. Keep holding the lock to avoid any removal from
-                  launched queries. First add to waiting queries, then release lock */
-                  addToWaitingQueries(query);
-                  removalFromLaunchedQueriesLock.unlock();
-                }
-              } finally {
-                if (removalFromLaunchedQueriesLock.isHeldByCurrentThread()) {
-                  removalFromLaunchedQueriesLock.unlock();
-                }
-              }
-            } catch (LensException e) {
-
-              log.error("Error launching query: {}", query.getQueryHandle(), e);
-              String reason = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
-              setFailedStatus(query, "Launching query failed", reason, e.buildLensErrorTO(this.errorCollection));
-              continue;
-
-            } catch (Exception e) {
-              log.error("Error launching query: {}", query.getQueryHandle(), e);
-              String reason = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
-              setFailedStatus(query, "Launching query failed", reason, null);
-              continue;
-            } finally {
-              release(query.getLensSessionIdentifier());
-            }
+          LensDriver driver = query.getSelectedDriver();
+          if (driver == null) {
+            // fails launch of the query
+            processQuery(query);
+          } else {
+            submissionLanes.add(driver, query);
           }
         } catch (InterruptedException e) {
           log.info("Query Submitter has been interrupted, exiting");
@@ -608,24 +628,137 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
       log.info("QuerySubmitter exited");
     }
 
-    private void launchQuery(final QueryContext query) throws LensException {
+    /**
+     * Launch the query, or add it to waiting queries if launching constraints do not allow it to be launched now.
+     * <p></p>
+     * The query is locked only while it is admitted and while its status is changed after launch, not while it is
+     * being launched on driver. So status updates and cancellation of the query, and of other queries, do not wait
+     * for slow launches.
+     *
+     * @param query the query
+     */
+    void processQuery(final QueryContext query) throws LensException {
+      /* Setting log segregation id */
+      logSegregationContext.setLogSegragationAndQueryId(query.getQueryHandleString());
+      boolean admitted = false;
+      try {
+        synchronized (query) {
+          if (!query.queued()) {
+            log.info("Probably the query got cancelled. Skipping it. Query Status:{}", query.getStatus());
+            return;
+          }
+          log.info("Processing query:{}", query.getUserQuery());
+          // acquire session before any query operation.
+          acquire(query.getLensSessionIdentifier());
+          try {
+            admitted = admit(query);
+          } finally {
+            if (!admitted) {
+              release(query.getLensSessionIdentifier());
+            }
+          }
+        }
+      } catch (Exception e) {
+        failLaunch(query, false, e);
+        return;
+      }
+      if (!admitted) {
+        return;
+      }
+      try {
+        launchQuery(query);
+      } catch (Exception e) {
+        failLaunch(query, true, e);
+      } finally {
+        release(query.getLensSessionIdentifier());
+      }
+    }
 
-      checkEstimatedQueriesState(query);
-      QueryStatus oldStatus = query.getStatus();
-      QueryStatus newStatus = new QueryStatus(query.getStatus().getProgress(), null,
-        QueryStatus.Status.LAUNCHED, "Query is launched on driver", false, null, null, null);
-      query.validateTransition(newStatus);
+    /**
+     * Add the query to launched queries if launching constraints allow it, otherwise to waiting queries. Called with
+     * the query locked.
+     *
+     * @param query the query
+     * @return true if the query is added to launched queries
+     * @throws LensException
+     */
+    private boolean admit(final QueryContext query) throws LensException {
+      /* Check javadoc of QueryExecutionServiceImpl#launchAdmissionLock for reason for existence
+      of this lock. */
+      log.debug("Acquiring lock in QuerySubmitter");
+      launchAdmissionLock.lockAdmission(query);
+      try {
+        boolean isQueryAllowedToLaunch = this.constraintsChecker.canLaunch(query, launchedQueries);
+        log.debug("isQueryAllowedToLaunch:{}", isQueryAllowedToLaunch);
+        if (isQueryAllowedToLaunch) {
+
+          /* Query is counted in launched queries right away, so that constraint checks of queries admitted
+          while this one is being launched on driver see it. Status poller skips it while it is still queued. */
+          checkEstimatedQueriesState(query);
+          launchedQueries.add(query);
+          statusPollScheduler.add(query, System.currentTimeMillis());
+          log.info("Added to launched queries. QueryId:{}", query.getQueryHandleString());
+          return true;
+        } else {
+
+          /* Query is going to be added to waiting queries. Keep holding the lock to avoid any removal from
+          launched queries. First add to waiting queries, then release lock */
+          addToWaitingQueries(query);
+          return false;
+        }
+      } finally {
+        launchAdmissionLock.unlockAdmission(query);
+      }
+    }
+
+    private void failLaunch(final QueryContext query, final boolean admitted, final Exception e)
+      throws LensException {
+      log.error("Error launching query: {}", query.getQueryHandle(), e);
+      String reason = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+      LensErrorTO lensErrorTO = e instanceof LensException
+        ? ((LensException) e).buildLensErrorTO(this.errorCollection) : null;
+      synchronized (query) {
+        if (admitted && removeFromLaunchedQueries(query)) {
+          processWaitingQueriesAsync(query);
+        }
+        // query could have been cancelled while it was being launched
+        if (query.queued()) {
+          setFailedStatus(query, "Launching query failed", reason, lensErrorTO);
+        }
+      }
+    }
+
+    private void launchQuery(final QueryContext query) throws LensException {
 
       // Check if we need to pass session's effective resources to selected driver
       addSessionResourcesToDriver(query);
       query.getSelectedDriver().executeAsync(query);
-      query.setStatusSkippingTransitionTest(newStatus);
-      query.setLaunchTime(System.currentTimeMillis());
-      query.clearTransientStateAfterLaunch();
 
-      launchedQueries.add(query);
-      log.info("Added to launched queries. QueryId:{}", query.getQueryHandleString());
-      fireStatusChangeEvent(query, newStatus, oldStatus);
+      synchronized (query) {
+        if (!query.queued()) {
+          /* Query got cancelled while it was being launched. Cancellation of a queued query does not touch driver
+          or launched queries, so that is done here. */
+          log.info("Query {} got cancelled while being launched, cancelling it on driver", query.getQueryHandle());
+          try {
+            query.getSelectedDriver().cancelQuery(query.getQueryHandle());
+          } catch (LensException e) {
+            log.warn("Could not cancel query {} on driver", query.getQueryHandle(), e);
+          }
+          if (removeFromLaunchedQueries(query)) {
+            processWaitingQueriesAsync(query);
+          }
+          return;
+        }
+        QueryStatus oldStatus = query.getStatus();
+        QueryStatus newStatus = new QueryStatus(query.getStatus().getProgress(), null,
+          QueryStatus.Status.LAUNCHED, "Query is launched on driver", false, null, null, null);
+        query.validateTransition(newStatus);
+        query.setStatusSkippingTransitionTest(newStatus);
+        query.setLaunchTime(System.currentTimeMillis());
+        query.clearTransientStateAfterLaunch();
+
+        fireStatusChangeEvent(query, newStatus, oldStatus);
+      }
     }
 
     private void addToWaitingQueries(final QueryContext query) throws LensException {
@@ -653,15 +786,10 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
   }
 
   /**
-   * The Class StatusPoller.
+   * The Class StatusPoller. Hands out launched queries due for a status poll to the status update pool.
    */
   private class StatusPoller implements Runnable {
 
-    /**
-     * The poll interval.
-     */
-    long pollInterval = 1000;
-
     /*
      * (non-Javadoc)
      *
@@ -672,24 +800,10 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
       log.info("Starting Status poller thread");
       while (!stopped && !statusPoller.isInterrupted()) {
         try {
-          Set<QueryContext> launched = launchedQueries.getQueries();
-
-          for (QueryContext ctx : launched) {
-            if (stopped || statusPoller.isInterrupted()) {
-              return;
-            }
-
-            logSegregationContext.setLogSegragationAndQueryId(ctx.getQueryHandleString());
-            log.info("Polling status for {}", ctx.getQueryHandle());
-            try {
-              // session is not required to update status of the query
-              // don't need to wrap this with acquire/release
-              updateStatus(ctx.getQueryHandle());
-            } catch (LensException e) {
-              log.error("Error updating status ", e);
-            }
+          for (QueryContext ctx : statusPollScheduler.getDueQueries(System.currentTimeMillis())) {
+            submitStatusUpdate(new StatusUpdateTask(ctx));
           }
-          Thread.sleep(pollInterval);
+          Thread.sleep(statusPollScheduler.getMinIntervalMillis());
         } catch (InterruptedException e) {
           log.info("Status poller has been interrupted, exiting");
           return;
@@ -702,6 +816,61 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
     }
   }
 
+  private void submitStatusUpdate(StatusUpdateTask task) {
+    try {
+      statusUpdatePool.execute(task);
+    } catch (RejectedExecutionException e) {
+      log.warn("Status update rejected for {}", task.ctx.getQueryHandle(), e);
+      statusPollScheduler.pollCompleted(task.ctx, System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * Task updating status of a query handed out by status poll scheduler.
+   */
+  private class StatusUpdateTask implements Runnable {
+    private final QueryContext ctx;
+
+    StatusUpdateTask(QueryContext ctx) {
+      this.ctx = ctx;
+    }
+
+    @Override
+    public void run() {
+      try {
+        statusPollScheduler.pollStarted(ctx, System.currentTimeMillis());
+        logSegregationContext.setLogSegragationAndQueryId(ctx.getQueryHandleString());
+        log.info("Polling status for {}", ctx.getQueryHandle());
+        // session is not required to update status of the query
+        // don't need to wrap this with acquire/release
+        updateStatus(ctx.getQueryHandle());
+      } catch (LensException e) {
+        log.error("Error updating status ", e);
+      } catch (Exception e) {
+        incrCounter(STATUS_UPDATE_COUNTER);
+        log.error("Error in status update", e);
+      } finally {
+        statusPollScheduler.pollCompleted(ctx, System.currentTimeMillis());
+      }
+    }
+  }
+
+  /**
+   * Handle status change pushed by driver, by updating status of the query right away.
+   *
+   * @param event the event
+   */
+  private void handleDriverQueryStatusChange(DriverQueryStatusChanged event) {
+    QueryContext ctx = allQueries.get(event.getQueryHandle());
+    if (ctx == null || statusUpdatePool == null) {
+      return;
+    }
+    log.debug("Driver {} pushed status change of {}", event.getDriver(), event.getQueryHandle());
+    if (statusPollScheduler.pollNow(ctx.getQueryHandle(), System.currentTimeMillis())) {
+      submitStatusUpdate(new StatusUpdateTask(ctx));
+    }
+  }
+
   /**
    * Sets the failed status.
    *
@@ -748,7 +917,9 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
         * when we removed it from waiting, it was in queued. We might just miss removing it from everywhere due to this
         * hide and seek. Then QuerySubmitter thread will come to rescue, as it always checks that a query should be in
         * queued state before processing it after deque. If it is in cancelled state, then it will skip it. */
-        queuedQueries.remove(ctx);
+        if (!queuedQueries.remove(ctx)) {
+          submissionLanes.remove(ctx);
+        }
         waitingQueries.remove(ctx);
       } else {
         if (removeFromLaunchedQueries(ctx)) {
@@ -756,8 +927,10 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
         }
       }
     }
+    launchedAfterSnapshot.remove(ctx.getQueryHandle());
     finishedQueries.add(new FinishedQuery(ctx));
     ctx.clearTransientStateAfterLaunch();
+    completeFuture(ctx);
   }
 
   void setSuccessState(QueryContext ctx) throws LensException {
@@ -783,25 +956,12 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
           log.info("Updating status for {}", ctx.getQueryHandle());
           try {
             ctx.getSelectedDriver().updateStatus(ctx);
-            ctx.setStatus(ctx.getDriverStatus().toQueryStatus());
           } catch (LensException exc) {
             // Driver gave exception while updating status
-            setFailedStatus(ctx, "Status update failed", exc.getMessage(), exc.buildLensErrorTO(this.errorCollection));
-            log.error("Status update failed for {}", handle, exc);
+            setStatusUpdateFailed(ctx, exc);
             return;
           }
-          // query is successfully executed by driver and
-          // if query result need not be persisted or there is no result available in driver, move the query to
-          // succeeded state immediately, otherwise result formatter will format the result and move it to succeeded
-          if (ctx.getStatus().getStatus().equals(EXECUTED) && (!ctx.isPersistent()
-            || !ctx.isResultAvailableInDriver())) {
-            setSuccessState(ctx);
-          } else {
-            if (ctx.getStatus().finished()) {
-              updateFinishedQuery(ctx, before);
-            }
-            fireStatusChangeEvent(ctx, ctx.getStatus(), before);
-          }
+          processDriverStatus(ctx, before);
         }
         if (ctx.queued()) {
           Integer queryIndex = waitingQueries.getQueryIndex(ctx);
@@ -815,6 +975,49 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
     }
   }
 
+  /**
+   * Move the query to failed state since driver could not update its status.
+   *
+   * @param ctx the query context
+   * @param exc the exception from driver
+   * @throws LensException the lens exception
+   */
+  private void setStatusUpdateFailed(QueryContext ctx, LensException exc) throws LensException {
+    if (launchedAfterSnapshot.remove(ctx.getQueryHandle())) {
+      setFailedStatus(ctx, "Query launched before server restart could not be recovered", exc.getMessage(),
+        exc.buildLensErrorTO(this.errorCollection));
+      log.error("Driver could not recover {} launched after last snapshot", ctx.getQueryHandle(), exc);
+      return;
+    }
+    setFailedStatus(ctx, "Status update failed", exc.getMessage(), exc.buildLensErrorTO(this.errorCollection));
+    log.error("Status update failed for {}", ctx.getQueryHandle(), exc);
+  }
+
+  /**
+   * Set query status from the driver status updated in the context, and fire status change events.
+   *
+   * @param ctx    the query context
+   * @param before the status before driver status update
+   * @throws LensException the lens exception
+   */
+  private void processDriverStatus(QueryContext ctx, QueryStatus before) throws LensException {
+    // driver knows the query, even if it was launched after the last snapshot
+    launchedAfterSnapshot.remove(ctx.getQueryHandle());
+    ctx.setStatus(ctx.getDriverStatus().toQueryStatus());
+    // query is successfully executed by driver and
+    // if query result need not be persisted or there is no result available in driver, move the query to
+    // succeeded state immediately, otherwise result formatter will format the result and move it to succeeded
+    if (ctx.getStatus().getStatus().equals(EXECUTED) && (!ctx.isPersistent()
+      || !ctx.isResultAvailableInDriver())) {
+      setSuccessState(ctx);
+    } else {
+      if (ctx.getStatus().finished()) {
+        updateFinishedQuery(ctx, before);
+      }
+      fireStatusChangeEvent(ctx, ctx.getStatus(), before);
+    }
+  }
+
   /**
    * New status change event.
    *
@@ -874,6 +1077,11 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
       // No need to fire event since the state hasn't changed
       return;
     }
+    allQueries.reindex(ctx);
+    if (currentStatus != CLOSED) {
+      // closed queries are purged, which is journaled separately
+      journalQueryChange(JOURNAL_QUERY_STATUS, ctx);
+    }
 
     StatusChange event = newStatusChangeEvent(ctx, prevState, currentStatus);
     if (event != null) {
@@ -900,59 +1108,27 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
       log.info("Starting Query purger thread");
       while (!stopped && !queryPurger.isInterrupted()) {
         try {
-          Iterator<FinishedQuery> iter = finishedQueries.iterator();
-          FinishedQuery finished;
-          while (iter.hasNext()) {
-            finished = iter.next();
-            if (finished.canBePurged()) {
-              try {
-                FinishedLensQuery finishedQuery = new FinishedLensQuery(finished.getCtx());
-                if (finished.ctx.getStatus().getStatus() == SUCCESSFUL) {
-                  if (finished.ctx.getStatus().isResultSetAvailable()) {
-                    try {
-                      LensResultSet set = finished.getResultset();
-                      if (set != null && PersistentResultSet.class.isAssignableFrom(set.getClass())) {
-                        LensResultSetMetadata metadata = set.getMetadata();
-                        String outputPath = set.getOutputPath();
-                        Long fileSize = ((PersistentResultSet) set).getFileSize();
-                        Integer rows = set.size();
-                        finishedQuery.setMetadataClass(metadata.getClass().getName());
-                        finishedQuery.setResult(outputPath);
-                        finishedQuery.setMetadata(MAPPER.writeValueAsString(metadata));
-                        finishedQuery.setRows(rows);
-                        finishedQuery.setFileSize(fileSize);
-                      }
-                    } catch (Exception e) {
-                      log.error("Couldn't obtain result set info for the query: {}. Going ahead with purge",
-                        finished.getQueryHandle(), e);
-                    }
-                  }
-                }
-                lensServerDao.insertFinishedQuery(finishedQuery);
-                log.info("Saved query {} to DB", finishedQuery.getHandle());
-                iter.remove();
-              } catch (Exception e) {
-                log.warn("Exception while purging query {}", finished.getQueryHandle(), e);
-                continue;
-              }
-              synchronized (finished.ctx) {
-                finished.ctx.setFinishedQueryPersisted(true);
+          List<FinishedQuery> batch = new ArrayList<FinishedQuery>(purgeBatchSize);
+          List<FinishedLensQuery> batchQueries = new ArrayList<FinishedLensQuery>(purgeBatchSize);
+          Set<FinishedQuery> purged = new HashSet<FinishedQuery>();
+          try {
+            for (FinishedQuery finished : finishedQueries) {
+              if (finished.canBePurged()) {
                 try {
-                  if (finished.getCtx().getSelectedDriver() != null) {
-                    finished.getCtx().getSelectedDriver().closeQuery(finished.getQueryHandle());
-                  }
+                  batchQueries.add(toFinishedLensQuery(finished));
+                  batch.add(finished);
                 } catch (Exception e) {
-                  log.warn("Exception while closing query with selected driver.", e);
+                  log.warn("Exception while purging query {}", finished.getQueryHandle(), e);
+                  continue;
+                }
+                if (batch.size() >= purgeBatchSize) {
+                  purge(batch, batchQueries, purged);
                 }
-                log.info("Purging: {}", finished.getQueryHandle());
-                allQueries.remove(finished.getQueryHandle());
-                resultSets.remove(finished.getQueryHandle());
               }
-              fireStatusChangeEvent(finished.getCtx(),
-                new QueryStatus(1f, null, CLOSED, "Query purged", false, null, null, null), finished.getCtx()
-                  .getStatus());
-              log.info("Query purged: {}", finished.getQueryHandle());
             }
+            purge(batch, batchQueries, purged);
+          } finally {
+            finishedQueries.removeAll(purged);
           }
           Thread.sleep(purgeInterval);
         } catch (InterruptedException e) {
@@ -964,6 +1140,79 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
       }
       log.info("QueryPurger exited");
     }
+
+    /**
+     * Build the finished query to be saved in DB.
+     *
+     * @param finished the finished query
+     * @return the finished lens query
+     */
+    private FinishedLensQuery toFinishedLensQuery(FinishedQuery finished) {
+      FinishedLensQuery finishedQuery = new FinishedLensQuery(finished.getCtx());
+      if (finished.ctx.getStatus().getStatus() == SUCCESSFUL) {
+        if (finished.ctx.getStatus().isResultSetAvailable()) {
+          try {
+            LensResultSet set = finished.getResultset();
+            if (set != null && PersistentResultSet.class.isAssignableFrom(set.getClass())) {
+              LensResultSetMetadata metadata = set.getMetadata();
+              String outputPath = set.getOutputPath();
+              Long fileSize = ((PersistentResultSet) set).getFileSize();
+              Integer rows = set.size();
+              finishedQuery.setMetadataClass(metadata.getClass().getName());
+              finishedQuery.setResult(outputPath);
+              finishedQuery.setMetadata(MAPPER.writeValueAsString(metadata));
+              finishedQuery.setRows(rows);
+              finishedQuery.setFileSize(fileSize);
+            }
+          } catch (Exception e) {
+            log.error("Couldn't obtain result set info for the query: {}. Going ahead with purge",
+              finished.getQueryHandle(), e);
+          }
+        }
+      }
+      return finishedQuery;
+    }
+
+    /**
+     * Save a batch of finished queries to DB, and purge the ones saved from server. Batch is cleared after that.
+     *
+     * @param batch        the finished queries
+     * @param batchQueries the finished queries to be saved in DB, in the same order
+     * @param purged       the finished queries purged, to which purged queries of this batch are added
+     */
+    private void purge(List<FinishedQuery> batch, List<FinishedLensQuery> batchQueries, Set<FinishedQuery> purged) {
+      if (batch.isEmpty()) {
+        return;
+      }
+      Set<String> saved = lensServerDao.insertFinishedQueries(batchQueries);
+      log.info("Saved {} of {} queries to DB", saved.size(), batch.size());
+      for (FinishedQuery finished : batch) {
+        if (!saved.contains(finished.getQueryHandleString())) {
+          continue;
+        }
+        purged.add(finished);
+        synchronized (finished.ctx) {
+          finished.ctx.setFinishedQueryPersisted(true);
+          try {
+            if (finished.getCtx().getSelectedDriver() != null) {
+              finished.getCtx().getSelectedDriver().closeQuery(finished.getQueryHandle());
+            }
+          } catch (Exception e) {
+            log.warn("Exception while closing query with selected driver.", e);
+          }
+          log.info("Purging: {}", finished.getQueryHandle());
+          allQueries.remove(finished.getQueryHandle());
+          journalQueryChange(JOURNAL_QUERY_PURGED, finished.ctx);
+          resultSets.remove(finished.getQueryHandle());
+        }
+        fireStatusChangeEvent(finished.getCtx(),
+          new QueryStatus(1f, null, CLOSED, "Query purged", false, null, null, null), finished.getCtx()
+            .getStatus());
+        log.info("Query purged: {}", finished.getQueryHandle());
+      }
+      batch.clear();
+      batchQueries.clear();
+    }
   }
 
   /**
@@ -1016,6 +1265,20 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
 
     ImmutableSet<QueryLaunchingConstraint> queryConstraints = getImplementations(
       QUERY_LAUNCHING_CONSTRAINT_FACTORIES_KEY, hiveConf);
+    this.launchAdmissionLock = new LaunchAdmissionLock(hiveConf.getInt(QUERY_LAUNCH_ADMISSION_LOCK_STRIPES,
+      DEFAULT_QUERY_LAUNCH_ADMISSION_LOCK_STRIPES));
+    this.submissionLanes = new SubmissionLanes(hiveConf.getInt(QUERY_LAUNCHER_THREADS_PER_DRIVER,
+      DEFAULT_QUERY_LAUNCHER_THREADS_PER_DRIVER)) {
+      @Override
+      void launch(QueryContext query) {
+        try {
+          querySubmitterRunnable.processQuery(query);
+        } catch (Exception e) {
+          incrCounter(QUERY_SUBMITTER_COUNTER);
+          log.error("Error in query submitter", e);
+        }
+      }
+    };
 
     this.queryConstraintsChecker = new DefaultQueryLaunchingConstraintsChecker(queryConstraints);
 
@@ -1033,6 +1296,9 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
     } catch (LensException e) {
       throw new IllegalStateException("Could not load phase 1 rewriters");
     }
+    this.rewritePlanCache = new RewritePlanCache(conf);
+    HQLParser.initParseCache(conf);
+    this.statusPollScheduler = new QueryStatusPollScheduler(conf);
     try {
       initializeQueryAcceptors();
     } catch (LensException e) {
@@ -1045,11 +1311,38 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
       log.error("Error while loading drivers", e);
       throw new IllegalStateException("Could not load drivers", e);
     }
+    addConstraintAggregates(queryConstraints);
     purgeInterval = conf.getInt(PURGE_INTERVAL, DEFAULT_PURGE_INTERVAL);
+    purgeBatchSize = conf.getInt(PURGE_BATCH_SIZE, DEFAULT_PURGE_BATCH_SIZE);
     initalizeFinishedQueryStore(conf);
     log.info("Query execution service initialized");
   }
 
+  /**
+   * Register aggregates of launched queries, of server constraints and of constraints of drivers, with launched
+   * queries. An aggregate shared by more than one constraint is registered once.
+   *
+   * @param serverConstraints the server constraints
+   */
+  private void addConstraintAggregates(Set<QueryLaunchingConstraint> serverConstraints) {
+    List<QueryLaunchingConstraint> allConstraints = new ArrayList<QueryLaunchingConstraint>(serverConstraints);
+    for (LensDriver driver : drivers.values()) {
+      allConstraints.addAll(driver.getQueryConstraints());
+    }
+    Set<QueryAggregate> added = Collections.newSetFromMap(new IdentityHashMap<QueryAggregate, Boolean>());
+    for (QueryLaunchingConstraint constraint : allConstraints) {
+      if (constraint instanceof AggregatingQueryLaunchingConstraint) {
+        for (QueryAggregate aggregate : ((AggregatingQueryLaunchingConstraint) constraint)
+          .getLaunchedQueriesAggregates()) {
+          if (added.add(aggregate)) {
+            launchedQueries.addAggregate(aggregate);
+          }
+        }
+      }
+    }
+    log.info("Registered {} aggregates of launched queries for query constraints", added.size());
+  }
+
   /**
    * Initalize finished query store.
    *
@@ -1098,6 +1391,7 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
   public void prepareStopping() {
     super.prepareStopping();
     querySubmitter.interrupt();
+    submissionLanes.stop();
     statusPoller.interrupt();
     queryPurger.interrupt();
     prepareQueryPurger.interrupt();
@@ -1122,7 +1416,10 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
       }
     }
 
+    submissionLanes.stop();
     estimatePool.shutdownNow();
+    statusUpdatePool.shutdownNow();
+    queryCompletionPool.shutdownNow();
     log.info("Query execution service stopped");
   }
 
@@ -1154,6 +1451,8 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
     }
     super.start();
     querySubmitter.start();
+    startStatusUpdatePool();
+    startQueryCompletionPool();
     statusPoller.start();
     queryPurger.start();
     prepareQueryPurger.start();
@@ -1161,6 +1460,38 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
     startEstimatePool();
   }
 
+  private void startStatusUpdatePool() {
+    int poolSize = conf.getInt(STATUS_UPDATE_POOL_THREADS, DEFAULT_STATUS_UPDATE_POOL_THREADS);
+    final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+    final AtomicInteger thId = new AtomicInteger();
+    ThreadFactory threadFactory = new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread th = defaultFactory.newThread(r);
+        th.setName("status-update-" + thId.incrementAndGet());
+        return th;
+      }
+    };
+    log.debug("starting status update pool");
+    this.statusUpdatePool = Executors.newFixedThreadPool(poolSize, threadFactory);
+  }
+
+  private void startQueryCompletionPool() {
+    int poolSize = conf.getInt(QUERY_COMPLETION_POOL_THREADS, DEFAULT_QUERY_COMPLETION_POOL_THREADS);
+    final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+    final AtomicInteger thId = new AtomicInteger();
+    ThreadFactory threadFactory = new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread th = defaultFactory.newThread(r);
+        th.setName("query-completion-" + thId.incrementAndGet());
+        return th;
+      }
+    };
+    log.debug("starting query completion pool");
+    this.queryCompletionPool = Executors.newScheduledThreadPool(poolSize, threadFactory);
+  }
+
   private void startEstimatePool() {
     int minPoolSize = conf.getInt(ESTIMATE_POOL_MIN_THREADS,
       DEFAULT_ESTIMATE_POOL_MIN_THREADS);
@@ -1209,7 +1540,8 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
       // Initially we obtain individual runnables for rewrite and estimate calls
       // These are mapped against the driver, so that later it becomes easy to chain them
       // for each driver.
-      Map<LensDriver, RewriteUtil.DriverRewriterRunnable> rewriteRunnables = RewriteUtil.rewriteQuery(ctx);
+      Map<LensDriver, RewriteUtil.DriverRewriterRunnable> rewriteRunnables = RewriteUtil.rewriteQuery(ctx,
+        rewritePlanCache);
       Map<LensDriver, AbstractQueryContext.DriverEstimateRunnable> estimateRunnables = ctx.getDriverEstimateRunnables();
 
       int numDrivers = ctx.getDriverContext().getDrivers().size();
@@ -1460,7 +1792,7 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
         }
       }
       if (resultSets.get(queryHandle) instanceof InMemoryResultSet) {
-        ((InMemoryResultSet) resultSets.get(queryHandle)).seekToStart();
+        ((InMemoryResultSet) resultSets.get(queryHandle)).rewind();
       }
       return resultSets.get(queryHandle);
     }
@@ -1614,7 +1946,7 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
       } else {
         ctx.setQueryName(pctx.getQueryName());
       }
-      return executeTimeoutInternal(sessionHandle, ctx, timeoutMillis, qconf);
+      return executeTimeoutInternal(sessionHandle, submitQuery(ctx), timeoutMillis);
     } finally {
       release(sessionHandle);
     }
@@ -1693,9 +2025,10 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
 
     QueryStatus before = ctx.getStatus();
     ctx.setStatus(new QueryStatus(0.0, null, QUEUED, "Query is queued", false, null, null, null));
+    journalQueryChange(JOURNAL_QUERY_SUBMITTED, ctx);
     queuedQueries.add(ctx);
     log.debug("Added to Queued Queries:{}", ctx.getQueryHandleString());
-    allQueries.put(ctx.getQueryHandle(), ctx);
+    allQueries.put(ctx);
     fireStatusChangeEvent(ctx, ctx.getStatus(), before);
     log.info("Returning handle {}", ctx.getQueryHandle().getHandleId());
     return ctx.getQueryHandle();
@@ -1846,134 +2179,192 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
     try {
       log.info("Blocking execute session:{} query: {} timeout: {}", sessionHandle, query, timeoutMillis);
       acquire(sessionHandle);
-      Configuration qconf = getLensConf(sessionHandle, conf);
-      accept(query, qconf, SubmitOp.EXECUTE);
-      QueryContext ctx = createContext(query, getSession(sessionHandle).getLoggedInUser(), conf, qconf);
-      ctx.setQueryName(queryName);
-      ctx.setLensSessionIdentifier(sessionHandle.getPublicId().toString());
-      rewriteAndSelect(ctx);
-      return executeTimeoutInternal(sessionHandle, ctx, timeoutMillis, qconf);
+      return executeTimeoutInternal(sessionHandle, submitForExecute(sessionHandle, query, conf, queryName),
+        timeoutMillis);
     } finally {
       release(sessionHandle);
     }
   }
 
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.lens.server.api.query.QueryExecutionService#executeWithTimeoutAsync(
+   * org.apache.lens.api.LensSessionHandle, java.lang.String, long, org.apache.lens.api.LensConf, java.lang.String)
+   */
+  @Override
+  public ListenableFuture<QueryHandleWithResultSet> executeWithTimeoutAsync(LensSessionHandle sessionHandle,
+    String query, long timeoutMillis, LensConf conf, String queryName) throws LensException {
+    QueryHandle handle;
+    try {
+      log.info("Non blocking execute session:{} query: {} timeout: {}", sessionHandle, query, timeoutMillis);
+      acquire(sessionHandle);
+      handle = submitForExecute(sessionHandle, query, conf, queryName);
+    } finally {
+      release(sessionHandle);
+    }
+    return getResultFuture(sessionHandle, handle, timeoutMillis);
+  }
+
   /**
-   * Execute timeout internal.
+   * Accept, rewrite and submit the query for execution with timeout. Session should be acquired by the caller.
    *
    * @param sessionHandle the session handle
-   * @param ctx           the ctx
-   * @param timeoutMillis the timeout millis
-   * @param conf          the conf
-   * @return the query handle with result set
+   * @param query         the query
+   * @param conf          the lens conf of the query
+   * @param queryName     the query name
+   * @return the query handle
    * @throws LensException the lens exception
    */
-  private QueryHandleWithResultSet executeTimeoutInternal(LensSessionHandle sessionHandle, QueryContext ctx,
-    long timeoutMillis, Configuration conf) throws LensException {
-    QueryHandle handle = submitQuery(ctx);
-    QueryHandleWithResultSet result = new QueryHandleWithResultSet(handle);
-    // getQueryContext calls updateStatus, which fires query events if there's a change in status
+  private QueryHandle submitForExecute(LensSessionHandle sessionHandle, String query, LensConf conf,
+    String queryName) throws LensException {
+    Configuration qconf = getLensConf(sessionHandle, conf);
+    accept(query, qconf, SubmitOp.EXECUTE);
+    QueryContext ctx = createContext(query, getSession(sessionHandle).getLoggedInUser(), conf, qconf);
+    ctx.setQueryName(queryName);
+    ctx.setLensSessionIdentifier(sessionHandle.getPublicId().toString());
+    rewriteAndSelect(ctx);
+    return submitQuery(ctx);
+  }
 
-    while (isQueued(sessionHandle, handle)) {
-      try {
-        Thread.sleep(10);
-      } catch (InterruptedException e) {
-        log.error("Encountered Interrupted exception.", e);
-      }
-    }
-    QueryCompletionListener listener = new QueryCompletionListenerImpl(handle);
-    if (getQueryContext(sessionHandle, handle).getSelectedDriver() == null) {
-      result.setStatus(getQueryContext(sessionHandle, handle).getStatus());
-      return result;
-    }
-    synchronized (ctx) {
-      if (!ctx.getStatus().finished()) {
-        getQueryContext(sessionHandle, handle).getSelectedDriver()
-          .registerForCompletionNotification(handle, timeoutMillis, listener);
-        try {
-          synchronized (listener) {
-            listener.wait(timeoutMillis);
-          }
-        } catch (InterruptedException e) {
-          log.info("Waiting thread interrupted");
-        }
-      }
-    }
-
-    if (getQueryContext(sessionHandle, handle).getStatus().finished()) {
-      if (getQueryContext(sessionHandle, handle).getStatus().isResultSetAvailable()) {
-        result.setResult(getResultset(handle).toQueryResult());
-      }
-    }
-
-    result.setStatus(getQueryContext(sessionHandle, handle).getStatus());
-
-    return result;
+  /*
+   * (non-Javadoc)
+   *
+   * @see
+   * org.apache.lens.server.api.query.QueryExecutionService#getCompletionFuture(org.apache.lens.api.LensSessionHandle,
+   * org.apache.lens.api.query.QueryHandle)
+   */
+  @Override
+  public ListenableFuture<QueryStatus> getCompletionFuture(LensSessionHandle sessionHandle, QueryHandle queryHandle)
+    throws LensException {
+    // validates the query handle
+    getQueryContext(sessionHandle, queryHandle);
+    return getCompletionFuture(queryHandle);
   }
 
-  private boolean isQueued(final LensSessionHandle sessionHandle, final QueryHandle handle)
-    throws LensException {
-    // getQueryContext calls updateStatus, which fires query events if there's a change in status
-    QueryContext query = getQueryContext(sessionHandle, handle);
-    synchronized (query) {
-      return query.queued();
+  /**
+   * Get the future completing when query finishes. Futures are completed from {@link #updateFinishedQuery}, which
+   * is reached by all paths finishing a query, so no polling is done here.
+   *
+   * @param handle the query handle
+   * @return future of query status
+   */
+  private ListenableFuture<QueryStatus> getCompletionFuture(QueryHandle handle) {
+    QueryContext ctx = allQueries.get(handle);
+    if (ctx == null) {
+      // query is purged, so must have finished
+      return Futures.immediateFuture(getQueryContextOfFinishedQuery(handle).getStatus());
+    }
+    SettableFuture<QueryStatus> future = SettableFuture.create();
+    SettableFuture<QueryStatus> existing = completionFutures.putIfAbsent(handle, future);
+    if (existing != null) {
+      future = existing;
     }
+    // query might have finished before the future got registered
+    if (ctx.getStatus().finished()) {
+      completeFuture(ctx);
+    }
+    return future;
   }
 
   /**
-   * The Class QueryCompletionListenerImpl.
+   * Complete the future of query, if any is waiting.
+   *
+   * @param ctx the query context
    */
-  class QueryCompletionListenerImpl implements QueryCompletionListener {
-
-    /**
-     * The succeeded.
-     */
-    boolean succeeded = false;
-
-    /**
-     * The handle.
-     */
-    QueryHandle handle;
-
-    /**
-     * Instantiates a new query completion listener impl.
-     *
-     * @param handle the handle
-     */
-    QueryCompletionListenerImpl(QueryHandle handle) {
-      this.handle = handle;
+  private void completeFuture(QueryContext ctx) {
+    SettableFuture<QueryStatus> future = completionFutures.remove(ctx.getQueryHandle());
+    if (future != null) {
+      future.set(ctx.getStatus());
     }
+  }
 
-    /*
-     * (non-Javadoc)
-     *
-     * @see
-     * org.apache.lens.server.api.driver.QueryCompletionListener#onCompletion(org.apache.lens.api.query.QueryHandle)
-     */
-    @Override
-    public void onCompletion(QueryHandle handle) {
-      synchronized (this) {
-        succeeded = true;
-        log.info("Query {} with time out succeeded", handle);
-        this.notify();
+  /**
+   * Get future of query handle with result, completing when the query finishes or timeout has reached. The result is
+   * fetched on the query completion pool.
+   *
+   * @param sessionHandle the session handle
+   * @param handle        the query handle
+   * @param timeoutMillis the timeout millis
+   * @return the future of query handle with result set
+   */
+  private ListenableFuture<QueryHandleWithResultSet> getResultFuture(final LensSessionHandle sessionHandle,
+    final QueryHandle handle, long timeoutMillis) {
+    final SettableFuture<QueryHandleWithResultSet> result = SettableFuture.create();
+    final AtomicBoolean claimed = new AtomicBoolean(false);
+    final Runnable resultFetcher = new Runnable() {
+      @Override
+      public void run() {
+        if (!claimed.compareAndSet(false, true)) {
+          return;
+        }
+        try {
+          acquire(sessionHandle);
+          result.set(getResultWithStatus(sessionHandle, handle));
+        } catch (Throwable e) {
+          result.setException(e);
+        } finally {
+          release(sessionHandle);
+        }
       }
-    }
-
-    /*
-     * (non-Javadoc)
-     *
-     * @see org.apache.lens.server.api.driver.QueryCompletionListener#onError(org.apache.lens.api.query.QueryHandle,
-     * java.lang.String)
-     */
-    @Override
-    public void onError(QueryHandle handle, String error) {
-      synchronized (this) {
-        succeeded = false;
-        log.info("Query {} with time out failed", handle);
-        this.notify();
+    };
+    final ScheduledFuture<?> timeout = queryCompletionPool.schedule(resultFetcher, timeoutMillis,
+      TimeUnit.MILLISECONDS);
+    getCompletionFuture(handle).addListener(new Runnable() {
+      @Override
+      public void run() {
+        timeout.cancel(false);
+        resultFetcher.run();
       }
+    }, queryCompletionPool);
+    return result;
+  }
+
+  /**
+   * Execute timeout internal.
+   * <p></p>
+   * Blocks on completion of the query, with timeout counted from submission. Returns query handle with its current
+   * status, and result if the query finished successfully with a result set.
+   *
+   * @param sessionHandle the session handle
+   * @param handle        the handle of submitted query
+   * @param timeoutMillis the timeout millis
+   * @return the query handle with result set
+   * @throws LensException the lens exception
+   */
+  private QueryHandleWithResultSet executeTimeoutInternal(LensSessionHandle sessionHandle, QueryHandle handle,
+    long timeoutMillis) throws LensException {
+    try {
+      getCompletionFuture(handle).get(timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      log.info("Query {} did not finish within {} millis", handle, timeoutMillis);
+    } catch (InterruptedException e) {
+      log.info("Waiting thread interrupted");
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      log.warn("Error waiting for completion of query {}", handle, e);
     }
+    return getResultWithStatus(sessionHandle, handle);
+  }
 
+  /**
+   * Get query handle with current status of the query, and its result if the query has finished with a result set.
+   *
+   * @param sessionHandle the session handle
+   * @param handle        the query handle
+   * @return the query handle with result set
+   * @throws LensException the lens exception
+   */
+  private QueryHandleWithResultSet getResultWithStatus(LensSessionHandle sessionHandle, QueryHandle handle)
+    throws LensException {
+    QueryHandleWithResultSet result = new QueryHandleWithResultSet(handle);
+    // getQueryContext calls updateStatus, which fires query events if there's a change in status
+    QueryContext ctx = getQueryContext(sessionHandle, handle);
+    if (ctx.getStatus().finished() && ctx.getStatus().isResultSetAvailable()) {
+      result.setResult(getResultset(handle).toQueryResult());
+    }
+    result.setStatus(ctx.getStatus());
+    return result;
   }
 
   /*
@@ -1991,7 +2382,8 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
       acquire(sessionHandle);
       LensResultSet resultSet = getResultset(queryHandle);
       if (resultSet != null) {
-        return resultSet.getMetadata().toQueryResultSetMetadata();
+        return new QueryResultSetMetadata(resultSet.getMetadata().toQueryResultSetMetadata().getColumns(),
+          resultSet instanceof InMemoryResultSet);
       } else {
         throw new NotFoundException("Resultset metadata not found for query: (" + sessionHandle + ", " + queryHandle
           + ")");
@@ -2011,9 +2403,14 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
   public QueryResult fetchResultSet(LensSessionHandle sessionHandle, QueryHandle queryHandle, long startIndex,
     int fetchSize) throws LensException {
     try {
-      log.info("FetchResultSet: session:{} query:{}", sessionHandle, queryHandle);
+      log.info("FetchResultSet: session:{} query:{} startIndex:{} fetchSize:{}", sessionHandle, queryHandle,
+        startIndex, fetchSize);
       acquire(sessionHandle);
-      return getResultset(queryHandle).toQueryResult();
+      LensResultSet resultSet = getResultset(queryHandle);
+      if (resultSet instanceof InMemoryResultSet) {
+        return ((InMemoryResultSet) resultSet).toQueryResult(startIndex, fetchSize);
+      }
+      return resultSet.toQueryResult();
     } finally {
       release(sessionHandle);
     }
@@ -2081,6 +2478,18 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
   @Override
   public List<QueryHandle> getAllQueries(LensSessionHandle sessionHandle, String state, String userName,
     String queryName, long fromDate, long toDate) throws LensException {
+    return getAllQueries(sessionHandle, state, userName, queryName, fromDate, toDate, 0, null);
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.lens.server.api.query.QueryExecutionService#getAllQueries(org.apache.lens.api.LensSessionHandle,
+   * java.lang.String, java.lang.String, java.lang.String, long, long, int, org.apache.lens.api.query.QueryHandle)
+   */
+  @Override
+  public List<QueryHandle> getAllQueries(LensSessionHandle sessionHandle, String state, String userName,
+    String queryName, long fromDate, long toDate, int limit, QueryHandle cursor) throws LensException {
     validateTimeRange(fromDate, toDate);
     userName = UtilityMethods.removeDomain(userName);
     try {
@@ -2099,33 +2508,81 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
         userName = getSession(sessionHandle).getLoggedInUser();
       }
 
-      List<QueryHandle> all = new ArrayList<QueryHandle>(allQueries.keySet());
-      Iterator<QueryHandle> itr = all.iterator();
-      while (itr.hasNext()) {
-        QueryHandle q = itr.next();
-        QueryContext context = allQueries.get(q);
+      // queries are listed after the cursor query, in the order of submission time and handle
+      long cursorSubmitTime = 0;
+      String cursorHandle = null;
+      if (cursor != null) {
+        QueryContext cursorCtx = allQueries.get(cursor);
+        if (cursorCtx != null) {
+          cursorSubmitTime = cursorCtx.getSubmissionTime();
+        } else {
+          FinishedLensQuery cursorQuery = lensServerDao.getQuery(cursor.toString());
+          if (cursorQuery == null) {
+            throw new BadRequestException("Cursor query " + cursor + " is not found");
+          }
+          cursorSubmitTime = cursorQuery.getSubmissionTime();
+        }
+        cursorHandle = cursor.toString();
+      }
+
+      // candidates are in listing order, from the index of status or user
+      List<QueryContext> inMemory = new ArrayList<QueryContext>();
+      for (QueryContext context : allQueries.getQueries(status, "all".equalsIgnoreCase(userName) ? null : userName,
+        cursorSubmitTime, cursorHandle)) {
         long querySubmitTime = context.getSubmissionTime();
+        if (querySubmitTime < fromDate) {
+          break;
+        }
         if ((filterByStatus && status != context.getStatus().getStatus())
           || (filterByQueryName && !context.getQueryName().toLowerCase().contains(queryName))
           || (!"all".equalsIgnoreCase(userName) && !userName.equalsIgnoreCase(context.getSubmittedUser()))
-          || (!(fromDate <= querySubmitTime && querySubmitTime <= toDate))) {
-          itr.remove();
+          || querySubmitTime > toDate) {
+          continue;
+        }
+        inMemory.add(context);
+        if (limit > 0 && inMemory.size() == limit) {
+          break;
         }
       }
 
       // Unless user wants to get queries in 'non finished' state, get finished queries from DB as well
+      List<FinishedLensQuery> persisted = Collections.emptyList();
       if (status == null || status == CANCELED || status == SUCCESSFUL || status == FAILED) {
         if ("all".equalsIgnoreCase(userName)) {
           userName = null;
         }
-        List<QueryHandle> persistedQueries = lensServerDao.findFinishedQueries(state, userName, queryName, fromDate,
-          toDate);
-        if (persistedQueries != null && !persistedQueries.isEmpty()) {
-          log.info("Adding persisted queries {}", persistedQueries.size());
-          all.addAll(persistedQueries);
+        persisted = lensServerDao.findFinishedQueries(state, userName, queryName, fromDate, toDate, limit,
+          cursorSubmitTime, cursorHandle);
+        log.info("Adding persisted queries {}", persisted.size());
+      }
+
+      // merge both, which are in the same order. A query being purged can be in both.
+      int size = inMemory.size() + persisted.size();
+      if (limit > 0) {
+        size = Math.min(size, limit);
+      }
+      List<QueryHandle> all = new ArrayList<QueryHandle>(size);
+      Set<String> added = new HashSet<String>();
+      int i = 0;
+      int j = 0;
+      while (all.size() < size && (i < inMemory.size() || j < persisted.size())) {
+        String handle;
+        if (j >= persisted.size() || (i < inMemory.size()
+          && (inMemory.get(i).getSubmissionTime() > persisted.get(j).getSubmissionTime()
+          || (inMemory.get(i).getSubmissionTime() == persisted.get(j).getSubmissionTime()
+          && inMemory.get(i).getQueryHandleString().compareTo(persisted.get(j).getHandle()) > 0)))) {
+          handle = inMemory.get(i++).getQueryHandleString();
+        } else {
+          handle = persisted.get(j++).getHandle();
+        }
+        if (added.add(handle)) {
+          try {
+            all.add(QueryHandle.fromString(handle));
+          } catch (IllegalArgumentException exc) {
+            log.warn("Warning invalid query handle found in DB {}", handle);
+          }
         }
       }
-
       return all;
     } finally {
       release(sessionHandle);
@@ -2348,24 +2805,301 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
       int numQueries = in.readInt();
 
       for (int i = 0; i < numQueries; i++) {
-        QueryContext ctx = (QueryContext) in.readObject();
-        ctx.initTransientState();
-
-        //Create DriverSelectorQueryContext by passing all the drivers and the user query
-        //Driver conf gets reset in start
-        DriverSelectorQueryContext driverCtx = new DriverSelectorQueryContext(ctx.getUserQuery(), new Configuration(),
-          drivers.values());
-        ctx.setDriverContext(driverCtx);
-        boolean driverAvailable = in.readBoolean();
-        // set the selected driver if available, if not available for the cases of queued queries,
-        // query service will do the selection from existing drivers and update
-        if (driverAvailable) {
-          String clsName = in.readUTF();
-          ctx.getDriverContext().setSelectedDriver(drivers.get(clsName));
+        QueryContext ctx = readQueryContext(in);
+        allQueries.put(ctx);
+      }
+    }
+  }
+
+  /**
+   * Read a query context written by {@link #writeQueryContext(ObjectOutput, QueryContext)}.
+   *
+   * @param in the input
+   * @return the query context
+   * @throws IOException            Signals that an I/O exception has occurred.
+   * @throws ClassNotFoundException the class not found exception
+   */
+  private QueryContext readQueryContext(ObjectInput in) throws IOException, ClassNotFoundException {
+    QueryContext ctx = (QueryContext) in.readObject();
+    boolean driverAvailable = in.readBoolean();
+    return restoreQueryContext(ctx, driverAvailable ? in.readUTF() : null);
+  }
+
+  /**
+   * Rebuild transient state of a query context read from snapshot or journal.
+   *
+   * @param ctx           the query context
+   * @param driverClsName class name of the selected driver, null if driver is not selected yet
+   * @return the query context
+   */
+  private QueryContext restoreQueryContext(QueryContext ctx, String driverClsName) {
+    ctx.initTransientState();
+
+    //Create DriverSelectorQueryContext by passing all the drivers and the user query
+    //Driver conf gets reset in start
+    DriverSelectorQueryContext driverCtx = new DriverSelectorQueryContext(ctx.getUserQuery(), new Configuration(),
+      drivers.values());
+    ctx.setDriverContext(driverCtx);
+    // set the selected driver if available, if not available for the cases of queued queries,
+    // query service will do the selection from existing drivers and update
+    if (driverClsName != null) {
+      ctx.getDriverContext().setSelectedDriver(drivers.get(driverClsName));
+    }
+    return ctx;
+  }
+
+  /**
+   * Write a query context along with its selected driver.
+   *
+   * @param out the output
+   * @param ctx the query context
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void writeQueryContext(ObjectOutput out, QueryContext ctx) throws IOException {
+    synchronized (ctx) {
+      out.writeObject(ctx);
+      boolean isDriverAvailable = (ctx.getSelectedDriver() != null);
+      out.writeBoolean(isDriverAvailable);
+      if (isDriverAvailable) {
+        out.writeUTF(ctx.getSelectedDriver().getClass().getName());
+      }
+    }
+  }
+
+  private static String getSelectedDriverClassName(QueryContext ctx) {
+    return ctx.getSelectedDriver() == null ? null : ctx.getSelectedDriver().getClass().getName();
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.lens.server.BaseLensService#replayJournalRecord(byte, byte[])
+   */
+  @Override
+  public void replayJournalRecord(byte type, byte[] payload) throws IOException, ClassNotFoundException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+    switch (type) {
+    case JOURNAL_QUERY_SUBMITTED:
+      allQueries.put(readSubmittedQuery(in));
+      break;
+    case JOURNAL_QUERY_STATUS:
+      QueryContext ctx = allQueries.get(QueryHandle.fromString(StateJournal.readString(in)));
+      if (ctx == null) {
+        // query was purged before the snapshot
+        break;
+      }
+      boolean wasWithDriver = isWithDriver(ctx.getStatus());
+      ctx.setStatusSkippingTransitionTest(readQueryStatus(in));
+      ctx.setLaunchTime(in.readLong());
+      ctx.setEndTime(in.readLong());
+      ctx.setDriverOpHandle(StateJournal.readString(in));
+      ctx.setResultSetPath(StateJournal.readString(in));
+      ctx.setDriverResultPath(StateJournal.readString(in));
+      String driverClsName = StateJournal.readString(in);
+      if (driverClsName != null) {
+        ctx.getDriverContext().setSelectedDriver(drivers.get(driverClsName));
+      }
+      allQueries.reindex(ctx);
+      // driver state is captured only in snapshot, so the driver does not know of queries launched after it
+      if (!isWithDriver(ctx.getStatus())) {
+        launchedAfterSnapshot.remove(ctx.getQueryHandle());
+      } else if (!wasWithDriver) {
+        launchedAfterSnapshot.add(ctx.getQueryHandle());
+      }
+      break;
+    case JOURNAL_QUERY_PURGED:
+      QueryHandle purged = QueryHandle.fromString(StateJournal.readString(in));
+      allQueries.remove(purged);
+      launchedAfterSnapshot.remove(purged);
+      break;
+    default:
+      log.warn("Ignoring journal record of unknown type {}", type);
+    }
+  }
+
+  /**
+   * Whether the query is launched on its driver and its status is yet to be got from the driver.
+   */
+  private static boolean isWithDriver(QueryStatus status) {
+    return status.launched() || status.running();
+  }
+
+  /**
+   * Journal a change to query. Records are built and appended holding the query context, which is the lock under
+   * which the query is changed, so that they are journaled in the order of changes.
+   *
+   * @param type the record type
+   * @param ctx  the query context
+   */
+  private void journalQueryChange(byte type, QueryContext ctx) {
+    if (!isJournaled()) {
+      return;
+    }
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      synchronized (ctx) {
+        switch (type) {
+        case JOURNAL_QUERY_SUBMITTED:
+          writeSubmittedQuery(out, ctx);
+          break;
+        case JOURNAL_QUERY_STATUS:
+          writeQueryState(out, ctx);
+          break;
+        default:
+          StateJournal.writeString(out, ctx.getQueryHandleString());
         }
-        allQueries.put(ctx.getQueryHandle(), ctx);
+        out.close();
+        appendToJournal(type, bytes.toByteArray());
       }
+    } catch (IOException e) {
+      log.warn("Could not journal change to query {}", ctx.getQueryHandleString(), e);
+    }
+  }
+
+  /**
+   * Write the state of a submitted query needed to recover it. Query conf is recovered from the lens conf of query
+   * and its session, as it is for queries read from snapshot.
+   *
+   * @param out the output
+   * @param ctx the query context
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void writeSubmittedQuery(DataOutput out, QueryContext ctx) throws IOException {
+    StateJournal.writeString(out, ctx.getQueryHandleString());
+    StateJournal.writeString(out, ctx.getSubmittedUser());
+    StateJournal.writeString(out, ctx.getUserQuery());
+    if (ctx.getLensConf() == null) {
+      out.writeInt(-1);
+    } else {
+      out.writeInt(ctx.getLensConf().getProperties().size());
+      for (Map.Entry<String, String> property : ctx.getLensConf().getProperties().entrySet()) {
+        StateJournal.writeString(out, property.getKey());
+        StateJournal.writeString(out, property.getValue());
+      }
+    }
+    out.writeLong(ctx.getSubmissionTime());
+    out.writeUTF(ctx.getPriority().name());
+    out.writeBoolean(ctx.isPersistent());
+    out.writeBoolean(ctx.isDriverPersistent());
+    StateJournal.writeString(out, ctx.getDatabase());
+    StateJournal.writeString(out, ctx.getLensSessionIdentifier());
+    StateJournal.writeString(out, ctx.getQueryName());
+    StateJournal.writeString(out, ctx.getSelectedDriverQuery());
+    // partition based cost is the only cost there is, negative when there is no cost
+    QueryCost cost = ctx.getSelectedDriverQueryCost();
+    out.writeDouble(cost instanceof FactPartitionBasedQueryCost ? cost.getEstimatedResourceUsage() : -1);
+    writeQueryStatus(out, ctx.getStatus());
+    StateJournal.writeString(out, getSelectedDriverClassName(ctx));
+  }
+
+  /**
+   * Read a submitted query written by {@link #writeSubmittedQuery(DataOutput, QueryContext)}.
+   *
+   * @param in the input
+   * @return the query context
+   * @throws IOException            Signals that an I/O exception has occurred.
+   * @throws ClassNotFoundException the class not found exception
+   */
+  private QueryContext readSubmittedQuery(DataInput in) throws IOException, ClassNotFoundException {
+    QueryHandle handle = QueryHandle.fromString(StateJournal.readString(in));
+    String user = StateJournal.readString(in);
+    String userQuery = StateJournal.readString(in);
+    LensConf lensConf = null;
+    int numProperties = in.readInt();
+    if (numProperties >= 0) {
+      lensConf = new LensConf();
+      for (int i = 0; i < numProperties; i++) {
+        lensConf.addProperty(StateJournal.readString(in), StateJournal.readString(in));
+      }
+    }
+    long submissionTime = in.readLong();
+    Priority priority = Priority.valueOf(in.readUTF());
+    Configuration qconf = new Configuration(false);
+    qconf.setBoolean(QUERY_PERSISTENT_RESULT_SET, in.readBoolean());
+    qconf.setBoolean(QUERY_PERSISTENT_RESULT_INDRIVER, in.readBoolean());
+    QueryContext ctx = QueryContext.recoverSubmitted(handle, userQuery, user, lensConf, qconf, submissionTime,
+      priority, StateJournal.readString(in));
+    ctx.setLensSessionIdentifier(StateJournal.readString(in));
+    ctx.setQueryName(StateJournal.readString(in));
+    String driverQuery = StateJournal.readString(in);
+    double cost = in.readDouble();
+    if (cost >= 0) {
+      ctx.setSelectedDriverQueryCost(new FactPartitionBasedQueryCost(cost));
+    }
+    ctx.setStatusSkippingTransitionTest(readQueryStatus(in));
+    restoreQueryContext(ctx, StateJournal.readString(in));
+    // set after the driver context is restored, so that the selected driver gets it too
+    ctx.setSelectedDriverQuery(driverQuery);
+    return ctx;
+  }
+
+  /**
+   * Write the state of query which changes along with its status.
+   *
+   * @param out the output
+   * @param ctx the query context
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void writeQueryState(DataOutput out, QueryContext ctx) throws IOException {
+    StateJournal.writeString(out, ctx.getQueryHandleString());
+    writeQueryStatus(out, ctx.getStatus());
+    out.writeLong(ctx.getLaunchTime());
+    out.writeLong(ctx.getEndTime());
+    StateJournal.writeString(out, ctx.getDriverOpHandle());
+    StateJournal.writeString(out, ctx.getResultSetPath());
+    StateJournal.writeString(out, ctx.getDriverResultPath());
+    StateJournal.writeString(out, getSelectedDriverClassName(ctx));
+  }
+
+  /**
+   * Write query status as binary fields.
+   *
+   * @param out    the output
+   * @param status the status
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static void writeQueryStatus(DataOutput out, QueryStatus status) throws IOException {
+    out.writeDouble(status.getProgress());
+    out.writeInt(status.getQueueNumber() == null ? -1 : status.getQueueNumber());
+    out.writeUTF(status.getStatus().name());
+    StateJournal.writeString(out, status.getStatusMessage());
+    out.writeBoolean(status.isResultSetAvailable());
+    StateJournal.writeString(out, status.getProgressMessage());
+    StateJournal.writeString(out, status.getErrorMessage());
+    // error details are present only for failed queries
+    StateJournal.writeSerializable(out, status.getLensErrorTO());
+  }
 
+  /**
+   * Read query status written by {@link #writeQueryStatus(DataOutput, QueryStatus)}.
+   *
+   * @param in the input
+   * @return the status
+   * @throws IOException            Signals that an I/O exception has occurred.
+   * @throws ClassNotFoundException the class not found exception
+   */
+  static QueryStatus readQueryStatus(DataInput in) throws IOException, ClassNotFoundException {
+    double progress = in.readDouble();
+    int queueNumber = in.readInt();
+    Status status = Status.valueOf(in.readUTF());
+    String statusMessage = StateJournal.readString(in);
+    boolean isResultSetAvailable = in.readBoolean();
+    String progressMessage = StateJournal.readString(in);
+    String errorMessage = StateJournal.readString(in);
+    LensErrorTO lensErrorTO = (LensErrorTO) StateJournal.readSerializable(in);
+    return new QueryStatus(progress, queueNumber < 0 ? null : queueNumber, status, statusMessage,
+      isResultSetAvailable, progressMessage, errorMessage, lensErrorTO);
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.lens.server.BaseLensService#recoverState()
+   */
+  @Override
+  public void recoverState() {
+    synchronized (allQueries) {
       // populate the query queues
       final List<QueryContext> allRestoredQueuedQueries = new LinkedList<QueryContext>();
       for (QueryContext ctx : allQueries.values()) {
@@ -2379,6 +3113,7 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
         case EXECUTED:
           try {
             launchedQueries.add(ctx);
+            statusPollScheduler.add(ctx, System.currentTimeMillis());
           } catch (final Exception e) {
             log.error("Query not restored:QueryContext:{}", ctx, e);
           }
@@ -2394,6 +3129,10 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
       }
       queuedQueries.addAll(allRestoredQueuedQueries);
       log.info("Recovered {} queries", allQueries.size());
+      if (!launchedAfterSnapshot.isEmpty()) {
+        log.warn("{} queries were launched after the last snapshot, their status will be re-checked with drivers: {}",
+          launchedAfterSnapshot.size(), launchedAfterSnapshot);
+      }
     }
   }
 
@@ -2415,21 +3154,13 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
         }
       }
     }
-    // persist allQueries
-    synchronized (allQueries) {
-      out.writeInt(allQueries.size());
-      for (QueryContext ctx : allQueries.values()) {
-        synchronized (ctx) {
-          out.writeObject(ctx);
-          boolean isDriverAvailable = (ctx.getSelectedDriver() != null);
-          out.writeBoolean(isDriverAvailable);
-          if (isDriverAvailable) {
-            out.writeUTF(ctx.getSelectedDriver().getClass().getName());
-          }
-        }
-      }
-      log.info("Persisted {} queries", allQueries.size());
+    // persist allQueries, without blocking changes to it. Changes after the copy are in journal.
+    List<QueryContext> queries = new ArrayList<QueryContext>(allQueries.values());
+    out.writeInt(queries.size());
+    for (QueryContext ctx : queries) {
+      writeQueryContext(out, ctx);
     }
+    log.info("Persisted {} queries", queries.size());
   }
 
   /**
@@ -2531,6 +3262,111 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
     }
   }
 
+  /*
+   * (non-Javadoc)
+   *
+   * @see
+   * org.apache.lens.server.api.query.QueryExecutionService#getStreamingResultSet(org.apache.lens.api.LensSessionHandle,
+   * org.apache.lens.api.query.QueryHandle, long, int)
+   */
+  @Override
+  public Response getStreamingResultSet(LensSessionHandle sessionHandle, QueryHandle queryHandle,
+    final long startIndex, final int fetchSize) throws LensException {
+    log.info("StreamingResultSet: session:{} query:{} startIndex:{} fetchSize:{}", sessionHandle, queryHandle,
+      startIndex, fetchSize);
+    final InMemoryResultSet inMemoryResultSet = getInMemoryResultSet(sessionHandle, queryHandle);
+    StreamingOutput stream = new StreamingOutput() {
+      @Override
+      public void write(OutputStream os) throws IOException {
+        final JsonGenerator generator = STREAMING_RESULT_JSON_FACTORY.createJsonGenerator(os);
+        generator.writeStartArray();
+        try {
+          inMemoryResultSet.readRows(startIndex, fetchSize, new InMemoryResultSet.RowConsumer() {
+            private int numRows = 0;
+
+            @Override
+            public void consume(ResultRow row) throws IOException {
+              generator.writeStartArray();
+              for (Object value : row.getValues()) {
+                generator.writeObject(value);
+              }
+              generator.writeEndArray();
+              if (++numRows % STREAMING_RESULT_FLUSH_ROWS == 0) {
+                generator.flush();
+              }
+            }
+          });
+        } catch (LensException e) {
+          throw new IOException(e);
+        }
+        generator.writeEndArray();
+        generator.flush();
+      }
+    };
+    return Response.ok(stream).type(MediaType.APPLICATION_JSON).build();
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see
+   * org.apache.lens.server.api.query.QueryExecutionService#getColumnarResultSet(org.apache.lens.api.LensSessionHandle,
+   * org.apache.lens.api.query.QueryHandle, long, int)
+   */
+  @Override
+  public Response getColumnarResultSet(LensSessionHandle sessionHandle, QueryHandle queryHandle,
+    final long startIndex, final int fetchSize) throws LensException {
+    log.info("ColumnarResultSet: session:{} query:{} startIndex:{} fetchSize:{}", sessionHandle, queryHandle,
+      startIndex, fetchSize);
+    final InMemoryResultSet inMemoryResultSet = getInMemoryResultSet(sessionHandle, queryHandle);
+    final List<ResultColumnType> types = new ArrayList<ResultColumnType>();
+    for (ResultColumn column : inMemoryResultSet.getMetadata().toQueryResultSetMetadata().getColumns()) {
+      types.add(column.getType());
+    }
+    StreamingOutput stream = new StreamingOutput() {
+      @Override
+      public void write(OutputStream os) throws IOException {
+        final ColumnarResultWriter writer = new ColumnarResultWriter(os, types,
+          ColumnarResultWriter.DEFAULT_BATCH_SIZE);
+        try {
+          inMemoryResultSet.readRows(startIndex, fetchSize, new InMemoryResultSet.RowConsumer() {
+            @Override
+            public void consume(ResultRow row) throws IOException {
+              writer.writeRow(row.getValues());
+            }
+          });
+        } catch (LensException e) {
+          throw new IOException(e);
+        }
+        writer.finish();
+      }
+    };
+    return Response.ok(stream).type(ColumnarResultWriter.MEDIA_TYPE).build();
+  }
+
+  /**
+   * Get in memory result set of the query.
+   *
+   * @param sessionHandle the session handle
+   * @param queryHandle   the query handle
+   * @return the in memory result set
+   * @throws LensException the lens exception
+   */
+  private InMemoryResultSet getInMemoryResultSet(LensSessionHandle sessionHandle, QueryHandle queryHandle)
+    throws LensException {
+    LensResultSet resultSet;
+    try {
+      acquire(sessionHandle);
+      resultSet = getResultset(queryHandle);
+    } finally {
+      release(sessionHandle);
+    }
+    if (!(resultSet instanceof InMemoryResultSet)) {
+      throw new NotFoundException("result not available in memory for query:" + queryHandle);
+    }
+    return (InMemoryResultSet) resultSet;
+  }
+
   /**
    * Allow drivers to release resources acquired for a session if any.
    *
@@ -2562,7 +3398,7 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
 
   @Override
   public long getQueuedQueriesCount() {
-    return queuedQueries.size();
+    return queuedQueries.size() + submissionLanes.size();
   }
 
   @Override
@@ -2726,18 +3562,19 @@ public class QueryExecutionServiceImpl extends BaseLensService implements QueryE
 
   private boolean removeFromLaunchedQueries(final QueryContext finishedQuery) {
 
-    /* Check javadoc of QueryExecutionServiceImpl#removalFromLaunchedQueriesLock for reason for existence
+    /* Check javadoc of QueryExecutionServiceImpl#launchAdmissionLock for reason for existence
     of this lock. */
 
     log.debug("Acquiring lock in removeFromLaunchedQueries");
-    removalFromLaunchedQueriesLock.lock();
+    launchAdmissionLock.lockAll();
     boolean modified = false;
 
     try {
       modified = this.launchedQueries.remove(finishedQuery);
     } finally {
-      removalFromLaunchedQueriesLock.unlock();
+      launchAdmissionLock.unlockAll();
     }
+    statusPollScheduler.remove(finishedQuery.getQueryHandle());
 
     log.debug("launchedQueries.remove(finishedQuery) has returned [{}] for finished query with query id:[{}]", modified,
       finishedQuery.getQueryHandleString());
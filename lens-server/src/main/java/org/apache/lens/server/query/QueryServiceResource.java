@@ -24,6 +24,8 @@ import static org.apache.lens.server.error.LensServerErrorCode.SESSION_ID_NOT_PR
 import java.util.List;
 
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
@@ -46,6 +48,9 @@ import org.apache.commons.lang.StringUtils;
 
 import org.glassfish.jersey.media.multipart.FormDataParam;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -147,6 +152,10 @@ public class QueryServiceResource {
    *                  returns queries of the current user.
    * @param fromDate  from date to search queries in a time range, the range is inclusive(submitTime &gt;= fromDate)
    * @param toDate    to date to search queries in a time range, the range is inclusive(toDate &gt;= submitTime)
+   * @param limit     maximum number of queries to return, latest submitted first. By default, all queries are
+   *                  returned.
+   * @param cursor    handle of the last query returned in the previous page. Queries submitted before it are
+   *                  returned. By default, queries from the latest are returned.
    * @return List of {@link QueryHandle} objects
    */
   @GET
@@ -155,18 +164,37 @@ public class QueryServiceResource {
   public List<QueryHandle> getAllQueries(@QueryParam("sessionid") LensSessionHandle sessionid,
     @DefaultValue("") @QueryParam("state") String state, @DefaultValue("") @QueryParam("queryName") String queryName,
     @DefaultValue("") @QueryParam("user") String user, @DefaultValue("-1") @QueryParam("fromDate") long fromDate,
-    @DefaultValue("-1") @QueryParam("toDate") long toDate) {
+    @DefaultValue("-1") @QueryParam("toDate") long toDate, @DefaultValue("0") @QueryParam("limit") int limit,
+    @DefaultValue("") @QueryParam("cursor") String cursor) {
     checkSessionId(sessionid);
     try {
       if (toDate == -1L) {
         toDate = Long.MAX_VALUE;
       }
-      return queryServer.getAllQueries(sessionid, state, user, queryName, fromDate, toDate);
+      return queryServer.getAllQueries(sessionid, state, user, queryName, fromDate, toDate, limit,
+        getCursor(cursor));
     } catch (LensException e) {
       throw new WebApplicationException(e);
     }
   }
 
+  /**
+   * Get query handle of cursor, if passed.
+   *
+   * @param cursor the cursor
+   * @return the query handle, null if cursor is blank
+   */
+  static QueryHandle getCursor(String cursor) {
+    if (StringUtils.isBlank(cursor)) {
+      return null;
+    }
+    try {
+      return QueryHandle.fromString(cursor);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException("Invalid cursor " + cursor, e);
+    }
+  }
+
   /** The submit clue. */
   static String submitClue = ". supported values are:" + SubmitOp.ESTIMATE + ", " + SubmitOp.EXPLAIN + ", "
     + SubmitOp.EXECUTE + " and " + SubmitOp.EXECUTE_WITH_TIMEOUT;
@@ -193,22 +221,24 @@ public class QueryServiceResource {
    * @param timeoutmillis The timeout for the query, honored only in case of value {@link
    *                      org.apache.lens.api.query.SubmitOp#EXECUTE_WITH_TIMEOUT} operation
    * @param queryName     human readable query name set by user (optional parameter)
-
-   * @return {@link LensAPIResult} with DATA as {@link QueryHandle} in case of
-   * {@link org.apache.lens.api.query.SubmitOp#EXECUTE} operation.
-   * {@link QueryPlan} in case of {@link org.apache.lens.api.query.SubmitOp#EXPLAIN} operation.
-   * {@link QueryHandleWithResultSet} in case {@link org.apache.lens.api.query.SubmitOp#EXECUTE_WITH_TIMEOUT}
-   * operation. {@link QueryCostTO} in case of {@link org.apache.lens.api.query.SubmitOp#ESTIMATE} operation.
+   * @param asyncResponse The response resumed with {@link LensAPIResult} with DATA as {@link QueryHandle} in case of
+   *                      {@link org.apache.lens.api.query.SubmitOp#EXECUTE} operation.
+   *                      {@link QueryPlan} in case of {@link org.apache.lens.api.query.SubmitOp#EXPLAIN} operation.
+   *                      {@link QueryHandleWithResultSet} in case
+   *                      {@link org.apache.lens.api.query.SubmitOp#EXECUTE_WITH_TIMEOUT} operation, once the query
+   *                      finishes or the timeout is reached, without holding a server thread meanwhile.
+   *                      {@link QueryCostTO} in case of {@link org.apache.lens.api.query.SubmitOp#ESTIMATE} operation.
    */
   @POST
   @Path("queries")
   @Consumes({MediaType.MULTIPART_FORM_DATA})
   @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN})
   @MultiPurposeResource(formParamName = "operation")
-  public LensAPIResult<? extends QuerySubmitResult> query(@FormDataParam("sessionid") LensSessionHandle sessionid,
+  public void query(@FormDataParam("sessionid") LensSessionHandle sessionid,
       @FormDataParam("query") String query, @FormDataParam("operation") String operation,
       @FormDataParam("conf") LensConf conf, @DefaultValue("30000") @FormDataParam("timeoutmillis") Long timeoutmillis,
-      @DefaultValue("") @FormDataParam("queryName") String queryName) throws LensException {
+      @DefaultValue("") @FormDataParam("queryName") String queryName,
+      @Suspended final AsyncResponse asyncResponse) throws LensException {
 
     final String requestId = this.logSegregationContext.getLogSegragationId();
 
@@ -229,19 +259,78 @@ public class QueryServiceResource {
         result = queryServer.explain(requestId, sessionid, query, conf);
         break;
       case EXECUTE_WITH_TIMEOUT:
-        result = queryServer.execute(sessionid, query, timeoutmillis, conf, queryName);
-        break;
+        resumeOnCompletion(queryServer.executeWithTimeoutAsync(sessionid, query, timeoutmillis, conf, queryName),
+          asyncResponse, requestId);
+        return;
       default:
         throw new UnSupportedQuerySubmitOpException();
       }
 
-      return LensAPIResult.composedOf(null, requestId, result);
+      asyncResponse.resume(LensAPIResult.composedOf(null, requestId, result));
     } catch (LensException e) {
       e.buildLensErrorResponse(errorCollection, null, requestId);
       throw e;
     }
   }
 
+  /**
+   * Execute the query with a timeout, without holding a server thread while the query runs. The response is sent
+   * when the query finishes or the timeout, counted from submission, has reached; whichever happens first.
+   *
+   * @param sessionid     The session in which user is submitting the query. Any configuration set in the session will
+   *                      be picked up.
+   * @param query         The query to run
+   * @param conf          The configuration for the query
+   * @param timeoutmillis The timeout for the query
+   * @param queryName     human readable query name set by user (optional parameter)
+   * @param asyncResponse The response resumed with {@link LensAPIResult} with DATA as
+   *                      {@link QueryHandleWithResultSet}
+   */
+  @POST
+  @Path("queries/executewithtimeout")
+  @Consumes({MediaType.MULTIPART_FORM_DATA})
+  @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN})
+  public void executeWithTimeout(@FormDataParam("sessionid") LensSessionHandle sessionid,
+      @FormDataParam("query") String query, @FormDataParam("conf") LensConf conf,
+      @DefaultValue("30000") @FormDataParam("timeoutmillis") Long timeoutmillis,
+      @DefaultValue("") @FormDataParam("queryName") String queryName,
+      @Suspended final AsyncResponse asyncResponse) throws LensException {
+
+    final String requestId = this.logSegregationContext.getLogSegragationId();
+
+    try {
+      validateSessionId(sessionid);
+      validateQuery(query);
+
+      resumeOnCompletion(queryServer.executeWithTimeoutAsync(sessionid, query, timeoutmillis, conf, queryName),
+        asyncResponse, requestId);
+    } catch (LensException e) {
+      e.buildLensErrorResponse(errorCollection, null, requestId);
+      throw e;
+    }
+  }
+
+  /**
+   * Resume the response with the result of execute with timeout once it is available.
+   */
+  private void resumeOnCompletion(ListenableFuture<QueryHandleWithResultSet> result,
+    final AsyncResponse asyncResponse, final String requestId) {
+    Futures.addCallback(result, new FutureCallback<QueryHandleWithResultSet>() {
+      @Override
+      public void onSuccess(QueryHandleWithResultSet result) {
+        asyncResponse.resume(LensAPIResult.composedOf(null, requestId, result));
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        if (t instanceof LensException) {
+          ((LensException) t).buildLensErrorResponse(errorCollection, null, requestId);
+        }
+        asyncResponse.resume(t);
+      }
+    });
+  }
+
   /**
    * Cancel all the queries in query server; can be filtered with state and user.
    *
@@ -274,7 +363,8 @@ public class QueryServiceResource {
     List<QueryHandle> handles = null;
     boolean failed = false;
     try {
-      handles = getAllQueries(sessionid, state, queryName, user, fromDate, toDate == -1L ? Long.MAX_VALUE : toDate);
+      handles = getAllQueries(sessionid, state, queryName, user, fromDate, toDate == -1L ? Long.MAX_VALUE : toDate,
+        0, "");
       for (QueryHandle handle : handles) {
         if (cancelQuery(sessionid, handle)) {
           numCancelled++;
@@ -726,6 +816,31 @@ public class QueryServiceResource {
     }
   }
 
+  /**
+   * Fetch the result set in columnar binary format, when requested through accept header. Only results available in
+   * memory can be fetched in this format. Rows are streamed in batches of typed columns, which clients can read
+   * without parsing or boxing values.
+   *
+   * @param sessionid   The user session handle
+   * @param queryHandle The query handle
+   * @param startIndex  start index of the result
+   * @param fetchSize   fetch size, all rows from start index if not passed
+   * @return Response with result in {@link ColumnarResultWriter#MEDIA_TYPE}
+   */
+  @GET
+  @Path("queries/{queryHandle}/resultset")
+  @Produces({ColumnarResultWriter.MEDIA_TYPE + ";qs=0.5"})
+  public Response getColumnarResultSet(@QueryParam("sessionid") LensSessionHandle sessionid,
+    @PathParam("queryHandle") String queryHandle, @QueryParam("fromindex") long startIndex,
+    @QueryParam("fetchsize") int fetchSize) {
+    checkSessionId(sessionid);
+    try {
+      return queryServer.getColumnarResultSet(sessionid, getQueryHandle(queryHandle), startIndex, fetchSize);
+    } catch (LensException e) {
+      throw new WebApplicationException(e);
+    }
+  }
+
   /**
    * Get the http endpoint for result set.
    *
@@ -745,6 +860,31 @@ public class QueryServiceResource {
     }
   }
 
+  /**
+   * Stream the rows of an in memory result set. Rows are written as they are read from the driver, as a json array of
+   * rows, each row being a json array of column values. Result is never held in memory as a whole, so this should be
+   * preferred over fetching the result set for large in memory results.
+   *
+   * @param sessionid   The user session handle
+   * @param queryHandle The query handle
+   * @param startIndex  start index of the result
+   * @param fetchSize   fetch size, all rows from start index if not passed
+   * @return Response with result rows streamed as json
+   */
+  @GET
+  @Path("queries/{queryHandle}/streamingresultset")
+  @Produces({MediaType.APPLICATION_JSON})
+  public Response getStreamingResultSet(@QueryParam("sessionid") LensSessionHandle sessionid,
+    @PathParam("queryHandle") String queryHandle, @QueryParam("fromindex") long startIndex,
+    @QueryParam("fetchsize") int fetchSize) {
+    checkSessionId(sessionid);
+    try {
+      return queryServer.getStreamingResultSet(sessionid, getQueryHandle(queryHandle), startIndex, fetchSize);
+    } catch (LensException e) {
+      throw new WebApplicationException(e);
+    }
+  }
+
   /**
    * Close the result set once fetching is done.
    *
@@ -0,0 +1,237 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.query;
+
+import static org.apache.lens.server.api.LensConfConstants.*;
+
+import java.util.*;
+
+import org.apache.lens.api.query.QueryHandle;
+import org.apache.lens.server.api.driver.LensDriver;
+import org.apache.lens.server.api.metrics.LensMetricsRegistry;
+import org.apache.lens.server.api.query.QueryContext;
+import org.apache.lens.server.api.query.QueryExecutionService;
+
+import org.apache.hadoop.conf.Configuration;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Decides when status of each launched query is to be polled.
+ * <p></p>
+ * A query is polled at an interval of a fraction of its elapsed run time, bounded by minimum and maximum poll
+ * intervals. So recently launched queries are polled often and long running queries back off. A query is never
+ * handed out for polling again while its previous poll is in progress. Status changes pushed by drivers make a query
+ * due immediately.
+ * <p></p>
+ * Queries are kept ordered by the time their next poll is due, so finding the due queries costs only as much as the
+ * number of queries due, instead of a pass over all launched queries.
+ */
+class QueryStatusPollScheduler {
+
+  /** Name of poll lag histogram, suffixed with driver name */
+  static final String STATUS_POLL_LAG = "status-poll-lag";
+
+  /** The minimum poll interval */
+  @Getter
+  private final long minIntervalMillis;
+
+  /** The maximum poll interval */
+  private final long maxIntervalMillis;
+
+  /** The fraction of elapsed time used as poll interval */
+  private final float backoffFactor;
+
+  /**
+   * A scheduled poll of a query.
+   */
+  @RequiredArgsConstructor
+  private static final class ScheduledPoll implements Comparable<ScheduledPoll> {
+    private final QueryContext ctx;
+    private final long dueTime;
+
+    @Override
+    public int compareTo(ScheduledPoll other) {
+      return dueTime < other.dueTime ? -1 : (dueTime == other.dueTime ? 0 : 1);
+    }
+  }
+
+  /** Scheduled polls in order of due time. Polls which are no more current in {@link #scheduled} are skipped. */
+  private final PriorityQueue<ScheduledPoll> dueOrder = new PriorityQueue<ScheduledPoll>();
+
+  /** The launched queries whose status is polled */
+  private final Map<QueryHandle, QueryContext> launched = new HashMap<QueryHandle, QueryContext>();
+
+  /** Next poll of launched queries which are not being polled */
+  private final Map<QueryHandle, ScheduledPoll> scheduled = new HashMap<QueryHandle, ScheduledPoll>();
+
+  /** Due time of queries handed out for polling, whose poll is yet to complete */
+  private final Map<QueryHandle, Long> inProgress = new HashMap<QueryHandle, Long>();
+
+  /** Queries whose driver pushed a status change while they were being polled */
+  private final Set<QueryHandle> pushedDuringPoll = new HashSet<QueryHandle>();
+
+  QueryStatusPollScheduler(Configuration conf) {
+    this(conf.getLong(STATUS_POLL_MIN_INTERVAL_MILLIS, DEFAULT_STATUS_POLL_MIN_INTERVAL_MILLIS),
+      conf.getLong(STATUS_POLL_MAX_INTERVAL_MILLIS, DEFAULT_STATUS_POLL_MAX_INTERVAL_MILLIS),
+      conf.getFloat(STATUS_POLL_BACKOFF_FACTOR, DEFAULT_STATUS_POLL_BACKOFF_FACTOR));
+  }
+
+  QueryStatusPollScheduler(long minIntervalMillis, long maxIntervalMillis, float backoffFactor) {
+    this.minIntervalMillis = minIntervalMillis;
+    this.maxIntervalMillis = Math.max(minIntervalMillis, maxIntervalMillis);
+    this.backoffFactor = backoffFactor;
+  }
+
+  /**
+   * Get interval after which status of the query should be polled again.
+   *
+   * @param ctx the query context
+   * @param now the current time
+   * @return the poll interval
+   */
+  long getPollInterval(QueryContext ctx, long now) {
+    long startTime = ctx.getLaunchTime() > 0 ? ctx.getLaunchTime() : ctx.getSubmissionTime();
+    long interval = (long) (Math.max(0, now - startTime) * backoffFactor);
+    return Math.min(maxIntervalMillis, Math.max(minIntervalMillis, interval));
+  }
+
+  private void schedule(QueryContext ctx, long dueTime) {
+    ScheduledPoll poll = new ScheduledPoll(ctx, dueTime);
+    scheduled.put(ctx.getQueryHandle(), poll);
+    dueOrder.add(poll);
+  }
+
+  /**
+   * Start polling status of a query added to launched queries. The query is due right away.
+   *
+   * @param ctx the query context
+   * @param now the current time
+   */
+  synchronized void add(QueryContext ctx, long now) {
+    if (launched.put(ctx.getQueryHandle(), ctx) == null) {
+      schedule(ctx, now);
+    }
+  }
+
+  /**
+   * Stop polling status of a query removed from launched queries.
+   *
+   * @param handle the query handle
+   */
+  synchronized void remove(QueryHandle handle) {
+    launched.remove(handle);
+    scheduled.remove(handle);
+    pushedDuringPoll.remove(handle);
+    // polls left in due order are dropped when they come up
+    if (scheduled.isEmpty() && inProgress.isEmpty()) {
+      dueOrder.clear();
+    }
+  }
+
+  /**
+   * Get the launched queries due for a status poll and mark them in progress. Queries still being launched are
+   * skipped till the next minimum interval, without locking them.
+   *
+   * @param now the current time
+   * @return the queries due for status poll
+   */
+  synchronized List<QueryContext> getDueQueries(long now) {
+    List<QueryContext> due = new ArrayList<QueryContext>();
+    List<ScheduledPoll> launching = new ArrayList<ScheduledPoll>();
+    while (!dueOrder.isEmpty() && dueOrder.peek().dueTime <= now) {
+      ScheduledPoll poll = dueOrder.poll();
+      QueryHandle handle = poll.ctx.getQueryHandle();
+      if (scheduled.get(handle) != poll) {
+        // rescheduled or removed since
+        continue;
+      }
+      if (poll.ctx.queued()) {
+        // admitted and still being launched on driver, there is no status to poll yet
+        launching.add(poll);
+        continue;
+      }
+      scheduled.remove(handle);
+      inProgress.put(handle, poll.dueTime);
+      due.add(poll.ctx);
+    }
+    for (ScheduledPoll poll : launching) {
+      schedule(poll.ctx, now + minIntervalMillis);
+    }
+    return due;
+  }
+
+  /**
+   * Make the query due for a status poll right away, if it is not being polled already.
+   *
+   * @param handle the query handle
+   * @param now    the current time
+   * @return true if the query is marked in progress and is to be polled by the caller
+   */
+  synchronized boolean pollNow(QueryHandle handle, long now) {
+    if (inProgress.containsKey(handle)) {
+      pushedDuringPoll.add(handle);
+      return false;
+    }
+    scheduled.remove(handle);
+    inProgress.put(handle, now);
+    return true;
+  }
+
+  /**
+   * Mark poll of the query as started, and record the delay in starting it since it was due.
+   *
+   * @param ctx the query context
+   * @param now the current time
+   */
+  void pollStarted(QueryContext ctx, long now) {
+    Long dueTime;
+    synchronized (this) {
+      dueTime = inProgress.get(ctx.getQueryHandle());
+    }
+    if (dueTime != null) {
+      getPollLagHistogram(ctx.getSelectedDriver()).update(Math.max(0, now - dueTime));
+    }
+  }
+
+  /**
+   * Mark poll of the query as complete and schedule its next poll, if the query is still launched.
+   *
+   * @param ctx the query context
+   * @param now the current time
+   */
+  synchronized void pollCompleted(QueryContext ctx, long now) {
+    QueryHandle handle = ctx.getQueryHandle();
+    inProgress.remove(handle);
+    // a status change pushed while the poll was in progress makes the query due right away
+    boolean pushed = pushedDuringPoll.remove(handle);
+    if (launched.containsKey(handle)) {
+      schedule(ctx, pushed ? now : now + getPollInterval(ctx, now));
+    }
+  }
+
+  static Histogram getPollLagHistogram(LensDriver driver) {
+    String driverName = driver == null ? "unknown" : driver.getClass().getSimpleName();
+    return LensMetricsRegistry.getStaticRegistry().histogram(MetricRegistry.name(QueryExecutionService.class,
+      STATUS_POLL_LAG, driverName));
+  }
+}
@@ -18,6 +18,11 @@
  */
 package org.apache.lens.server.query;
 
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.lens.api.query.QueryHandle;
 import org.apache.lens.server.LensServices;
 import org.apache.lens.server.api.LensConfConstants;
@@ -39,15 +44,39 @@ import lombok.extern.slf4j.Slf4j;
 
 /**
  * The Class ResultFormatter.
+ *
+ * Events are taken off the event queue by a single thread, which only decides the lane in which the result is to be
+ * formatted. Results persisted by driver larger than {@link LensConfConstants#RESULT_FORMATTER_LARGE_LANE_SIZE} are
+ * formatted in the large lane, all the other results in the small lane, each lane having its own pool of threads. So a
+ * few huge results do not hold up formatting of everyone else's small results.
  */
 @Slf4j
 public class ResultFormatter extends AsyncEventListener<QueryExecuted> {
 
+  /**
+   * Lanes in which results are formatted
+   */
+  public enum Lane {
+    SMALL, LARGE;
+
+    /** Name of the counter of results waiting to be formatted in the lane */
+    public String getQueuedCounter() {
+      return "formatting-" + name().toLowerCase() + "-lane-queued";
+    }
+
+    /** Name of the counter of results formatted in the lane */
+    public String getFormattedCounter() {
+      return "formatting-" + name().toLowerCase() + "-lane-formatted";
+    }
+  }
+
   /** The query service. */
   QueryExecutionServiceImpl queryService;
 
   private final LogSegregationContext logSegregationContext;
 
+  private final Map<Lane, ThreadPoolExecutor> lanes = new EnumMap<Lane, ThreadPoolExecutor>(Lane.class);
+
   /**
    * Instantiates a new result formatter.
    *
@@ -56,6 +85,39 @@ public class ResultFormatter extends AsyncEventListener<QueryExecuted> {
   public ResultFormatter(QueryExecutionServiceImpl queryService, @NonNull LogSegregationContext logSegregationContext) {
     this.queryService = queryService;
     this.logSegregationContext = logSegregationContext;
+    lanes.put(Lane.SMALL, createLane(Lane.SMALL, queryService.conf.getInt(
+      LensConfConstants.RESULT_FORMATTER_SMALL_LANE_THREADS,
+      LensConfConstants.DEFAULT_RESULT_FORMATTER_SMALL_LANE_THREADS)));
+    lanes.put(Lane.LARGE, createLane(Lane.LARGE, queryService.conf.getInt(
+      LensConfConstants.RESULT_FORMATTER_LARGE_LANE_THREADS,
+      LensConfConstants.DEFAULT_RESULT_FORMATTER_LARGE_LANE_THREADS)));
+  }
+
+  private static ThreadPoolExecutor createLane(final Lane lane, int threads) {
+    threads = Math.max(1, threads);
+    final AtomicInteger thId = new AtomicInteger();
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+      new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread th = new Thread(runnable, "result_formatter_" + lane.name().toLowerCase() + "_"
+            + thId.incrementAndGet());
+          th.setDaemon(true);
+          return th;
+        }
+      });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Number of results waiting to be formatted in the lane
+   *
+   * @param lane the lane
+   * @return queue depth of the lane
+   */
+  public int getQueueDepth(Lane lane) {
+    return lanes.get(lane).getQueue().size();
   }
 
   /*
@@ -65,15 +127,7 @@ public class ResultFormatter extends AsyncEventListener<QueryExecuted> {
    */
   @Override
   public void process(QueryExecuted event) {
-    formatOutput(queryService.getQueryContext(event.getQueryHandle()));
-  }
-
-  /**
-   * Format output.
-   *
-   * @param ctx the query context
-   */
-  private void formatOutput(QueryContext ctx) {
+    final QueryContext ctx = queryService.getQueryContext(event.getQueryHandle());
     QueryHandle queryHandle = ctx.getQueryHandle();
     this.logSegregationContext.setLogSegragationAndQueryId(ctx.getQueryHandleString());
     try {
@@ -83,8 +137,9 @@ public class ResultFormatter extends AsyncEventListener<QueryExecuted> {
       }
       if (ctx.isResultAvailableInDriver()) {
         log.info("Result formatter for {}", queryHandle);
-        LensResultSet resultSet = queryService.getDriverResultset(queryHandle);
-        boolean isPersistedInDriver = resultSet instanceof PersistentResultSet;
+        final LensResultSet resultSet = queryService.getDriverResultset(queryHandle);
+        final boolean isPersistedInDriver = resultSet instanceof PersistentResultSet;
+        Lane lane = Lane.SMALL;
         if (isPersistedInDriver) {          // skip result formatting if persisted size is huge
           Path persistedDirectory = new Path(ctx.getDriverResultPath());
           FileSystem fs = persistedDirectory.getFileSystem(ctx.getConf());
@@ -98,50 +153,113 @@ public class ResultFormatter extends AsyncEventListener<QueryExecuted> {
             queryService.setSuccessState(ctx);
             return;
           }
-        }
-        // now do the formatting
-        createAndSetFormatter(ctx, isPersistedInDriver);
-        QueryOutputFormatter formatter = ctx.getQueryOutputFormatter();
-        try {
-          formatter.init(ctx, resultSet.getMetadata());
-          if (ctx.getConf().getBoolean(LensConfConstants.QUERY_OUTPUT_WRITE_HEADER,
-            LensConfConstants.DEFAULT_OUTPUT_WRITE_HEADER)) {
-            formatter.writeHeader();
-          }
-          if (isPersistedInDriver) {
-            log.info("Result formatter for {} in persistent result", queryHandle);
-            Path persistedDirectory = new Path(ctx.getDriverResultPath());
-            // write all files from persistent directory
-            ((PersistedOutputFormatter) formatter).addRowsFromPersistedPath(persistedDirectory);
-          } else {
-            log.info("Result formatter for {} in inmemory result", queryHandle);
-            InMemoryResultSet inmemory = (InMemoryResultSet) resultSet;
-            while (inmemory.hasNext()) {
-              ((InMemoryOutputFormatter) formatter).writeRow(inmemory.next());
-            }
-            inmemory.setFullyAccessed(true);
+          if (size > queryService.conf.getLong(LensConfConstants.RESULT_FORMATTER_LARGE_LANE_SIZE,
+            LensConfConstants.DEFAULT_RESULT_FORMATTER_LARGE_LANE_SIZE)) {
+            lane = Lane.LARGE;
           }
-          if (ctx.getConf().getBoolean(LensConfConstants.QUERY_OUTPUT_WRITE_FOOTER,
-            LensConfConstants.DEFAULT_OUTPUT_WRITE_FOOTER)) {
-            formatter.writeFooter();
-          }
-          formatter.commit();
-        } finally {
-          formatter.close();
         }
-        queryService.setSuccessState(ctx);
-        log.info("Result formatter has completed. Final path:{}", formatter.getFinalOutputPath());
+        submit(lane, ctx, resultSet, isPersistedInDriver);
       }
     } catch (Exception e) {
-      MetricsService metricsService = LensServices.get().getService(MetricsService.NAME);
-      metricsService.incrCounter(ResultFormatter.class, "formatting-errors");
-      log.warn("Exception while formatting result for {}", queryHandle, e);
-      try {
-        queryService.setFailedStatus(ctx, "Result formatting failed!", e.getMessage(), null);
-      } catch (LensException e1) {
-        log.error("Exception while setting failure for {}", queryHandle, e1);
+      formattingFailed(ctx, e);
+    }
+  }
+
+  private void submit(final Lane lane, final QueryContext ctx, final LensResultSet resultSet,
+    final boolean isPersistedInDriver) {
+    log.info("Formatting result of {} in {} lane", ctx.getQueryHandle(), lane);
+    incrCounter(lane.getQueuedCounter());
+    try {
+      lanes.get(lane).execute(new Runnable() {
+        @Override
+        public void run() {
+          decrCounter(lane.getQueuedCounter());
+          logSegregationContext.setLogSegragationAndQueryId(ctx.getQueryHandleString());
+          try {
+            formatOutput(lane, ctx, resultSet, isPersistedInDriver);
+          } catch (Exception e) {
+            formattingFailed(ctx, e);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      decrCounter(lane.getQueuedCounter());
+      formattingFailed(ctx, e);
+    }
+  }
+
+  /**
+   * Format output.
+   *
+   * @param lane                the lane formatting the result
+   * @param ctx                 the query context
+   * @param resultSet           result set of driver
+   * @param isPersistedInDriver whether result set is persisted by driver
+   */
+  private void formatOutput(Lane lane, QueryContext ctx, LensResultSet resultSet, boolean isPersistedInDriver)
+    throws Exception {
+    QueryHandle queryHandle = ctx.getQueryHandle();
+    // now do the formatting
+    createAndSetFormatter(ctx, isPersistedInDriver);
+    QueryOutputFormatter formatter = ctx.getQueryOutputFormatter();
+    try {
+      formatter.init(ctx, resultSet.getMetadata());
+      if (ctx.getConf().getBoolean(LensConfConstants.QUERY_OUTPUT_WRITE_HEADER,
+        LensConfConstants.DEFAULT_OUTPUT_WRITE_HEADER)) {
+        formatter.writeHeader();
       }
+      if (isPersistedInDriver) {
+        log.info("Result formatter for {} in persistent result", queryHandle);
+        Path persistedDirectory = new Path(ctx.getDriverResultPath());
+        // write all files from persistent directory
+        ((PersistedOutputFormatter) formatter).addRowsFromPersistedPath(persistedDirectory);
+      } else {
+        log.info("Result formatter for {} in inmemory result", queryHandle);
+        InMemoryResultSet inmemory = (InMemoryResultSet) resultSet;
+        while (inmemory.hasNext()) {
+          ((InMemoryOutputFormatter) formatter).writeRow(inmemory.next());
+        }
+        inmemory.setFullyAccessed(true);
+      }
+      if (ctx.getConf().getBoolean(LensConfConstants.QUERY_OUTPUT_WRITE_FOOTER,
+        LensConfConstants.DEFAULT_OUTPUT_WRITE_FOOTER)) {
+        formatter.writeFooter();
+      }
+      formatter.commit();
+    } finally {
+      formatter.close();
+    }
+    incrCounter(lane.getFormattedCounter());
+    queryService.setSuccessState(ctx);
+    log.info("Result formatter has completed. Final path:{}", formatter.getFinalOutputPath());
+  }
+
+  private void formattingFailed(QueryContext ctx, Exception e) {
+    incrCounter("formatting-errors");
+    log.warn("Exception while formatting result for {}", ctx.getQueryHandle(), e);
+    try {
+      queryService.setFailedStatus(ctx, "Result formatting failed!", e.getMessage(), null);
+    } catch (LensException e1) {
+      log.error("Exception while setting failure for {}", ctx.getQueryHandle(), e1);
+    }
+  }
+
+  private static void incrCounter(String counter) {
+    MetricsService metricsService = LensServices.get().getService(MetricsService.NAME);
+    metricsService.incrCounter(ResultFormatter.class, counter);
+  }
+
+  private static void decrCounter(String counter) {
+    MetricsService metricsService = LensServices.get().getService(MetricsService.NAME);
+    metricsService.decrCounter(ResultFormatter.class, counter);
+  }
+
+  @Override
+  public void stop() {
+    for (ThreadPoolExecutor lane : lanes.values()) {
+      lane.shutdownNow();
     }
+    super.stop();
   }
 
   /**
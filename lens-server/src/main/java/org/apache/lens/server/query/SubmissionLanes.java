@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.query;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lens.server.api.driver.LensDriver;
+import org.apache.lens.server.api.query.QueryContext;
+import org.apache.lens.server.util.FairPriorityBlockingQueue;
+
+import com.google.common.base.Preconditions;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Queues of queries to be launched, one per driver, each with launcher threads of its own taking queries in priority
+ * order. A launch waiting on one driver does not hold up launches on other drivers. Lane of a driver is created when
+ * the first query of the driver is added. Lanes are kept per driver instance, so drivers of same class do not share
+ * a lane.
+ */
+@Slf4j
+abstract class SubmissionLanes {
+
+  private final class Lane {
+
+    private final FairPriorityBlockingQueue<QueryContext> queries
+      = new FairPriorityBlockingQueue<QueryContext>(new QueryContextPriorityComparator());
+
+    private final ExecutorService launchers;
+
+    private Lane(final String name) {
+      final AtomicInteger thId = new AtomicInteger();
+      this.launchers = Executors.newFixedThreadPool(launchersPerDriver, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread th = new Thread(r, name + "-" + thId.incrementAndGet());
+          th.setDaemon(true);
+          return th;
+        }
+      });
+    }
+
+    private void start() {
+      for (int i = 0; i < launchersPerDriver; i++) {
+        launchers.execute(new Runnable() {
+          @Override
+          public void run() {
+            while (!stopped && !Thread.currentThread().isInterrupted()) {
+              try {
+                launch(queries.take());
+              } catch (InterruptedException e) {
+                log.info("{} has been interrupted, exiting", Thread.currentThread().getName());
+                return;
+              }
+            }
+          }
+        });
+      }
+    }
+  }
+
+  private final ConcurrentMap<LensDriver, Lane> lanes = new ConcurrentHashMap<LensDriver, Lane>();
+
+  // distinguishes lanes of drivers of same class
+  private final AtomicInteger laneCounter = new AtomicInteger();
+
+  private final int launchersPerDriver;
+
+  private volatile boolean stopped;
+
+  SubmissionLanes(final int launchersPerDriver) {
+    Preconditions.checkArgument(launchersPerDriver > 0, "Number of launcher threads should be positive");
+    this.launchersPerDriver = launchersPerDriver;
+  }
+
+  /**
+   * Launch a query taken from the lane of its driver. Called concurrently from launcher threads of all lanes.
+   *
+   * @param query the query
+   */
+  abstract void launch(QueryContext query);
+
+  /**
+   * Add query to the lane of the given driver.
+   *
+   * @param driver the driver
+   * @param query  the query
+   */
+  void add(final LensDriver driver, final QueryContext query) {
+    Lane lane = lanes.get(driver);
+    if (lane == null) {
+      lane = new Lane("QuerySubmitter-" + driver.getClass().getName() + "-" + laneCounter.incrementAndGet());
+      Lane existing = lanes.putIfAbsent(driver, lane);
+      if (existing != null) {
+        lane = existing;
+      } else {
+        lane.start();
+      }
+    }
+    lane.queries.add(query);
+  }
+
+  /**
+   * Remove query from the lane of its selected driver.
+   *
+   * @param query the query
+   * @return true if the query was waiting in the lane
+   */
+  boolean remove(final QueryContext query) {
+    Lane lane = query.getSelectedDriver() == null ? null : lanes.get(query.getSelectedDriver());
+    return lane != null && lane.queries.remove(query);
+  }
+
+  /**
+   * @return number of queries waiting in all lanes
+   */
+  int size() {
+    int size = 0;
+    for (Lane lane : lanes.values()) {
+      size += lane.queries.size();
+    }
+    return size;
+  }
+
+  void stop() {
+    stopped = true;
+    for (Lane lane : lanes.values()) {
+      lane.launchers.shutdownNow();
+    }
+  }
+}
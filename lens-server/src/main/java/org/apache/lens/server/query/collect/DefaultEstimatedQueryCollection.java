@@ -19,13 +19,13 @@
 
 package org.apache.lens.server.query.collect;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.*;
 
+import org.apache.lens.api.Priority;
 import org.apache.lens.server.api.driver.LensDriver;
 import org.apache.lens.server.api.query.QueryContext;
+import org.apache.lens.server.api.query.collect.KeyedQueryCostAggregate;
+import org.apache.lens.server.api.query.collect.QueryAggregate;
 import org.apache.lens.server.api.query.cost.FactPartitionBasedQueryCost;
 import org.apache.lens.server.api.query.cost.QueryCost;
 
@@ -34,7 +34,6 @@ import org.apache.commons.collections.map.MultiValueMap;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
@@ -42,7 +41,8 @@ import lombok.extern.slf4j.Slf4j;
 /**
  *
  * Implementation which creates multiple in memory views of queries existing in lens system and owns responsibility of
- * keeping all the views consistent with each other.
+ * keeping all the views consistent with each other. Count and total cost of queries per user, per driver and per
+ * priority are aggregated as queries are added and removed, so that they are read in O(1).
  *
  * @see EstimatedQueryCollection
  *
@@ -53,6 +53,30 @@ public class DefaultEstimatedQueryCollection implements EstimatedQueryCollection
   private final QueryCollection queries;
   private final MultiValueMap queriesByDriver = MultiValueMap.decorate(new HashMap(), LinkedHashSet.class);
 
+  private final KeyedQueryCostAggregate<String> userAggregate = new KeyedQueryCostAggregate<String>() {
+    @Override
+    protected String getKey(QueryContext query) {
+      return query.getSubmittedUser();
+    }
+  };
+
+  private final KeyedQueryCostAggregate<LensDriver> driverAggregate = new KeyedQueryCostAggregate<LensDriver>() {
+    @Override
+    protected LensDriver getKey(QueryContext query) {
+      return query.getSelectedDriver();
+    }
+  };
+
+  private final KeyedQueryCostAggregate<Priority> priorityAggregate = new KeyedQueryCostAggregate<Priority>() {
+    @Override
+    protected Priority getKey(QueryContext query) {
+      return query.getPriority();
+    }
+  };
+
+  private final List<QueryAggregate> aggregates = new ArrayList<QueryAggregate>(
+    Arrays.asList(userAggregate, driverAggregate, priorityAggregate));
+
   public DefaultEstimatedQueryCollection(@NonNull final QueryCollection queries) {
     this.queries = queries;
   }
@@ -65,13 +89,35 @@ public class DefaultEstimatedQueryCollection implements EstimatedQueryCollection
 
   @Override
   public int getQueriesCount(final LensDriver driver) {
-    return getQueriesCollectionForDriver(driver).size();
+    return driverAggregate.getCount(driver);
   }
 
   @Override
   public QueryCost getTotalQueryCost(final String user) {
+    return getTotalQueryCost(userAggregate.getTotalCost(user));
+  }
 
-    return getTotalQueryCost(this.queries.getQueries(user));
+  @Override
+  public QueryCost getTotalQueryCost(final LensDriver driver) {
+    return getTotalQueryCost(driverAggregate.getTotalCost(driver));
+  }
+
+  @Override
+  public int getQueriesCount(final Priority priority) {
+    return priorityAggregate.getCount(priority);
+  }
+
+  /**
+   * Adds an aggregate which is kept updated with queries of this collection, starting with the existing queries.
+   *
+   * @param aggregate the aggregate
+   */
+  @Override
+  public void addAggregate(final QueryAggregate aggregate) {
+    for (QueryContext query : this.queries.getQueries()) {
+      aggregate.add(query);
+    }
+    this.aggregates.add(aggregate);
   }
 
   /**
@@ -83,7 +129,12 @@ public class DefaultEstimatedQueryCollection implements EstimatedQueryCollection
   @Override
   public boolean add(QueryContext query) {
     checkState(query);
-    this.queriesByDriver.put(query.getSelectedDriver(), query);
+    if (!this.queriesByDriver.containsValue(query.getSelectedDriver(), query)) {
+      this.queriesByDriver.put(query.getSelectedDriver(), query);
+      for (QueryAggregate aggregate : aggregates) {
+        aggregate.add(query);
+      }
+    }
     return this.queries.add(query);
   }
 
@@ -109,7 +160,11 @@ public class DefaultEstimatedQueryCollection implements EstimatedQueryCollection
    */
   @Override
   public boolean remove(QueryContext query) {
-    this.queriesByDriver.remove(query.getSelectedDriver());
+    if (this.queriesByDriver.remove(query.getSelectedDriver(), query) != null) {
+      for (QueryAggregate aggregate : aggregates) {
+        aggregate.remove(query);
+      }
+    }
     return this.queries.remove(query);
   }
 
@@ -155,20 +210,9 @@ public class DefaultEstimatedQueryCollection implements EstimatedQueryCollection
     return driverQueries != null ? driverQueries : CollectionUtils.EMPTY_COLLECTION;
   }
 
-  private QueryCost getTotalQueryCost(final Collection<QueryContext> queries) {
-
-    if (queries.isEmpty()) {
-      return new FactPartitionBasedQueryCost(0);
-    }
-
-    QueryContext query0 = Iterables.get(queries, 0);
-    QueryCost totalQueryCost = query0.getSelectedDriverQueryCost();
-
-    for (QueryContext query : queries) {
-      QueryCost queryCost = query.getSelectedDriverQueryCost();
-      totalQueryCost = totalQueryCost.add(queryCost);
-    }
-    log.debug("Total Query Cost:{}", totalQueryCost);
-    return totalQueryCost;
+  private QueryCost getTotalQueryCost(final QueryCost totalQueryCost) {
+    QueryCost cost = totalQueryCost == null ? new FactPartitionBasedQueryCost(0) : totalQueryCost;
+    log.debug("Total Query Cost:{}", cost);
+    return cost;
   }
 }
@@ -38,11 +38,11 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class DefaultQueryCollection implements QueryCollection {
 
-  private final Set<QueryContext> queries;
+  private final RankedQuerySet queries;
   private final MultiValueMap queriesByUser = MultiValueMap.decorate(new HashMap(), LinkedHashSet.class);
 
   public DefaultQueryCollection() {
-    this.queries = Sets.newLinkedHashSet();
+    this.queries = new RankedQuerySet(null);
   }
 
   public DefaultQueryCollection(@NonNull final Set<QueryContext> queries) {
@@ -50,18 +50,24 @@ public class DefaultQueryCollection implements QueryCollection {
     addAll(queries);
   }
 
+  /**
+   * Creates a collection which keeps queries in the order of comparator of given set, with the queries in the set.
+   *
+   * @param treeSet the queries
+   */
   public DefaultQueryCollection(final TreeSet<QueryContext> treeSet) {
-    this.queries = treeSet;
-    for (QueryContext query : treeSet) {
-      queriesByUser.put(query.getSubmittedUser(), query);
-    }
+    this.queries = new RankedQuerySet(treeSet.comparator());
+    addAll(treeSet);
   }
 
   @Override
   public boolean add(final QueryContext query) {
 
+    if (!queries.add(query)) {
+      return false;
+    }
     queriesByUser.put(query.getSubmittedUser(), query);
-    return queries.add(query);
+    return true;
   }
 
   @Override
@@ -92,7 +98,7 @@ public class DefaultQueryCollection implements QueryCollection {
 
   @Override
   public Set<QueryContext> getQueries() {
-    return Sets.newHashSet(queries);
+    return Sets.newLinkedHashSet(queries);
   }
 
   @Override
@@ -108,22 +114,14 @@ public class DefaultQueryCollection implements QueryCollection {
 
 
   /**
-   *  Since the collection is a linkedHashSet, the order of queries is always maintained.
-   * @param query
-   * @return
+   * Position of query is found from the ordered tree of queries, in O(log n).
+   *
+   * @param query the query
+   * @return 1 based index of query, null if the query is not in this collection
    */
   @Override
   public Integer getQueryIndex(QueryContext query) {
-    Iterator iterator = queries.iterator();
-    int index = 1;
-    while (iterator.hasNext()) {
-      QueryContext queuedQuery = (QueryContext) iterator.next();
-      if (queuedQuery.getQueryHandle().equals(query.getQueryHandle())) {
-        return index;
-      }
-      index += 1;
-    }
-    return null;
+    return queries.rank(query);
   }
 
   private Collection<QueryContext> getQueriesCollectionForUser(final String user) {
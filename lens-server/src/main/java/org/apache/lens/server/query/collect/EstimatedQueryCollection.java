@@ -20,6 +20,7 @@
 package org.apache.lens.server.query.collect;
 
 import org.apache.lens.server.api.query.collect.EstimatedImmutableQueryCollection;
+import org.apache.lens.server.api.query.collect.QueryAggregate;
 
 /**
  *
@@ -27,4 +28,12 @@ import org.apache.lens.server.api.query.collect.EstimatedImmutableQueryCollectio
  * @see MutableQueryCollection
  */
 public interface EstimatedQueryCollection extends EstimatedImmutableQueryCollection, MutableQueryCollection {
+
+  /**
+   * Adds an aggregate which is to be updated as queries are added to and removed from this collection. Existing
+   * queries are added to the aggregate.
+   *
+   * @param aggregate the aggregate
+   */
+  void addAggregate(final QueryAggregate aggregate);
 }
@@ -0,0 +1,245 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.query.collect;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.lens.api.query.QueryHandle;
+import org.apache.lens.api.query.QueryStatus.Status;
+import org.apache.lens.server.api.query.QueryContext;
+
+import lombok.EqualsAndHashCode;
+import lombok.NonNull;
+
+/**
+ * Registry of all queries in lens server, keyed by query handle. Queries are also indexed by submitter and by status,
+ * and all indexes keep queries in listing order, latest submitted first with handle breaking ties. Listing queries
+ * of a user or in a status, a page at a time, does not look at queries of other users or in other statuses.
+ * <p></p>
+ * The registry is safe for concurrent use. Status of a query changes outside the registry, so status index is updated
+ * when the query is passed to {@link #reindex(QueryContext)}. Index of a status can have queries which have just moved
+ * out of the status, so callers check the status of queries they list.
+ */
+public class QueryRegistry {
+
+  /**
+   * Key of a query in listing order.
+   */
+  @EqualsAndHashCode
+  private static final class ListingKey implements Comparable<ListingKey> {
+    private final long submissionTime;
+    private final String handle;
+
+    private ListingKey(long submissionTime, String handle) {
+      this.submissionTime = submissionTime;
+      this.handle = handle;
+    }
+
+    @Override
+    public int compareTo(ListingKey other) {
+      if (submissionTime != other.submissionTime) {
+        return submissionTime > other.submissionTime ? -1 : 1;
+      }
+      return other.handle.compareTo(handle);
+    }
+  }
+
+  /**
+   * Registered query along with the keys it is indexed by.
+   */
+  private static final class Entry {
+    private final QueryContext query;
+    private final ListingKey key;
+    private Status indexedStatus;
+
+    private Entry(QueryContext query) {
+      this.query = query;
+      this.key = new ListingKey(query.getSubmissionTime(), query.getQueryHandleString());
+    }
+  }
+
+  private final ConcurrentMap<QueryHandle, Entry> queries = new ConcurrentHashMap<QueryHandle, Entry>();
+  private final ConcurrentSkipListMap<ListingKey, QueryContext> queriesByTime
+    = new ConcurrentSkipListMap<ListingKey, QueryContext>();
+  private final ConcurrentMap<String, ConcurrentSkipListMap<ListingKey, QueryContext>> queriesByUser
+    = new ConcurrentHashMap<String, ConcurrentSkipListMap<ListingKey, QueryContext>>();
+  private final Map<Status, ConcurrentSkipListMap<ListingKey, QueryContext>> queriesByStatus;
+
+  public QueryRegistry() {
+    Map<Status, ConcurrentSkipListMap<ListingKey, QueryContext>> byStatus
+      = new EnumMap<Status, ConcurrentSkipListMap<ListingKey, QueryContext>>(Status.class);
+    for (Status status : Status.values()) {
+      byStatus.put(status, new ConcurrentSkipListMap<ListingKey, QueryContext>());
+    }
+    this.queriesByStatus = Collections.unmodifiableMap(byStatus);
+  }
+
+  /**
+   * @param handle the query handle
+   * @return the query, null if the query is not registered
+   */
+  public QueryContext get(final QueryHandle handle) {
+    Entry entry = queries.get(handle);
+    return entry == null ? null : entry.query;
+  }
+
+  /**
+   * Register a query, replacing any query registered with the same handle.
+   *
+   * @param query the query
+   * @return the query replaced, null if there was none
+   */
+  public QueryContext put(@NonNull final QueryContext query) {
+    Entry entry = new Entry(query);
+    Entry previous;
+    synchronized (entry) {
+      previous = queries.put(query.getQueryHandle(), entry);
+      if (previous != null) {
+        unindex(previous);
+      }
+      queriesByTime.put(entry.key, query);
+      getUserQueries(query.getSubmittedUser(), true).put(entry.key, query);
+      indexStatus(entry);
+    }
+    return previous == null ? null : previous.query;
+  }
+
+  /**
+   * Remove a query from registry.
+   *
+   * @param handle the query handle
+   * @return the query removed, null if the query is not registered
+   */
+  public QueryContext remove(final QueryHandle handle) {
+    Entry entry = queries.remove(handle);
+    if (entry == null) {
+      return null;
+    }
+    unindex(entry);
+    return entry.query;
+  }
+
+  /**
+   * Update the indexes of query after its status has changed.
+   *
+   * @param query the query
+   */
+  public void reindex(final QueryContext query) {
+    Entry entry = queries.get(query.getQueryHandle());
+    if (entry != null && entry.query == query) {
+      synchronized (entry) {
+        // the query may have been removed meanwhile
+        if (queries.get(query.getQueryHandle()) == entry) {
+          indexStatus(entry);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return view of all queries registered, in no particular order
+   */
+  public Collection<QueryContext> values() {
+    return queriesByTime.values();
+  }
+
+  /**
+   * @return the number of queries registered
+   */
+  public int size() {
+    return queries.size();
+  }
+
+  /**
+   * Get queries in listing order, latest submitted first, from the smallest index which has all queries matching the
+   * given status and user. Returned queries can be in any other status or of any other user, so callers should check
+   * both of them.
+   *
+   * @param status           status of queries, null for any status
+   * @param user             submitter of queries, null for any user
+   * @param cursorSubmitTime submission time of query after which queries are listed, ignored if cursorHandle is null
+   * @param cursorHandle     handle of query after which queries are listed, null to list from the latest query
+   * @return weakly consistent view of queries
+   */
+  public Collection<QueryContext> getQueries(final Status status, final String user, final long cursorSubmitTime,
+    final String cursorHandle) {
+    ConcurrentNavigableMap<ListingKey, QueryContext> index;
+    if (status != null) {
+      index = queriesByStatus.get(status);
+    } else if (user != null) {
+      index = getUserQueries(user, false);
+      if (index == null) {
+        return Collections.emptyList();
+      }
+    } else {
+      index = queriesByTime;
+    }
+    if (cursorHandle != null) {
+      index = index.tailMap(new ListingKey(cursorSubmitTime, cursorHandle), false);
+    }
+    return index.values();
+  }
+
+  private ConcurrentSkipListMap<ListingKey, QueryContext> getUserQueries(String user, boolean create) {
+    String key = user == null ? "" : user.toLowerCase();
+    ConcurrentSkipListMap<ListingKey, QueryContext> userQueries = queriesByUser.get(key);
+    if (userQueries == null && create) {
+      userQueries = new ConcurrentSkipListMap<ListingKey, QueryContext>();
+      ConcurrentSkipListMap<ListingKey, QueryContext> existing = queriesByUser.putIfAbsent(key, userQueries);
+      if (existing != null) {
+        userQueries = existing;
+      }
+    }
+    return userQueries;
+  }
+
+  private void indexStatus(Entry entry) {
+    Status status = entry.query.getStatus() == null ? null : entry.query.getStatus().getStatus();
+    if (status == entry.indexedStatus) {
+      return;
+    }
+    // add to new status before removing from old one, so that a concurrent listing does not miss the query
+    if (status != null) {
+      queriesByStatus.get(status).put(entry.key, entry.query);
+    }
+    if (entry.indexedStatus != null) {
+      queriesByStatus.get(entry.indexedStatus).remove(entry.key, entry.query);
+    }
+    entry.indexedStatus = status;
+  }
+
+  private void unindex(Entry entry) {
+    synchronized (entry) {
+      queriesByTime.remove(entry.key, entry.query);
+      ConcurrentSkipListMap<ListingKey, QueryContext> userQueries = getUserQueries(entry.query.getSubmittedUser(),
+        false);
+      if (userQueries != null) {
+        userQueries.remove(entry.key, entry.query);
+      }
+      if (entry.indexedStatus != null) {
+        queriesByStatus.get(entry.indexedStatus).remove(entry.key, entry.query);
+        entry.indexedStatus = null;
+      }
+    }
+  }
+}
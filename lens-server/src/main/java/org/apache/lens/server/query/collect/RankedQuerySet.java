@@ -0,0 +1,242 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.query.collect;
+
+import java.util.*;
+
+import org.apache.lens.server.api.query.QueryContext;
+
+/**
+ * Ordered set of queries which finds the position of a query in O(log n). Queries are kept in a treap ordered by the
+ * given comparator, and by insertion order among queries the comparator finds equal. Without a comparator, queries
+ * are kept in insertion order.
+ * <p></p>
+ * Nodes are found through a hash map and the tree is walked up from them, so that a query can be found and removed
+ * even if the comparator would order it differently since it was added. This implementation is not thread-safe.
+ */
+class RankedQuerySet implements Iterable<QueryContext> {
+
+  private static final class Node {
+    private final QueryContext query;
+    private final long sequence;
+    private final int priority;
+    private Node left;
+    private Node right;
+    private Node parent;
+    private int size = 1;
+
+    private Node(QueryContext query, long sequence, int priority) {
+      this.query = query;
+      this.sequence = sequence;
+      this.priority = priority;
+    }
+  }
+
+  private final Comparator<? super QueryContext> comparator;
+  private final Map<QueryContext, Node> nodes = new HashMap<QueryContext, Node>();
+  private final Random random = new Random();
+  private Node root;
+  private long nextSequence;
+
+  RankedQuerySet(Comparator<? super QueryContext> comparator) {
+    this.comparator = comparator;
+  }
+
+  boolean add(final QueryContext query) {
+    if (nodes.containsKey(query)) {
+      return false;
+    }
+    Node node = new Node(query, nextSequence++, random.nextInt());
+    nodes.put(query, node);
+    if (root == null) {
+      root = node;
+      return true;
+    }
+    Node current = root;
+    while (true) {
+      current.size++;
+      if (compare(node, current) < 0) {
+        if (current.left == null) {
+          current.left = node;
+          break;
+        }
+        current = current.left;
+      } else {
+        if (current.right == null) {
+          current.right = node;
+          break;
+        }
+        current = current.right;
+      }
+    }
+    node.parent = current;
+    while (node.parent != null && node.priority > node.parent.priority) {
+      rotateUp(node);
+    }
+    return true;
+  }
+
+  boolean remove(final QueryContext query) {
+    Node node = nodes.remove(query);
+    if (node == null) {
+      return false;
+    }
+    while (node.left != null && node.right != null) {
+      rotateUp(node.left.priority > node.right.priority ? node.left : node.right);
+    }
+    Node child = node.left != null ? node.left : node.right;
+    Node parent = node.parent;
+    if (child != null) {
+      child.parent = parent;
+    }
+    replaceChild(parent, node, child);
+    for (Node ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+      ancestor.size--;
+    }
+    return true;
+  }
+
+  boolean contains(final QueryContext query) {
+    return nodes.containsKey(query);
+  }
+
+  /**
+   * @param query the query
+   * @return 1 based position of query in the set, null if the query is not present
+   */
+  Integer rank(final QueryContext query) {
+    Node node = nodes.get(query);
+    if (node == null) {
+      return null;
+    }
+    int rank = size(node.left) + 1;
+    for (Node current = node; current.parent != null; current = current.parent) {
+      if (current == current.parent.right) {
+        rank += size(current.parent.left) + 1;
+      }
+    }
+    return rank;
+  }
+
+  int size() {
+    return size(root);
+  }
+
+  @Override
+  public Iterator<QueryContext> iterator() {
+    return new Iterator<QueryContext>() {
+      private Node next = first(root);
+
+      @Override
+      public boolean hasNext() {
+        return next != null;
+      }
+
+      @Override
+      public QueryContext next() {
+        if (next == null) {
+          throw new NoSuchElementException();
+        }
+        Node current = next;
+        next = successor(current);
+        return current.query;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  private int compare(Node node1, Node node2) {
+    if (comparator != null) {
+      int result = comparator.compare(node1.query, node2.query);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return node1.sequence < node2.sequence ? -1 : (node1.sequence == node2.sequence ? 0 : 1);
+  }
+
+  private static int size(Node node) {
+    return node == null ? 0 : node.size;
+  }
+
+  private static void updateSize(Node node) {
+    node.size = size(node.left) + size(node.right) + 1;
+  }
+
+  private void replaceChild(Node parent, Node child, Node replacement) {
+    if (parent == null) {
+      root = replacement;
+    } else if (parent.left == child) {
+      parent.left = replacement;
+    } else {
+      parent.right = replacement;
+    }
+  }
+
+  /**
+   * Rotate node above its parent, keeping in-order sequence of nodes.
+   */
+  private void rotateUp(Node node) {
+    Node parent = node.parent;
+    Node grandParent = parent.parent;
+    if (node == parent.left) {
+      parent.left = node.right;
+      if (node.right != null) {
+        node.right.parent = parent;
+      }
+      node.right = parent;
+    } else {
+      parent.right = node.left;
+      if (node.left != null) {
+        node.left.parent = parent;
+      }
+      node.left = parent;
+    }
+    parent.parent = node;
+    node.parent = grandParent;
+    replaceChild(grandParent, parent, node);
+    updateSize(parent);
+    updateSize(node);
+  }
+
+  private static Node first(Node node) {
+    if (node == null) {
+      return null;
+    }
+    while (node.left != null) {
+      node = node.left;
+    }
+    return node;
+  }
+
+  private static Node successor(Node node) {
+    if (node.right != null) {
+      return first(node.right);
+    }
+    Node current = node;
+    while (current.parent != null && current == current.parent.right) {
+      current = current.parent;
+    }
+    return current.parent;
+  }
+}
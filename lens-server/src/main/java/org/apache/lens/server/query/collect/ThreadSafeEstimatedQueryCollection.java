@@ -21,8 +21,10 @@ package org.apache.lens.server.query.collect;
 
 import java.util.Set;
 
+import org.apache.lens.api.Priority;
 import org.apache.lens.server.api.driver.LensDriver;
 import org.apache.lens.server.api.query.QueryContext;
+import org.apache.lens.server.api.query.collect.QueryAggregate;
 import org.apache.lens.server.api.query.cost.QueryCost;
 
 import lombok.NonNull;
@@ -41,7 +43,7 @@ public class ThreadSafeEstimatedQueryCollection implements EstimatedQueryCollect
 
   @Override
   public synchronized Set<QueryContext> getQueries(LensDriver driver) {
-    return this.estimatedQueries.getQueries();
+    return this.estimatedQueries.getQueries(driver);
   }
 
   @Override
@@ -54,6 +56,21 @@ public class ThreadSafeEstimatedQueryCollection implements EstimatedQueryCollect
     return this.estimatedQueries.getTotalQueryCost(user);
   }
 
+  @Override
+  public synchronized QueryCost getTotalQueryCost(LensDriver driver) {
+    return this.estimatedQueries.getTotalQueryCost(driver);
+  }
+
+  @Override
+  public synchronized int getQueriesCount(Priority priority) {
+    return this.estimatedQueries.getQueriesCount(priority);
+  }
+
+  @Override
+  public synchronized void addAggregate(QueryAggregate aggregate) {
+    this.estimatedQueries.addAggregate(aggregate);
+  }
+
   @Override
   public synchronized  Set<QueryContext> getQueries() {
     return this.estimatedQueries.getQueries();
@@ -0,0 +1,288 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.rewrite;
+
+import static org.apache.lens.server.api.LensConfConstants.*;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.apache.lens.cube.metadata.CubeMetastoreClient;
+import org.apache.lens.driver.cube.RewriterPlan;
+import org.apache.lens.server.api.error.LensException;
+import org.apache.lens.server.api.metrics.LensMetricsRegistry;
+import org.apache.lens.server.api.query.AbstractQueryContext;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.session.SessionState;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cache of cube rewrite plans.
+ * <p></p>
+ * A rewrite plan is the rewritten query along with the rewriter plan extracted from the cube query contexts created
+ * while rewriting it. The contexts themselves are not kept, every query gets its own copy of the rewriter plan.
+ * Rewrite of a query depends only on the query, the current database, the metastore state and the cube rewrite
+ * configuration (properties starting with {@link #REWRITE_CONF_PREFIX}) of the driver. So drivers of a query whose
+ * rewrite configuration is same share a single rewrite, and if shared caching is enabled, plans are also reused by later
+ * submissions of the same query till the metastore change counter of the database moves.
+ * <p></p>
+ * Queries with relative time ranges are shared only within time buckets of configured width, since their rewrite
+ * depends on the current time.
+ */
+@Slf4j
+public class RewritePlanCache {
+
+  static final String HITS_COUNTER = MetricRegistry.name(RewritePlanCache.class, "hits");
+  static final String MISSES_COUNTER = MetricRegistry.name(RewritePlanCache.class, "misses");
+
+  /** Prefix of configuration properties which can change the rewritten query */
+  public static final String REWRITE_CONF_PREFIX = "lens.cube.query.";
+
+  /** The pattern to find usage of relative time in query */
+  private static final Pattern RELATIVE_TIME_PATTERN = Pattern.compile("\\bnow\\b", Pattern.CASE_INSENSITIVE);
+
+  /** The shared plans. null if shared caching is disabled */
+  private final Cache<PlanKey, RewritePlan> plans;
+
+  /** Width of time bucket for queries with relative time ranges */
+  private final long relativeTimeBucketMillis;
+
+  private final Counter hits = LensMetricsRegistry.getStaticRegistry().counter(HITS_COUNTER);
+
+  private final Counter misses = LensMetricsRegistry.getStaticRegistry().counter(MISSES_COUNTER);
+
+  /**
+   * Create rewrite plan cache from configuration.
+   *
+   * @param conf the server configuration
+   */
+  public RewritePlanCache(Configuration conf) {
+    this(conf.getBoolean(REWRITE_PLAN_CACHE_ENABLED, DEFAULT_REWRITE_PLAN_CACHE_ENABLED),
+      conf.getLong(REWRITE_PLAN_CACHE_MAX_SIZE, DEFAULT_REWRITE_PLAN_CACHE_MAX_SIZE),
+      conf.getLong(REWRITE_PLAN_CACHE_EXPIRY_MILLIS, DEFAULT_REWRITE_PLAN_CACHE_EXPIRY_MILLIS),
+      conf.getLong(REWRITE_PLAN_CACHE_RELATIVE_TIME_BUCKET_MILLIS,
+        DEFAULT_REWRITE_PLAN_CACHE_RELATIVE_TIME_BUCKET_MILLIS));
+  }
+
+  RewritePlanCache(boolean enabled, long maxSize, long expiryMillis, long relativeTimeBucketMillis) {
+    if (enabled) {
+      this.plans = CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(expiryMillis,
+        TimeUnit.MILLISECONDS).build();
+    } else {
+      this.plans = null;
+    }
+    this.relativeTimeBucketMillis = relativeTimeBucketMillis;
+    log.info("Rewrite plan cache enabled: {}, max size: {}, expiry millis: {}, relative time bucket millis: {}",
+      enabled, maxSize, expiryMillis, relativeTimeBucketMillis);
+  }
+
+  /**
+   * Number of plans in shared cache
+   *
+   * @return the size
+   */
+  public long size() {
+    return plans == null ? 0 : plans.size();
+  }
+
+  /**
+   * Remove all plans from shared cache
+   */
+  public void invalidateAll() {
+    if (plans != null) {
+      plans.invalidateAll();
+    }
+  }
+
+  /**
+   * Create a scope for rewriting the query in the context for all its drivers.
+   *
+   * @param ctx           the query context
+   * @param replacedQuery the normalized query
+   * @return the query scope
+   */
+  QueryScope newQueryScope(AbstractQueryContext ctx, String replacedQuery) {
+    return new QueryScope(plans == null ? null : getSharedKey(ctx, replacedQuery));
+  }
+
+  /**
+   * Get key for sharing plan of the query across submissions.
+   *
+   * @return the key, null if query cannot be shared
+   */
+  private SharedKey getSharedKey(AbstractQueryContext ctx, String replacedQuery) {
+    SessionState sessionState = SessionState.get();
+    if (sessionState == null) {
+      return null;
+    }
+    long timeBucket = 0;
+    if (RELATIVE_TIME_PATTERN.matcher(replacedQuery).find()) {
+      if (relativeTimeBucketMillis <= 0) {
+        return null;
+      }
+      timeBucket = System.currentTimeMillis() / relativeTimeBucketMillis;
+    }
+    try {
+      long metastoreVersion = CubeMetastoreClient.getInstance(ctx.getHiveConf()).getChangeCounter();
+      return new SharedKey(replacedQuery, sessionState.getCurrentDatabase(), metastoreVersion, timeBucket);
+    } catch (HiveException e) {
+      log.warn("Could not get metastore client, rewrite plan of query will not be shared", e);
+      return null;
+    }
+  }
+
+  /**
+   * Get rewrite related configuration of driver
+   *
+   * @param driverConf the driver configuration
+   * @return sorted map of rewrite related properties
+   */
+  static Map<String, String> getRewriteConf(Configuration driverConf) {
+    return new TreeMap<String, String>(driverConf.getValByRegex("^" + Pattern.quote(REWRITE_CONF_PREFIX)));
+  }
+
+  /**
+   * Rewrite plan of a query. Plans are shared across drivers and queries, so only immutable output of the rewrite is
+   * kept.
+   */
+  @RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+  static final class RewritePlan {
+    /** The rewritten query */
+    @Getter
+    private final String rewrittenQuery;
+
+    /** The rewriter plan of all cube queries in the query, which is never handed out */
+    private final RewriterPlan rewriterPlan;
+
+    /**
+     * Get a copy of the rewriter plan for a single query and driver.
+     *
+     * @return the rewriter plan
+     */
+    RewriterPlan newRewriterPlan() {
+      return new RewriterPlan(rewriterPlan);
+    }
+  }
+
+  /**
+   * Part of plan key coming from the query.
+   */
+  @EqualsAndHashCode
+  @RequiredArgsConstructor
+  private static final class SharedKey {
+    private final String query;
+    private final String database;
+    private final long metastoreVersion;
+    private final long timeBucket;
+  }
+
+  /**
+   * Key of shared plan.
+   */
+  @EqualsAndHashCode
+  @RequiredArgsConstructor
+  private static final class PlanKey {
+    private final SharedKey sharedKey;
+    private final Map<String, String> rewriteConf;
+  }
+
+  /**
+   * Scope of rewriting a single query for all its drivers. Rewrites of drivers with same rewrite configuration are
+   * done once, concurrent rewrites wait for the one in progress.
+   */
+  final class QueryScope {
+    private final SharedKey sharedKey;
+    private final Cache<Map<String, String>, RewritePlan> queryPlans = CacheBuilder.newBuilder().build();
+
+    private QueryScope(SharedKey sharedKey) {
+      this.sharedKey = sharedKey;
+    }
+
+    /**
+     * Get the rewrite plan for the driver configuration, loading it if not available.
+     *
+     * @param driverConf the driver configuration
+     * @param loader     the loader which does the actual rewrite
+     * @return the rewrite plan
+     * @throws LensException the lens exception
+     */
+    RewritePlan get(Configuration driverConf, final Callable<RewritePlan> loader) throws LensException {
+      final Map<String, String> rewriteConf = getRewriteConf(driverConf);
+      try {
+        return queryPlans.get(rewriteConf, new Callable<RewritePlan>() {
+          @Override
+          public RewritePlan call() throws Exception {
+            if (sharedKey == null) {
+              return loader.call();
+            }
+            final boolean[] loaded = new boolean[1];
+            RewritePlan plan = plans.get(new PlanKey(sharedKey, rewriteConf), new Callable<RewritePlan>() {
+              @Override
+              public RewritePlan call() throws Exception {
+                loaded[0] = true;
+                return loader.call();
+              }
+            });
+            if (loaded[0]) {
+              misses.inc();
+            } else {
+              hits.inc();
+            }
+            return plan;
+          }
+        });
+      } catch (ExecutionException e) {
+        throw unwrap(e.getCause());
+      } catch (UncheckedExecutionException e) {
+        throw unwrap(e.getCause());
+      }
+    }
+
+    private LensException unwrap(Throwable cause) {
+      // nested loads wrap the cause once per cache
+      while ((cause instanceof ExecutionException || cause instanceof UncheckedExecutionException)
+        && cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      if (cause instanceof LensException) {
+        return (LensException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      return new LensException(cause);
+    }
+  }
+}
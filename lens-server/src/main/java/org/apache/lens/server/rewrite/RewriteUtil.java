@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -87,8 +88,23 @@ public final class RewriteUtil {
    */
   static List<CubeQueryInfo> findCubePositions(String query, HiveConf conf)
     throws LensException {
+    return findCubePositions(HQLParser.parseHQL(query, conf), query);
+  }
+
+  /**
+   * Find cube positions, sharing the parse of query with the rest of query's life.
+   *
+   * @param query the query
+   * @param ctx   the query context
+   * @return the list
+   * @throws LensException the lensexception
+   */
+  static List<CubeQueryInfo> findCubePositions(String query, AbstractQueryContext ctx)
+    throws LensException {
+    return findCubePositions(HQLParser.parseHQL(ctx, query), query);
+  }
 
-    ASTNode ast = HQLParser.parseHQL(query, conf);
+  private static List<CubeQueryInfo> findCubePositions(ASTNode ast, String query) throws LensException {
     if (log.isDebugEnabled()) {
       log.debug("User query AST:{}", ast.dump());
     }
@@ -221,14 +237,31 @@ public final class RewriteUtil {
    * @throws LensException the lens exception
    */
   public static Map<LensDriver, DriverRewriterRunnable> rewriteQuery(AbstractQueryContext ctx) throws LensException {
+    return rewriteQuery(ctx, null);
+  }
+
+  /**
+   * Rewrite query. Rewrites are shared through the plan cache when it is passed.
+   *
+   * @param ctx       the query context
+   * @param planCache the rewrite plan cache, can be null
+   * @return the map
+   * @throws LensException the lens exception
+   */
+  public static Map<LensDriver, DriverRewriterRunnable> rewriteQuery(AbstractQueryContext ctx,
+    RewritePlanCache planCache) throws LensException {
     try {
 
       String replacedQuery = getReplacedQuery(ctx.getPhase1RewrittenQuery());
       Map<LensDriver, DriverRewriterRunnable> runnables = new LinkedHashMap<LensDriver, DriverRewriterRunnable>();
-      List<RewriteUtil.CubeQueryInfo> cubeQueries = findCubePositions(replacedQuery, ctx.getHiveConf());
+      List<RewriteUtil.CubeQueryInfo> cubeQueries = findCubePositions(replacedQuery, ctx);
+      RewritePlanCache.QueryScope rewriteScope = null;
+      if (planCache != null && !cubeQueries.isEmpty()) {
+        rewriteScope = planCache.newQueryScope(ctx, replacedQuery);
+      }
 
       for (LensDriver driver : ctx.getDriverContext().getDrivers()) {
-        runnables.put(driver, new DriverRewriterRunnable(driver, ctx, cubeQueries, replacedQuery));
+        runnables.put(driver, new DriverRewriterRunnable(driver, ctx, cubeQueries, replacedQuery, rewriteScope));
       }
 
       return runnables;
@@ -246,8 +279,7 @@ public final class RewriteUtil {
   }
 
   public static DriverQueryPlan getRewriterPlan(DriverRewriterRunnable rewriter) {
-    RewriterPlan plan = new RewriterPlan(rewriter.cubeQueryCtx);
-    return plan;
+    return rewriter.rewriterPlan;
   }
 
   public static class DriverRewriterRunnable implements Runnable {
@@ -256,8 +288,10 @@ public final class RewriteUtil {
     private final AbstractQueryContext ctx;
     private final List<CubeQueryInfo> cubeQueries;
     private final String replacedQuery;
-    /** Cube query context - set after rewriting */
-    private List<CubeQueryContext> cubeQueryCtx;
+    /** Scope for sharing rewrite across drivers, null if rewrite is not shared */
+    private final RewritePlanCache.QueryScope rewriteScope;
+    /** Rewriter plan of the query for the driver - set after rewriting */
+    private DriverQueryPlan rewriterPlan;
 
     @Getter
     /** Indicate if rewrite operation succeeded */
@@ -278,13 +312,19 @@ public final class RewriteUtil {
                                   AbstractQueryContext ctx,
                                   List<CubeQueryInfo> cubeQueries,
                                   String replacedQuery) {
+      this(driver, ctx, cubeQueries, replacedQuery, null);
+    }
+
+    DriverRewriterRunnable(LensDriver driver,
+                           AbstractQueryContext ctx,
+                           List<CubeQueryInfo> cubeQueries,
+                           String replacedQuery,
+                           RewritePlanCache.QueryScope rewriteScope) {
       this.driver = driver;
       this.ctx = ctx;
       this.cubeQueries = cubeQueries;
       this.replacedQuery = replacedQuery;
-      if (cubeQueries != null) {
-        cubeQueryCtx = new ArrayList<CubeQueryContext>(cubeQueries.size());
-      }
+      this.rewriteScope = rewriteScope;
     }
 
     @Override
@@ -297,14 +337,59 @@ public final class RewriteUtil {
 
       MethodMetricsContext rewriteGauge = MethodMetricsFactory
           .createMethodGauge(ctx.getDriverConf(driver), true, REWRITE_QUERY_GAUGE);
+      try {
+        if (cubeQueries.size() > 0) {
+          ctx.setOlapQuery(true);
+        }
+
+        RewritePlanCache.RewritePlan plan;
+        if (rewriteScope != null) {
+          plan = rewriteScope.get(ctx.getDriverContext().getDriverConf(driver),
+            new Callable<RewritePlanCache.RewritePlan>() {
+              @Override
+              public RewritePlanCache.RewritePlan call() throws LensException {
+                return rewrite();
+              }
+            });
+        } else {
+          plan = rewrite();
+        }
+        rewrittenQuery = plan.getRewrittenQuery();
+        rewriterPlan = plan.newRewriterPlan();
+        // set rewriter plan
+        ctx.getDriverContext().setDriverRewriterPlan(driver, getRewriterPlan(this));
+        succeeded = true;
+        ctx.setDriverQuery(driver, rewrittenQuery);
+        log.info("Final rewritten query for driver: {} is: {}", driver, rewrittenQuery);
+
+      } catch (final LensException e) {
+
+        this.cause = e;
+        captureExceptionInformation(e);
+      } catch (Exception e) {
+
+        // we are catching all exceptions sothat other drivers can be picked in case of driver bugs
+        captureExceptionInformation(e);
+      } finally {
+        rewriteGauge.markSuccess();
+      }
+    }
+
+    /**
+     * Rewrite all cube queries in the query with the driver configuration.
+     *
+     * @return the rewrite plan
+     * @throws LensException the lens exception
+     */
+    private RewritePlanCache.RewritePlan rewrite() throws LensException {
       StringBuilder builder = new StringBuilder();
       int start = 0;
+      List<CubeQueryContext> cubeQueryContexts = new ArrayList<CubeQueryContext>(cubeQueries.size());
       CubeQueryRewriter rewriter = null;
       try {
         if (cubeQueries.size() > 0) {
           // avoid creating rewriter if there are no cube queries
           rewriter = getCubeRewriter(ctx.getDriverContext().getDriverConf(driver), ctx.getHiveConf());
-          ctx.setOlapQuery(true);
         }
 
         // We have to rewrite each sub cube query which might be present in the original
@@ -323,7 +408,7 @@ public final class RewriteUtil {
               .createMethodGauge(ctx.getDriverConf(driver), true, qIndex + "-" + TOHQL_GAUGE);
           // toHQL actually generates the rewritten query
           String hqlQuery = cqc.toHQL();
-          cubeQueryCtx.add(cqc);
+          cubeQueryContexts.add(cqc);
           toHQLGauge.markSuccess();
           qIndex++;
 
@@ -334,27 +419,12 @@ public final class RewriteUtil {
         }
 
         builder.append(replacedQuery.substring(start));
-
-        rewrittenQuery = builder.toString();
-        // set rewriter plan
-        ctx.getDriverContext().setDriverRewriterPlan(driver, getRewriterPlan(this));
-        succeeded = true;
-        ctx.setDriverQuery(driver, rewrittenQuery);
-        log.info("Final rewritten query for driver: {} is: {}", driver, rewrittenQuery);
-
-      } catch (final LensException e) {
-
-        this.cause = e;
-        captureExceptionInformation(e);
-      } catch (Exception e) {
-
-        // we are catching all exceptions sothat other drivers can be picked in case of driver bugs
-        captureExceptionInformation(e);
+        // extract the plan before the rewriter is cleared, contexts are not kept beyond this rewrite
+        return new RewritePlanCache.RewritePlan(builder.toString(), new RewriterPlan(cubeQueryContexts));
       } finally {
         if (rewriter != null) {
           rewriter.clear();
         }
-        rewriteGauge.markSuccess();
       }
     }
 
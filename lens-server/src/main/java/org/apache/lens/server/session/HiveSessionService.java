@@ -18,9 +18,7 @@
  */
 package org.apache.lens.server.session;
 
-import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
+import java.io.*;
 import java.util.*;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -71,8 +69,15 @@ import lombok.extern.slf4j.Slf4j;
 public class HiveSessionService extends BaseLensService implements SessionService {
 
 
-  /** The restorable sessions. */
-  private List<LensSessionImpl.LensSessionPersistInfo> restorableSessions;
+  /** Journal record of session opened or changed, with the persisted info of session. */
+  static final byte JOURNAL_SESSION = 1;
+
+  /** Journal record of session closed. */
+  static final byte JOURNAL_SESSION_CLOSED = 2;
+
+  /** The restorable sessions, by public id of session. */
+  private final Map<String, LensSessionImpl.LensSessionPersistInfo> restorableSessions =
+    new LinkedHashMap<String, LensSessionImpl.LensSessionPersistInfo>();
 
   /** The session expiry thread. */
   private ScheduledExecutorService sessionExpiryThread;
@@ -117,6 +122,7 @@ public class HiveSessionService extends BaseLensService implements SessionServic
     }
     if (!error) {
       getSession(sessionid).addResource(type, path);
+      journalSession(sessionid);
     }
     return numAdded;
   }
@@ -166,6 +172,7 @@ public class HiveSessionService extends BaseLensService implements SessionServic
       acquire(sessionid);
       closeCliServiceOp(getCliService().executeStatement(getHiveSessionHandle(sessionid), command, null));
       getSession(sessionid).removeResource(type, path);
+      journalSession(sessionid);
     } catch (HiveSQLException e) {
       throw new WebApplicationException(e);
     } finally {
@@ -251,6 +258,7 @@ public class HiveSessionService extends BaseLensService implements SessionServic
         addResourceToAllServices(sessionid, "jar", jar);
       }
     }
+    journalSession(sessionid);
     return sessionid;
   }
 
@@ -327,6 +335,7 @@ public class HiveSessionService extends BaseLensService implements SessionServic
       // add to persist
       if (addToSession) {
         getSession(sessionid).setConfig(config);
+        journalSession(sessionid);
       }
       log.info("Set params:" + config);
     } catch (HiveSQLException e) {
@@ -377,12 +386,12 @@ public class HiveSessionService extends BaseLensService implements SessionServic
         sessionExpiryInterval, TimeUnit.SECONDS);
 
     // Restore sessions if any
-    if (restorableSessions == null || restorableSessions.size() <= 0) {
+    if (restorableSessions.isEmpty()) {
       log.info("No sessions to restore");
       return;
     }
 
-    for (LensSessionImpl.LensSessionPersistInfo persistInfo : restorableSessions) {
+    for (LensSessionImpl.LensSessionPersistInfo persistInfo : restorableSessions.values()) {
       try {
         LensSessionHandle sessionHandle = persistInfo.getSessionHandle();
         restoreSession(sessionHandle, persistInfo.getUsername(), persistInfo.getPassword());
@@ -445,8 +454,10 @@ public class HiveSessionService extends BaseLensService implements SessionServic
     // Write out all the sessions
     out.writeInt(SESSION_MAP.size());
     for (LensSessionHandle sessionHandle : SESSION_MAP.values()) {
-      LensSessionImpl session = getSession(sessionHandle);
-      session.getLensSessionPersistInfo().writeExternal(out);
+      LensSessionImpl.LensSessionPersistInfo persistInfo = getSession(sessionHandle).getLensSessionPersistInfo();
+      synchronized (persistInfo) {
+        persistInfo.writeExternal(out);
+      }
     }
     log.info("Session service pesristed " + SESSION_MAP.size() + " sessions");
   }
@@ -469,17 +480,94 @@ public class HiveSessionService extends BaseLensService implements SessionServic
   @Override
   public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
     int numSessions = in.readInt();
-    restorableSessions = new ArrayList<LensSessionImpl.LensSessionPersistInfo>();
 
     for (int i = 0; i < numSessions; i++) {
       LensSessionImpl.LensSessionPersistInfo persistInfo = new LensSessionImpl.LensSessionPersistInfo();
       persistInfo.readExternal(in);
-      restorableSessions.add(persistInfo);
+      restorableSessions.put(persistInfo.getSessionHandle().getPublicId().toString(), persistInfo);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.lens.server.BaseLensService#replayJournalRecord(byte, byte[])
+   */
+  @Override
+  public void replayJournalRecord(byte type, byte[] payload) throws IOException, ClassNotFoundException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+    switch (type) {
+    case JOURNAL_SESSION:
+      LensSessionImpl.LensSessionPersistInfo persistInfo = new LensSessionImpl.LensSessionPersistInfo();
+      persistInfo.read(in);
+      restorableSessions.put(persistInfo.getSessionHandle().getPublicId().toString(), persistInfo);
+      break;
+    case JOURNAL_SESSION_CLOSED:
+      restorableSessions.remove(in.readUTF());
+      break;
+    default:
+      log.warn("Ignoring journal record of unknown type " + type);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.lens.server.BaseLensService#recoverState()
+   */
+  @Override
+  public void recoverState() {
+    for (LensSessionImpl.LensSessionPersistInfo persistInfo : restorableSessions.values()) {
       SESSION_MAP.put(persistInfo.getSessionHandle().getPublicId().toString(), persistInfo.getSessionHandle());
     }
     log.info("Session service recovered " + SESSION_MAP.size() + " sessions");
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void sessionChanged(LensSessionHandle sessionHandle) {
+    journalSession(sessionHandle);
+  }
+
+  /**
+   * Journal the persisted info of a session, after it is opened or changed.
+   *
+   * @param sessionHandle the session handle
+   */
+  private void journalSession(LensSessionHandle sessionHandle) {
+    if (!isJournaled()) {
+      return;
+    }
+    journalSessionRecord(JOURNAL_SESSION, getSession(sessionHandle).getLensSessionPersistInfo());
+  }
+
+  /**
+   * Journal a record of a session. Records are built and appended holding the persisted info of session, which is the
+   * lock under which the session changes it, so that they are journaled in the order of changes.
+   *
+   * @param type        the record type
+   * @param persistInfo the persisted info of session
+   */
+  private void journalSessionRecord(byte type, LensSessionImpl.LensSessionPersistInfo persistInfo) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      synchronized (persistInfo) {
+        if (type == JOURNAL_SESSION) {
+          persistInfo.write(out);
+        } else {
+          out.writeUTF(persistInfo.getSessionHandle().getPublicId().toString());
+        }
+        out.close();
+        appendToJournal(type, bytes.toByteArray());
+      }
+    } catch (IOException e) {
+      log.warn("Could not journal change to session " + persistInfo.getSessionHandle().getPublicId(), e);
+    }
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -495,7 +583,15 @@ public class HiveSessionService extends BaseLensService implements SessionServic
    * @throws LensException
    */
   private void closeInternal(LensSessionHandle sessionHandle) throws LensException {
+    // persisted info is got before closing, so that closing is journaled under its monitor
+    LensSessionImpl.LensSessionPersistInfo persistInfo = null;
+    if (isJournaled() && isOpen(sessionHandle)) {
+      persistInfo = getSession(sessionHandle).getLensSessionPersistInfo();
+    }
     super.closeSession(sessionHandle);
+    if (persistInfo != null) {
+      journalSessionRecord(JOURNAL_SESSION_CLOSED, persistInfo);
+    }
     // Inform query service
     BaseLensService svc = LensServices.get().getService(QueryExecutionService.NAME);
     if (svc instanceof QueryExecutionServiceImpl) {
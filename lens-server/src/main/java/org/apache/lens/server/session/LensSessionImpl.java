@@ -18,6 +18,8 @@
  */
 package org.apache.lens.server.session;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
@@ -240,7 +242,9 @@ public class LensSessionImpl extends HiveSessionImpl {
    * @param config   the config to overlay
    */
   public void setConfig(Map<String, String> config) {
-    persistInfo.getConfig().putAll(config);
+    synchronized (persistInfo) {
+      persistInfo.getConfig().putAll(config);
+    }
   }
 
   /**
@@ -250,11 +254,13 @@ public class LensSessionImpl extends HiveSessionImpl {
    * @param path the path
    */
   public void removeResource(String type, String path) {
-    Iterator<ResourceEntry> itr = persistInfo.getResources().iterator();
-    while (itr.hasNext()) {
-      ResourceEntry res = itr.next();
-      if (res.getType().equals(type) && res.getLocation().equals(path)) {
-        itr.remove();
+    synchronized (persistInfo) {
+      Iterator<ResourceEntry> itr = persistInfo.getResources().iterator();
+      while (itr.hasNext()) {
+        ResourceEntry res = itr.next();
+        if (res.getType().equals(type) && res.getLocation().equals(path)) {
+          itr.remove();
+        }
       }
     }
     updateSessionDbClassLoader(getSessionState().getCurrentDatabase());
@@ -268,7 +274,9 @@ public class LensSessionImpl extends HiveSessionImpl {
    */
   public void addResource(String type, String path) {
     ResourceEntry resource = new ResourceEntry(type, path);
-    persistInfo.getResources().add(resource);
+    synchronized (persistInfo) {
+      persistInfo.getResources().add(resource);
+    }
     synchronized (sessionDbClassLoaders) {
       // Update all DB class loaders
       updateSessionDbClassLoader(getSessionState().getCurrentDatabase());
@@ -284,7 +292,9 @@ public class LensSessionImpl extends HiveSessionImpl {
   }
 
   public void setCurrentDatabase(String currentDatabase) {
-    persistInfo.setDatabase(currentDatabase);
+    synchronized (persistInfo) {
+      persistInfo.setDatabase(currentDatabase);
+    }
     getSessionState().setCurrentDatabase(currentDatabase);
     // Merge if resources are added
     synchronized (sessionDbClassLoaders) {
@@ -523,6 +533,17 @@ public class LensSessionImpl extends HiveSessionImpl {
      */
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
+      write(out);
+    }
+
+    /**
+     * Write the persisted info as binary fields. Callers should hold the monitor of persisted info, under which the
+     * session changes it.
+     *
+     * @param out the output
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void write(DataOutput out) throws IOException {
       out.writeUTF(sessionHandle.toString());
       out.writeUTF(database == null ? "default" : database);
       out.writeUTF(username == null ? "" : username);
@@ -549,6 +570,16 @@ public class LensSessionImpl extends HiveSessionImpl {
      */
     @Override
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+      read(in);
+    }
+
+    /**
+     * Read the persisted info written by {@link #write(DataOutput)}.
+     *
+     * @param in the input
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void read(DataInput in) throws IOException {
       sessionHandle = LensSessionHandle.valueOf(in.readUTF());
       database = in.readUTF();
       username = in.readUTF();
@@ -109,6 +109,10 @@ public class QueryServiceUIResource {
    * @param queryName human readable query name set by user (optional)
    * @param fromDate  the from date
    * @param toDate    the to date
+   * @param limit     maximum number of queries to return, latest submitted first. By default, all queries are
+   *                  returned.
+   * @param cursor    handle of the last query returned in the previous page. Queries submitted before it are
+   *                  returned. By default, queries from the latest are returned.
    * @return List of {@link QueryHandle} objects
    */
   @GET
@@ -117,12 +121,13 @@ public class QueryServiceUIResource {
   public List<QueryHandle> getAllQueries(@QueryParam("publicId") UUID publicId,
     @DefaultValue("") @QueryParam("state") String state, @DefaultValue("") @QueryParam("user") String user,
     @DefaultValue("") @QueryParam("queryName") String queryName,
-    @DefaultValue("-1") @QueryParam("fromDate") long fromDate, @DefaultValue("-1") @QueryParam("toDate") long toDate) {
+    @DefaultValue("-1") @QueryParam("fromDate") long fromDate, @DefaultValue("-1") @QueryParam("toDate") long toDate,
+    @DefaultValue("0") @QueryParam("limit") int limit, @DefaultValue("") @QueryParam("cursor") String cursor) {
     LensSessionHandle sessionHandle = SessionUIResource.getOpenSession(publicId);
     checkSessionHandle(sessionHandle);
     try {
       return queryServer.getAllQueries(sessionHandle, state, user, queryName, fromDate, toDate == -1L ? Long.MAX_VALUE
-        : toDate);
+        : toDate, limit, StringUtils.isBlank(cursor) ? null : getQueryHandle(cursor));
     } catch (LensException e) {
       throw new WebApplicationException(e);
     }
@@ -0,0 +1,183 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server;
+
+import static org.testng.Assert.*;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for appending, replaying and compacting {@link StateJournal}.
+ */
+public class TestStateJournal {
+
+  private FileSystem fs;
+  private Path dir;
+
+  /**
+   * Records replayed from journal, as type:payload.
+   */
+  private static class RecordCollector implements StateJournal.RecordHandler {
+    private final List<String> records = new ArrayList<String>();
+
+    @Override
+    public void replay(byte type, byte[] payload) {
+      records.add(type + ":" + new String(payload));
+    }
+  }
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    fs = FileSystem.getLocal(new Configuration());
+    dir = new Path("target/test-state-journal");
+    fs.delete(dir, true);
+    fs.mkdirs(dir);
+  }
+
+  @AfterMethod
+  public void tearDown() throws IOException {
+    fs.delete(dir, true);
+  }
+
+  private List<String> replay(StateJournal journal) throws IOException, ClassNotFoundException {
+    RecordCollector collector = new RecordCollector();
+    journal.replay(collector);
+    return collector.records;
+  }
+
+  /**
+   * Records appended before and after a roll are replayed in order, until older segments are deleted.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testReplayAndCompaction() throws Exception {
+    StateJournal journal = new StateJournal(fs, dir, "svc");
+    journal.open();
+    journal.append((byte) 1, "a".getBytes());
+    journal.append((byte) 2, "b".getBytes());
+    journal.sync();
+    assertTrue(journal.needsCompaction(2));
+    assertFalse(journal.needsCompaction(3));
+
+    long retained = journal.roll();
+    assertFalse(journal.needsCompaction(1));
+    journal.append((byte) 3, "c".getBytes());
+    journal.close();
+
+    // another service's journal in same location is not replayed
+    StateJournal other = new StateJournal(fs, dir, "other");
+    other.open();
+    other.append((byte) 1, "x".getBytes());
+    other.close();
+
+    StateJournal restarted = new StateJournal(fs, dir, "svc");
+    assertEquals(replay(restarted), Arrays.asList("1:a", "2:b", "3:c"));
+
+    restarted.deleteSegmentsBefore(retained);
+    assertEquals(replay(restarted), Arrays.asList("3:c"));
+
+    // new segment starts after the existing ones
+    restarted.open();
+    restarted.append((byte) 4, "d".getBytes());
+    restarted.close();
+    assertEquals(replay(restarted), Arrays.asList("3:c", "4:d"));
+  }
+
+  /**
+   * A partially written record at the end of segment is ignored.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testIncompleteRecord() throws Exception {
+    FSDataOutputStream out = fs.create(new Path(dir, "svc.journal.1"));
+    StateJournal.writeRecord(out, (byte) 1, "complete".getBytes());
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    StateJournal.writeRecord(new DataOutputStream(bytes), (byte) 2, "incomplete".getBytes());
+    out.write(bytes.toByteArray(), 0, bytes.size() - 3);
+    out.close();
+
+    assertEquals(replay(new StateJournal(fs, dir, "svc")), Arrays.asList("1:complete"));
+  }
+
+  /**
+   * A record which fails checksum ends the replay of its segment.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testCorruptRecord() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    StateJournal.writeRecord(out, (byte) 1, "first".getBytes());
+    int corruptAt = bytes.size() + 9;
+    StateJournal.writeRecord(out, (byte) 2, "second".getBytes());
+    StateJournal.writeRecord(out, (byte) 3, "third".getBytes());
+    byte[] data = bytes.toByteArray();
+    data[corruptAt] ^= 0xff;
+
+    RecordCollector collector = new RecordCollector();
+    long replayed = StateJournal.replaySegment(new DataInputStream(new ByteArrayInputStream(data)), collector,
+      "test");
+    assertEquals(replayed, 1);
+    assertEquals(collector.records, Arrays.asList("1:first"));
+  }
+
+  /**
+   * Fields written with the payload helpers are read back, including null and long values.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testPayloadFields() throws Exception {
+    StringBuilder longValue = new StringBuilder();
+    while (longValue.length() <= 0xffff) {
+      longValue.append("long value \u00e9 ");
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    StateJournal.writeString(out, "value");
+    StateJournal.writeString(out, null);
+    StateJournal.writeString(out, longValue.toString());
+    StateJournal.writeSerializable(out, new ArrayList<String>(Arrays.asList("a", "b")));
+    StateJournal.writeSerializable(out, null);
+    out.close();
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(StateJournal.readString(in), "value");
+    assertNull(StateJournal.readString(in));
+    assertEquals(StateJournal.readString(in), longValue.toString());
+    assertEquals(StateJournal.readSerializable(in), Arrays.asList("a", "b"));
+    assertNull(StateJournal.readSerializable(in));
+    assertEquals(in.read(), -1);
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.query;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.*;
+
+import java.util.concurrent.*;
+
+import org.apache.lens.server.api.driver.LensDriver;
+import org.apache.lens.server.api.driver.MockDriver;
+import org.apache.lens.server.api.query.QueryContext;
+
+import org.testng.annotations.Test;
+
+public class LaunchAdmissionLockTest {
+
+  private QueryContext mockQuery(LensDriver driver, String user) {
+    QueryContext ctx = mock(QueryContext.class);
+    when(ctx.getSelectedDriver()).thenReturn(driver);
+    when(ctx.getSubmittedUser()).thenReturn(user);
+    return ctx;
+  }
+
+  @Test
+  public void testStripesAreOrderedAndDistinct() {
+    LaunchAdmissionLock lock = new LaunchAdmissionLock(16);
+    LensDriver driver = new MockDriver();
+
+    for (int i = 0; i < 100; i++) {
+      int[] stripes = lock.getStripes(mockQuery(driver, "user" + i));
+      assertTrue(stripes.length == 1 || stripes.length == 2);
+      if (stripes.length == 2) {
+        assertTrue(stripes[0] < stripes[1]);
+      }
+    }
+    // single stripe is shared by everything
+    assertEquals(new LaunchAdmissionLock(1).getStripes(mockQuery(driver, "user")), new int[]{0});
+    assertEquals(lock.getStripes(mockQuery(null, null)), new int[]{0});
+  }
+
+  @Test(timeOut = 10000)
+  public void testLockAllWaitsForAdmission() throws Exception {
+    final LaunchAdmissionLock lock = new LaunchAdmissionLock(4);
+    QueryContext query = mockQuery(new MockDriver(), "user");
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      lock.lockAdmission(query);
+      Future<?> removal = executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          lock.lockAll();
+          lock.unlockAll();
+        }
+      });
+      try {
+        removal.get(200, TimeUnit.MILLISECONDS);
+        fail("Removal should wait while a query is being admitted");
+      } catch (TimeoutException e) {
+        // expected
+      }
+      lock.unlockAdmission(query);
+      removal.get();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.query;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.lens.api.query.QueryHandle;
+import org.apache.lens.server.api.driver.MockDriver;
+import org.apache.lens.server.api.query.QueryContext;
+
+import org.testng.annotations.Test;
+
+public class QueryStatusPollSchedulerTest {
+
+  private QueryContext mockQuery(long launchTime) {
+    QueryContext ctx = mock(QueryContext.class);
+    when(ctx.getQueryHandle()).thenReturn(new QueryHandle(UUID.randomUUID()));
+    when(ctx.getLaunchTime()).thenReturn(launchTime);
+    when(ctx.getSelectedDriver()).thenReturn(new MockDriver());
+    return ctx;
+  }
+
+  @Test
+  public void testPollIntervalBackoff() {
+    QueryStatusPollScheduler scheduler = new QueryStatusPollScheduler(1000, 10000, 0.1f);
+    QueryContext ctx = mockQuery(100000);
+
+    assertEquals(scheduler.getPollInterval(ctx, 100000), 1000);
+    assertEquals(scheduler.getPollInterval(ctx, 105000), 1000);
+    assertEquals(scheduler.getPollInterval(ctx, 150000), 5000);
+    assertEquals(scheduler.getPollInterval(ctx, 1000000), 10000);
+  }
+
+  @Test
+  public void testDueQueries() {
+    QueryStatusPollScheduler scheduler = new QueryStatusPollScheduler(1000, 10000, 0.1f);
+    QueryContext ctx1 = mockQuery(0);
+    QueryContext ctx2 = mockQuery(0);
+    scheduler.add(ctx1, 100000);
+    scheduler.add(ctx2, 100000);
+
+    // new queries are due right away
+    assertEquals(scheduler.getDueQueries(100000), Arrays.asList(ctx1, ctx2));
+    // queries being polled are not handed out again
+    assertTrue(scheduler.getDueQueries(200000).isEmpty());
+
+    scheduler.pollStarted(ctx1, 100000);
+    scheduler.pollCompleted(ctx1, 100000);
+    // ctx1 is due after 10 seconds, since it is running for 100 seconds
+    assertTrue(scheduler.getDueQueries(109999).isEmpty());
+    assertEquals(scheduler.getDueQueries(110000), Collections.singletonList(ctx1));
+
+    // queries removed from launched are not polled again
+    scheduler.remove(ctx2.getQueryHandle());
+    scheduler.pollCompleted(ctx2, 110000);
+    assertTrue(scheduler.getDueQueries(1000000).isEmpty());
+  }
+
+  @Test
+  public void testLaunchingQueriesAreSkipped() {
+    QueryStatusPollScheduler scheduler = new QueryStatusPollScheduler(1000, 10000, 0.1f);
+    QueryContext ctx = mockQuery(0);
+    when(ctx.queued()).thenReturn(true);
+    scheduler.add(ctx, 100000);
+
+    assertTrue(scheduler.getDueQueries(100000).isEmpty());
+    // checked again after minimum interval
+    when(ctx.queued()).thenReturn(false);
+    assertTrue(scheduler.getDueQueries(100999).isEmpty());
+    assertEquals(scheduler.getDueQueries(101000), Collections.singletonList(ctx));
+  }
+
+  @Test
+  public void testPollNow() {
+    QueryStatusPollScheduler scheduler = new QueryStatusPollScheduler(1000, 10000, 0.1f);
+    QueryContext ctx = mockQuery(0);
+    List<QueryContext> launched = Collections.singletonList(ctx);
+    scheduler.add(ctx, 100000);
+
+    assertEquals(scheduler.getDueQueries(100000), launched);
+    // pushed while being polled, query is due as soon as the poll completes
+    assertFalse(scheduler.pollNow(ctx.getQueryHandle(), 100500));
+    scheduler.pollCompleted(ctx, 101000);
+    assertEquals(scheduler.getDueQueries(101000), launched);
+    scheduler.pollCompleted(ctx, 101000);
+
+    // pushed when not being polled, caller has to poll
+    assertTrue(scheduler.pollNow(ctx.getQueryHandle(), 102000));
+    assertTrue(scheduler.getDueQueries(102000).isEmpty());
+    scheduler.pollCompleted(ctx, 102000);
+    assertTrue(scheduler.getDueQueries(102000).isEmpty());
+    assertEquals(scheduler.getDueQueries(112200), launched);
+  }
+}
@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.query;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+import org.apache.lens.server.api.driver.LensDriver;
+import org.apache.lens.server.api.driver.MockDriver;
+import org.apache.lens.server.api.query.QueryContext;
+import org.apache.lens.server.api.query.cost.FactPartitionBasedQueryCost;
+
+import org.testng.annotations.Test;
+
+public class SubmissionLanesTest {
+
+  private QueryContext mockQuery(LensDriver driver, double cost, long submissionTime) {
+    QueryContext ctx = mock(QueryContext.class);
+    when(ctx.getSelectedDriver()).thenReturn(driver);
+    when(ctx.getSelectedDriverQueryCost()).thenReturn(new FactPartitionBasedQueryCost(cost));
+    when(ctx.getSubmissionTime()).thenReturn(submissionTime);
+    return ctx;
+  }
+
+  /**
+   * Lanes which record launched queries and the launching thread, and block launches of given queries till released.
+   */
+  private static class RecordingLanes extends SubmissionLanes {
+    private final BlockingQueue<QueryContext> launched = new LinkedBlockingQueue<QueryContext>();
+    private final ConcurrentMap<QueryContext, String> threads = new ConcurrentHashMap<QueryContext, String>();
+    private final ConcurrentMap<QueryContext, CountDownLatch> blocked = new ConcurrentHashMap<QueryContext,
+      CountDownLatch>();
+
+    RecordingLanes(int launchersPerDriver) {
+      super(launchersPerDriver);
+    }
+
+    @Override
+    void launch(QueryContext query) {
+      threads.put(query, Thread.currentThread().getName());
+      CountDownLatch latch = blocked.get(query);
+      if (latch != null) {
+        try {
+          latch.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+      launched.add(query);
+    }
+
+    QueryContext nextLaunched() throws InterruptedException {
+      return launched.poll(5, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test(timeOut = 20000)
+  public void testBlockedLaneDoesNotHoldUpOtherDrivers() throws Exception {
+    RecordingLanes lanes = new RecordingLanes(1);
+    // drivers of same class get lanes of their own
+    LensDriver driver1 = new MockDriver();
+    LensDriver driver2 = new MockDriver();
+    QueryContext slow = mockQuery(driver1, 1.0, 1);
+    QueryContext queued = mockQuery(driver1, 1.0, 2);
+    QueryContext other = mockQuery(driver2, 1.0, 3);
+    CountDownLatch release = new CountDownLatch(1);
+    lanes.blocked.put(slow, release);
+    try {
+      lanes.add(driver1, slow);
+      lanes.add(driver1, queued);
+      lanes.add(driver2, other);
+
+      assertSame(lanes.nextLaunched(), other);
+      assertNull(lanes.launched.poll(200, TimeUnit.MILLISECONDS));
+      assertEquals(lanes.size(), 1);
+      assertNotEquals(lanes.threads.get(slow), lanes.threads.get(other));
+
+      release.countDown();
+      assertSame(lanes.nextLaunched(), slow);
+      assertSame(lanes.nextLaunched(), queued);
+      assertEquals(lanes.threads.get(queued), lanes.threads.get(slow));
+      assertEquals(lanes.size(), 0);
+    } finally {
+      release.countDown();
+      lanes.stop();
+    }
+  }
+
+  @Test(timeOut = 20000)
+  public void testPriorityOrderWithinLane() throws Exception {
+    RecordingLanes lanes = new RecordingLanes(1);
+    LensDriver driver = new MockDriver();
+    QueryContext blocker = mockQuery(driver, 0.0, 0);
+    CountDownLatch release = new CountDownLatch(1);
+    lanes.blocked.put(blocker, release);
+    try {
+      lanes.add(driver, blocker);
+      // wait till the only launcher is busy, so that the rest queue up in the lane
+      while (!lanes.threads.containsKey(blocker)) {
+        Thread.sleep(10);
+      }
+      QueryContext costly = mockQuery(driver, 30.0, 1);
+      QueryContext cheapLater = mockQuery(driver, 5.0, 3);
+      QueryContext cheap = mockQuery(driver, 5.0, 2);
+      QueryContext cancelled = mockQuery(driver, 1.0, 4);
+      for (QueryContext query : Arrays.asList(costly, cheapLater, cheap, cancelled)) {
+        lanes.add(driver, query);
+      }
+      assertTrue(lanes.remove(cancelled));
+      assertFalse(lanes.remove(cancelled));
+      assertEquals(lanes.size(), 4 - 1);
+
+      release.countDown();
+      List<QueryContext> expected = Arrays.asList(blocker, cheap, cheapLater, costly);
+      for (QueryContext query : expected) {
+        assertSame(lanes.nextLaunched(), query);
+      }
+      assertNull(lanes.launched.poll(200, TimeUnit.MILLISECONDS));
+    } finally {
+      release.countDown();
+      lanes.stop();
+    }
+  }
+}
@@ -22,8 +22,7 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.HashMap;
-import java.util.List;
+import java.util.*;
 
 import javax.ws.rs.core.Application;
 
@@ -145,6 +144,79 @@ public class TestLensDAO extends LensJerseyTest {
     Assert.assertEquals(daoTestQueryHandles.get(0).getHandleId().toString(), finishedHandle);
   }
 
+  /**
+   * Test batch insert of finished queries and paging through them.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testBatchInsertAndPagination() throws Exception {
+    QueryExecutionServiceImpl service = LensServices.get().getService(QueryExecutionService.NAME);
+    List<FinishedLensQuery> queries = new ArrayList<FinishedLensQuery>();
+    for (int i = 0; i < 5; i++) {
+      QueryContext queryContext = service.createContext("SELECT ID FROM testTable", "batchuser", new LensConf(),
+        new Configuration());
+      queryContext.setQueryName("daoBatchQuery");
+      FinishedLensQuery finishedLensQuery = new FinishedLensQuery(queryContext);
+      finishedLensQuery.setStatus(QueryStatus.Status.SUCCESSFUL.name());
+      // two queries share submission time, so that handle decides their order
+      finishedLensQuery.setSubmissionTime(1000L + Math.min(i, 3));
+      queries.add(finishedLensQuery);
+    }
+    Set<String> saved = service.lensServerDao.insertFinishedQueries(queries.subList(0, 2));
+    Assert.assertEquals(saved.size(), 2);
+    // queries already in DB are skipped in the batch
+    saved = service.lensServerDao.insertFinishedQueries(queries);
+    Assert.assertEquals(saved.size(), 5);
+
+    List<String> paged = new ArrayList<String>();
+    FinishedLensQuery cursor = null;
+    while (true) {
+      List<FinishedLensQuery> page = service.lensServerDao.findFinishedQueries(null, "batchuser", "daobatchquery",
+        -1L, Long.MAX_VALUE, 2, cursor == null ? 0 : cursor.getSubmissionTime(),
+        cursor == null ? null : cursor.getHandle());
+      if (page.isEmpty()) {
+        break;
+      }
+      Assert.assertTrue(page.size() <= 2);
+      for (FinishedLensQuery query : page) {
+        paged.add(query.getHandle());
+      }
+      cursor = page.get(page.size() - 1);
+    }
+    Assert.assertEquals(paged.size(), 5);
+    Set<String> inserted = new HashSet<String>();
+    for (FinishedLensQuery query : queries) {
+      inserted.add(query.getHandle());
+    }
+    Assert.assertEquals(new HashSet<String>(paged), inserted);
+    for (int i = 1; i < paged.size(); i++) {
+      FinishedLensQuery previous = service.lensServerDao.getQuery(paged.get(i - 1));
+      FinishedLensQuery current = service.lensServerDao.getQuery(paged.get(i));
+      Assert.assertTrue(previous.getSubmissionTime() > current.getSubmissionTime()
+        || (previous.getSubmissionTime() == current.getSubmissionTime()
+        && previous.getHandle().compareTo(current.getHandle()) > 0));
+    }
+
+    // pages through service include the same queries
+    LensSessionHandle session = service.openSession("foo@localhost", "bar", new HashMap<String, String>());
+    List<QueryHandle> firstPage = service.getAllQueries(session, "", "batchuser", "daobatchquery", 1000L, 1003L, 3,
+      null);
+    Assert.assertEquals(firstPage.size(), 3);
+    List<QueryHandle> secondPage = service.getAllQueries(session, "", "batchuser", "daobatchquery", 1000L, 1003L, 3,
+      firstPage.get(2));
+    Assert.assertEquals(secondPage.size(), 2);
+    List<String> servicePaged = new ArrayList<String>();
+    for (QueryHandle handle : firstPage) {
+      servicePaged.add(handle.toString());
+    }
+    for (QueryHandle handle : secondPage) {
+      servicePaged.add(handle.toString());
+    }
+    Assert.assertEquals(servicePaged, paged);
+    service.closeSession(session);
+  }
+
   /*
    * (non-Javadoc)
    *
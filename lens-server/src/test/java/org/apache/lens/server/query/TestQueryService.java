@@ -26,6 +26,7 @@ import static org.testng.Assert.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import javax.ws.rs.NotFoundException;
 import javax.ws.rs.client.Entity;
@@ -934,6 +935,31 @@ public class TestQueryService extends LensJerseyTest {
       .queryParam("sessionid", lensSessionId).request().get(InMemoryQueryResult.class);
     validateInmemoryResult(resultset);
 
+    // fetch a page of results
+    InMemoryQueryResult page = target.path(handle.toString()).path("resultset")
+      .queryParam("sessionid", lensSessionId).queryParam("fromindex", 2).queryParam("fetchsize", 2).request()
+      .get(InMemoryQueryResult.class);
+    assertEquals(page.getRows().size(), 2);
+    assertEquals(page.getRows().get(0).getValues().get(0), 3);
+
+    // stream results
+    String streamed = target.path(handle.toString()).path("streamingresultset")
+      .queryParam("sessionid", lensSessionId).request(MediaType.APPLICATION_JSON).get(String.class);
+    assertEquals(streamed, "[[1,\"one\"],[null,\"two\"],[3,null],[null,null],[5,\"\"]]");
+
+    // fetch results in columnar format, which metadata says is available
+    assertTrue(target.path(handle.toString()).path("resultsetmetadata").queryParam("sessionid", lensSessionId)
+      .request().get(QueryResultSetMetadata.class).isInMemory());
+    ColumnarResultReader reader = new ColumnarResultReader(target.path(handle.toString()).path("resultset")
+      .queryParam("sessionid", lensSessionId).request(ColumnarResultWriter.MEDIA_TYPE).get(InputStream.class));
+    ColumnarResultBatch batch = reader.nextBatch();
+    assertEquals(batch.getNumRows(), 5);
+    assertEquals(batch.getInt(0, 0), 1);
+    assertTrue(batch.isNull(0, 1));
+    assertEquals(batch.getString(1, 1), "two");
+    assertNull(reader.nextBatch());
+    reader.close();
+
     validNotFoundForHttpResult(target(), lensSessionId, handle);
   }
 
@@ -1118,6 +1144,44 @@ public class TestQueryService extends LensJerseyTest {
     validateInmemoryResult((InMemoryQueryResult) result.getResult());
   }
 
+  /**
+   * Test execute with timeout query through the non blocking endpoint, and completion future of query.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testNonBlockingExecuteWithTimeoutQuery() throws Exception {
+    final WebTarget target = target().path("queryapi/queries/executewithtimeout");
+
+    final FormDataMultiPart mp = new FormDataMultiPart();
+    LensConf conf = new LensConf();
+    conf.addProperty(LensConfConstants.QUERY_PERSISTENT_RESULT_INDRIVER, "false");
+    mp.bodyPart(new FormDataBodyPart(FormDataContentDisposition.name("sessionid").build(), lensSessionId,
+      MediaType.APPLICATION_XML_TYPE));
+    mp.bodyPart(new FormDataBodyPart(FormDataContentDisposition.name("query").build(), "select ID, IDSTR from "
+      + TEST_TABLE));
+    // set a timeout value enough for tests
+    mp.bodyPart(new FormDataBodyPart(FormDataContentDisposition.name("timeoutmillis").build(), "300000"));
+    mp.bodyPart(new FormDataBodyPart(FormDataContentDisposition.name("conf").fileName("conf").build(), conf,
+      MediaType.APPLICATION_XML_TYPE));
+
+    QueryHandleWithResultSet result = target.request().post(Entity.entity(mp, MediaType.MULTIPART_FORM_DATA_TYPE),
+      new GenericType<LensAPIResult<QueryHandleWithResultSet>>() {}).getData();
+    assertNotNull(result.getQueryHandle());
+    assertNotNull(result.getResult());
+    validateInmemoryResult((InMemoryQueryResult) result.getResult());
+
+    // completion future of a finished query completes immediately
+    QueryStatus status = queryService.getCompletionFuture(lensSessionId, result.getQueryHandle()).get(1,
+      TimeUnit.SECONDS);
+    assertTrue(status.finished());
+
+    QueryHandle handle = queryService.executeAsync(lensSessionId, "select ID, IDSTR from " + TEST_TABLE,
+      new LensConf(), "testCompletionFuture");
+    status = queryService.getCompletionFuture(lensSessionId, handle).get(300, TimeUnit.SECONDS);
+    assertEquals(status.getStatus(), Status.SUCCESSFUL);
+  }
+
   /**
    * Test execute with timeout query.
    *
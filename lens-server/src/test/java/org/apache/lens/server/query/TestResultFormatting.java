@@ -40,8 +40,10 @@ import org.apache.lens.server.LensJerseyTest;
 import org.apache.lens.server.LensServices;
 import org.apache.lens.server.LensTestUtil;
 import org.apache.lens.server.api.LensConfConstants;
+import org.apache.lens.server.api.metrics.MetricsService;
 import org.apache.lens.server.api.query.*;
 import org.apache.lens.server.common.TestResourceFile;
+import org.apache.lens.server.query.ResultFormatter.Lane;
 
 import org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe;
 
@@ -154,6 +156,32 @@ public class TestResultFormatting extends LensJerseyTest {
     queryService.conf.unset(LensConfConstants.RESULT_FS_READ_URL);
   }
 
+  /**
+   * Test persistent result formatted in large lane.
+   *
+   * @throws InterruptedException the interrupted exception
+   * @throws IOException          Signals that an I/O exception has occurred.
+   */
+  @Test
+  public void testResultFormatterLargeLane() throws InterruptedException, IOException {
+    MetricsService metricsService = LensServices.get().getService(MetricsService.NAME);
+    long smallFormatted = metricsService.getCounter(ResultFormatter.class, Lane.SMALL.getFormattedCounter());
+    long largeFormatted = metricsService.getCounter(ResultFormatter.class, Lane.LARGE.getFormattedCounter());
+    LensConf conf = new LensConf();
+    conf.addProperty(LensConfConstants.QUERY_PERSISTENT_RESULT_INDRIVER, "true");
+    queryService.conf.setLong(LensConfConstants.RESULT_FORMATTER_LARGE_LANE_SIZE, 0);
+    try {
+      testResultFormatter(conf, QueryStatus.Status.SUCCESSFUL, false, null);
+    } finally {
+      queryService.conf.unset(LensConfConstants.RESULT_FORMATTER_LARGE_LANE_SIZE);
+    }
+    Assert.assertEquals(metricsService.getCounter(ResultFormatter.class, Lane.LARGE.getFormattedCounter()),
+      largeFormatted + 1);
+    Assert.assertEquals(metricsService.getCounter(ResultFormatter.class, Lane.SMALL.getFormattedCounter()),
+      smallFormatted);
+    Assert.assertEquals(metricsService.getCounter(ResultFormatter.class, Lane.LARGE.getQueuedCounter()), 0);
+  }
+
   /**
    * Test persistent result with max size.
    *
@@ -27,9 +27,11 @@ import static org.testng.Assert.assertEquals;
 
 import java.util.Set;
 
+import org.apache.lens.api.Priority;
 import org.apache.lens.server.api.driver.LensDriver;
 import org.apache.lens.server.api.error.LensException;
 import org.apache.lens.server.api.query.QueryContext;
+import org.apache.lens.server.api.query.collect.QueryAggregate;
 import org.apache.lens.server.api.query.cost.FactPartitionBasedQueryCost;
 import org.apache.lens.server.api.query.cost.QueryCost;
 
@@ -58,24 +60,79 @@ public class DefaultEstimatedQueryCollectionTest {
 
     QueryCollection mockQueries = mock(QueryCollection.class);
     Set<QueryContext> mockQueriesSet = createQueriesSetWithUserStubbing(2, MOCK_USER);
-    when(mockQueries.getQueries(MOCK_USER)).thenReturn(mockQueriesSet);
+    LensDriver mockSelectedDriver = mock(LensDriver.class);
 
     final QueryContext query0 = Iterables.get(mockQueriesSet, 0);
     final QueryContext query1 = Iterables.get(mockQueriesSet, 1);
 
     final QueryCost mockCost0 = mock(QueryCost.class);
     final QueryCost mockCost1 = mock(QueryCost.class);
-    final QueryCost mockCost0Plus0 = mock(QueryCost.class);
-    final QueryCost mockCost0Plus0Plus1 = mock(QueryCost.class);
+    final QueryCost mockCost0Plus1 = mock(QueryCost.class);
 
+    for (QueryContext query : mockQueriesSet) {
+      when(query.getSelectedDriver()).thenReturn(mockSelectedDriver);
+    }
     when(query0.getSelectedDriverQueryCost()).thenReturn(mockCost0);
     when(query1.getSelectedDriverQueryCost()).thenReturn(mockCost1);
 
-    when(mockCost0.add(mockCost0)).thenReturn(mockCost0Plus0);
-    when(mockCost0Plus0.add(mockCost1)).thenReturn(mockCost0Plus0Plus1);
+    when(mockCost0.add(mockCost1)).thenReturn(mockCost0Plus1);
+
+    EstimatedQueryCollection queries = new DefaultEstimatedQueryCollection(mockQueries);
+    queries.addAll(mockQueriesSet);
+    assertEquals(queries.getTotalQueryCost(MOCK_USER), mockCost0Plus1);
+    assertEquals(queries.getTotalQueryCost(mockSelectedDriver), mockCost0Plus1);
+
+    /* Adding a query again does not change total, removing a query leaves the cost of remaining queries */
+    queries.add(query0);
+    assertEquals(queries.getTotalQueryCost(MOCK_USER), mockCost0Plus1);
+    queries.remove(query0);
+    assertEquals(queries.getTotalQueryCost(MOCK_USER), mockCost1);
+  }
+
+  @Test
+  public void testRemoveKeepsOtherQueriesOfDriver() throws LensException {
+
+    QueryCollection mockQueries = mock(QueryCollection.class);
+    Set<QueryContext> mockQueriesSet = createQueriesSetWithUserStubbing(3, MOCK_USER);
+    LensDriver mockSelectedDriver = mock(LensDriver.class);
+    for (QueryContext query : mockQueriesSet) {
+      when(query.getSelectedDriver()).thenReturn(mockSelectedDriver);
+      when(query.getSelectedDriverQueryCost()).thenReturn(new FactPartitionBasedQueryCost(10));
+      when(query.getPriority()).thenReturn(Priority.HIGH);
+    }
+
+    EstimatedQueryCollection queries = new DefaultEstimatedQueryCollection(mockQueries);
+    queries.addAll(mockQueriesSet);
+    queries.remove(Iterables.get(mockQueriesSet, 0));
+
+    assertEquals(queries.getQueriesCount(mockSelectedDriver), 2);
+    assertEquals(queries.getQueries(mockSelectedDriver).size(), 2);
+    assertEquals(queries.getQueriesCount(Priority.HIGH), 2);
+    assertEquals(queries.getQueriesCount(Priority.LOW), 0);
+    assertEquals(queries.getTotalQueryCost(MOCK_USER), new FactPartitionBasedQueryCost(20));
+  }
+
+  @Test
+  public void testAddedAggregateIsUpdated() throws LensException {
 
-    QueryCost actualQueryCost = new DefaultEstimatedQueryCollection(mockQueries).getTotalQueryCost(MOCK_USER);
-    assertEquals(actualQueryCost, mockCost0Plus0Plus1);
+    Set<QueryContext> mockQueriesSet = createQueriesSetWithUserStubbing(2, MOCK_USER);
+    LensDriver mockSelectedDriver = mock(LensDriver.class);
+    for (QueryContext query : mockQueriesSet) {
+      when(query.getSelectedDriver()).thenReturn(mockSelectedDriver);
+      when(query.getSelectedDriverQueryCost()).thenReturn(new FactPartitionBasedQueryCost(10));
+    }
+    EstimatedQueryCollection queries = new DefaultEstimatedQueryCollection(new DefaultQueryCollection());
+    queries.add(Iterables.get(mockQueriesSet, 0));
+
+    /* Existing queries are added to aggregate on registration */
+    QueryAggregate aggregate = mock(QueryAggregate.class);
+    queries.addAggregate(aggregate);
+    verify(aggregate, times(1)).add(Iterables.get(mockQueriesSet, 0));
+
+    queries.add(Iterables.get(mockQueriesSet, 1));
+    queries.remove(Iterables.get(mockQueriesSet, 0));
+    verify(aggregate, times(1)).add(Iterables.get(mockQueriesSet, 1));
+    verify(aggregate, times(1)).remove(Iterables.get(mockQueriesSet, 0));
   }
 
   @Test
@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.query.collect;
+
+import static org.apache.lens.api.query.QueryStatus.Status.*;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import static org.testng.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.lens.api.query.QueryHandle;
+import org.apache.lens.api.query.QueryStatus;
+import org.apache.lens.server.api.query.QueryContext;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+
+public class QueryRegistryTest {
+
+  private static final String MOCK_HANDLE = "0-0-0-0-";
+
+  private static QueryContext createQuery(int index, String user, long submissionTime, QueryStatus.Status status) {
+    QueryContext query = mock(QueryContext.class);
+    QueryHandle handle = QueryHandle.fromString(MOCK_HANDLE + index);
+    when(query.getQueryHandle()).thenReturn(handle);
+    when(query.getQueryHandleString()).thenReturn(handle.getHandleIdString());
+    when(query.getSubmittedUser()).thenReturn(user);
+    when(query.getSubmissionTime()).thenReturn(submissionTime);
+    setStatus(query, status);
+    return query;
+  }
+
+  private static void setStatus(QueryContext query, QueryStatus.Status status) {
+    when(query.getStatus()).thenReturn(new QueryStatus(0.0, null, status, null, false, null, null, null));
+  }
+
+  @Test
+  public void testIndexesAreInListingOrder() {
+
+    /* Initialization: q2 and q3 are submitted at the same time */
+    QueryRegistry registry = new QueryRegistry();
+    QueryContext q1 = createQuery(1, "user1", 100, QUEUED);
+    QueryContext q2 = createQuery(2, "User2", 200, QUEUED);
+    QueryContext q3 = createQuery(3, "user1", 200, RUNNING);
+    QueryContext q4 = createQuery(4, "user1", 300, QUEUED);
+    for (QueryContext query : Arrays.asList(q2, q4, q1, q3)) {
+      registry.put(query);
+    }
+
+    /* Verification: latest first, handle breaks ties */
+    assertEquals(registry.size(), 4);
+    assertSame(registry.get(q2.getQueryHandle()), q2);
+    assertEquals(Lists.newArrayList(registry.getQueries(null, null, 0, null)), Arrays.asList(q4, q3, q2, q1));
+    assertEquals(Lists.newArrayList(registry.getQueries(null, "USER1", 0, null)), Arrays.asList(q4, q3, q1));
+    assertEquals(Lists.newArrayList(registry.getQueries(null, "user2", 0, null)), Arrays.asList(q2));
+    assertEquals(Lists.newArrayList(registry.getQueries(null, "user3", 0, null)), Collections.emptyList());
+    assertEquals(Lists.newArrayList(registry.getQueries(QUEUED, null, 0, null)), Arrays.asList(q4, q2, q1));
+
+    /* Verification: listing after a cursor */
+    assertEquals(Lists.newArrayList(registry.getQueries(null, null, 200, q3.getQueryHandleString())),
+      Arrays.asList(q2, q1));
+    assertEquals(Lists.newArrayList(registry.getQueries(null, "user1", 200, q3.getQueryHandleString())),
+      Arrays.asList(q1));
+  }
+
+  @Test
+  public void testReindexAndRemove() {
+
+    /* Initialization */
+    QueryRegistry registry = new QueryRegistry();
+    QueryContext q1 = createQuery(1, "user1", 100, QUEUED);
+    QueryContext q2 = createQuery(2, "user1", 200, QUEUED);
+    registry.put(q1);
+    registry.put(q2);
+
+    /* Execution: status index is updated only on reindex */
+    setStatus(q1, LAUNCHED);
+    assertEquals(Lists.newArrayList(registry.getQueries(QUEUED, null, 0, null)), Arrays.asList(q2, q1));
+    registry.reindex(q1);
+
+    /* Verification */
+    assertEquals(Lists.newArrayList(registry.getQueries(QUEUED, null, 0, null)), Arrays.asList(q2));
+    assertEquals(Lists.newArrayList(registry.getQueries(LAUNCHED, null, 0, null)), Arrays.asList(q1));
+
+    /* Execution */
+    assertSame(registry.remove(q1.getQueryHandle()), q1);
+
+    /* Verification: query is removed from all indexes, reindexing a removed query does not add it back */
+    registry.reindex(q1);
+    assertNull(registry.get(q1.getQueryHandle()));
+    assertNull(registry.remove(q1.getQueryHandle()));
+    assertEquals(registry.size(), 1);
+    assertEquals(Lists.newArrayList(registry.values()), Arrays.asList(q2));
+    assertEquals(Lists.newArrayList(registry.getQueries(LAUNCHED, null, 0, null)), Collections.emptyList());
+    assertEquals(Lists.newArrayList(registry.getQueries(null, "user1", 0, null)), Arrays.asList(q2));
+  }
+}
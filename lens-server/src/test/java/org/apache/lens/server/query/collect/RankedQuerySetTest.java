@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.query.collect;
+
+import static org.apache.lens.server.query.collect.QueryCollectUtil.createQueryInstanceWithQueryHandleAndCostStubbing;
+
+import static org.mockito.Mockito.mock;
+
+import static org.testng.Assert.*;
+
+import java.util.*;
+
+import org.apache.lens.server.api.query.QueryContext;
+import org.apache.lens.server.query.QueryContextPriorityComparator;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+
+public class RankedQuerySetTest {
+
+  private static final String MOCK_HANDLE = "0-0-0-0-";
+
+  @Test
+  public void testRanksFollowInsertionOrderAcrossRemovals() {
+
+    /* Initialization: ranks are checked against a list kept alongside, over random adds and removes */
+    RankedQuerySet queries = new RankedQuerySet(null);
+    List<QueryContext> expected = new ArrayList<QueryContext>();
+    Random random = new Random(7);
+
+    for (int i = 0; i < 500; i++) {
+      if (expected.isEmpty() || random.nextInt(3) > 0) {
+        QueryContext query = mock(QueryContext.class);
+        assertTrue(queries.add(query));
+        expected.add(query);
+      } else {
+        assertTrue(queries.remove(expected.remove(random.nextInt(expected.size()))));
+      }
+
+      /* Verification */
+      assertEquals(queries.size(), expected.size());
+      if (i % 50 == 0) {
+        assertEquals(Lists.newArrayList(queries), expected);
+        for (int j = 0; j < expected.size(); j++) {
+          assertEquals(queries.rank(expected.get(j)).intValue(), j + 1);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testComparatorOrderAndDuplicates() {
+
+    /* Initialization: second and fourth query have same cost and submission time */
+    RankedQuerySet queries = new RankedQuerySet(new QueryContextPriorityComparator());
+    double[] costs = {30.0, 10.0, 20.0, 10.0};
+    List<QueryContext> added = new ArrayList<QueryContext>();
+    for (int i = 0; i < costs.length; i++) {
+      QueryContext query = createQueryInstanceWithQueryHandleAndCostStubbing(MOCK_HANDLE, i + 1, costs[i]);
+      queries.add(query);
+      added.add(query);
+    }
+
+    /* Verification: Adding a query again is ignored, queries with same priority are kept in insertion order */
+    assertFalse(queries.add(added.get(0)));
+    assertEquals(Lists.newArrayList(queries), Arrays.asList(added.get(1), added.get(3), added.get(2), added.get(0)));
+    assertEquals(queries.rank(added.get(0)).intValue(), 4);
+
+    /* Execution */
+    queries.remove(added.get(1));
+
+    /* Verification */
+    assertEquals(queries.rank(added.get(3)).intValue(), 1);
+    assertEquals(queries.rank(added.get(0)).intValue(), 3);
+    assertNull(queries.rank(added.get(1)));
+    assertFalse(queries.remove(added.get(1)));
+  }
+}
@@ -0,0 +1,231 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.rewrite;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lens.api.LensConf;
+import org.apache.lens.cube.metadata.CubeMetastoreClient;
+import org.apache.lens.cube.parse.CubeQueryContext;
+import org.apache.lens.driver.cube.RewriterPlan;
+import org.apache.lens.server.api.driver.LensDriver;
+import org.apache.lens.server.api.driver.MockDriver;
+import org.apache.lens.server.api.error.LensException;
+import org.apache.lens.server.api.metrics.LensMetricsRegistry;
+import org.apache.lens.server.api.query.QueryContext;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.session.SessionState;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for {@link RewritePlanCache}.
+ */
+public class TestRewritePlanCache {
+
+  private static final String QUERY = "cube select name from table";
+  private static final String RELATIVE_QUERY = "cube select name from table where time_range_in(dt, 'now-1day', 'now')";
+
+  private HiveConf hconf = new HiveConf();
+
+  @BeforeClass
+  public void setup() {
+    SessionState.start(hconf);
+  }
+
+  /**
+   * Loader counting the number of rewrites done.
+   */
+  private static class CountingLoader implements Callable<RewritePlanCache.RewritePlan> {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public RewritePlanCache.RewritePlan call() throws Exception {
+      return new RewritePlanCache.RewritePlan("rewritten-" + count.incrementAndGet(),
+        new RewriterPlan(Collections.<CubeQueryContext>emptyList()));
+    }
+  }
+
+  private QueryContext createContext(String query) throws LensException {
+    List<LensDriver> drivers = new ArrayList<LensDriver>();
+    MockDriver driver = new MockDriver();
+    driver.configure(new Configuration());
+    drivers.add(driver);
+    return new QueryContext(query, null, new LensConf(), new Configuration(), drivers);
+  }
+
+  private static long getCount(String counter) {
+    return LensMetricsRegistry.getStaticRegistry().counter(counter).getCount();
+  }
+
+  private Configuration driverConf(String key, String value) {
+    Configuration conf = new Configuration(false);
+    if (key != null) {
+      conf.set(key, value);
+    }
+    return conf;
+  }
+
+  /**
+   * Drivers of a query share rewrite if their rewrite configuration is same.
+   *
+   * @throws LensException the lens exception
+   */
+  @Test
+  public void testDriversWithSameRewriteConfShareRewrite() throws LensException {
+    RewritePlanCache cache = new RewritePlanCache(false, 10, 60000, 0);
+    RewritePlanCache.QueryScope scope = cache.newQueryScope(createContext(QUERY), QUERY);
+    CountingLoader loader = new CountingLoader();
+
+    RewritePlanCache.RewritePlan plan1 = scope.get(driverConf("lens.server.driver.key", "v1"), loader);
+    RewritePlanCache.RewritePlan plan2 = scope.get(driverConf("lens.server.driver.key", "v2"), loader);
+    Assert.assertSame(plan1, plan2);
+    Assert.assertEquals(loader.count.get(), 1);
+
+    RewritePlanCache.RewritePlan plan3 = scope.get(driverConf("lens.cube.query.driver.supported.storages", "C1"),
+      loader);
+    Assert.assertNotSame(plan1, plan3);
+    Assert.assertEquals(loader.count.get(), 2);
+
+    // shared caching is disabled
+    CountingLoader loader2 = new CountingLoader();
+    cache.newQueryScope(createContext(QUERY), QUERY).get(driverConf(null, null), loader2);
+    Assert.assertEquals(loader2.count.get(), 1);
+    Assert.assertEquals(cache.size(), 0);
+  }
+
+  /**
+   * Plans are shared across queries till the metastore changes.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testSharedPlanInvalidatedOnMetastoreChange() throws Exception {
+    RewritePlanCache cache = new RewritePlanCache(true, 10, 60000, 0);
+    CountingLoader loader = new CountingLoader();
+    QueryContext ctx = createContext(QUERY);
+    long hits = getCount(RewritePlanCache.HITS_COUNTER);
+    long misses = getCount(RewritePlanCache.MISSES_COUNTER);
+
+    RewritePlanCache.RewritePlan plan1 = cache.newQueryScope(ctx, QUERY).get(driverConf(null, null), loader);
+    RewritePlanCache.RewritePlan plan2 = cache.newQueryScope(ctx, QUERY).get(driverConf(null, null), loader);
+    RewritePlanCache.RewritePlan plan3 = cache.newQueryScope(ctx, QUERY).get(driverConf(null, null), loader);
+    Assert.assertSame(plan1, plan2);
+    Assert.assertSame(plan1, plan3);
+    Assert.assertEquals(loader.count.get(), 1);
+    Assert.assertEquals(cache.size(), 1);
+    Assert.assertEquals(getCount(RewritePlanCache.MISSES_COUNTER) - misses, 1);
+    Assert.assertEquals(getCount(RewritePlanCache.HITS_COUNTER) - hits, 2);
+
+    CubeMetastoreClient.getInstance(ctx.getHiveConf()).clearHiveTableCache();
+    RewritePlanCache.RewritePlan plan4 = cache.newQueryScope(ctx, QUERY).get(driverConf(null, null), loader);
+    Assert.assertNotSame(plan1, plan4);
+    Assert.assertEquals(loader.count.get(), 2);
+    Assert.assertEquals(getCount(RewritePlanCache.MISSES_COUNTER) - misses, 2);
+    Assert.assertEquals(getCount(RewritePlanCache.HITS_COUNTER) - hits, 2);
+  }
+
+  /**
+   * Queries sharing a plan get rewriter plans of their own.
+   *
+   * @throws LensException the lens exception
+   */
+  @Test
+  public void testRewriterPlanNotSharedAcrossQueries() throws LensException {
+    RewritePlanCache cache = new RewritePlanCache(true, 10, 60000, 0);
+    CountingLoader loader = new CountingLoader();
+    QueryContext ctx = createContext(QUERY + " copied");
+
+    RewritePlanCache.RewritePlan plan = cache.newQueryScope(ctx, QUERY + " copied").get(driverConf(null, null),
+      loader);
+    RewriterPlan rewriterPlan1 = plan.newRewriterPlan();
+    RewriterPlan rewriterPlan2 = plan.newRewriterPlan();
+    Assert.assertNotSame(rewriterPlan1, rewriterPlan2);
+    Assert.assertNotSame(rewriterPlan1.getPartitions(), rewriterPlan2.getPartitions());
+    Assert.assertNotSame(rewriterPlan1.getTablesQueried(), rewriterPlan2.getTablesQueried());
+
+    rewriterPlan1.getPartitions().put("fact", Collections.singleton("part"));
+    Assert.assertTrue(rewriterPlan2.getPartitions().isEmpty());
+    Assert.assertTrue(plan.newRewriterPlan().getPartitions().isEmpty());
+  }
+
+  /**
+   * Queries with relative time range are shared only if time bucket is configured.
+   *
+   * @throws LensException the lens exception
+   */
+  @Test
+  public void testRelativeTimeQuery() throws LensException {
+    QueryContext ctx = createContext(RELATIVE_QUERY);
+
+    RewritePlanCache cache = new RewritePlanCache(true, 10, 60000, 0);
+    CountingLoader loader = new CountingLoader();
+    cache.newQueryScope(ctx, RELATIVE_QUERY).get(driverConf(null, null), loader);
+    cache.newQueryScope(ctx, RELATIVE_QUERY).get(driverConf(null, null), loader);
+    Assert.assertEquals(loader.count.get(), 2);
+    Assert.assertEquals(cache.size(), 0);
+
+    // bucket wide enough that both submissions always fall in the same bucket
+    cache = new RewritePlanCache(true, 10, 60000, Long.MAX_VALUE / 2);
+    loader = new CountingLoader();
+    long hits = getCount(RewritePlanCache.HITS_COUNTER);
+    cache.newQueryScope(ctx, RELATIVE_QUERY).get(driverConf(null, null), loader);
+    cache.newQueryScope(ctx, RELATIVE_QUERY).get(driverConf(null, null), loader);
+    Assert.assertEquals(loader.count.get(), 1);
+    Assert.assertEquals(cache.size(), 1);
+    Assert.assertEquals(getCount(RewritePlanCache.HITS_COUNTER) - hits, 1);
+  }
+
+  /**
+   * Failed rewrites are not cached.
+   *
+   * @throws LensException the lens exception
+   */
+  @Test
+  public void testFailureNotCached() throws LensException {
+    RewritePlanCache cache = new RewritePlanCache(true, 10, 60000, 0);
+    QueryContext ctx = createContext(QUERY + " failing");
+    final AtomicInteger attempts = new AtomicInteger();
+    Callable<RewritePlanCache.RewritePlan> failing = new Callable<RewritePlanCache.RewritePlan>() {
+      @Override
+      public RewritePlanCache.RewritePlan call() throws Exception {
+        attempts.incrementAndGet();
+        throw new LensException("Rewrite failed");
+      }
+    };
+    for (int i = 1; i <= 2; i++) {
+      try {
+        cache.newQueryScope(ctx, QUERY + " failing").get(driverConf(null, null), failing);
+        Assert.fail("Rewrite should have failed");
+      } catch (LensException e) {
+        Assert.assertEquals(e.getMessage(), "Rewrite failed");
+      }
+      Assert.assertEquals(attempts.get(), i);
+    }
+    Assert.assertEquals(cache.size(), 0);
+  }
+}
@@ -164,6 +164,34 @@ public class TestRewriting {
     }
   }
 
+  /**
+   * Test that the query parsed while finding cube queries is kept in the query context, and handed out to drivers
+   * parsing the same text.
+   *
+   * @throws LensException the lens exception
+   */
+  @Test
+  public void testParseSharedWithDrivers() throws LensException {
+    List<LensDriver> drivers = new ArrayList<LensDriver>();
+    MockDriver driver = new MockDriver();
+    Configuration conf = new Configuration();
+    driver.configure(conf);
+    drivers.add(driver);
+
+    String query = "select name from table where id = 10";
+    QueryContext ctx = new QueryContext(query, null, new LensConf(), conf, drivers);
+    runRewrites(RewriteUtil.rewriteQuery(ctx));
+    ASTNode parsed = ctx.getParsedQuery(query);
+    Assert.assertNotNull(parsed);
+
+    // driver query of a non cube query is the user query, so drivers get copies of the same parse
+    Assert.assertEquals(ctx.getDriverQuery(driver), query);
+    ASTNode driverAST = HQLParser.parseHQL(ctx, ctx.getDriverQuery(driver));
+    Assert.assertNotSame(driverAST, parsed);
+    Assert.assertTrue(HQLParser.equalsAST(driverAST, parsed));
+    Assert.assertSame(ctx.getParsedQuery(query), parsed);
+  }
+
   /**
    * Test cube query.
    *